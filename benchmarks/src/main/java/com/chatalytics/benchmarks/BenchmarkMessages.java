@@ -0,0 +1,147 @@
+package com.chatalytics.benchmarks;
+
+import com.chatalytics.core.model.data.FatMessage;
+import com.chatalytics.core.model.data.Message;
+import com.chatalytics.core.model.data.MessageType;
+import com.chatalytics.core.model.data.Room;
+import com.chatalytics.core.model.data.User;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates the message texts the benchmarks run on. Texts either come from the corpus bundled with
+ * the compute module or are synthetic messages of a given size, made out of corpus words with some
+ * emojis and capitalized words sprinkled in.
+ *
+ * @author giannis
+ */
+public class BenchmarkMessages {
+
+    public static final String CORPUS_RESOURCE = "corpus/test_corpus.txt";
+    public static final String SOURCE_CORPUS = "corpus";
+    public static final String SOURCE_SYNTHETIC = "synthetic";
+
+    private static final List<String> EMOJIS = ImmutableList.of(":smile:", ":+1:", ":tada:",
+                                                                ":thumbs-up:", ":100:");
+    private static final double EMOJI_PROBABILITY = 0.05;
+    private static final double CAPITALIZED_PROBABILITY = 0.1;
+
+    private BenchmarkMessages() {
+        // utility class
+    }
+
+    /**
+     * @return The non empty lines of the bundled corpus
+     */
+    public static List<String> loadCorpus() {
+        try {
+            List<String> lines = Resources.readLines(Resources.getResource(CORPUS_RESOURCE),
+                                                     Charsets.UTF_8);
+            List<String> result = Lists.newArrayListWithCapacity(lines.size());
+            for (String line : lines) {
+                if (!line.trim().isEmpty()) {
+                    result.add(line);
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read the corpus " + CORPUS_RESOURCE, e);
+        }
+    }
+
+    /**
+     * Creates synthetic messages out of the words in the corpus
+     *
+     * @param numMessages
+     *            The number of messages to create
+     * @param messageLength
+     *            The length of every message, in characters
+     * @param seed
+     *            The seed for picking words so that runs are repeatable
+     * @return The messages
+     */
+    public static List<String> synthetic(int numMessages, int messageLength, long seed) {
+        List<String> words = Lists.newArrayList();
+        for (String line : loadCorpus()) {
+            for (String word : Splitter.on(' ').omitEmptyStrings().split(line)) {
+                words.add(word.toLowerCase());
+            }
+        }
+        Random random = new Random(seed);
+        List<String> result = Lists.newArrayListWithCapacity(numMessages);
+        StringBuilder sb = new StringBuilder(messageLength + 16);
+        for (int i = 0; i < numMessages; i++) {
+            sb.setLength(0);
+            while (sb.length() < messageLength) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                double dice = random.nextDouble();
+                String word = words.get(random.nextInt(words.size()));
+                if (dice < EMOJI_PROBABILITY) {
+                    sb.append(EMOJIS.get(random.nextInt(EMOJIS.size())));
+                } else if (dice < EMOJI_PROBABILITY + CAPITALIZED_PROBABILITY) {
+                    sb.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+                } else {
+                    sb.append(word);
+                }
+            }
+            sb.setLength(messageLength);
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the texts for a benchmark source
+     *
+     * @param source
+     *            Either {@link #SOURCE_CORPUS} or {@link #SOURCE_SYNTHETIC}
+     * @param numMessages
+     *            The number of synthetic messages. Ignored for the corpus
+     * @param messageLength
+     *            The length of synthetic messages. Ignored for the corpus
+     * @return The message texts
+     */
+    public static List<String> texts(String source, int numMessages, int messageLength) {
+        switch (source) {
+            case SOURCE_CORPUS:
+                return loadCorpus();
+            case SOURCE_SYNTHETIC:
+                return synthetic(numMessages, messageLength, 0);
+            default:
+                throw new IllegalArgumentException("Unknown message source " + source);
+        }
+    }
+
+    /**
+     * Wraps texts in {@link FatMessage}s from the same user and room
+     *
+     * @param texts
+     *            The message texts
+     * @return The messages
+     */
+    public static List<FatMessage> toFatMessages(List<String> texts) {
+        User user = new User("benchUserId", "email", false, false, false, null, "benchUserName",
+                             null, null, null, null, null, null, null);
+        Room room = new Room("benchRoomId", "benchRoomName", null, null, null, null, false, false,
+                             null, null);
+        DateTime date = DateTime.now();
+        List<FatMessage> result = Lists.newArrayListWithCapacity(texts.size());
+        for (String text : texts) {
+            Message message = new Message(date, user.getMentionName(), user.getUserId(), text,
+                                          room.getRoomId(), MessageType.MESSAGE);
+            result.add(new FatMessage(message, user, room));
+        }
+        return result;
+    }
+}
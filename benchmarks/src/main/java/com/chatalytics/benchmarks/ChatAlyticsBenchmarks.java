@@ -0,0 +1,24 @@
+package com.chatalytics.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks. It takes the same arguments as the JMH runner, for example a regular
+ * expression to select benchmarks, and always adds the GC profiler so that the allocation rate is
+ * reported next to the throughput of every benchmark.
+ *
+ * @author giannis
+ */
+public class ChatAlyticsBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().parent(new CommandLineOptions(args))
+                                              .addProfiler(GCProfiler.class)
+                                              .build();
+        new Runner(options).run();
+    }
+}
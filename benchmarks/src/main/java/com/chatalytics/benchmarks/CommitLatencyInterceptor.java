@@ -0,0 +1,51 @@
+package com.chatalytics.benchmarks;
+
+import com.chatalytics.core.model.data.IMentionRollup;
+import com.chatalytics.core.model.data.IMentionable;
+import com.google.common.collect.Lists;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Transaction;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Session scoped hibernate interceptor that records the time from when a message was emitted by
+ * the spout until the mentions found in it are committed. It's registered through the
+ * <code>hibernate.ejb.interceptor.session_scoped</code> property of the benchmark persistence
+ * unit. Latencies are recorded in {@link TopologyLatencies} under the type of the mention. Rollups
+ * are not recorded.
+ *
+ * @author giannis
+ */
+public class CommitLatencyInterceptor extends EmptyInterceptor {
+
+    private static final long serialVersionUID = 2863590270316290372L;
+
+    private final List<IMentionable<?>> pending = Lists.newArrayList();
+
+    @Override
+    public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames,
+                          Type[] types) {
+        // rollups are mentioned at the start of their bucket and don't come from a single message
+        if (entity instanceof IMentionable && !(entity instanceof IMentionRollup)) {
+            pending.add((IMentionable<?>) entity);
+        }
+        return false;
+    }
+
+    @Override
+    public void afterTransactionCompletion(Transaction tx) {
+        if (tx.getStatus() == TransactionStatus.COMMITTED) {
+            long nowMs = System.currentTimeMillis();
+            for (IMentionable<?> mention : pending) {
+                String name = TopologyLatencies.COMMIT_PREFIX + mention.getClass().getSimpleName();
+                TopologyLatencies.get(name).record(nowMs - mention.getMentionTime().getMillis());
+            }
+        }
+        pending.clear();
+    }
+}
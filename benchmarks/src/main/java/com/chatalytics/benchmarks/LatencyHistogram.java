@@ -0,0 +1,90 @@
+package com.chatalytics.benchmarks;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of latencies with millisecond resolution. Latencies are counted in one
+ * bucket per millisecond up to {@link #MAX_TRACKABLE_MS}, so the memory used is fixed no matter
+ * how many latencies are recorded. Longer latencies are counted in the last bucket but the maximum
+ * is still tracked exactly.
+ *
+ * @author giannis
+ */
+public class LatencyHistogram {
+
+    public static final int MAX_TRACKABLE_MS = 60 * 1000;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(MAX_TRACKABLE_MS + 1);
+        this.count = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * @param latencyMs
+     *            The latency to record. Negative latencies, caused by clock adjustments, are
+     *            recorded as 0
+     */
+    public void record(long latencyMs) {
+        long latency = Math.max(0, latencyMs);
+        counts.incrementAndGet((int) Math.min(latency, MAX_TRACKABLE_MS));
+        count.incrementAndGet();
+        max.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * @return The number of recorded latencies
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The largest recorded latency in milliseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile
+     *            The percentile, between 0 and 100
+     * @return The latency in milliseconds that <code>percentile</code> percent of the recorded
+     *         latencies are less than or equal to, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100,
+                                    "Percentile has to be between 0 and 100");
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int latency = 0; latency < counts.length(); latency++) {
+            seen += counts.get(latency);
+            if (seen >= rank) {
+                return latency == MAX_TRACKABLE_MS ? getMax() : latency;
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears all the recorded latencies
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+}
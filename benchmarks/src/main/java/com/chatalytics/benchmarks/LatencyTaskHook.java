@@ -0,0 +1,57 @@
+package com.chatalytics.benchmarks;
+
+import com.chatalytics.core.model.data.FatMessage;
+import com.chatalytics.core.model.data.IMentionable;
+
+import org.apache.storm.hooks.BaseTaskHook;
+import org.apache.storm.hooks.info.BoltExecuteInfo;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+
+import java.util.Map;
+
+/**
+ * Storm task hook that records, for every tuple a bolt finishes executing, the time since the
+ * message in the tuple was emitted by the spout. Messages are stamped with their emit time by the
+ * spout and mentions keep the time of the message they were found in, as long as the aggregation
+ * window is disabled. Latencies are recorded in {@link TopologyLatencies} under the ID of the bolt.
+ *
+ * @author giannis
+ */
+public class LatencyTaskHook extends BaseTaskHook {
+
+    private LatencyHistogram histogram;
+
+    @Override
+    public void prepare(@SuppressWarnings("rawtypes") Map conf, TopologyContext context) {
+        histogram = TopologyLatencies.get(TopologyLatencies.BOLT_PREFIX
+                                          + context.getThisComponentId());
+    }
+
+    @Override
+    public void boltExecute(BoltExecuteInfo info) {
+        long emitTimeMs = getEmitTimeMs(info.tuple);
+        if (emitTimeMs > 0) {
+            histogram.record(System.currentTimeMillis() - emitTimeMs);
+        }
+    }
+
+    /**
+     * @param tuple
+     *            The executed tuple
+     * @return The time the message in the tuple was emitted or 0 if it's not known, for example
+     *         for tick tuples
+     */
+    private static long getEmitTimeMs(Tuple tuple) {
+        if (tuple.size() == 0) {
+            return 0;
+        }
+        Object value = tuple.getValue(0);
+        if (value instanceof FatMessage) {
+            return ((FatMessage) value).getMessage().getDate().getMillis();
+        } else if (value instanceof IMentionable) {
+            return ((IMentionable<?>) value).getMentionTime().getMillis();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,70 @@
+package com.chatalytics.benchmarks;
+
+import com.chatalytics.compute.web.realtime.RealtimeResource;
+import com.chatalytics.core.model.data.ChatAlyticsEvent;
+import com.chatalytics.core.model.data.IMentionable;
+import com.chatalytics.core.realtime.ChatAlyticsEventDecoder;
+import com.chatalytics.core.realtime.ConnectionType;
+import com.chatalytics.core.realtime.ConnectionTypeEncoderDecoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+
+import javax.websocket.ClientEndpoint;
+import javax.websocket.ContainerProvider;
+import javax.websocket.DeploymentException;
+import javax.websocket.OnMessage;
+import javax.websocket.Session;
+
+/**
+ * Subscribes to the realtime compute server, the same way the web server does, and records the
+ * time from when a message was emitted by the spout until an event for a mention in it is
+ * received. Latencies are recorded in {@link TopologyLatencies} under the event type.
+ *
+ * @author giannis
+ */
+@ClientEndpoint(decoders = { ChatAlyticsEventDecoder.class, ConnectionTypeEncoderDecoder.class })
+public class RealtimeLatencySubscriber {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RealtimeLatencySubscriber.class);
+
+    private Session session;
+
+    /**
+     * Connects to the realtime compute server
+     *
+     * @param rtPort
+     *            The port the realtime compute server listens to
+     */
+    public void connect(int rtPort) throws DeploymentException, IOException {
+        URI rtURI = URI.create(String.format("ws://localhost:%d%s/%s",
+                                             rtPort,
+                                             RealtimeResource.RT_COMPUTE_ENDPOINT,
+                                             ConnectionType.SUBSCRIBER));
+        LOG.info("Subscribing to {}", rtURI);
+        session = ContainerProvider.getWebSocketContainer().connectToServer(this, rtURI);
+        session.setMaxIdleTimeout(0);
+    }
+
+    @OnMessage
+    public void onMessage(ChatAlyticsEvent event) {
+        if (event.getEvent() instanceof IMentionable) {
+            IMentionable<?> mention = (IMentionable<?>) event.getEvent();
+            long latencyMs = System.currentTimeMillis() - mention.getMentionTime().getMillis();
+            TopologyLatencies.get(TopologyLatencies.REALTIME_PREFIX + event.getType())
+                             .record(latencyMs);
+        }
+    }
+
+    /**
+     * Closes the subscription
+     */
+    public void close() throws IOException {
+        if (session != null) {
+            session.close();
+        }
+    }
+}
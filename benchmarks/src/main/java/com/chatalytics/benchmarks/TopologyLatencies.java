@@ -0,0 +1,55 @@
+package com.chatalytics.benchmarks;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latencies recorded by the {@link LatencyTaskHook}, the {@link CommitLatencyInterceptor} and the
+ * {@link RealtimeLatencySubscriber} while the topology runs. All the latencies are measured from
+ * the time the spout emitted a message. This is static because storm and hibernate create the
+ * hooks, and since the topology runs in a local cluster, they all share this JVM.
+ *
+ * @author giannis
+ */
+public class TopologyLatencies {
+
+    public static final String BOLT_PREFIX = "bolt.";
+    public static final String COMMIT_PREFIX = "commit.";
+    public static final String REALTIME_PREFIX = "realtime.";
+
+    private static final ConcurrentMap<String, LatencyHistogram> HISTOGRAMS =
+        Maps.newConcurrentMap();
+
+    private TopologyLatencies() {
+        // hide constructor
+    }
+
+    /**
+     * @param name
+     *            The name of the histogram
+     * @return The histogram for <code>name</code>, which is created if it doesn't exist
+     */
+    public static LatencyHistogram get(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * @return All the histograms sorted by name
+     */
+    public static SortedMap<String, LatencyHistogram> getAll() {
+        return ImmutableSortedMap.copyOf(HISTOGRAMS);
+    }
+
+    /**
+     * Clears all the histograms, for example at the end of a warm up
+     */
+    public static void reset() {
+        for (Map.Entry<String, LatencyHistogram> entry : HISTOGRAMS.entrySet()) {
+            entry.getValue().reset();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.chatalytics.benchmarks;
+
+import com.chatalytics.compute.ChatAlyticsService;
+import com.chatalytics.compute.db.dao.ChatAlyticsDAOFactory;
+import com.chatalytics.compute.storm.ChatAlyticsStormTopology;
+import com.chatalytics.compute.storm.bolt.EmojiCounterBolt;
+import com.chatalytics.compute.storm.bolt.EntityExtractionBolt;
+import com.chatalytics.compute.storm.bolt.MessageSummaryBolt;
+import com.chatalytics.compute.web.realtime.ComputeRealtimeServerFactory;
+import com.chatalytics.core.CommonCLIBuilder;
+import com.chatalytics.core.InputSourceType;
+import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.LocalTestConfig;
+import com.chatalytics.core.util.YamlUtils;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the full storm topology in a local cluster, fed by the
+ * {@link com.chatalytics.compute.storm.spout.LocalTestSpout}, and reports the sustained throughput
+ * and the latency percentiles of every bolt and end to end. Latencies are measured from the time
+ * the spout emits a message until:
+ * <ul>
+ * <li>a bolt finishes executing it, or a mention found in it for the realtime bolt</li>
+ * <li>the mentions found in it are committed to the database</li>
+ * <li>the realtime events for those mentions reach a subscriber</li>
+ * </ul>
+ * Mentions are persisted to an in-memory database and the aggregation window is disabled so that
+ * mention times keep the time the message was emitted. Messages are emitted as fast as the
+ * topology takes them unless a rate is given.
+ *
+ * @author giannis
+ */
+public class TopologyLoadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TopologyLoadTest.class);
+
+    public static final String PERSISTENCE_UNIT = "chatalytics-db-bench";
+
+    private static final String RATE_OPT = "r";
+    private static final String WARMUP_OPT = "w";
+    private static final String DURATION_OPT = "d";
+
+    /**
+     * The bolts that receive every message from the spout
+     */
+    private static final Set<String> MESSAGE_BOLTS = ImmutableSet.of(EntityExtractionBolt.BOLT_ID,
+                                                                     EmojiCounterBolt.BOLT_ID,
+                                                                     MessageSummaryBolt.BOLT_ID);
+
+    public static void main(String[] args) throws Exception {
+        Options opts = CommonCLIBuilder.getCommonOptions();
+        opts.addOption(Option.builder(RATE_OPT)
+                             .argName("messages per second")
+                             .hasArg()
+                             .desc("Rate the spout emits messages at. Unlimited if not set")
+                             .build());
+        opts.addOption(Option.builder(WARMUP_OPT)
+                             .argName("seconds")
+                             .hasArg()
+                             .desc("Time to run before measuring. Defaults to 30")
+                             .build());
+        opts.addOption(Option.builder(DURATION_OPT)
+                             .argName("seconds")
+                             .hasArg()
+                             .desc("Time to measure for. Defaults to 60")
+                             .build());
+        CommandLine cli = CommonCLIBuilder.parseOptions(TopologyLoadTest.class, args, opts);
+
+        ChatAlyticsConfig config = YamlUtils.readChatAlyticsConfig(
+            CommonCLIBuilder.getConfigOption(cli));
+        double rate = Double.parseDouble(cli.getOptionValue(RATE_OPT, "0"));
+        long warmupSecs = Long.parseLong(cli.getOptionValue(WARMUP_OPT, "30"));
+        long durationSecs = Long.parseLong(cli.getOptionValue(DURATION_OPT, "60"));
+        configure(config, rate);
+
+        ChatAlyticsService service =
+            new ChatAlyticsService(ChatAlyticsStormTopology.create(config),
+                                   new ComputeRealtimeServerFactory(config),
+                                   config);
+        service.startAsync().awaitRunning();
+        RealtimeLatencySubscriber subscriber = null;
+        if (config.computeConfig.enableRealtimeEvents) {
+            subscriber = new RealtimeLatencySubscriber();
+            subscriber.connect(config.computeConfig.rtComputePort);
+        }
+
+        try {
+            LOG.info("Warming up for {}s...", warmupSecs);
+            TimeUnit.SECONDS.sleep(warmupSecs);
+            TopologyLatencies.reset();
+            LOG.info("Measuring for {}s...", durationSecs);
+            long startNanos = System.nanoTime();
+            TimeUnit.SECONDS.sleep(durationSecs);
+            double elapsedSecs = (System.nanoTime() - startNanos) / 1e9;
+            System.out.println(createReport(TopologyLatencies.getAll(), elapsedSecs));
+        } finally {
+            if (subscriber != null) {
+                subscriber.close();
+            }
+            service.stopAsync().awaitTerminated();
+            ChatAlyticsDAOFactory.closeEntityManagerFactory();
+        }
+        // storm leaves non daemon threads behind
+        System.exit(0);
+    }
+
+    /**
+     * Points the config to the in-memory database, disables the aggregation window and registers
+     * the latency hook on all the topology tasks
+     *
+     * @param config
+     *            The config to change. Its input has to be the local test spout
+     * @param rate
+     *            The rate to emit messages at, or 0 to emit them as fast as possible
+     */
+    static void configure(ChatAlyticsConfig config, double rate) {
+        Preconditions.checkArgument(config.inputType == InputSourceType.LOCAL_TEST,
+                                    "The load test needs a LOCAL_TEST config");
+        config.persistenceUnitName = PERSISTENCE_UNIT;
+        config.computeConfig.aggregationWindowSecs = 0;
+        config.computeConfig.topologyConfig.taskHooks.add(LatencyTaskHook.class.getName());
+        LocalTestConfig chatConfig = (LocalTestConfig) config.computeConfig.chatConfig;
+        chatConfig.sleepMs = 0;
+        chatConfig.messagesPerSec = rate;
+    }
+
+    /**
+     * @param histograms
+     *            The latency histograms by name
+     * @param elapsedSecs
+     *            The time the latencies were recorded over
+     * @return A report with the throughput and latency percentiles of every histogram
+     */
+    static String createReport(Map<String, LatencyHistogram> histograms, double elapsedSecs) {
+        double sustainedRate = Double.MAX_VALUE;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-45s %10s %10s %8s %8s %8s %8s%n",
+                                "latency since emit (ms)", "count", "per sec", "p50", "p99",
+                                "p999", "max"));
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            double ratePerSec = histogram.getCount() / elapsedSecs;
+            sb.append(String.format("%-45s %10d %10.1f %8d %8d %8d %8d%n",
+                                    entry.getKey(),
+                                    histogram.getCount(),
+                                    ratePerSec,
+                                    histogram.getPercentile(50),
+                                    histogram.getPercentile(99),
+                                    histogram.getPercentile(99.9),
+                                    histogram.getMax()));
+            String name = entry.getKey();
+            if (name.startsWith(TopologyLatencies.BOLT_PREFIX)) {
+                String boltId = name.substring(TopologyLatencies.BOLT_PREFIX.length());
+                if (MESSAGE_BOLTS.contains(boltId)) {
+                    sustainedRate = Math.min(sustainedRate, ratePerSec);
+                }
+            }
+        }
+        if (sustainedRate == Double.MAX_VALUE) {
+            sustainedRate = 0;
+        }
+        sb.append(String.format("%nSustained throughput: %.1f msgs/s over %.1fs%n", sustainedRate,
+                                elapsedSecs));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package com.chatalytics.compute.matrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.uib.cipr.matrix.Matrix;
+import no.uib.cipr.matrix.MatrixEntry;
+import no.uib.cipr.matrix.sparse.FlexCompRowMatrix;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time it takes to find the Fiedler vector of a sparse clustered graph with a full
+ * eigen decomposition and with the {@link SparseFiedlerSolver}. The full decomposition is too
+ * slow and too big for 20k labels, so it only runs on the smaller sizes.
+ * <p>
+ * Before measuring, the sparse state prints how accurate the sparse solver is: the residual
+ * <code>||Lv - &lambda;v||</code> and, where the full decomposition is feasible, the relative
+ * error of the eigenvalue and the cosine between the two vectors.
+ *
+ * @author giannis
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class FiedlerVectorBenchmark {
+
+    private static final int NUM_CLUSTERS = 20;
+    private static final int EDGES_PER_LABEL = 5;
+    private static final int MAX_ACCURACY_CHECK_SIZE = 5000;
+
+    @State(Scope.Benchmark)
+    public static class SparseState {
+
+        @Param({ "1000", "5000", "20000" })
+        public int numLabels;
+
+        private Matrix A;
+
+        @Setup
+        public void setUp() {
+            A = createClusteredMatrix(numLabels);
+            double[] sparse = GraphPartition.getSparseFiedlerVector(A);
+            double eigenvalue = getRayleighQuotient(A, sparse);
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%nlabels: %d, eigenvalue: %.6e, residual: %.3e", numLabels,
+                                    eigenvalue, getResidual(A, sparse, eigenvalue)));
+            if (numLabels <= MAX_ACCURACY_CHECK_SIZE) {
+                double[] dense = GraphPartition.getDenseFiedlerVector(A);
+                double denseEigenvalue = getRayleighQuotient(A, dense);
+                sb.append(String.format(", eigenvalue relative error: %.3e, |cos|: %.9f",
+                                        Math.abs(eigenvalue - denseEigenvalue) / denseEigenvalue,
+                                        Math.abs(dot(dense, sparse))));
+            }
+            System.out.println(sb);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DenseState {
+
+        @Param({ "1000", "5000" })
+        public int numLabels;
+
+        private Matrix A;
+
+        @Setup
+        public void setUp() {
+            A = createClusteredMatrix(numLabels);
+        }
+    }
+
+    @Benchmark
+    public double[] getSparseFiedlerVector(SparseState state) {
+        return GraphPartition.getSparseFiedlerVector(state.A);
+    }
+
+    @Benchmark
+    public double[] getDenseFiedlerVector(DenseState state) {
+        return GraphPartition.getDenseFiedlerVector(state.A);
+    }
+
+    /**
+     * Creates a symmetric matrix that looks like a mention matrix of many labels, where every label
+     * is mostly connected to the other labels in its cluster and a few times to random ones
+     */
+    private static Matrix createClusteredMatrix(int numLabels) {
+        Random random = new Random(0);
+        Matrix A = new FlexCompRowMatrix(numLabels, numLabels);
+        int clusterSize = numLabels / NUM_CLUSTERS;
+        for (int i = 0; i < numLabels; i++) {
+            for (int edge = 0; edge < EDGES_PER_LABEL; edge++) {
+                int j;
+                if (random.nextInt(10) == 0) {
+                    j = random.nextInt(numLabels);
+                } else {
+                    j = random.nextInt(clusterSize) * NUM_CLUSTERS + i % NUM_CLUSTERS;
+                }
+                if (i != j) {
+                    double weight = 1 + random.nextInt(3);
+                    A.add(i, j, weight);
+                    A.add(j, i, weight);
+                }
+            }
+        }
+        return A;
+    }
+
+    /**
+     * @return <code>L * x</code> where <code>L</code> is the Laplacian of <code>A</code>
+     */
+    private static double[] multiplyLaplacian(Matrix A, double[] x) {
+        double[] result = new double[x.length];
+        for (MatrixEntry entry : A) {
+            result[entry.row()] += entry.get() * (x[entry.row()] - x[entry.column()]);
+        }
+        return result;
+    }
+
+    private static double getRayleighQuotient(Matrix A, double[] x) {
+        return dot(x, multiplyLaplacian(A, x)) / dot(x, x);
+    }
+
+    private static double getResidual(Matrix A, double[] x, double eigenvalue) {
+        double[] Lx = multiplyLaplacian(A, x);
+        double norm = 0;
+        for (int i = 0; i < x.length; i++) {
+            double diff = Lx[i] - eigenvalue * x[i];
+            norm += diff * diff;
+        }
+        return Math.sqrt(norm / dot(x, x));
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double sum = 0;
+        for (int i = 0; i < x.length; i++) {
+            sum += x[i] * y[i];
+        }
+        return sum;
+    }
+}
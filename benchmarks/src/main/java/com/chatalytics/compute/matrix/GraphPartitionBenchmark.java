@@ -0,0 +1,79 @@
+package com.chatalytics.compute.matrix;
+
+import com.chatalytics.core.model.data.EmojiEntity;
+import com.google.common.collect.Lists;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link GraphPartition#getMentionMatrix(List, java.util.function.Function,
+ * java.util.function.Function)} and {@link GraphPartition#getSimilarityMatrix(LabeledMTJMatrix)}
+ * on random emoji mentions. The similarity matrix is computed over the emoji dimension so its size
+ * is <code>numValues</code> by <code>numValues</code>.
+ *
+ * @author giannis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphPartitionBenchmark {
+
+    @Param({ "10000" })
+    public int numMentions;
+
+    @Param({ "50", "200", "500" })
+    public int numValues;
+
+    @Param({ "100" })
+    public int numRooms;
+
+    private List<EmojiEntity> mentions;
+    private LabeledMTJMatrix<String> mentionMatrix;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        DateTime mentionTime = DateTime.now();
+        mentions = Lists.newArrayListWithCapacity(numMentions);
+        for (int i = 0; i < numMentions; i++) {
+            // make sure every value shows up at least once
+            int value = i < numValues ? i : random.nextInt(numValues);
+            mentions.add(new EmojiEntity("u" + random.nextInt(numRooms),
+                                         "r" + random.nextInt(numRooms),
+                                         mentionTime,
+                                         "e" + value,
+                                         1 + random.nextInt(3),
+                                         false));
+        }
+        mentionMatrix = getMentionMatrix();
+    }
+
+    @Benchmark
+    public LabeledMTJMatrix<String> getMentionMatrix() {
+        return GraphPartition.getMentionMatrix(mentions, EmojiEntity::getValue,
+                                               EmojiEntity::getRoomName);
+    }
+
+    @Benchmark
+    public LabeledDenseMatrix<String> getSimilarityMatrix() {
+        return GraphPartition.getSimilarityMatrix(mentionMatrix);
+    }
+}
@@ -0,0 +1,76 @@
+package com.chatalytics.compute.storm.bolt;
+
+import com.chatalytics.benchmarks.BenchmarkMessages;
+import com.chatalytics.core.emoji.EmojiScanner;
+import com.chatalytics.core.model.data.EmojiEntity;
+import com.chatalytics.core.model.data.FatMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link EmojiCounterBolt#getEmojisFromMessage(FatMessage)} and the
+ * {@link EmojiScanner} it uses. Every invocation processes one message.
+ *
+ * @author giannis
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmojiCounterBoltBenchmark {
+
+    @Param({ BenchmarkMessages.SOURCE_CORPUS, BenchmarkMessages.SOURCE_SYNTHETIC })
+    public String source;
+
+    @Param({ "64", "1024" })
+    public int messageLength;
+
+    private EmojiCounterBolt bolt;
+    private EmojiScanner scanner;
+    private List<FatMessage> messages;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        bolt = new EmojiCounterBolt();
+        scanner = new EmojiScanner();
+        messages = BenchmarkMessages.toFatMessages(
+            BenchmarkMessages.texts(source, 1000, messageLength));
+    }
+
+    @Benchmark
+    public List<EmojiEntity> getEmojisFromMessage() {
+        return bolt.getEmojisFromMessage(nextMessage());
+    }
+
+    @Benchmark
+    public int scan() {
+        int found = 0;
+        scanner.reset(nextMessage().getMessage().getMessage());
+        while (scanner.find()) {
+            found++;
+        }
+        return found;
+    }
+
+    private FatMessage nextMessage() {
+        FatMessage message = messages.get(next);
+        next = (next + 1) % messages.size();
+        return message;
+    }
+}
@@ -0,0 +1,112 @@
+package com.chatalytics.compute.storm.bolt;
+
+import com.chatalytics.benchmarks.BenchmarkMessages;
+import com.chatalytics.compute.config.ConfigurationConstants;
+import com.chatalytics.compute.nlp.EntityPreFilter;
+import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.model.data.ChatEntity;
+import com.chatalytics.core.model.data.FatMessage;
+import com.chatalytics.core.util.YamlUtils;
+import com.google.common.collect.Maps;
+
+import org.apache.storm.task.TopologyContext;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Benchmarks {@link EntityExtractionBolt#extractEntities(FatMessage)} with and without the
+ * {@link EntityPreFilter}. The classification cache is disabled so that every message goes through
+ * the classifier unless it's filtered out.
+ * <p>
+ * Next to the throughput, the number of messages and extracted entities are reported as secondary
+ * results. The ratio of entities per message with the filter over the same ratio without the
+ * filter, for the same source, is the recall of the filter.
+ *
+ * @author giannis
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class EntityExtractionBoltBenchmark {
+
+    @Param({ BenchmarkMessages.SOURCE_CORPUS, BenchmarkMessages.SOURCE_SYNTHETIC })
+    public String source;
+
+    @Param({ "128" })
+    public int messageLength;
+
+    @Param({ "false", "true" })
+    public boolean filter;
+
+    private EntityExtractionBolt bolt;
+    private List<FatMessage> messages;
+    private int next;
+
+    /**
+     * Counts the messages and entities of every iteration
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long messages;
+        public long entities;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            messages = 0;
+            entities = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        ChatAlyticsConfig config = new ChatAlyticsConfig();
+        config.persistenceUnitName = "chatalytics-db-bench";
+        config.computeConfig.entityCacheSize = 0;
+        config.computeConfig.entityFilterEnabled = filter;
+        Map<Object, Object> stormConf = Maps.newHashMapWithExpectedSize(1);
+        stormConf.put(ConfigurationConstants.CHATALYTICS_CONFIG.txt, YamlUtils.writeYaml(config));
+
+        bolt = new EntityExtractionBolt();
+        bolt.prepare(stormConf, mock(TopologyContext.class));
+        messages = BenchmarkMessages.toFatMessages(
+            BenchmarkMessages.texts(source, 1000, messageLength));
+    }
+
+    @TearDown
+    public void tearDown() {
+        bolt.cleanup();
+    }
+
+    @Benchmark
+    public List<ChatEntity> extractEntities(Counters counters) {
+        FatMessage message = messages.get(next);
+        next = (next + 1) % messages.size();
+        List<ChatEntity> entities = bolt.extractEntities(message);
+        counters.messages++;
+        counters.entities += entities.size();
+        return entities;
+    }
+}
@@ -0,0 +1,93 @@
+package com.chatalytics.core.model.json;
+
+import com.chatalytics.benchmarks.BenchmarkMessages;
+import com.chatalytics.core.model.data.Message;
+import com.chatalytics.core.model.hipchat.json.HipChatJsonModule;
+import com.chatalytics.core.model.slack.json.SlackJsonModule;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the Slack and HipChat message deserializers. Every invocation deserializes one
+ * message from the raw JSON bytes, the way it's read off of the chat APIs.
+ *
+ * @author giannis
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDeserializerBenchmark {
+
+    public static final String CHAT_SLACK = "slack";
+    public static final String CHAT_HIPCHAT = "hipchat";
+
+    @Param({ CHAT_SLACK, CHAT_HIPCHAT })
+    public String chat;
+
+    @Param({ BenchmarkMessages.SOURCE_CORPUS, BenchmarkMessages.SOURCE_SYNTHETIC })
+    public String source;
+
+    @Param({ "64", "1024" })
+    public int messageLength;
+
+    private ObjectMapper objMapper;
+    private List<byte[]> messages;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper writer = new ObjectMapper();
+        List<String> texts = BenchmarkMessages.texts(source, 1000, messageLength);
+        messages = Lists.newArrayListWithCapacity(texts.size());
+        for (String text : texts) {
+            Map<String, Object> message;
+            if (CHAT_SLACK.equals(chat)) {
+                message = ImmutableMap.of("type", "message",
+                                          "user", "U023BECGF",
+                                          "text", text,
+                                          "ts", "1431708451.000186");
+            } else {
+                message = ImmutableMap.of("date", "2016-05-31T19:35:27+0000",
+                                          "from", ImmutableMap.of("id", 1,
+                                                                  "name", "bench user",
+                                                                  "user_id", "1234"),
+                                          "message", text);
+            }
+            messages.add(writer.writeValueAsBytes(message));
+        }
+        objMapper = new ObjectMapper();
+        if (CHAT_SLACK.equals(chat)) {
+            objMapper.registerModule(new SlackJsonModule());
+        } else {
+            objMapper.registerModule(new HipChatJsonModule());
+        }
+    }
+
+    @Benchmark
+    public Message deserialize() throws IOException {
+        byte[] message = messages.get(next);
+        next = (next + 1) % messages.size();
+        return objMapper.readValue(message, Message.class);
+    }
+}
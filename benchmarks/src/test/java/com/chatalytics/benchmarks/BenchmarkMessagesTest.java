@@ -0,0 +1,60 @@
+package com.chatalytics.benchmarks;
+
+import com.chatalytics.core.model.data.FatMessage;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests {@link BenchmarkMessages}
+ *
+ * @author giannis
+ */
+public class BenchmarkMessagesTest {
+
+    @Test
+    public void testLoadCorpus() {
+        List<String> corpus = BenchmarkMessages.loadCorpus();
+        assertFalse(corpus.isEmpty());
+        for (String line : corpus) {
+            assertFalse(line.trim().isEmpty());
+        }
+    }
+
+    @Test
+    public void testSynthetic() {
+        List<String> messages = BenchmarkMessages.synthetic(20, 100, 0);
+        assertEquals(20, messages.size());
+        for (String message : messages) {
+            assertEquals(100, message.length());
+        }
+        // the same seed gives the same messages
+        assertEquals(messages, BenchmarkMessages.synthetic(20, 100, 0));
+    }
+
+    @Test
+    public void testTexts() {
+        assertEquals(BenchmarkMessages.loadCorpus(),
+                     BenchmarkMessages.texts(BenchmarkMessages.SOURCE_CORPUS, 5, 10));
+        assertEquals(5, BenchmarkMessages.texts(BenchmarkMessages.SOURCE_SYNTHETIC, 5, 10).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTexts_unknownSource() {
+        BenchmarkMessages.texts("unknown", 5, 10);
+    }
+
+    @Test
+    public void testToFatMessages() {
+        List<FatMessage> messages = BenchmarkMessages.toFatMessages(ImmutableList.of("a", "b"));
+        assertEquals(2, messages.size());
+        assertEquals("a", messages.get(0).getMessage().getMessage());
+        assertEquals("benchRoomName", messages.get(1).getRoom().getName());
+        assertEquals("benchUserName", messages.get(1).getUser().getMentionName());
+    }
+}
@@ -0,0 +1,67 @@
+package com.chatalytics.benchmarks;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link LatencyHistogram}
+ *
+ * @author giannis
+ */
+public class LatencyHistogramTest {
+
+    private LatencyHistogram underTest;
+
+    @Before
+    public void setUp() {
+        underTest = new LatencyHistogram();
+    }
+
+    @Test
+    public void testGetPercentile() {
+        for (int latency = 1; latency <= 1000; latency++) {
+            underTest.record(latency);
+        }
+        assertEquals(1000, underTest.getCount());
+        assertEquals(500, underTest.getPercentile(50));
+        assertEquals(990, underTest.getPercentile(99));
+        assertEquals(999, underTest.getPercentile(99.9));
+        assertEquals(1000, underTest.getPercentile(100));
+        assertEquals(1, underTest.getPercentile(0));
+        assertEquals(1000, underTest.getMax());
+    }
+
+    @Test
+    public void testGetPercentile_empty() {
+        assertEquals(0, underTest.getPercentile(50));
+        assertEquals(0, underTest.getMax());
+    }
+
+    /**
+     * Makes sure latencies that don't fit in the buckets still report the real max
+     */
+    @Test
+    public void testRecord_outOfRange() {
+        underTest.record(-5);
+        underTest.record(LatencyHistogram.MAX_TRACKABLE_MS * 2);
+        assertEquals(0, underTest.getPercentile(50));
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_MS * 2, underTest.getPercentile(100));
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_MS * 2, underTest.getMax());
+    }
+
+    @Test
+    public void testReset() {
+        underTest.record(10);
+        underTest.reset();
+        assertEquals(0, underTest.getCount());
+        assertEquals(0, underTest.getMax());
+        assertEquals(0, underTest.getPercentile(99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetPercentile_invalid() {
+        underTest.getPercentile(101);
+    }
+}
@@ -0,0 +1,74 @@
+package com.chatalytics.benchmarks;
+
+import com.chatalytics.compute.storm.bolt.EmojiCounterBolt;
+import com.chatalytics.compute.storm.bolt.EntityExtractionBolt;
+import com.chatalytics.compute.storm.bolt.MessageSummaryBolt;
+import com.chatalytics.compute.storm.bolt.RealtimeBolt;
+import com.chatalytics.core.InputSourceType;
+import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.LocalTestConfig;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link TopologyLoadTest}
+ *
+ * @author giannis
+ */
+public class TopologyLoadTestTest {
+
+    @Test
+    public void testConfigure() {
+        ChatAlyticsConfig config = new ChatAlyticsConfig();
+        config.inputType = InputSourceType.LOCAL_TEST;
+        LocalTestConfig chatConfig = new LocalTestConfig();
+        config.computeConfig.chatConfig = chatConfig;
+
+        TopologyLoadTest.configure(config, 250);
+
+        assertEquals(TopologyLoadTest.PERSISTENCE_UNIT, config.persistenceUnitName);
+        assertEquals(0, config.computeConfig.aggregationWindowSecs);
+        assertTrue(config.computeConfig.topologyConfig.taskHooks
+                         .contains(LatencyTaskHook.class.getName()));
+        assertEquals(0, chatConfig.sleepMs);
+        assertEquals(250, chatConfig.messagesPerSec, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConfigure_notLocal() {
+        ChatAlyticsConfig config = new ChatAlyticsConfig();
+        config.inputType = InputSourceType.SLACK;
+        TopologyLoadTest.configure(config, 0);
+    }
+
+    /**
+     * Makes sure the sustained throughput is the rate of the slowest bolt that gets every message
+     */
+    @Test
+    public void testCreateReport() {
+        String report = TopologyLoadTest.createReport(
+            ImmutableMap.of(TopologyLatencies.BOLT_PREFIX + EntityExtractionBolt.BOLT_ID,
+                            histogram(50),
+                            TopologyLatencies.BOLT_PREFIX + EmojiCounterBolt.BOLT_ID,
+                            histogram(100),
+                            TopologyLatencies.BOLT_PREFIX + MessageSummaryBolt.BOLT_ID,
+                            histogram(100),
+                            TopologyLatencies.BOLT_PREFIX + RealtimeBolt.BOLT_ID,
+                            histogram(10)),
+            10);
+        assertTrue(report, report.contains("Sustained throughput: 5.0 msgs/s"));
+        assertTrue(report, report.contains(TopologyLatencies.BOLT_PREFIX + RealtimeBolt.BOLT_ID));
+    }
+
+    private static LatencyHistogram histogram(int count) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < count; i++) {
+            histogram.record(i);
+        }
+        return histogram;
+    }
+}
@@ -4,6 +4,7 @@ import com.chatalytics.compute.config.ConfigurationConstants;
 import com.chatalytics.compute.web.realtime.ComputeRealtimeServer;
 import com.chatalytics.compute.web.realtime.ComputeRealtimeServerFactory;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.TopologyConfig;
 import com.chatalytics.core.util.YamlUtils;
 import com.google.common.util.concurrent.AbstractIdleService;
 
@@ -50,7 +51,11 @@ public class ChatAlyticsService extends AbstractIdleService {
         Config stormConfig = new Config();
         stormConfig.setDebug(false);
         stormConfig.setFallBackOnJavaSerialization(true);
-        stormConfig.setNumWorkers(1);
+        TopologyConfig topologyConfig = chatalyticsConfig.computeConfig.topologyConfig;
+        stormConfig.setNumWorkers(topologyConfig.numWorkers);
+        if (!topologyConfig.taskHooks.isEmpty()) {
+            stormConfig.put(Config.TOPOLOGY_AUTO_TASK_HOOKS, topologyConfig.taskHooks);
+        }
 
         // enable backpressure since the spouts can move at a much faster speed than the bolts
         stormConfig.put(Config.TOPOLOGY_BACKPRESSURE_ENABLE, true);
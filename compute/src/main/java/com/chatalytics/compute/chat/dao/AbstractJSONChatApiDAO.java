@@ -1,57 +1,168 @@
 package com.chatalytics.compute.chat.dao;
 
+import com.chatalytics.compute.exception.ChatApiException;
+import com.chatalytics.core.config.ComputeConfig;
 import com.google.common.annotations.VisibleForTesting;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.ClientResponse.Status;
 import com.sun.jersey.api.client.UniformInterfaceException;
 import com.sun.jersey.api.client.WebResource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.core.MediaType;
 
 /**
- * Base class for JSON implementations of {@link IChatApiDAO} classes
+ * Base class for JSON implementations of {@link IChatApiDAO} classes. Requests are spread over the
+ * auth tokens by an {@link AuthTokenScheduler}.
  *
  * @author giannis
  *
  */
 public abstract class AbstractJSONChatApiDAO implements IChatApiDAO {
 
-    private final List<String> authTokens;
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractJSONChatApiDAO.class);
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+
     private final String authTokenParam;
-    private final Random rand;
+    private final AuthTokenScheduler tokenScheduler;
+    private final long retryBaseSleepMs;
+    private final long retryMaxSleepMs;
 
-    protected AbstractJSONChatApiDAO(List<String> authTokens, String authTokenParam) {
-        this.authTokens = authTokens;
+    protected AbstractJSONChatApiDAO(List<String> authTokens, String authTokenParam,
+                                     ComputeConfig computeConfig) {
         this.authTokenParam = authTokenParam;
-        this.rand = new Random(System.currentTimeMillis());
+        this.tokenScheduler = new AuthTokenScheduler(authTokens,
+                                                     computeConfig.apiTokenRequestsPerMinute);
+        this.retryBaseSleepMs = computeConfig.apiRetryBaseSleepMs;
+        this.retryMaxSleepMs = computeConfig.apiRetryMaxSleepMs;
     }
 
     /**
-     * Helper method for doing GETs with <code>retries</code> number of retries in case of 403
-     * errors.
+     * Helper method for doing GETs with <code>retries</code> number of retries. Every attempt uses
+     * the least loaded auth token. Throttled requests (429) hold back their token for as long as
+     * the API asks in the <code>Retry-After</code> header and are retried right away with another
+     * token, if there is one. Server errors, 403s and connection errors are retried after a
+     * randomized exponential backoff. Other client errors are not retried.
      *
      * @param resource
      *            The resource to GET data from
      * @param retries
-     *            The number of retries if a 403 is encountered.
-     * @return The JSON result string.
+     *            The number of retries if a request fails
+     * @return The JSON result string, or an empty JSON object if the request got a client error
+     *         that is not retried or a 403 on every attempt
+     * @throws ChatApiException
+     *             If the request was still throttled, got a server error or couldn't connect after
+     *             all the attempts, or if the thread was interrupted while waiting to retry
      */
     @VisibleForTesting
     public String getJsonResultWithRetries(WebResource resource, int retries) {
-        resource = addTokenQueryParam(resource);
-        while (retries >= 0) {
+        int lastStatus = ChatApiException.NO_STATUS;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            long backoffMs = getBackoffMs(attempt);
+            String authToken;
             try {
-                String jsonStr = resource.accept(MediaType.APPLICATION_JSON).get(String.class);
-                return jsonStr;
+                authToken = tokenScheduler.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ChatApiException("Interrupted while waiting for a token for "
+                    + resource.getURI(), lastStatus);
+            }
+            try {
+                return addTokenQueryParam(resource, authToken).accept(MediaType.APPLICATION_JSON)
+                                                              .get(String.class);
             } catch (UniformInterfaceException e) {
-                if (e.getResponse().getStatus() == Status.FORBIDDEN.getStatusCode()) {
-                    retries--;
+                ClientResponse response = e.getResponse();
+                lastStatus = response.getStatus();
+                if (lastStatus == TOO_MANY_REQUESTS) {
+                    long retryAfterMs = getRetryAfterMs(response, backoffMs);
+                    LOG.debug("Throttled by {}. Retrying after {}ms", resource.getURI(),
+                              retryAfterMs);
+                    if (authToken == null) {
+                        backoffMs = retryAfterMs;
+                    } else {
+                        // the next attempt waits for this or another token to be available
+                        tokenScheduler.throttle(authToken, retryAfterMs);
+                        backoffMs = 0;
+                    }
+                } else if (lastStatus != Status.FORBIDDEN.getStatusCode() && lastStatus < 500) {
+                    LOG.error("Got {} from {}. Not retrying", lastStatus, resource.getURI());
+                    return "{}";
+                } else {
+                    LOG.debug("Got {} from {}", lastStatus, resource.getURI());
                 }
+            } catch (ClientHandlerException e) {
+                lastStatus = ChatApiException.NO_STATUS;
+                LOG.debug("Can't connect to {}", resource.getURI(), e);
+            } finally {
+                tokenScheduler.release(authToken);
             }
+
+            if (attempt < retries && backoffMs > 0) {
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ChatApiException("Interrupted while waiting to retry "
+                        + resource.getURI(), lastStatus);
+                }
+            }
+        }
+        if (lastStatus == Status.FORBIDDEN.getStatusCode()) {
+            LOG.error("Giving up on {} after getting {}", resource.getURI(), lastStatus);
+            return "{}";
+        }
+        String msg = String.format("Giving up on %s after %d attempts. Last status was %d",
+                                   resource.getURI(), retries + 1, lastStatus);
+        throw new ChatApiException(msg, lastStatus);
+    }
+
+    /**
+     * Returns the requests and throttles of every auth token since the last call to this method.
+     * Useful for figuring out how many tokens are needed to keep up with the API rate limits.
+     *
+     * @return A map of stat name to value
+     */
+    public Map<String, Number> getAndResetTokenStats() {
+        return tokenScheduler.getAndResetStats();
+    }
+
+    /**
+     * @return A random sleep between 0 and the exponential backoff of the given attempt
+     */
+    private long getBackoffMs(int attempt) {
+        if (retryBaseSleepMs <= 0) {
+            return 0;
+        }
+        long maxBackoffMs = retryBaseSleepMs << Math.min(attempt, 30);
+        if (maxBackoffMs <= 0 || maxBackoffMs > retryMaxSleepMs) {
+            maxBackoffMs = retryMaxSleepMs;
+        }
+        return ThreadLocalRandom.current().nextLong(maxBackoffMs + 1);
+    }
+
+    /**
+     * @return The number of milliseconds the API asked to wait for, or the default if it didn't
+     */
+    private static long getRetryAfterMs(ClientResponse response, long defaultMs) {
+        String retryAfter = response.getHeaders().getFirst(RETRY_AFTER_HEADER);
+        if (retryAfter == null) {
+            return defaultMs;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return defaultMs;
         }
-        return "{}";
     }
 
     /**
@@ -59,15 +170,15 @@ public abstract class AbstractJSONChatApiDAO implements IChatApiDAO {
      *
      * @param resource
      *            The resource to add the token parameter to.
+     * @param authToken
+     *            The token to add. Can be null if there are no tokens
      * @return Returns a new resource with the token query parameter added.
      */
-    private WebResource addTokenQueryParam(WebResource resource) {
-        if (authTokens == null || authTokens.isEmpty()) {
+    private WebResource addTokenQueryParam(WebResource resource, String authToken) {
+        if (authToken == null) {
             return resource;
         }
-        int tokenSize = authTokens.size();
-        String randomAuthToken = authTokens.get(rand.nextInt(tokenSize));
-        return resource.queryParam(authTokenParam, randomAuthToken);
+        return resource.queryParam(authTokenParam, authToken);
     }
 
 }
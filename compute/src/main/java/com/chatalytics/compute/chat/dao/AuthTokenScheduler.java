@@ -0,0 +1,205 @@
+package com.chatalytics.compute.chat.dao;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the requests to a chat API over its auth tokens. Every request goes to the healthy token
+ * with the fewest requests in flight. A token is healthy when the API hasn't throttled it and it
+ * hasn't used up its budget of requests for the current minute. When none of the tokens are
+ * healthy callers wait until one of them is.
+ *
+ * @author giannis
+ */
+public class AuthTokenScheduler {
+
+    private static final long BUDGET_WINDOW_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final List<TokenState> tokens;
+    private final int requestsPerMinute;
+    private final Ticker ticker;
+    private long lastStatsMs;
+
+    /**
+     * @param authTokens
+     *            The auth tokens to use. Can be empty or null if the API doesn't need tokens
+     * @param requestsPerMinute
+     *            The maximum number of requests a single token makes per minute. Set to 0 for no
+     *            limit
+     */
+    public AuthTokenScheduler(List<String> authTokens, int requestsPerMinute) {
+        this(authTokens, requestsPerMinute, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    AuthTokenScheduler(List<String> authTokens, int requestsPerMinute, Ticker ticker) {
+        Preconditions.checkArgument(requestsPerMinute >= 0, "Requests per minute has to be >= 0");
+        this.requestsPerMinute = requestsPerMinute;
+        this.ticker = ticker;
+        this.tokens = Lists.newArrayList();
+        if (authTokens != null) {
+            for (String authToken : authTokens) {
+                tokens.add(new TokenState(authToken));
+            }
+        }
+        this.lastStatsMs = nowMs();
+    }
+
+    /**
+     * Waits until a token is healthy and reserves it for a request. Every token returned by this
+     * method has to be given back with {@link #release(String)} once the request completes.
+     *
+     * @return The token to make the request with or null if there are no tokens
+     * @throws InterruptedException
+     *             If interrupted while waiting for a token
+     */
+    public synchronized String acquire() throws InterruptedException {
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        while (true) {
+            long nowMs = nowMs();
+            TokenState leastLoaded = null;
+            long waitMs = Long.MAX_VALUE;
+            for (TokenState token : tokens) {
+                long unavailableMs = token.getUnavailableMs(nowMs);
+                if (unavailableMs > 0) {
+                    waitMs = Math.min(waitMs, unavailableMs);
+                } else if (leastLoaded == null || token.isLessLoadedThan(leastLoaded)) {
+                    leastLoaded = token;
+                }
+            }
+            if (leastLoaded != null) {
+                leastLoaded.inFlight++;
+                leastLoaded.windowRequests++;
+                leastLoaded.requests++;
+                return leastLoaded.authToken;
+            }
+            // woken up earlier when a request completes or another token gets throttled
+            wait(waitMs);
+        }
+    }
+
+    /**
+     * Gives back a token reserved by {@link #acquire()}
+     *
+     * @param authToken
+     *            The token to give back. Ignored if null
+     */
+    public synchronized void release(String authToken) {
+        TokenState token = getToken(authToken);
+        if (token != null && token.inFlight > 0) {
+            token.inFlight--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stops handing out a token that the API throttled until it can be used again
+     *
+     * @param authToken
+     *            The throttled token. Ignored if null
+     * @param retryAfterMs
+     *            How long to wait before using the token again
+     */
+    public synchronized void throttle(String authToken, long retryAfterMs) {
+        TokenState token = getToken(authToken);
+        if (token == null) {
+            return;
+        }
+        token.throttledUntilMs = Math.max(token.throttledUntilMs, nowMs() + retryAfterMs);
+        token.throttles++;
+        notifyAll();
+    }
+
+    /**
+     * Returns the number of requests, the request rate and the number of times the API throttled
+     * every token since the last call to this method. Tokens are named by their position in the
+     * configured list of tokens so that they're not exposed.
+     *
+     * @return A map of stat name to value
+     */
+    public synchronized Map<String, Number> getAndResetStats() {
+        long nowMs = nowMs();
+        double elapsedSecs = Math.max(nowMs - lastStatsMs, 1) / 1000.0;
+        lastStatsMs = nowMs;
+        ImmutableMap.Builder<String, Number> stats = ImmutableMap.builder();
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenState token = tokens.get(i);
+            String prefix = "token" + i + ".";
+            stats.put(prefix + "requests", token.requests)
+                 .put(prefix + "requestsPerSec", token.requests / elapsedSecs)
+                 .put(prefix + "throttles", token.throttles)
+                 .put(prefix + "inFlight", token.inFlight)
+                 .put(prefix + "throttled", token.throttledUntilMs > nowMs ? 1 : 0);
+            token.requests = 0;
+            token.throttles = 0;
+        }
+        return stats.build();
+    }
+
+    private TokenState getToken(String authToken) {
+        if (authToken == null) {
+            return null;
+        }
+        for (TokenState token : tokens) {
+            if (token.authToken.equals(authToken)) {
+                return token;
+            }
+        }
+        return null;
+    }
+
+    private long nowMs() {
+        return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+    }
+
+    /**
+     * Mutable state of a single token. Only accessed while holding the lock of the scheduler
+     */
+    private class TokenState {
+
+        private final String authToken;
+        private int inFlight;
+        private long throttledUntilMs;
+        private long windowStartMs;
+        private int windowRequests;
+        private long requests;
+        private long throttles;
+
+        private TokenState(String authToken) {
+            this.authToken = authToken;
+            this.throttledUntilMs = nowMs();
+            this.windowStartMs = throttledUntilMs;
+        }
+
+        /**
+         * @return How long until the token can be used again or 0 if it can be used now
+         */
+        private long getUnavailableMs(long nowMs) {
+            if (nowMs - windowStartMs >= BUDGET_WINDOW_MS) {
+                windowStartMs = nowMs;
+                windowRequests = 0;
+            }
+            long unavailableMs = Math.max(throttledUntilMs - nowMs, 0);
+            if (requestsPerMinute > 0 && windowRequests >= requestsPerMinute) {
+                unavailableMs = Math.max(unavailableMs, windowStartMs + BUDGET_WINDOW_MS - nowMs);
+            }
+            return unavailableMs;
+        }
+
+        private boolean isLessLoadedThan(TokenState other) {
+            if (inFlight != other.inFlight) {
+                return inFlight < other.inFlight;
+            }
+            return windowRequests < other.windowRequests;
+        }
+    }
+}
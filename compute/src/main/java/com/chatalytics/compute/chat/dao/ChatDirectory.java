@@ -0,0 +1,102 @@
+package com.chatalytics.compute.chat.dao;
+
+import com.chatalytics.core.model.data.Room;
+import com.chatalytics.core.model.data.User;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AbstractScheduledService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps all the users and rooms of a chat API in memory, so that looking one up is a map lookup
+ * instead of a round trip to the API. When running as a service the directory is reloaded from the
+ * API in the background. In between, callers that get notified of changes to users and rooms, for
+ * example from a realtime stream, should apply them with {@link #putUser(User)} and
+ * {@link #putRoom(Room)}.
+ *
+ * @author giannis
+ */
+public class ChatDirectory extends AbstractScheduledService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChatDirectory.class);
+
+    private final IChatApiDAO chatApiDao;
+    private final long refreshIntervalSecs;
+    private final Map<String, User> users;
+    private final Map<String, Room> rooms;
+
+    /**
+     * @param chatApiDao
+     *            The chat API to load the users and rooms from
+     * @param refreshIntervalSecs
+     *            How often the directory is reloaded when running as a service
+     */
+    public ChatDirectory(IChatApiDAO chatApiDao, long refreshIntervalSecs) {
+        Preconditions.checkArgument(refreshIntervalSecs > 0, "Refresh interval has to be > 0");
+        this.chatApiDao = chatApiDao;
+        this.refreshIntervalSecs = refreshIntervalSecs;
+        this.users = Maps.newConcurrentMap();
+        this.rooms = Maps.newConcurrentMap();
+    }
+
+    /**
+     * Loads all the users and rooms from the chat API. Users and rooms that were updated in the
+     * meantime are overwritten and ones the API no longer returns are kept, so messages of deleted
+     * users and rooms can still be looked up.
+     */
+    public void refresh() {
+        Map<String, User> newUsers = chatApiDao.getUsers();
+        Map<String, Room> newRooms = chatApiDao.getRooms();
+        users.putAll(newUsers);
+        rooms.putAll(newRooms);
+        LOG.debug("Loaded {} users and {} rooms", newUsers.size(), newRooms.size());
+    }
+
+    /**
+     * @return The user with the given ID or null if there's no such user
+     */
+    public User getUser(String userId) {
+        return userId == null ? null : users.get(userId);
+    }
+
+    /**
+     * @return The room with the given ID or null if there's no such room
+     */
+    public Room getRoom(String roomId) {
+        return roomId == null ? null : rooms.get(roomId);
+    }
+
+    /**
+     * Adds a new user or replaces an existing one with the same ID
+     */
+    public void putUser(User user) {
+        users.put(user.getUserId(), user);
+    }
+
+    /**
+     * Adds a new room or replaces an existing one with the same ID
+     */
+    public void putRoom(Room room) {
+        rooms.put(room.getRoomId(), room);
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            LOG.error("Can't refresh the users and rooms. Keeping the loaded ones", e);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(refreshIntervalSecs, refreshIntervalSecs,
+                                               TimeUnit.SECONDS);
+    }
+}
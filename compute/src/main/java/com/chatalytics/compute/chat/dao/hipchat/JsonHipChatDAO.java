@@ -2,15 +2,16 @@ package com.chatalytics.compute.chat.dao.hipchat;
 
 import com.chatalytics.compute.chat.dao.AbstractJSONChatApiDAO;
 import com.chatalytics.compute.chat.dao.IChatApiDAO;
+import com.chatalytics.compute.exception.ChatApiException;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.json.JsonEnvelopeReader;
 import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.model.data.Message;
 import com.chatalytics.core.model.data.Room;
 import com.chatalytics.core.model.data.User;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.CollectionType;
-import com.fasterxml.jackson.databind.type.MapType;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.sun.jersey.api.client.Client;
@@ -26,7 +27,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -42,7 +42,7 @@ public class JsonHipChatDAO extends AbstractJSONChatApiDAO {
     private static final Logger LOG = LoggerFactory.getLogger(JsonHipChatDAO.class);
 
     private final WebResource resource;
-    private final ObjectMapper objMapper;
+    private final JsonEnvelopeReader envelopeReader;
 
     public final DateTimeZone dtz;
     public final DateTimeFormatter apiDateFormat;
@@ -52,14 +52,16 @@ public class JsonHipChatDAO extends AbstractJSONChatApiDAO {
     private final boolean includeArchivedRooms;
 
     public JsonHipChatDAO(ChatAlyticsConfig config, Client client) {
-        super(config.computeConfig.chatConfig.getAuthTokens(), AUTH_TOKEN_PARAM);
+        super(config.computeConfig.chatConfig.getAuthTokens(), AUTH_TOKEN_PARAM,
+              config.computeConfig);
         this.resource = client.resource(config.computeConfig.chatConfig.getBaseAPIURL());
         this.apiRetries = config.computeConfig.apiRetries;
         this.timeZoneStr = config.timeZone;
         this.dtz = DateTimeZone.forID(config.timeZone);
         this.apiDateFormat = DateTimeFormat.forPattern(config.computeConfig.apiDateFormat)
                                            .withZone(dtz);
-        this.objMapper = JsonObjectMapperFactory.createObjectMapper(config.inputType);
+        ObjectMapper objMapper = JsonObjectMapperFactory.createObjectMapper(config.inputType);
+        this.envelopeReader = new JsonEnvelopeReader(objMapper);
         this.includePrivateRooms = config.computeConfig.chatConfig.includePrivateRooms();
         this.includeArchivedRooms = config.computeConfig.chatConfig.includeArchivedRooms();
     }
@@ -71,7 +73,7 @@ public class JsonHipChatDAO extends AbstractJSONChatApiDAO {
     public Map<String, Room> getRooms() {
         WebResource roomResource = resource.path("rooms/list");
         String jsonStr = getJsonResultWithRetries(roomResource, apiRetries);
-        Collection<Room> roomCol = deserializeJsonStr(jsonStr, "rooms", Room.class, objMapper);
+        Collection<Room> roomCol = deserializeJsonStr(jsonStr, "rooms", Room.class);
         Map<String, Room> result = Maps.newHashMapWithExpectedSize(roomCol.size());
         for (Room room : roomCol) {
             if (room.isPrivateRoom() && !includePrivateRooms) {
@@ -91,7 +93,7 @@ public class JsonHipChatDAO extends AbstractJSONChatApiDAO {
     public Map<String, User> getUsers() {
         WebResource userResource = resource.path("users/list");
         String jsonStr = getJsonResultWithRetries(userResource, apiRetries);
-        Collection<User> userCol = deserializeJsonStr(jsonStr, "users", User.class, objMapper);
+        Collection<User> userCol = deserializeJsonStr(jsonStr, "users", User.class);
         Map<String, User> result = Maps.newHashMapWithExpectedSize(userCol.size());
         for (User user : userCol) {
             result.put(user.getUserId(), user);
@@ -121,8 +123,8 @@ public class JsonHipChatDAO extends AbstractJSONChatApiDAO {
         while (curDate.isBefore(end) || curDate.equals(end)) {
             roomsResource = roomsResource.queryParam("date", curDate.toString(apiDateFormat));
             String jsonStr = getJsonResultWithRetries(roomsResource, apiRetries);
-            Collection<Message> messageCol = deserializeJsonStr(jsonStr, "messages", Message.class,
-                                                                objMapper);
+            Collection<Message> messageCol = deserializeJsonStr(jsonStr, "messages",
+                                                                Message.class);
             for (Message message : messageCol) {
                 if (messageInterval.contains(message.getDate())) {
                     messages.add(message);
@@ -139,7 +141,8 @@ public class JsonHipChatDAO extends AbstractJSONChatApiDAO {
     }
 
     /**
-     * Helper method for deserializing a chat JSON response to a collection of objects.
+     * Helper method for deserializing a chat JSON response to a collection of objects. The objects
+     * are bound while the response is parsed and any other elements of the response are skipped.
      *
      * @param jsonStr
      *            The chat JSON response.
@@ -148,25 +151,28 @@ public class JsonHipChatDAO extends AbstractJSONChatApiDAO {
      *            the value of the element to pull out from the map.
      * @param colClassElements
      *            The types of objects that the collection object will contain.
-     * @param objMapper
-     *            The JSON object mapper used to deserialize the JSON string.
-     * @return A collection of elements of type <code>colClassElements</code>.
+     * @return A collection of elements of type <code>colClassElements</code>. Empty if the element
+     *         is not in the response.
+     * @throws ChatApiException
+     *             If the response is an error instead of the element
      */
     private <T> Collection<T> deserializeJsonStr(String jsonStr, String mapElement,
-                                                 Class<T> colClassElements,
-                                                 ObjectMapper objMapper) {
-        Map<String, Collection<T>> re;
+                                                 Class<T> colClassElements) {
         try {
-            TypeFactory typeFactory = objMapper.getTypeFactory();
-            CollectionType type = typeFactory.constructCollectionType(List.class, colClassElements);
-            MapType thetype = typeFactory.constructMapType(HashMap.class,
-                                                           typeFactory.constructType(String.class),
-                                                           type);
-            re = objMapper.readValue(jsonStr, thetype);
+            List<T> result = envelopeReader.readList(jsonStr, ImmutableList.of(mapElement),
+                                                     colClassElements);
+            if (result.isEmpty()) {
+                Optional<String> error = envelopeReader.readError(jsonStr);
+                if (error.isPresent()) {
+                    throw new ChatApiException(String.format("Can't get %s. Got error: %s",
+                                                             mapElement, error.get()),
+                                               ChatApiException.NO_STATUS);
+                }
+            }
+            return result;
         } catch (IOException e) {
             LOG.error("Got exception when trying to deserialize list of {}", colClassElements, e);
             return Lists.newArrayListWithExpectedSize(0);
         }
-        return re.get(mapElement);
     }
 }
@@ -2,8 +2,10 @@ package com.chatalytics.compute.chat.dao.slack;
 
 import com.chatalytics.compute.chat.dao.AbstractJSONChatApiDAO;
 import com.chatalytics.compute.chat.dao.IChatApiDAO;
+import com.chatalytics.compute.exception.ChatApiException;
 import com.chatalytics.compute.exception.NotConnectedException;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.json.JsonEnvelopeReader;
 import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.model.data.Message;
 import com.chatalytics.core.model.data.Room;
@@ -11,11 +13,12 @@ import com.chatalytics.core.model.data.User;
 import com.chatalytics.core.model.slack.HistoryResult;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.CollectionType;
 import com.fasterxml.jackson.databind.type.MapLikeType;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.sun.jersey.api.client.Client;
@@ -31,6 +34,7 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * JSON implementation of the {@link IChatApiDAO} for Slack
@@ -42,18 +46,24 @@ public class JsonSlackDAO extends AbstractJSONChatApiDAO {
 
     private static final String AUTH_TOKEN_PARAM = "token";
     private static final Logger LOG = LoggerFactory.getLogger(JsonSlackDAO.class);
+    private static final List<String> USER_PATH = ImmutableList.of("user");
+    private static final List<String> EMOJI_PATH = ImmutableList.of("emoji");
+    private static final Set<String> RTM_START_FIELDS = ImmutableSet.of("ok", "error", "url");
 
     private final WebResource resource;
     private final ObjectMapper objMapper;
+    private final JsonEnvelopeReader envelopeReader;
     private final int apiRetries;
     private final boolean includePrivateRooms;
     private final boolean includeArchivedRooms;
 
     public JsonSlackDAO(ChatAlyticsConfig config, Client client) {
-        super(config.computeConfig.chatConfig.getAuthTokens(), AUTH_TOKEN_PARAM);
+        super(config.computeConfig.chatConfig.getAuthTokens(), AUTH_TOKEN_PARAM,
+              config.computeConfig);
         this.resource = client.resource(config.computeConfig.chatConfig.getBaseAPIURL());
         this.apiRetries = config.computeConfig.apiRetries;
         this.objMapper = JsonObjectMapperFactory.createObjectMapper(config.inputType);
+        this.envelopeReader = new JsonEnvelopeReader(objMapper);
         this.includePrivateRooms = config.computeConfig.chatConfig.includePrivateRooms();
         this.includeArchivedRooms = config.computeConfig.chatConfig.includeArchivedRooms();
     }
@@ -63,14 +73,13 @@ public class JsonSlackDAO extends AbstractJSONChatApiDAO {
         WebResource roomResource = resource.path("channels.list");
         roomResource.queryParam("exclude_archived", includeArchivedRooms ? "0" : "1");
         String jsonStr = getJsonResultWithRetries(roomResource, apiRetries);
-        Collection<Room> roomCol = deserializeJsonStr(jsonStr, "channels", Room.class, objMapper);
+        Collection<Room> roomCol = deserializeJsonStr(jsonStr, "channels", Room.class);
 
         if (includePrivateRooms) {
             roomResource = resource.path("groups.list");
             roomResource.queryParam("exclude_archived", includeArchivedRooms ? "0" : "1");
             jsonStr = getJsonResultWithRetries(roomResource, apiRetries);
-            Collection<Room> privateRoomCol = deserializeJsonStr(jsonStr, "groups", Room.class,
-                                                                 objMapper);
+            Collection<Room> privateRoomCol = deserializeJsonStr(jsonStr, "groups", Room.class);
             roomCol.addAll(privateRoomCol);
         }
 
@@ -85,7 +94,7 @@ public class JsonSlackDAO extends AbstractJSONChatApiDAO {
     public Map<String, User> getUsers() {
         WebResource userResource = resource.path("users.list");
         String jsonStr = getJsonResultWithRetries(userResource, apiRetries);
-        Collection<User> userCol = deserializeJsonStr(jsonStr, "members", User.class, objMapper);
+        Collection<User> userCol = deserializeJsonStr(jsonStr, "members", User.class);
         Map<String, User> result = Maps.newHashMapWithExpectedSize(userCol.size());
         for (User user : userCol) {
             result.put(user.getUserId(), user);
@@ -109,8 +118,7 @@ public class JsonSlackDAO extends AbstractJSONChatApiDAO {
         String jsonStr = getJsonResultWithRetries(roomResource, apiRetries);
         Collection<String> userIdCol = deserializeJsonStr(jsonStr,
                                                           Lists.newArrayList(listElem, "members"),
-                                                          String.class,
-                                                          objMapper);
+                                                          String.class);
         // get info for user IDs
         Map<String, User> result = Maps.newHashMapWithExpectedSize(userIdCol.size());
         for (String userId : userIdCol) {
@@ -118,9 +126,11 @@ public class JsonSlackDAO extends AbstractJSONChatApiDAO {
             userResource = userResource.queryParam("user", userId);
             jsonStr = getJsonResultWithRetries(userResource, apiRetries);
             try {
-                JsonNode jsonNode = objMapper.readTree(jsonStr);
-                jsonNode = jsonNode.get("user");
-                User user = objMapper.readValue(jsonNode.toString(), User.class);
+                User user = envelopeReader.readValue(jsonStr, USER_PATH, User.class);
+                if (user == null) {
+                    LOG.warn("Can't find user with ID: {}. Skipping", userId);
+                    continue;
+                }
                 result.put(user.getUserId(), user);
             } catch (IOException e) {
                 throw new RuntimeException("Can't deserialize user with ID:" + userId, e);
@@ -136,19 +146,21 @@ public class JsonSlackDAO extends AbstractJSONChatApiDAO {
         WebResource rtmResource = resource.path("rtm.start");
         String jsonStr = getJsonResultWithRetries(rtmResource, apiRetries);
 
-        JsonNode tree;
+        // the response also contains the whole team, none of which is needed here
+        Map<String, JsonNode> fields;
         try {
-            tree = objMapper.readTree(jsonStr);
+            fields = envelopeReader.readFields(jsonStr, RTM_START_FIELDS);
         } catch (IOException e) {
             throw new RuntimeException("Unable to parse realtime resource response", e);
 
         }
-        boolean ok = tree.get("ok").asBoolean();
-        if (!ok) {
+        JsonNode ok = fields.get("ok");
+        if (ok == null || !ok.asBoolean()) {
+            JsonNode error = fields.get("error");
             throw new NotConnectedException("Failed to connect to Slack API. Reason: "
-                + tree.get("error").asText());
+                + (error == null ? null : error.asText()));
         }
-        String webSocketUrl = tree.get("url").asText();
+        String webSocketUrl = fields.get("url").asText();
         return URI.create(webSocketUrl);
 
     }
@@ -205,22 +217,14 @@ public class JsonSlackDAO extends AbstractJSONChatApiDAO {
     public Map<String, String> getEmojis() {
         WebResource emojiResource = resource.path("emoji.list");
         String jsonStr = getJsonResultWithRetries(emojiResource, apiRetries);
-        JsonNode node;
-        try {
-            node = objMapper.readTree(jsonStr);
-        } catch (IOException e) {
-            LOG.error("Can't read emoji result from chat API", e);
-            return ImmutableMap.of();
-        }
         TypeFactory typeFactory = objMapper.getTypeFactory();
         MapLikeType type = typeFactory.constructMapLikeType(Map.class, String.class, String.class);
 
         try {
-            JsonNode emojiJson = node.get("emoji");
-            if (emojiJson == null) {
+            Map<String, String> apiResponse = envelopeReader.readValue(jsonStr, EMOJI_PATH, type);
+            if (apiResponse == null) {
                 return ImmutableMap.of();
             }
-            Map<String, String> apiResponse =  objMapper.readValue(emojiJson.toString(), type);
             for (Map.Entry<String, String> emojiEntry : apiResponse.entrySet()) {
                 String value = emojiEntry.getValue();
                 if (value.startsWith("alias:")) {
@@ -246,14 +250,11 @@ public class JsonSlackDAO extends AbstractJSONChatApiDAO {
      *            of type <code>T</code> to deserialize
      * @param clazz
      *            The class to deserialize
-     * @param objMapper
-     *            The JSON object mapper used to deserialize the JSON string.
      * @return A collection of elements of type <code>clazz</code>.
      */
     private <T> Collection<T> deserializeJsonStr(String jsonStr, String listElement,
-                                                 Class<T> clazz,
-                                                 ObjectMapper objMapper) {
-        return deserializeJsonStr(jsonStr, Lists.newArrayList(listElement), clazz, objMapper);
+                                                 Class<T> clazz) {
+        return deserializeJsonStr(jsonStr, Lists.newArrayList(listElement), clazz);
     }
 
     /**
@@ -285,28 +286,28 @@ public class JsonSlackDAO extends AbstractJSONChatApiDAO {
      *            <code>someInnerEllement</code> then the list would equal:
      *            <code>[someElement, someInnterElement]</code>
      * @param clazz
-     *            The class to deserialize The JSON object mapper used to deserialize the JSON
-     *            string.
-     * @return A collection of elements of type <code>clazz</code>.
+     *            The class to deserialize
+     * @return A collection of elements of type <code>clazz</code>. The elements are bound while
+     *         the response is parsed, so the response is only parsed once.
+     * @throws ChatApiException
+     *             If the response is an error instead of the elements
      */
     private <T> Collection<T> deserializeJsonStr(String jsonStr, List<String> listElements,
-                                                 Class<T> clazz,
-                                                 ObjectMapper objMapper) {
-        TypeFactory typeFactory = objMapper.getTypeFactory();
-        CollectionType type = typeFactory.constructCollectionType(List.class, clazz);
+                                                 Class<T> clazz) {
         try {
-            JsonNode jsonNode = objMapper.readTree(jsonStr);
-            // traverse down the order of elements until the desired one is reached
-            for (String jsonEl : listElements) {
-                jsonNode = jsonNode.get(jsonEl);
-                if (jsonNode == null) {
-                    return ImmutableList.of();
+            List<T> result = envelopeReader.readList(jsonStr, listElements, clazz);
+            if (result.isEmpty()) {
+                Optional<String> error = envelopeReader.readError(jsonStr);
+                if (error.isPresent()) {
+                    throw new ChatApiException(String.format("Can't get %s. Got error: %s",
+                                                             listElements, error.get()),
+                                               ChatApiException.NO_STATUS);
                 }
             }
-            return objMapper.readValue(jsonNode.toString(), type);
+            return result;
         } catch (IOException e) {
             LOG.error("Got exception when trying to deserialize list of {}", clazz, e);
-            return ImmutableList.of();
+            return Lists.newArrayList();
         }
     }
 
@@ -0,0 +1,249 @@
+package com.chatalytics.compute.db.dao;
+
+import com.chatalytics.core.model.data.IMentionable;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AbstractScheduledService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind buffer for {@link IMentionable}s. Values are collected in memory and handed to a
+ * batch persist function, such as {@link IEntityDAO#persistEntities(java.util.Collection)}, once
+ * <code>batchSize</code> values are buffered or <code>flushIntervalMs</code> has passed, whichever
+ * comes first. Stopping the service flushes any remaining values.
+ * <p>
+ * Batches that fail transiently, for example on a lock timeout, are retried with a backoff. If a
+ * batch still can't be stored its values are persisted one at a time, so that only the values that
+ * can't be stored are dropped instead of the whole batch.
+ *
+ * @author giannis
+ *
+ * @param <T>
+ *            The type of values to persist
+ */
+public class BufferedMentionableWriter<T extends IMentionable<?>> extends AbstractScheduledService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BufferedMentionableWriter.class);
+
+    @VisibleForTesting
+    static final int MAX_BATCH_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MS = 200;
+
+    private final Consumer<List<T>> persistFunc;
+    private final Consumer<T> persistValueFunc;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private List<T> buffer;
+
+    // flush stats since the last call to getAndResetStats()
+    private long flushes;
+    private long flushedValues;
+    private long maxBatchSize;
+    private long totalFlushLatencyMs;
+    private long maxFlushLatencyMs;
+    private long retries;
+    private long droppedValues;
+
+    /**
+     * @param persistFunc
+     *            Function that persists a batch of values in a single transaction
+     * @param persistValueFunc
+     *            Function that persists a single value. Used when a batch can't be stored
+     * @param batchSize
+     *            The number of buffered values that triggers a flush
+     * @param flushIntervalMs
+     *            The maximum amount of time values are buffered before they are flushed
+     */
+    public BufferedMentionableWriter(Consumer<List<T>> persistFunc, Consumer<T> persistValueFunc,
+                                     int batchSize, long flushIntervalMs) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size has to be > 0");
+        Preconditions.checkArgument(flushIntervalMs > 0, "Flush interval has to be > 0");
+        this.persistFunc = persistFunc;
+        this.persistValueFunc = persistValueFunc;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.buffer = Lists.newArrayListWithCapacity(batchSize);
+    }
+
+    /**
+     * Buffers a value. If the buffer is full the values get persisted on the calling thread.
+     *
+     * @param value
+     *            The value to buffer
+     */
+    public void write(T value) {
+        List<T> valuesToFlush = null;
+        synchronized (this) {
+            buffer.add(value);
+            if (buffer.size() >= batchSize) {
+                valuesToFlush = swapBuffer();
+            }
+        }
+        if (valuesToFlush != null) {
+            persist(valuesToFlush);
+        }
+    }
+
+    /**
+     * Persists all the currently buffered values
+     */
+    public void flush() {
+        List<T> valuesToFlush;
+        synchronized (this) {
+            valuesToFlush = swapBuffer();
+        }
+        persist(valuesToFlush);
+    }
+
+    /**
+     * @return The number of values waiting to be persisted
+     */
+    public synchronized int getBufferedCount() {
+        return buffer.size();
+    }
+
+    /**
+     * Returns the flush statistics gathered since the last call to this method and resets them.
+     * The result is meant to be reported through a metrics consumer and contains the number of
+     * flushes, the number of persisted values, the average and max batch sizes, the average and
+     * max flush latencies in milliseconds, the number of batch retries and the number of values
+     * that couldn't be stored and were dropped.
+     *
+     * @return A map of stat name to value
+     */
+    public synchronized Map<String, Number> getAndResetStats() {
+        Map<String, Number> stats =
+            ImmutableMap.<String, Number>builder()
+                        .put("flushes", flushes)
+                        .put("values", flushedValues)
+                        .put("buffered", buffer.size())
+                        .put("avgBatchSize", flushes == 0 ? 0 : flushedValues / (double) flushes)
+                        .put("maxBatchSize", maxBatchSize)
+                        .put("avgFlushLatencyMs",
+                             flushes == 0 ? 0 : totalFlushLatencyMs / (double) flushes)
+                        .put("maxFlushLatencyMs", maxFlushLatencyMs)
+                        .put("retries", retries)
+                        .put("dropped", droppedValues)
+                        .build();
+        flushes = 0;
+        flushedValues = 0;
+        maxBatchSize = 0;
+        totalFlushLatencyMs = 0;
+        maxFlushLatencyMs = 0;
+        retries = 0;
+        droppedValues = 0;
+        return stats;
+    }
+
+    /**
+     * Must be called while holding the lock on this object
+     *
+     * @return The currently buffered values. The buffer is replaced with an empty one
+     */
+    private List<T> swapBuffer() {
+        if (buffer.isEmpty()) {
+            return ImmutableList.of();
+        }
+        List<T> result = buffer;
+        buffer = Lists.newArrayListWithCapacity(batchSize);
+        return result;
+    }
+
+    private void persist(List<T> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        long startMs = System.currentTimeMillis();
+        int persistedCount = persistBatch(values) ? values.size() : persistOneByOne(values);
+        long latencyMs = System.currentTimeMillis() - startMs;
+        LOG.debug("Persisted {} of {} values in {}ms", persistedCount, values.size(), latencyMs);
+
+        synchronized (this) {
+            flushes++;
+            flushedValues += persistedCount;
+            droppedValues += values.size() - persistedCount;
+            maxBatchSize = Math.max(maxBatchSize, values.size());
+            totalFlushLatencyMs += latencyMs;
+            maxFlushLatencyMs = Math.max(maxFlushLatencyMs, latencyMs);
+        }
+    }
+
+    /**
+     * Persists the values in a single batch. Transient failures are retried with a backoff.
+     *
+     * @return True if the batch was stored, false otherwise
+     */
+    private boolean persistBatch(List<T> values) {
+        for (int attempt = 1;; attempt++) {
+            try {
+                persistFunc.accept(values);
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_BATCH_ATTEMPTS || !PersistenceFailures.isTransient(e)) {
+                    LOG.warn("Unable to persist batch of {} values. Persisting them one at a time",
+                             values.size(), e);
+                    return false;
+                }
+                LOG.warn("Attempt {} to persist batch of {} values failed. Retrying. {}", attempt,
+                         values.size(), e.getMessage());
+            }
+
+            synchronized (this) {
+                retries++;
+            }
+            try {
+                Thread.sleep(RETRY_BACKOFF_MS << (attempt - 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Persists the values one at a time so that a bad value doesn't take down the rest
+     *
+     * @return The number of values that were stored
+     */
+    private int persistOneByOne(List<T> values) {
+        int persistedCount = 0;
+        for (T value : values) {
+            try {
+                persistValueFunc.accept(value);
+                persistedCount++;
+            } catch (RuntimeException e) {
+                LOG.error("Dropping {}. {}", value, e.getMessage());
+            }
+        }
+        return persistedCount;
+    }
+
+    @Override
+    protected void runOneIteration() {
+        flush();
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(flushIntervalMs, flushIntervalMs,
+                                               TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Persists any values that are still buffered
+     */
+    @Override
+    protected void shutDown() {
+        flush();
+    }
+}
@@ -1,12 +1,16 @@
 package com.chatalytics.compute.db.dao;
 
 import com.chatalytics.core.model.data.LastPullTime;
+import com.chatalytics.core.model.data.RoomPullTime;
+import com.chatalytics.core.model.data.TableWatermark;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.AbstractIdleService;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
@@ -72,6 +76,54 @@ public class ChatAlyticsDAOImpl extends AbstractIdleService implements IChatAlyt
         }
     }
 
+    @Override
+    public Map<String, DateTime> getRoomMessagePullTimes() {
+        String query = String.format("FROM %s", RoomPullTime.class.getSimpleName());
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            List<RoomPullTime> result = entityManager.createQuery(query, RoomPullTime.class)
+                                                     .getResultList();
+            Map<String, DateTime> pullTimes = Maps.newHashMapWithExpectedSize(result.size());
+            for (RoomPullTime roomPullTime : result) {
+                pullTimes.put(roomPullTime.getRoomId(), roomPullTime.getTime());
+            }
+            return pullTimes;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Override
+    public void setRoomMessagePullTime(String roomId, DateTime time) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            RoomPullTime roomPullTime = entityManager.find(RoomPullTime.class, roomId);
+            if (roomPullTime != null) {
+                roomPullTime.setTime(time);
+            } else {
+                entityManager.persist(new RoomPullTime(roomId, time));
+            }
+            entityManager.getTransaction().commit();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManager.close();
+        }
+    }
+
+    @Override
+    public long getTableWriteVersion(String tableName) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            TableWatermark watermark = entityManager.find(TableWatermark.class, tableName);
+            return watermark == null ? 0 : watermark.getWriteVersion();
+        } finally {
+            entityManager.close();
+        }
+    }
+
     @Override
     protected void shutDown() throws Exception { }
 
@@ -3,12 +3,16 @@ package com.chatalytics.compute.db.dao;
 import com.chatalytics.compute.matrix.LabeledDenseMatrix;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.model.data.EmojiEntity;
+import com.chatalytics.core.model.data.EmojiEntityRollup;
+import com.google.common.base.Optional;
 import com.google.common.util.concurrent.AbstractIdleService;
 
 import org.joda.time.Interval;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityManagerFactory;
 
@@ -23,7 +27,9 @@ public class EmojiDAOImpl extends AbstractIdleService implements IEmojiDAO {
     private final IMentionableDAO<String, EmojiEntity> occurrenceStatsDAO;
 
     public EmojiDAOImpl(EntityManagerFactory entityManagerFactory) {
-        this.occurrenceStatsDAO = new MentionableDAO<>(entityManagerFactory, EmojiEntity.class);
+        this.occurrenceStatsDAO = new MentionableDAO<>(entityManagerFactory, EmojiEntity.class,
+                                                       EmojiEntityRollup.class,
+                                                       EmojiEntityRollup::new);
     }
 
     /**
@@ -34,6 +40,14 @@ public class EmojiDAOImpl extends AbstractIdleService implements IEmojiDAO {
         occurrenceStatsDAO.persistValue(emoji);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void persistEmojis(Collection<EmojiEntity> emojis) {
+        occurrenceStatsDAO.persistValues(emojis);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -64,6 +78,32 @@ public class EmojiDAOImpl extends AbstractIdleService implements IEmojiDAO {
         return occurrenceStatsDAO.getAllMentions(interval, roomNames, usernames, withBots);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void streamAllMentions(Interval interval,
+                                  List<String> roomNames,
+                                  List<String> usernames,
+                                  boolean withBots,
+                                  Consumer<EmojiEntity> consumer) {
+        occurrenceStatsDAO.streamAllMentions(interval, roomNames, usernames, withBots, consumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MentionPage<EmojiEntity> getMentionsPage(Interval interval,
+                                                    List<String> roomNames,
+                                                    List<String> usernames,
+                                                    boolean withBots,
+                                                    Optional<MentionCursor> after,
+                                                    int limit) {
+        return occurrenceStatsDAO.getMentionsPage(interval, roomNames, usernames, withBots, after,
+                                                  limit);
+    }
+
 
     /**
      * {@inheritDoc}
@@ -3,12 +3,16 @@ package com.chatalytics.compute.db.dao;
 import com.chatalytics.compute.matrix.LabeledDenseMatrix;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.model.data.ChatEntity;
+import com.chatalytics.core.model.data.ChatEntityRollup;
+import com.google.common.base.Optional;
 import com.google.common.util.concurrent.AbstractIdleService;
 
 import org.joda.time.Interval;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityManagerFactory;
 
@@ -23,7 +27,9 @@ public class EntityDAOImpl extends AbstractIdleService implements IEntityDAO {
     private final IMentionableDAO<String, ChatEntity> occurrenceStatsDAO;
 
     public EntityDAOImpl(EntityManagerFactory entityManagerFactory) {
-        this.occurrenceStatsDAO = new MentionableDAO<>(entityManagerFactory, ChatEntity.class);
+        this.occurrenceStatsDAO = new MentionableDAO<>(entityManagerFactory, ChatEntity.class,
+                                                       ChatEntityRollup.class,
+                                                       ChatEntityRollup::new);
     }
 
     /**
@@ -34,6 +40,14 @@ public class EntityDAOImpl extends AbstractIdleService implements IEntityDAO {
         occurrenceStatsDAO.persistValue(entity);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void persistEntities(Collection<ChatEntity> entities) {
+        occurrenceStatsDAO.persistValues(entities);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -64,6 +78,32 @@ public class EntityDAOImpl extends AbstractIdleService implements IEntityDAO {
         return occurrenceStatsDAO.getAllMentions(interval, roomNames, usernames, withBots);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void streamAllMentions(Interval interval,
+                                  List<String> roomNames,
+                                  List<String> usernames,
+                                  boolean withBots,
+                                  Consumer<ChatEntity> consumer) {
+        occurrenceStatsDAO.streamAllMentions(interval, roomNames, usernames, withBots, consumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MentionPage<ChatEntity> getMentionsPage(Interval interval,
+                                                   List<String> roomNames,
+                                                   List<String> usernames,
+                                                   boolean withBots,
+                                                   Optional<MentionCursor> after,
+                                                   int limit) {
+        return occurrenceStatsDAO.getMentionsPage(interval, roomNames, usernames, withBots, after,
+                                                  limit);
+    }
+
     /**
      * {@inheritDoc}
      */
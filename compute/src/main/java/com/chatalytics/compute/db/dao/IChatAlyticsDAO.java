@@ -4,6 +4,8 @@ import com.google.common.util.concurrent.Service;
 
 import org.joda.time.DateTime;
 
+import java.util.Map;
+
 /**
  * Contains methods for persisting and retrieving objects from the chatalytics store.
  *
@@ -24,4 +26,31 @@ public interface IChatAlyticsDAO extends Service {
      *            The time to update to
      */
     void setLastMessagePullTime(DateTime time);
+
+    /**
+     * @return The time up to which the messages of every room were pulled, by room ID. Rooms that
+     *         were never pulled are not included
+     */
+    Map<String, DateTime> getRoomMessagePullTimes();
+
+    /**
+     * Update the time up to which the messages of a room were pulled
+     *
+     * @param roomId
+     *            The ID of the room
+     * @param time
+     *            The time to update to
+     */
+    void setRoomMessagePullTime(String roomId, DateTime time);
+
+    /**
+     * Returns the write version of a table, which increases every time values are written to it.
+     * Anything computed from the table, including its rollups, is still up to date as long as the
+     * version hasn't changed.
+     *
+     * @param tableName
+     *            The name of the table
+     * @return The write version of the table, or 0 if nothing was ever written to it
+     */
+    long getTableWriteVersion(String tableName);
 }
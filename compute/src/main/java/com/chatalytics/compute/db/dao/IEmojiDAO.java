@@ -5,12 +5,15 @@ import com.chatalytics.compute.matrix.LabeledDenseMatrix;
 import com.chatalytics.compute.matrix.LabeledMTJMatrix;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.model.data.EmojiEntity;
+import com.google.common.base.Optional;
 import com.google.common.util.concurrent.Service;
 
 import org.joda.time.Interval;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface IEmojiDAO extends Service {
 
@@ -22,6 +25,14 @@ public interface IEmojiDAO extends Service {
      */
      void persistEmoji(EmojiEntity emoji);
 
+    /**
+     * Persists a batch of emojis to the database in a single transaction
+     *
+     * @param emojis
+     *            The emojis to be persisted
+     */
+    void persistEmojis(Collection<EmojiEntity> emojis);
+
     /**
      * Gets an emoji from the database. Note that all fields in {@link EmojiEntity} need to be set.
      * Use {@link #getEmojiMentions(String, DateTime, DateTime)} if you want to get the total number
@@ -72,6 +83,56 @@ public interface IEmojiDAO extends Service {
                                       List<String> usernames,
                                       boolean withBots);
 
+    /**
+     * Same as {@link #getAllMentions(Interval, List, List, boolean)} but hands every mention to
+     * <code>consumer</code> as it's read from the database, so that the mentions don't have to fit
+     * in memory
+     *
+     * @param interval
+     *            The interval of interest. Note that the query is inclusive of the start time and
+     *            exclusive of the end time.
+     * @param roomNames
+     *            Optionally supply a list of room names. This list can be empty
+     * @param usernames
+     *            Optionally supply a list of user names. This list can be empty
+     * @param withBots
+     *            Set to true if the result should include mentions by bots
+     * @param consumer
+     *            Consumes every mention. It shouldn't keep references to them
+     */
+    void streamAllMentions(Interval interval,
+                           List<String> roomNames,
+                           List<String> usernames,
+                           boolean withBots,
+                           Consumer<EmojiEntity> consumer);
+
+    /**
+     * Same as {@link #getAllMentions(Interval, List, List, boolean)} but returns at most
+     * <code>limit</code> mentions, ordered by mention time and id, starting right after the
+     * <code>after</code> cursor
+     *
+     * @param interval
+     *            The interval of interest. Note that the query is inclusive of the start time and
+     *            exclusive of the end time.
+     * @param roomNames
+     *            Optionally supply a list of room names. This list can be empty
+     * @param usernames
+     *            Optionally supply a list of user names. This list can be empty
+     * @param withBots
+     *            Set to true if the result should include mentions by bots
+     * @param after
+     *            The cursor of the previous page, or absent to get the first page
+     * @param limit
+     *            The maximum number of mentions in the page. Has to be &gt; 0
+     * @return The page of mentions along with the cursor of the next page
+     */
+    MentionPage<EmojiEntity> getMentionsPage(Interval interval,
+                                             List<String> roomNames,
+                                             List<String> usernames,
+                                             boolean withBots,
+                                             Optional<MentionCursor> after,
+                                             int limit);
+
     /**
      * Returns the total number of times an emoji was mentioned in the given <code>interval</code>.
      *
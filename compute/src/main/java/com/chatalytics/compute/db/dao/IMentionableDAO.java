@@ -4,15 +4,19 @@ import com.chatalytics.compute.matrix.GraphPartition;
 import com.chatalytics.compute.matrix.LabeledDenseMatrix;
 import com.chatalytics.compute.matrix.LabeledMTJMatrix;
 import com.chatalytics.core.model.data.IMentionable;
+import com.google.common.base.Optional;
 
 import org.joda.time.Interval;
 
 import java.io.Closeable;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityExistsException;
+import javax.persistence.PersistenceException;
 
 /**
  * A general DAO for doing occurrence statistics on any type T. The type could be any arbitrary
@@ -32,9 +36,21 @@ public interface IMentionableDAO<K extends Serializable, T extends IMentionable<
      *            The value to be persisted
      *
      * @throws EntityExistsException if the value already exists
+     * @throws PersistenceException if the value couldn't be stored
      */
     void persistValue(T value);
 
+    /**
+     * Persists a batch of values in a single transaction. This is considerably cheaper than calling
+     * {@link #persistValue(IMentionable)} for every value since inserts are sent to the database in
+     * JDBC batches and only one commit is issued.
+     *
+     * @param values
+     *            The values to be persisted
+     * @throws PersistenceException if the batch couldn't be stored. None of its values are stored
+     */
+    void persistValues(Collection<T> values);
+
     /**
      * Gets a type <code>T</code> from the database. Note that all fields need to be set.
      *
@@ -83,6 +99,100 @@ public interface IMentionableDAO<K extends Serializable, T extends IMentionable<
     List<T> getAllMentions(Interval interval, List<String> roomNames, List<String> usernames,
                            boolean withBots);
 
+    /**
+     * Same as {@link #getAllMentionsForValue(Serializable, Interval, List, List)} but hands every
+     * mention to <code>consumer</code> as it's read from the database instead of returning them
+     * all at once. Use this when the result can be too big to hold in memory.
+     *
+     * @param value
+     *            The value to get mentions for
+     * @param interval
+     *            The interval of interest. Note that the query is inclusive of the start time and
+     *            exclusive of the end time.
+     * @param roomNames
+     *            Optionally supply a list of room names. This list can be empty
+     * @param usernames
+     *            Optionally supply a list of user names. This list can be empty
+     * @param consumer
+     *            Consumes every mention. It shouldn't keep references to them
+     */
+    void streamAllMentionsForValue(K value,
+                                   Interval interval,
+                                   List<String> roomNames,
+                                   List<String> usernames,
+                                   Consumer<T> consumer);
+
+    /**
+     * Same as {@link #getAllMentions(Interval, List, List, boolean)} but hands every mention to
+     * <code>consumer</code> as it's read from the database instead of returning them all at once.
+     * Use this when the result can be too big to hold in memory.
+     *
+     * @param interval
+     *            The interval of interest. Note that the query is inclusive of the start time and
+     *            exclusive of the end time.
+     * @param roomNames
+     *            Optionally supply a list of room names. This list can be empty
+     * @param usernames
+     *            Optionally supply a list of user names. This list can be empty
+     * @param withBots
+     *            Set to true if the result should include mentions by bots
+     * @param consumer
+     *            Consumes every mention. It shouldn't keep references to them
+     */
+    void streamAllMentions(Interval interval, List<String> roomNames, List<String> usernames,
+                           boolean withBots, Consumer<T> consumer);
+
+    /**
+     * Same as {@link #getAllMentionsForValue(Serializable, Interval, List, List)} but returns at
+     * most <code>limit</code> mentions, ordered by mention time and id, starting right after the
+     * <code>after</code> cursor. Use the cursor of the returned page to get the next one.
+     *
+     * @param value
+     *            The value to get mentions for
+     * @param interval
+     *            The interval of interest. Note that the query is inclusive of the start time and
+     *            exclusive of the end time.
+     * @param roomNames
+     *            Optionally supply a list of room names. This list can be empty
+     * @param usernames
+     *            Optionally supply a list of user names. This list can be empty
+     * @param after
+     *            The cursor of the previous page, or absent to get the first page
+     * @param limit
+     *            The maximum number of mentions in the page. Has to be &gt; 0
+     * @return The page of mentions
+     */
+    MentionPage<T> getMentionsPageForValue(K value,
+                                           Interval interval,
+                                           List<String> roomNames,
+                                           List<String> usernames,
+                                           Optional<MentionCursor> after,
+                                           int limit);
+
+    /**
+     * Same as {@link #getAllMentions(Interval, List, List, boolean)} but returns at most
+     * <code>limit</code> mentions, ordered by mention time and id, starting right after the
+     * <code>after</code> cursor. Use the cursor of the returned page to get the next one.
+     *
+     * @param interval
+     *            The interval of interest. Note that the query is inclusive of the start time and
+     *            exclusive of the end time.
+     * @param roomNames
+     *            Optionally supply a list of room names. This list can be empty
+     * @param usernames
+     *            Optionally supply a list of user names. This list can be empty
+     * @param withBots
+     *            Set to true if the result should include mentions by bots
+     * @param after
+     *            The cursor of the previous page, or absent to get the first page
+     * @param limit
+     *            The maximum number of mentions in the page. Has to be &gt; 0
+     * @return The page of mentions
+     */
+    MentionPage<T> getMentionsPage(Interval interval, List<String> roomNames,
+                                   List<String> usernames, boolean withBots,
+                                   Optional<MentionCursor> after, int limit);
+
     /**
      * Returns the total number of times a type <code>T</code> was mentioned in the given
      * <code>interval</code>.
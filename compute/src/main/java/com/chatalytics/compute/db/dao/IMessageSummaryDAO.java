@@ -4,12 +4,15 @@ import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.model.data.ChatEntity;
 import com.chatalytics.core.model.data.MessageSummary;
 import com.chatalytics.core.model.data.MessageType;
+import com.google.common.base.Optional;
 import com.google.common.util.concurrent.Service;
 
 import org.joda.time.Interval;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface IMessageSummaryDAO extends Service {
 
@@ -21,6 +24,14 @@ public interface IMessageSummaryDAO extends Service {
      */
     void persistMessageSummary(MessageSummary messageSummary);
 
+    /**
+     * Persists a batch of message summaries in a single transaction
+     *
+     * @param messageSummaries
+     *            The message summaries to persist
+     */
+    void persistMessageSummaries(Collection<MessageSummary> messageSummaries);
+
     /**
      * Retrieves a message summary
      *
@@ -71,6 +82,106 @@ public interface IMessageSummaryDAO extends Service {
                                                 List<String> usernames,
                                                 boolean withBots);
 
+    /**
+     * Same as {@link #getAllMessageSummariesForType(MessageType, Interval, List, List)} but hands
+     * every message summary to <code>consumer</code> as it's read from the database, so that they
+     * don't have to fit in memory
+     *
+     * @param type
+     *            The type of message summaries to get
+     * @param interval
+     *            The interval of interest. Note that the query is inclusive of the start time and
+     *            exclusive of the end time.
+     * @param roomNames
+     *            Optionally supply a list of room names. This list can be empty
+     * @param usernames
+     *            Optionally supply a list of user names. This list can be empty
+     * @param consumer
+     *            Consumes every message summary. It shouldn't keep references to them
+     */
+    void streamAllMessageSummariesForType(MessageType type,
+                                          Interval interval,
+                                          List<String> roomNames,
+                                          List<String> usernames,
+                                          Consumer<MessageSummary> consumer);
+
+    /**
+     * Same as {@link #getAllMessageSummaries(Interval, List, List, boolean)} but hands every
+     * message summary to <code>consumer</code> as it's read from the database, so that they don't
+     * have to fit in memory
+     *
+     * @param interval
+     *            The interval of interest. Note that the query is inclusive of the start time and
+     *            exclusive of the end time.
+     * @param roomNames
+     *            Optionally supply a list of room names. This list can be empty
+     * @param usernames
+     *            Optionally supply a list of user names. This list can be empty
+     * @param withBots
+     *            Set to true if the result should include mentions by bots
+     * @param consumer
+     *            Consumes every message summary. It shouldn't keep references to them
+     */
+    void streamAllMessageSummaries(Interval interval,
+                                   List<String> roomNames,
+                                   List<String> usernames,
+                                   boolean withBots,
+                                   Consumer<MessageSummary> consumer);
+
+    /**
+     * Same as {@link #getAllMessageSummariesForType(MessageType, Interval, List, List)} but
+     * returns at most <code>limit</code> message summaries, ordered by mention time and id,
+     * starting right after the <code>after</code> cursor
+     *
+     * @param type
+     *            The type of message summaries to get
+     * @param interval
+     *            The interval of interest. Note that the query is inclusive of the start time and
+     *            exclusive of the end time.
+     * @param roomNames
+     *            Optionally supply a list of room names. This list can be empty
+     * @param usernames
+     *            Optionally supply a list of user names. This list can be empty
+     * @param after
+     *            The cursor of the previous page, or absent to get the first page
+     * @param limit
+     *            The maximum number of message summaries in the page. Has to be &gt; 0
+     * @return The page of message summaries along with the cursor of the next page
+     */
+    MentionPage<MessageSummary> getMessageSummariesPageForType(MessageType type,
+                                                               Interval interval,
+                                                               List<String> roomNames,
+                                                               List<String> usernames,
+                                                               Optional<MentionCursor> after,
+                                                               int limit);
+
+    /**
+     * Same as {@link #getAllMessageSummaries(Interval, List, List, boolean)} but returns at most
+     * <code>limit</code> message summaries, ordered by mention time and id, starting right after
+     * the <code>after</code> cursor
+     *
+     * @param interval
+     *            The interval of interest. Note that the query is inclusive of the start time and
+     *            exclusive of the end time.
+     * @param roomNames
+     *            Optionally supply a list of room names. This list can be empty
+     * @param usernames
+     *            Optionally supply a list of user names. This list can be empty
+     * @param withBots
+     *            Set to true if the result should include mentions by bots
+     * @param after
+     *            The cursor of the previous page, or absent to get the first page
+     * @param limit
+     *            The maximum number of message summaries in the page. Has to be &gt; 0
+     * @return The page of message summaries along with the cursor of the next page
+     */
+    MentionPage<MessageSummary> getMessageSummariesPage(Interval interval,
+                                                        List<String> roomNames,
+                                                        List<String> usernames,
+                                                        boolean withBots,
+                                                        Optional<MentionCursor> after,
+                                                        int limit);
+
     /**
      * Gets the total number of message summaries in the given time period with username and room
      * name as optional arguments
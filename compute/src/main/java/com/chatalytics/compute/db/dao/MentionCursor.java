@@ -0,0 +1,100 @@
+package com.chatalytics.compute.db.dao;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Points right after a mention in a page of mentions ordered by mention time and id. The next page
+ * starts with the first mention that comes after the one the cursor points to, so getting any
+ * page costs the same as getting the first one.
+ * <p>
+ * Cursors are handed to clients as opaque URL safe strings with {@link #encode()} and read back
+ * with {@link #decode(String)}.
+ *
+ * @author giannis
+ */
+public class MentionCursor {
+
+    private static final char SEPARATOR = '_';
+
+    private final long mentionTimeMillis;
+    private final long id;
+
+    public MentionCursor(long mentionTimeMillis, long id) {
+        this.mentionTimeMillis = mentionTimeMillis;
+        this.id = id;
+    }
+
+    /**
+     * @return The mention time of the last mention of the page, in millis
+     */
+    public long getMentionTimeMillis() {
+        return mentionTimeMillis;
+    }
+
+    /**
+     * @return The id of the last mention of the page
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return The opaque string representation of this cursor
+     */
+    public String encode() {
+        String cursorStr = Long.toString(mentionTimeMillis) + SEPARATOR + Long.toString(id);
+        return Base64.getUrlEncoder()
+                     .withoutPadding()
+                     .encodeToString(cursorStr.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads back a cursor that was created with {@link #encode()}
+     *
+     * @param encodedCursor
+     *            The opaque cursor string
+     * @return The decoded cursor
+     * @throws IllegalArgumentException
+     *             If <code>encodedCursor</code> is not a valid cursor
+     */
+    public static MentionCursor decode(String encodedCursor) {
+        String cursorStr;
+        try {
+            cursorStr = new String(Base64.getUrlDecoder().decode(encodedCursor),
+                                   StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor " + encodedCursor, e);
+        }
+        int separatorIdx = cursorStr.indexOf(SEPARATOR);
+        Preconditions.checkArgument(separatorIdx > 0, "Invalid cursor %s", encodedCursor);
+        try {
+            return new MentionCursor(Long.parseLong(cursorStr.substring(0, separatorIdx)),
+                                     Long.parseLong(cursorStr.substring(separatorIdx + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor " + encodedCursor, e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MentionCursor)) {
+            return false;
+        }
+        MentionCursor other = (MentionCursor) obj;
+        return mentionTimeMillis == other.mentionTimeMillis && id == other.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mentionTimeMillis, id);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MentionCursor(mentionTimeMillis=%d, id=%d)", mentionTimeMillis, id);
+    }
+}
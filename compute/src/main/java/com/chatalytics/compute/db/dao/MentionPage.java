@@ -0,0 +1,38 @@
+package com.chatalytics.compute.db.dao;
+
+import com.google.common.base.Optional;
+
+import java.util.List;
+
+/**
+ * A page of mentions ordered by mention time and id, along with the cursor of the next page
+ *
+ * @author giannis
+ *
+ * @param <T>
+ *            The type of the mentions
+ */
+public class MentionPage<T> {
+
+    private final List<T> mentions;
+    private final Optional<MentionCursor> nextCursor;
+
+    public MentionPage(List<T> mentions, Optional<MentionCursor> nextCursor) {
+        this.mentions = mentions;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return The mentions of this page
+     */
+    public List<T> getMentions() {
+        return mentions;
+    }
+
+    /**
+     * @return The cursor to pass in to get the next page, or absent if this is the last page
+     */
+    public Optional<MentionCursor> getNextCursor() {
+        return nextCursor;
+    }
+}
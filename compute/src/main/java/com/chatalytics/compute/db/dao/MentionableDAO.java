@@ -1,32 +1,50 @@
 package com.chatalytics.compute.db.dao;
 
+import com.chatalytics.compute.db.dao.RollupRouter.RollupRange;
 import com.chatalytics.compute.matrix.GraphPartition;
 import com.chatalytics.compute.matrix.LabeledDenseMatrix;
-import com.chatalytics.compute.matrix.LabeledMTJMatrix;
+import com.chatalytics.compute.matrix.MentionMatrixBuilder;
+import com.chatalytics.core.model.data.IMentionRollup;
 import com.chatalytics.core.model.data.IMentionable;
 import com.chatalytics.core.model.data.MessageSummary;
+import com.chatalytics.core.model.data.MessageSummaryRollup;
 import com.chatalytics.core.model.data.MessageType;
+import com.chatalytics.core.model.data.RollupResolution;
+import com.chatalytics.core.model.data.TableWatermark;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.Interval;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityExistsException;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.LockModeType;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceException;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.Table;
 import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
@@ -42,7 +60,12 @@ import javax.persistence.criteria.Subquery;
 
 /**
  * Implementation of {@link IMentionableDAO} that can store and retrieve {@link IMentionable}
- * types. {@link MentionableDAO#close()} should be called on end
+ * types. Every stored value is also added to the {@link IMentionRollup}s of every
+ * {@link RollupResolution}. Aggregate queries over intervals that are aligned to the finest
+ * resolution are answered from the rollups, using the ranges the {@link RollupRouter} picks.
+ * Values stored before the rollups existed are only in the raw tables, so intervals that start
+ * before the rollups start of the {@link TableWatermark} are always answered from the raw values.
+ * {@link MentionableDAO#close()} should be called on end
  *
  * @author giannis
  *
@@ -54,13 +77,60 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
 
     private static final Logger LOG = LoggerFactory.getLogger(MentionableDAO.class);
     private static final String TYPE_COLUMN_NAME = "value";
+    /**
+     * Should match <code>hibernate.jdbc.batch_size</code> in the persistence unit
+     */
+    static final int JDBC_BATCH_SIZE = 50;
+    /**
+     * Rollup rows are created concurrently by multiple bolts. A unique key violation means that
+     * another writer inserted the same row first, in which case the creation is retried
+     */
+    private static final int MAX_ROLLUP_ATTEMPTS = 3;
+    /**
+     * A transaction that fails on a rollup row lock, such as a lock timeout or a deadlock with a
+     * writer that doesn't lock in the same order, is retried up to this many times
+     */
+    private static final int MAX_LOCK_ATTEMPTS = 3;
+    private static final long LOCK_RETRY_BACKOFF_MS = 100;
+    /**
+     * Maximum number of rollup keys or ids matched by a single query, which keeps the number of
+     * bind parameters of the query bounded
+     */
+    private static final int MAX_ROLLUP_KEYS_PER_QUERY = 100;
+    /**
+     * Number of aggregated rows fetched at a time when streaming them out of the database
+     */
+    private static final int STREAM_FETCH_SIZE = 1000;
 
     private final Class<T> type;
+    private final Class<? extends IMentionRollup<K>> rollupType;
+    private final RollupFactory<K> rollupFactory;
     private final EntityManagerFactory entityManagerFactory;
+    private final String tableName;
+    /**
+     * Rollup start times by raw table name. They never change once recorded
+     */
+    private final Map<String, DateTime> rollupsStarts;
 
-    protected MentionableDAO(EntityManagerFactory entityManagerFactory, Class<T> type) {
+    /**
+     * @param entityManagerFactory
+     *            The factory to create entity managers with
+     * @param type
+     *            The raw type this DAO stores
+     * @param rollupType
+     *            The rollup type of <code>type</code>
+     * @param rollupFactory
+     *            Creates new instances of <code>rollupType</code>
+     */
+    protected MentionableDAO(EntityManagerFactory entityManagerFactory, Class<T> type,
+                             Class<? extends IMentionRollup<K>> rollupType,
+                             RollupFactory<K> rollupFactory) {
         this.type = type;
+        this.rollupType = rollupType;
+        this.rollupFactory = rollupFactory;
         this.entityManagerFactory = entityManagerFactory;
+        this.tableName = type.getAnnotation(Table.class).name();
+        this.rollupsStarts = Maps.newConcurrentMap();
     }
 
     /**
@@ -68,25 +138,358 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
      */
     @Override
     public void persistValue(T value) {
+        getRollupsStart(type);
+        Map<RollupKey<K>, Integer> occurrencesByKey = getOccurrencesByRollupKey(
+            ImmutableList.of(value));
+        Optional<Map<RollupKey<K>, Long>> rollupIds = createMissingRollups(occurrencesByKey,
+                                                                           rollupType);
+        if (!rollupIds.isPresent()) {
+            throw new PersistenceException(
+                String.format("Cannot store %s. Its rollups could not be created", value));
+        }
+
+        try {
+            storeWithRollups(ImmutableList.of(value), occurrencesByKey, rollupIds.get(),
+                             rollupType);
+        } catch (PersistenceException e) {
+            if (isEntityAlreadyExists(value)) {
+                throw new EntityExistsException(e.getCause());
+            }
+            throw e;
+        }
+        advanceWatermark();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void persistValues(Collection<T> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        getRollupsStart(type);
+        Map<RollupKey<K>, Integer> occurrencesByKey = getOccurrencesByRollupKey(values);
+        Optional<Map<RollupKey<K>, Long>> rollupIds = createMissingRollups(occurrencesByKey,
+                                                                           rollupType);
+        if (!rollupIds.isPresent()) {
+            throw new PersistenceException(
+                String.format("Cannot store batch of %d %ss. Their rollups could not be created",
+                              values.size(), type.getSimpleName()));
+        }
+
+        storeWithRollups(values, occurrencesByKey, rollupIds.get(), rollupType);
+        advanceWatermark();
+    }
+
+    /**
+     * Stores the values and adds their occurrences to their rollup rows in a single transaction.
+     * The rollup rows are locked in the order of their ids, so writers of batches that share rows
+     * wait for each other instead of deadlocking. If the transaction still fails on a lock, for
+     * example because of a lock timeout, it is retried with a backoff.
+     *
+     * @throws PersistenceException
+     *             If the values couldn't be stored
+     */
+    private <R extends IMentionRollup<K>> void storeWithRollups(
+            Collection<T> values, Map<RollupKey<K>, Integer> occurrencesByKey,
+            Map<RollupKey<K>, Long> rollupIds, Class<R> rollupClass) {
+        for (int attempt = 1;; attempt++) {
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            EntityTransaction transaction = entityManager.getTransaction();
+            transaction.begin();
+            try {
+                addToRollups(entityManager, occurrencesByKey, rollupIds, rollupClass);
+                // write the rollups out before the persistence context is cleared below
+                entityManager.flush();
+                int count = 0;
+                for (T value : values) {
+                    insert(entityManager, value);
+                    // flush and detach every batch so that the persistence context doesn't grow
+                    if (++count % JDBC_BATCH_SIZE == 0) {
+                        entityManager.flush();
+                        entityManager.clear();
+                    }
+                }
+                transaction.commit();
+                return;
+            } catch (PersistenceException e) {
+                if (attempt >= MAX_LOCK_ATTEMPTS || !PersistenceFailures.isLockFailure(e)) {
+                    throw e;
+                }
+                LOG.warn("Attempt {} to store {} {}s failed on a lock. Retrying. {}", attempt,
+                         values.size(), type.getSimpleName(), e.getMessage());
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                closeEntityManager(entityManager);
+            }
+
+            try {
+                Thread.sleep(attempt * LOCK_RETRY_BACKOFF_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PersistenceException("Interrupted while waiting to retry", e);
+            }
+        }
+    }
+
+    /**
+     * Persists a value. A value keeps the id it got from a transaction that was rolled back, which
+     * makes it look detached, so such values are merged instead, which inserts a copy of them.
+     */
+    private void insert(EntityManager entityManager, T value) {
+        if (entityManagerFactory.getPersistenceUnitUtil().getIdentifier(value) == null) {
+            entityManager.persist(value);
+        } else {
+            entityManager.merge(value);
+        }
+    }
+
+    /**
+     * Advances the {@link TableWatermark} of the raw table, which also covers its rollups. This
+     * happens after the values and their rollups are committed, so a reader that sees the new
+     * watermark also sees the new values.
+     */
+    private void advanceWatermark() {
         EntityManager entityManager = entityManagerFactory.createEntityManager();
         EntityTransaction transaction = entityManager.getTransaction();
         transaction.begin();
         try {
-            entityManager.persist(value);
+            TableWatermark watermark = entityManager.find(TableWatermark.class, tableName,
+                                                          LockModeType.PESSIMISTIC_WRITE);
+            DateTime now = DateTime.now(DateTimeZone.UTC);
+            if (watermark == null) {
+                entityManager.persist(new TableWatermark(tableName, 1, now));
+            } else {
+                watermark.advance(now);
+            }
             transaction.commit();
         } catch (PersistenceException e) {
-            if (isEntityAlreadyExists(value)) {
+            // another writer created the watermark concurrently, which already advanced it
+            LOG.debug("Cannot advance the watermark of {}. {}", tableName, e.getMessage());
+        } finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            closeEntityManager(entityManager);
+        }
+    }
+
+    /**
+     * Gets the mention time from which on every value of a raw table is also in its rollups. The
+     * first time this is called for a table, which is before the first value is stored with its
+     * rollups, the time right after the latest value in the table is recorded in its
+     * {@link TableWatermark}. Any value at or after that time was stored with its rollups.
+     *
+     * @param rawType
+     *            The raw type of the table
+     * @return The rollups start, or absent if it couldn't be recorded, in which case only the raw
+     *         values should be read
+     */
+    private Optional<DateTime> getRollupsStart(Class<? extends IMentionable<?>> rawType) {
+        String rawTableName = rawType.getAnnotation(Table.class).name();
+        DateTime rollupsStart = rollupsStarts.get(rawTableName);
+        if (rollupsStart != null) {
+            return Optional.of(rollupsStart);
+        }
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        transaction.begin();
+        try {
+            TableWatermark watermark = entityManager.find(TableWatermark.class, rawTableName,
+                                                          LockModeType.PESSIMISTIC_WRITE);
+            if (watermark != null && watermark.getRollupsStart() != null) {
+                rollupsStart = watermark.getRollupsStart();
+            } else {
+                rollupsStart = getNextMentionTime(entityManager, rawType);
+                if (watermark == null) {
+                    watermark = new TableWatermark(rawTableName, 0, null);
+                    entityManager.persist(watermark);
+                }
+                watermark.startRollups(rollupsStart);
+                LOG.info("Rollups of {} are complete from {}", rawTableName, rollupsStart);
+            }
+            transaction.commit();
+            rollupsStarts.put(rawTableName, rollupsStart);
+            return Optional.of(rollupsStart);
+        } catch (PersistenceException e) {
+            // another DAO created the watermark concurrently. It will be read on the next call
+            LOG.debug("Cannot record the rollups start of {}. {}", rawTableName, e.getMessage());
+            return Optional.absent();
+        } finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            closeEntityManager(entityManager);
+        }
+    }
+
+    /**
+     * @return The time right after the latest mention time of a raw table, or the epoch if the
+     *         table is empty
+     */
+    private static <R extends IMentionable<?>> DateTime getNextMentionTime(
+            EntityManager entityManager, Class<R> rawType) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<DateTime> query = cb.createQuery(DateTime.class);
+        Root<R> from = query.from(rawType);
+        query.select(cb.greatest(from.<DateTime>get("mentionTime")));
+        DateTime latest = entityManager.createQuery(query).getSingleResult();
+        if (latest == null) {
+            return new DateTime(0, DateTimeZone.UTC);
+        }
+        return latest.plusMillis(1);
+    }
+
+    /**
+     * Sums up the occurrences of the values by the rollup row of every resolution they fall in, so
+     * that every row is read and written once.
+     */
+    private Map<RollupKey<K>, Integer> getOccurrencesByRollupKey(Collection<T> values) {
+        Map<RollupKey<K>, Integer> occurrencesByKey = Maps.newHashMap();
+        for (T value : values) {
+            for (RollupResolution resolution : RollupResolution.values()) {
+                DateTime bucket = resolution.floor(value.getMentionTime());
+                RollupKey<K> key = new RollupKey<>(resolution, value, bucket);
+                occurrencesByKey.merge(key, value.getOccurrences(), Integer::sum);
+            }
+        }
+        return occurrencesByKey;
+    }
+
+    /**
+     * Creates the rollup rows that don't exist yet with no occurrences. This runs in its own
+     * transaction before the values are stored, so that the transaction that stores the values only
+     * has to update existing rows and never fails because another writer inserted the same rollup
+     * row concurrently. Rows created here are left with no occurrences if storing the values fails
+     * afterwards, which doesn't change any of the sums. Rows are inserted in the order of their
+     * keys, so that concurrent writers of the same new rows don't deadlock on them.
+     *
+     * @return The ids of the rollup rows by their key, or absent if they couldn't be created
+     */
+    private <R extends IMentionRollup<K>> Optional<Map<RollupKey<K>, Long>> createMissingRollups(
+            Map<RollupKey<K>, Integer> occurrencesByKey, Class<R> rollupClass) {
+        List<RollupKey<K>> keys = Lists.newArrayList(occurrencesByKey.keySet());
+        keys.sort(RollupKey.ORDER);
+        PersistenceUnitUtil persistenceUnitUtil = entityManagerFactory.getPersistenceUnitUtil();
+        for (int attempt = 1; attempt <= MAX_ROLLUP_ATTEMPTS; attempt++) {
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            EntityTransaction transaction = entityManager.getTransaction();
+            transaction.begin();
+            try {
+                Map<RollupKey<K>, IMentionRollup<K>> rollups = Maps.newHashMap(
+                    findRollups(entityManager, keys, rollupClass));
+                for (RollupKey<K> key : keys) {
+                    if (!rollups.containsKey(key)) {
+                        IMentionRollup<K> rollup = rollupFactory.create(key.resolution,
+                                                                        key.username,
+                                                                        key.roomName, key.bucket,
+                                                                        key.value, 0, key.bot);
+                        entityManager.persist(rollup);
+                        rollups.put(key, rollup);
+                    }
+                }
+                transaction.commit();
+
+                Map<RollupKey<K>, Long> rollupIds = Maps.newHashMapWithExpectedSize(keys.size());
+                for (Map.Entry<RollupKey<K>, IMentionRollup<K>> entry : rollups.entrySet()) {
+                    rollupIds.put(entry.getKey(),
+                                  (Long) persistenceUnitUtil.getIdentifier(entry.getValue()));
+                }
+                return Optional.of(rollupIds);
+            } catch (PersistenceException e) {
+                // another writer inserted one of the rows first, which the next attempt will find
+                LOG.debug("Attempt {} to create {} rollups failed. {}", attempt,
+                          type.getSimpleName(), e.getMessage());
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
                 closeEntityManager(entityManager);
-                throw new EntityExistsException(e.getCause());
             }
-            LOG.error("Cannot store {}. {}", value, e.getMessage());
         }
+        return Optional.absent();
+    }
+
+    /**
+     * Adds the occurrences to their rollup rows, which are locked until the transaction of the
+     * entity manager ends. The rows are locked in ascending id order, both across and within the
+     * queries, which is the same order for every writer.
+     *
+     * @param rollupIds
+     *            The ids of the rows by their key. The rows are expected to exist already
+     * @throws PersistenceException
+     *             If the rows couldn't be locked or one of them doesn't exist
+     */
+    private <R extends IMentionRollup<K>> void addToRollups(
+            EntityManager entityManager, Map<RollupKey<K>, Integer> occurrencesByKey,
+            Map<RollupKey<K>, Long> rollupIds, Class<R> rollupClass) {
+        SortedMap<Long, RollupKey<K>> keysById = Maps.newTreeMap();
+        for (Map.Entry<RollupKey<K>, Long> entry : rollupIds.entrySet()) {
+            keysById.put(entry.getValue(), entry.getKey());
+        }
+        PersistenceUnitUtil persistenceUnitUtil = entityManagerFactory.getPersistenceUnitUtil();
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        for (List<Long> idsPage : Iterables.partition(keysById.keySet(),
+                                                      MAX_ROLLUP_KEYS_PER_QUERY)) {
+            CriteriaQuery<R> query = cb.createQuery(rollupClass);
+            Root<R> from = query.from(rollupClass);
+            Path<Long> id = from.get("id");
+            query.where(id.in(idsPage));
+            query.orderBy(cb.asc(id));
+            List<R> rollups = entityManager.createQuery(query)
+                                           .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                                           .getResultList();
+            if (rollups.size() != idsPage.size()) {
+                throw new PersistenceException(String.format("Missing %s rows. Found %d of %d",
+                                                             rollupClass.getSimpleName(),
+                                                             rollups.size(), idsPage.size()));
+            }
+            for (R rollup : rollups) {
+                RollupKey<K> key = keysById.get(persistenceUnitUtil.getIdentifier(rollup));
+                rollup.addOccurrences(occurrencesByKey.get(key));
+            }
+        }
+    }
 
-        if (transaction.isActive() && transaction.getRollbackOnly()) {
-            transaction.rollback();
+    /**
+     * Finds the rollup rows with the given keys. Only the rows that match a key exactly are read.
+     *
+     * @param keys
+     *            The keys of the rows to find
+     * @return The rows that exist by their key
+     */
+    private <R extends IMentionRollup<K>> Map<RollupKey<K>, R> findRollups(
+            EntityManager entityManager, Collection<RollupKey<K>> keys, Class<R> rollupClass) {
+        Map<RollupKey<K>, R> result = Maps.newHashMapWithExpectedSize(keys.size());
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        for (List<RollupKey<K>> keysPage : Iterables.partition(keys,
+                                                               MAX_ROLLUP_KEYS_PER_QUERY)) {
+            CriteriaQuery<R> query = cb.createQuery(rollupClass);
+            Root<R> from = query.from(rollupClass);
+            List<Predicate> keyPredicates = Lists.newArrayListWithCapacity(keysPage.size());
+            for (RollupKey<K> key : keysPage) {
+                keyPredicates.add(cb.and(cb.equal(from.get("resolution"), key.resolution),
+                                         cb.equal(from.get("mentionTime"), key.bucket),
+                                         cb.equal(from.get("bot"), key.bot),
+                                         equalOrNull(cb, from.get("username"), key.username),
+                                         equalOrNull(cb, from.get("roomName"), key.roomName),
+                                         equalOrNull(cb, from.get(TYPE_COLUMN_NAME), key.value)));
+            }
+            query.where(cb.or(keyPredicates.toArray(new Predicate[keyPredicates.size()])));
+            for (R rollup : entityManager.createQuery(query).getResultList()) {
+                result.put(new RollupKey<>(rollup.getResolution(), rollup, rollup.getMentionTime()),
+                           rollup);
+            }
         }
+        return result;
+    }
 
-        closeEntityManager(entityManager);
+    private static Predicate equalOrNull(CriteriaBuilder cb, Path<Object> path, Object value) {
+        return value == null ? cb.isNull(path) : cb.equal(path, value);
     }
 
     /**
@@ -165,6 +568,159 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
                                                   boolean withBots) {
 
         EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return createAllMentionsQuery(entityManager, value, interval, roomNames, usernames,
+                                          withBots).getResultList();
+        } finally {
+            closeEntityManager(entityManager);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void streamAllMentionsForValue(K value, Interval interval, List<String> roomNames,
+                                          List<String> usernames, Consumer<T> consumer) {
+        internalStreamAllMentionsForValue(Optional.of(value), interval, roomNames, usernames,
+                                          true, consumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void streamAllMentions(Interval interval, List<String> roomNames,
+                                  List<String> usernames, boolean withBots,
+                                  Consumer<T> consumer) {
+        internalStreamAllMentionsForValue(Optional.absent(), interval, roomNames, usernames,
+                                          withBots, consumer);
+    }
+
+    /**
+     * Same as {@link #internalGetAllMentionsForValue(Optional, Interval, List, List, boolean)} but
+     * reads the mentions with a forward only cursor and detaches every mention after it's
+     * consumed, so that memory use doesn't depend on the number of mentions
+     */
+    private void internalStreamAllMentionsForValue(Optional<K> value,
+                                                   Interval interval,
+                                                   List<String> roomNames,
+                                                   List<String> usernames,
+                                                   boolean withBots,
+                                                   Consumer<T> consumer) {
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        // some drivers, like postgres, only honor the fetch size inside a transaction
+        EntityTransaction tx = entityManager.getTransaction();
+        ScrollableResults results = null;
+        try {
+            tx.begin();
+            results = createAllMentionsQuery(entityManager, value, interval, roomNames, usernames,
+                                             withBots).unwrap(org.hibernate.Query.class)
+                                                      .setReadOnly(true)
+                                                      .setFetchSize(STREAM_FETCH_SIZE)
+                                                      .scroll(ScrollMode.FORWARD_ONLY);
+            while (results.next()) {
+                T mention = type.cast(results.get(0));
+                consumer.accept(mention);
+                entityManager.detach(mention);
+            }
+        } finally {
+            if (results != null) {
+                results.close();
+            }
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            closeEntityManager(entityManager);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MentionPage<T> getMentionsPageForValue(K value, Interval interval,
+                                                  List<String> roomNames, List<String> usernames,
+                                                  Optional<MentionCursor> after, int limit) {
+        return internalGetMentionsPage(Optional.of(value), interval, roomNames, usernames, true,
+                                       after, limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MentionPage<T> getMentionsPage(Interval interval, List<String> roomNames,
+                                          List<String> usernames, boolean withBots,
+                                          Optional<MentionCursor> after, int limit) {
+        return internalGetMentionsPage(Optional.absent(), interval, roomNames, usernames,
+                                       withBots, after, limit);
+    }
+
+    /**
+     * Gets up to <code>limit</code> mentions ordered by mention time and id, starting after
+     * <code>after</code>. One more mention than the limit is read to find out whether there's a
+     * next page.
+     */
+    private MentionPage<T> internalGetMentionsPage(Optional<K> value,
+                                                   Interval interval,
+                                                   List<String> roomNames,
+                                                   List<String> usernames,
+                                                   boolean withBots,
+                                                   Optional<MentionCursor> after,
+                                                   int limit) {
+        Preconditions.checkArgument(limit > 0, "The page limit has to be > 0");
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            List<T> mentions = createAllMentionsQuery(entityManager, value, interval, roomNames,
+                                                      usernames, withBots, true, after)
+                .setMaxResults(limit + 1)
+                .getResultList();
+            if (mentions.size() <= limit) {
+                return new MentionPage<>(mentions, Optional.absent());
+            }
+
+            mentions = mentions.subList(0, limit);
+            T last = mentions.get(limit - 1);
+            Object lastId = entityManagerFactory.getPersistenceUnitUtil().getIdentifier(last);
+            MentionCursor nextCursor = new MentionCursor(last.getMentionTime().getMillis(),
+                                                         ((Number) lastId).longValue());
+            return new MentionPage<>(Lists.newArrayList(mentions), Optional.of(nextCursor));
+        } finally {
+            closeEntityManager(entityManager);
+        }
+    }
+
+    private TypedQuery<T> createAllMentionsQuery(EntityManager entityManager,
+                                                 Optional<K> value,
+                                                 Interval interval,
+                                                 List<String> roomNames,
+                                                 List<String> usernames,
+                                                 boolean withBots) {
+        return createAllMentionsQuery(entityManager, value, interval, roomNames, usernames,
+                                      withBots, false, Optional.absent());
+    }
+
+    /**
+     * Creates the query that gets all the mentions with the given parameters
+     *
+     * @param keysetOrdered
+     *            Set to true to order the mentions by mention time and id, so that they can be
+     *            paged through with a {@link MentionCursor}
+     * @param after
+     *            Optionally only get the mentions that come after this cursor. Only applies when
+     *            <code>keysetOrdered</code> is true
+     */
+    private TypedQuery<T> createAllMentionsQuery(EntityManager entityManager,
+                                                 Optional<K> value,
+                                                 Interval interval,
+                                                 List<String> roomNames,
+                                                 List<String> usernames,
+                                                 boolean withBots,
+                                                 boolean keysetOrdered,
+                                                 Optional<MentionCursor> after) {
 
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> query = cb.createQuery(type);
@@ -203,21 +759,37 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
             wherePredicates.add(in);
         }
 
-        query.where(wherePredicates.toArray(new Predicate[wherePredicates.size()]));
+        ParameterExpression<DateTime> afterDateParam = null;
+        ParameterExpression<Long> afterIdParam = null;
+        if (keysetOrdered) {
+            Path<Long> id = from.get("id");
+            if (after.isPresent()) {
+                // (mentionTime, id) > (afterDate, afterId). The first predicate is redundant but
+                // lets the database scan the mention time index from the cursor on
+                afterDateParam = cb.parameter(DateTime.class);
+                afterIdParam = cb.parameter(Long.class);
+                wherePredicates.add(cb.greaterThanOrEqualTo(mentionTime, afterDateParam));
+                wherePredicates.add(cb.or(cb.greaterThan(mentionTime, afterDateParam),
+                                          cb.greaterThan(id, afterIdParam)));
+            }
+            query.orderBy(cb.asc(mentionTime), cb.asc(id));
+        }
 
-        try {
-            TypedQuery<T> finalQuery =
-                    entityManager.createQuery(query)
-                                 .setParameter(startDateParam, interval.getStart())
-                                 .setParameter(endDateParam, interval.getEnd());
-            if (value.isPresent()) {
-                finalQuery.setParameter(valueParam, value.get());
+        query.where(wherePredicates.toArray(new Predicate[wherePredicates.size()]));
 
-            }
-            return finalQuery.getResultList();
-        } finally {
-            closeEntityManager(entityManager);
+        TypedQuery<T> finalQuery = entityManager.createQuery(query)
+                                                .setParameter(startDateParam, interval.getStart())
+                                                .setParameter(endDateParam, interval.getEnd());
+        if (value.isPresent()) {
+            finalQuery.setParameter(valueParam, value.get());
         }
+        if (afterDateParam != null) {
+            DateTime afterDate = new DateTime(after.get().getMentionTimeMillis(),
+                                              interval.getChronology());
+            finalQuery.setParameter(afterDateParam, afterDate)
+                      .setParameter(afterIdParam, after.get().getId());
+        }
+        return finalQuery;
     }
 
     /**
@@ -226,7 +798,7 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
     @Override
     public LabeledDenseMatrix<String> getRoomSimilaritiesByValue(Interval interval,
                                                                  boolean withBots) {
-        return internalGetSimilaritiesByValue(interval, mention -> mention.getRoomName(), withBots);
+        return internalGetSimilaritiesByValue(interval, "roomName", withBots);
     }
 
     /**
@@ -235,25 +807,76 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
     @Override
     public LabeledDenseMatrix<String> getUserSimilaritiesByValue(Interval interval,
                                                                  boolean withBots) {
-        return internalGetSimilaritiesByValue(interval, mention -> mention.getUsername(), withBots);
+        return internalGetSimilaritiesByValue(interval, "username", withBots);
     }
 
-    private <X extends Serializable> LabeledDenseMatrix<X>
-            internalGetSimilaritiesByValue(Interval interval,
-                                           Function<T, X> funcX,
-                                           boolean withBots) {
-        List<T> mentions = getAllMentions(interval, ImmutableList.of(), ImmutableList.of(),
-                                          withBots);
+    private LabeledDenseMatrix<String> internalGetSimilaritiesByValue(Interval interval,
+                                                                      String columnName,
+                                                                      boolean withBots) {
+        MentionMatrixBuilder<String, K> builder = new MentionMatrixBuilder<>();
+        streamOccurrencesByColumnAndValue(columnName, interval, withBots, builder::add);
 
-        if (mentions.isEmpty()) {
+        if (builder.isEmpty()) {
             return LabeledDenseMatrix.of();
         }
 
-        LabeledMTJMatrix<X> M = GraphPartition.getMentionMatrix(mentions,
-                                                                funcX,
-                                                                mention -> mention.getValue());
+        return GraphPartition.getSimilarityMatrix(builder.build());
+    }
+
+    /**
+     * Sums up the occurrences of every value by the given column in the database and hands every
+     * <code>(column, value, occurrences)</code> triple to a consumer as the rows are read, so that
+     * memory use depends on the number of distinct pairs and not on the number of mentions
+     *
+     * @param columnName
+     *            The column to group by along with the value, such as the room name or username
+     * @param interval
+     *            The interval to sum the occurrences over
+     * @param withBots
+     *            Whether to include mentions by bots
+     * @param consumer
+     *            Consumes every triple
+     */
+    @VisibleForTesting
+    void streamOccurrencesByColumnAndValue(String columnName, Interval interval, boolean withBots,
+                                           OccurrencesConsumer<K> consumer) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+
+        QueryRoute route = new QueryRoute(interval);
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<? extends IMentionable<K>> from = query.from(route.getType());
+        Path<String> columnPath = from.get(columnName);
+        Path<K> valuePath = from.get(TYPE_COLUMN_NAME);
 
-        return GraphPartition.getSimilarityMatrix(M);
+        List<Predicate> wherePredicates = Lists.newArrayListWithCapacity(2);
+        wherePredicates.add(route.getTimePredicate(cb, from));
+        if (!withBots) {
+            wherePredicates.add(cb.equal(from.get("bot"), withBots));
+        }
+        query.where(wherePredicates.toArray(new Predicate[wherePredicates.size()]));
+        query.multiselect(columnPath, valuePath, cb.sum(from.get("occurrences")));
+        query.groupBy(columnPath, valuePath);
+
+        ScrollableResults results = null;
+        try {
+            results = entityManager.createQuery(query)
+                                   .unwrap(org.hibernate.Query.class)
+                                   .setFetchSize(STREAM_FETCH_SIZE)
+                                   .scroll(ScrollMode.FORWARD_ONLY);
+            while (results.next()) {
+                @SuppressWarnings("unchecked")
+                K value = (K) results.get(1);
+                Number occurrences = (Number) results.get(2);
+                consumer.accept((String) results.get(0), value,
+                                occurrences == null ? 0 : occurrences.doubleValue());
+            }
+        } finally {
+            if (results != null) {
+                results.close();
+            }
+            closeEntityManager(entityManager);
+        }
     }
 
     /**
@@ -285,11 +908,10 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
                                         boolean withBots) {
         EntityManager entityManager = entityManagerFactory.createEntityManager();
 
+        QueryRoute route = new QueryRoute(interval);
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         CriteriaQuery<Integer> query = cb.createQuery(Integer.class);
-        Root<T> from = query.from(type);
-        ParameterExpression<DateTime> startDateParam = cb.parameter(DateTime.class);
-        ParameterExpression<DateTime> endDateParam = cb.parameter(DateTime.class);
+        Root<? extends IMentionable<K>> from = query.from(route.getType());
         Expression<Integer> sum = cb.sum(from.get("occurrences"));
 
         query.select(sum.alias("occurrences"));
@@ -303,10 +925,7 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
             valueParam = cb.parameter(clazz);
             wherePredicates.add(cb.equal(from.get(TYPE_COLUMN_NAME), valueParam));
         }
-
-        Path<DateTime> mentionTime = from.get("mentionTime");
-        wherePredicates.add(cb.greaterThanOrEqualTo(mentionTime, startDateParam));
-        wherePredicates.add(cb.lessThan(mentionTime, endDateParam));
+        wherePredicates.add(route.getTimePredicate(cb, from));
         if (!withBots) {
             wherePredicates.add(cb.equal(from.get("bot"), withBots));
         }
@@ -329,10 +948,7 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
         query.where(wherePredicates.toArray(new Predicate[wherePredicates.size()]));
 
         try {
-            TypedQuery<Integer> finalQuery =
-                    entityManager.createQuery(query)
-                                 .setParameter(startDateParam, interval.getStart())
-                                 .setParameter(endDateParam, interval.getEnd());
+            TypedQuery<Integer> finalQuery = entityManager.createQuery(query);
             if (value.isPresent()) {
                 finalQuery.setParameter(valueParam, value.get());
             }
@@ -361,12 +977,11 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
 
         EntityManager entityManager = entityManagerFactory.createEntityManager();
 
+        QueryRoute route = new QueryRoute(interval);
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         CriteriaQuery<Tuple> query = cb.createTupleQuery();
 
-        Root<T> from = query.from(type);
-        ParameterExpression<DateTime> startDateParam = cb.parameter(DateTime.class);
-        ParameterExpression<DateTime> endDateParam = cb.parameter(DateTime.class);
+        Root<? extends IMentionable<K>> from = query.from(route.getType());
 
         Path<K> typeValuePath = from.get(TYPE_COLUMN_NAME);
         Selection<K> typeValueAlias = typeValuePath.alias("typeValue_sel");
@@ -377,9 +992,7 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
 
         // do where clause
         List<Predicate> wherePredicates = Lists.newArrayListWithCapacity(6);
-        Path<DateTime> mentionTime = from.get("mentionTime");
-        wherePredicates.add(cb.greaterThanOrEqualTo(mentionTime, startDateParam));
-        wherePredicates.add(cb.lessThan(mentionTime, endDateParam));
+        wherePredicates.add(route.getTimePredicate(cb, from));
         wherePredicates.add(cb.isNotNull(typeValuePath));
         if (!withBots) {
             wherePredicates.add(cb.equal(from.get("bot"), withBots));
@@ -408,9 +1021,7 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
         try {
             TypedQuery<Tuple> finalQuery =
                     entityManager.createQuery(query)
-                                 .setMaxResults(resultSize)
-                                 .setParameter(startDateParam, interval.getStart())
-                                 .setParameter(endDateParam, interval.getEnd());
+                                 .setMaxResults(resultSize);
 
             List<Tuple> resultList = finalQuery.getResultList();
 
@@ -433,24 +1044,20 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
                                                       int resultSize, boolean withBots) {
 
         EntityManager entityManager = entityManagerFactory.createEntityManager();
+        QueryRoute route = new QueryRoute(interval);
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         CriteriaQuery<Tuple> query = cb.createTupleQuery();
 
-        Root<T> from = query.from(type);
-
-        ParameterExpression<DateTime> startDateParam = cb.parameter(DateTime.class);
-        ParameterExpression<DateTime> endDateParam = cb.parameter(DateTime.class);
+        Root<? extends IMentionable<K>> from = query.from(route.getType());
         Expression<Double> occurrences = from.get("occurrences").as(Double.class);
 
         // create total query
         Subquery<Long> totalQuery = query.subquery(Long.class);
-        Root<T> totalFrom = totalQuery.from(type);
+        Root<? extends IMentionable<K>> totalFrom = totalQuery.from(route.getType());
         totalQuery.select(cb.sum(totalFrom.get("occurrences")));
-        Path<DateTime> totalMentionTime = totalFrom.get("mentionTime");
 
         List<Predicate> wherePredicates = Lists.newArrayListWithCapacity(3);
-        wherePredicates.add(cb.greaterThanOrEqualTo(totalMentionTime, startDateParam));
-        wherePredicates.add(cb.lessThan(totalMentionTime, endDateParam));
+        wherePredicates.add(route.getTimePredicate(cb, totalFrom));
         if (!withBots) {
             wherePredicates.add(cb.equal(totalFrom.get("bot"), withBots));
         }
@@ -461,11 +1068,9 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
 
         Path<String> columnPath = from.get(columnName);
         query.multiselect(columnPath, ratio);
-        Path<DateTime> mentionTime = from.get("mentionTime");
 
         wherePredicates = Lists.newArrayListWithCapacity(4);
-        wherePredicates.add(cb.greaterThanOrEqualTo(mentionTime, startDateParam));
-        wherePredicates.add(cb.lessThan(mentionTime, endDateParam));
+        wherePredicates.add(route.getTimePredicate(cb, from));
         wherePredicates.add(cb.isNotNull(columnPath));
         if (!withBots) {
             wherePredicates.add(cb.equal(from.get("bot"), withBots));
@@ -478,8 +1083,6 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
         try {
             List<Tuple> resultList = entityManager.createQuery(query)
                                                   .setMaxResults(resultSize)
-                                                  .setParameter(startDateParam, interval.getStart())
-                                                  .setParameter(endDateParam, interval.getEnd())
                                                   .getResultList();
             // linked hashmap to preserve order
             Map<String, Double> result = Maps.newLinkedHashMap();
@@ -500,25 +1103,22 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
                                                       int resultSize, boolean withBots) {
 
         EntityManager entityManager = entityManagerFactory.createEntityManager();
+        QueryRoute route = new QueryRoute(interval, MessageSummary.class);
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         CriteriaQuery<Tuple> query = cb.createTupleQuery();
 
-        Root<T> from = query.from(type);
-
-        ParameterExpression<DateTime> startDateParam = cb.parameter(DateTime.class);
-        ParameterExpression<DateTime> endDateParam = cb.parameter(DateTime.class);
+        Root<? extends IMentionable<K>> from = query.from(route.getType());
         Expression<Double> occurrences = from.get("occurrences").as(Double.class);
 
         // create total query
         Subquery<Long> totalQuery = query.subquery(Long.class);
-        Root<MessageSummary> totalFrom = totalQuery.from(MessageSummary.class);
+        Root<? extends IMentionable<MessageType>> totalFrom =
+            totalQuery.from(route.getMessageSummaryType());
         totalQuery.select(cb.sum(totalFrom.get("occurrences")));
-        Path<DateTime> totalMentionTime = totalFrom.get("mentionTime");
         Path<MessageType> messageType = totalFrom.get("value");
 
         List<Predicate> wherePredicates = Lists.newArrayListWithCapacity(4);
-        wherePredicates.add(cb.greaterThanOrEqualTo(totalMentionTime, startDateParam));
-        wherePredicates.add(cb.lessThan(totalMentionTime, endDateParam));
+        wherePredicates.add(route.getTimePredicate(cb, totalFrom));
         wherePredicates.add(cb.equal(messageType, MessageType.MESSAGE));
         if (!withBots) {
             wherePredicates.add(cb.equal(totalFrom.get("bot"), withBots));
@@ -530,11 +1130,9 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
         Path<String> columnPath = from.get(columnName);
 
         query.multiselect(columnPath, ratio);
-        Path<DateTime> mentionTime = from.get("mentionTime");
 
         wherePredicates = Lists.newArrayListWithCapacity(4);
-        wherePredicates.add(cb.greaterThanOrEqualTo(mentionTime, startDateParam));
-        wherePredicates.add(cb.lessThan(mentionTime, endDateParam));
+        wherePredicates.add(route.getTimePredicate(cb, from));
         wherePredicates.add(cb.isNotNull(columnPath));
         if (!withBots) {
             wherePredicates.add(cb.equal(from.get("bot"), withBots));
@@ -547,8 +1145,6 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
         try {
             List<Tuple> resultList = entityManager.createQuery(query)
                                                   .setMaxResults(resultSize)
-                                                  .setParameter(startDateParam, interval.getStart())
-                                                  .setParameter(endDateParam, interval.getEnd())
                                                   .getResultList();
 
             // linked hashmap to preserve order
@@ -606,4 +1202,175 @@ public class MentionableDAO<K extends Serializable, T extends IMentionable<K>>
         return getValue(value) != null;
     }
 
+    /**
+     * The table an aggregate query over an interval reads from and the time restriction on it
+     */
+    private class QueryRoute {
+
+        private final Interval interval;
+        private final Optional<List<RollupRange>> rollupRanges;
+
+        private QueryRoute(Interval interval) {
+            this(interval, null);
+        }
+
+        /**
+         * @param interval
+         *            The interval of the query
+         * @param otherRawType
+         *            Another raw type the query reads from, whose rollups also have to be complete
+         *            for the interval. Can be null
+         */
+        private QueryRoute(Interval interval, Class<? extends IMentionable<?>> otherRawType) {
+            this.interval = interval;
+            Optional<List<RollupRange>> ranges = RollupRouter.route(interval);
+            if (ranges.isPresent()
+                    && (!areRollupsComplete(type) || !areRollupsComplete(otherRawType))) {
+                ranges = Optional.absent();
+            }
+            this.rollupRanges = ranges;
+            LOG.debug("Routing {} query over {} to {}", type.getSimpleName(), interval,
+                      rollupRanges.isPresent() ? rollupRanges.get() : "raw values");
+        }
+
+        /**
+         * @return True if every value of the raw type in the interval is also in its rollups
+         */
+        private boolean areRollupsComplete(Class<? extends IMentionable<?>> rawType) {
+            if (rawType == null) {
+                return true;
+            }
+            Optional<DateTime> rollupsStart = getRollupsStart(rawType);
+            return rollupsStart.isPresent() && !interval.getStart().isBefore(rollupsStart.get());
+        }
+
+        /**
+         * @return The rollup type if the interval can be answered by it, the raw type otherwise
+         */
+        private Class<? extends IMentionable<K>> getType() {
+            if (rollupRanges.isPresent()) {
+                return rollupType;
+            } else {
+                return type;
+            }
+        }
+
+        /**
+         * @return Same as {@link #getType()} but for {@link MessageSummary}s
+         */
+        private Class<? extends IMentionable<MessageType>> getMessageSummaryType() {
+            if (rollupRanges.isPresent()) {
+                return MessageSummaryRollup.class;
+            } else {
+                return MessageSummary.class;
+            }
+        }
+
+        /**
+         * Restricts the mention time of a root of {@link #getType()}. For rollups the partial
+         * ranges of every resolution are OR-ed together, so that the database sums them up in a
+         * single query.
+         */
+        private Predicate getTimePredicate(CriteriaBuilder cb, Path<?> from) {
+            Path<DateTime> mentionTime = from.get("mentionTime");
+            if (!rollupRanges.isPresent()) {
+                return cb.and(cb.greaterThanOrEqualTo(mentionTime, interval.getStart()),
+                              cb.lessThan(mentionTime, interval.getEnd()));
+            }
+
+            List<Predicate> rangePredicates = Lists.newArrayList();
+            for (RollupRange range : rollupRanges.get()) {
+                Interval rangeInterval = range.getInterval();
+                rangePredicates.add(cb.and(cb.equal(from.get("resolution"), range.getResolution()),
+                                           cb.greaterThanOrEqualTo(mentionTime,
+                                                                   rangeInterval.getStart()),
+                                           cb.lessThan(mentionTime, rangeInterval.getEnd())));
+            }
+            return cb.or(rangePredicates.toArray(new Predicate[rangePredicates.size()]));
+        }
+    }
+
+    /**
+     * Consumes the summed up occurrences of a value by a column
+     *
+     * @param <K>
+     *            The type of the value
+     */
+    @FunctionalInterface
+    interface OccurrencesConsumer<K> {
+
+        void accept(String column, K value, double occurrences);
+    }
+
+    /**
+     * Creates new rollup rows
+     *
+     * @param <K>
+     *            The type of the rollup value
+     */
+    @FunctionalInterface
+    interface RollupFactory<K> {
+
+        IMentionRollup<K> create(RollupResolution resolution, String username, String roomName,
+                                 DateTime mentionTime, K value, int occurrences, boolean bot);
+    }
+
+    /**
+     * Identifies a rollup row
+     */
+    private static class RollupKey<K> {
+
+        private static final Comparator<String> NULLS_FIRST =
+            Comparator.nullsFirst(Comparator.naturalOrder());
+        /**
+         * A total order of the keys that's the same for every writer
+         */
+        private static final Comparator<RollupKey<?>> ORDER =
+            Comparator.<RollupKey<?>, RollupResolution>comparing(key -> key.resolution)
+                      .thenComparingLong(key -> key.bucketMillis)
+                      .thenComparing(key -> key.username, NULLS_FIRST)
+                      .thenComparing(key -> key.roomName, NULLS_FIRST)
+                      .thenComparing(key -> key.value == null ? null : key.value.toString(),
+                                     NULLS_FIRST)
+                      .thenComparing(key -> key.bot);
+
+        private final RollupResolution resolution;
+        private final String username;
+        private final String roomName;
+        private final DateTime bucket;
+        private final K value;
+        private final boolean bot;
+        // compare on millis since the chronology of the bucket can be different
+        private final long bucketMillis;
+
+        private RollupKey(RollupResolution resolution, IMentionable<K> mention, DateTime bucket) {
+            this.resolution = resolution;
+            this.username = mention.getUsername();
+            this.roomName = mention.getRoomName();
+            this.bucket = bucket;
+            this.value = mention.getValue();
+            this.bot = mention.isBot();
+            this.bucketMillis = bucket.getMillis();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RollupKey)) {
+                return false;
+            }
+            RollupKey<?> other = (RollupKey<?>) obj;
+            return resolution == other.resolution
+                && bucketMillis == other.bucketMillis
+                && bot == other.bot
+                && Objects.equals(username, other.username)
+                && Objects.equals(roomName, other.roomName)
+                && Objects.equals(value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(resolution, username, roomName, bucketMillis, value, bot);
+        }
+    }
+
 }
@@ -2,13 +2,17 @@ package com.chatalytics.compute.db.dao;
 
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.model.data.MessageSummary;
+import com.chatalytics.core.model.data.MessageSummaryRollup;
 import com.chatalytics.core.model.data.MessageType;
+import com.google.common.base.Optional;
 import com.google.common.util.concurrent.AbstractIdleService;
 
 import org.joda.time.Interval;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityManagerFactory;
 
@@ -23,7 +27,9 @@ public class MessageSummaryDAOImpl extends AbstractIdleService implements IMessa
     private final MentionableDAO<MessageType, MessageSummary> occurrenceStatsDAO;
 
     public MessageSummaryDAOImpl(EntityManagerFactory emf) {
-        this.occurrenceStatsDAO = new MentionableDAO<>(emf, MessageSummary.class);
+        this.occurrenceStatsDAO = new MentionableDAO<>(emf, MessageSummary.class,
+                                                       MessageSummaryRollup.class,
+                                                       MessageSummaryRollup::new);
     }
 
     @Override
@@ -31,6 +37,14 @@ public class MessageSummaryDAOImpl extends AbstractIdleService implements IMessa
         occurrenceStatsDAO.persistValue(messageSummary);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void persistMessageSummaries(Collection<MessageSummary> messageSummaries) {
+        occurrenceStatsDAO.persistValues(messageSummaries);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -61,6 +75,60 @@ public class MessageSummaryDAOImpl extends AbstractIdleService implements IMessa
         return occurrenceStatsDAO.getAllMentions(interval, roomNames, usernames, withBots);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void streamAllMessageSummariesForType(MessageType type,
+                                                 Interval interval,
+                                                 List<String> roomNames,
+                                                 List<String> usernames,
+                                                 Consumer<MessageSummary> consumer) {
+        occurrenceStatsDAO.streamAllMentionsForValue(type, interval, roomNames, usernames,
+                                                     consumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void streamAllMessageSummaries(Interval interval,
+                                          List<String> roomNames,
+                                          List<String> usernames,
+                                          boolean withBots,
+                                          Consumer<MessageSummary> consumer) {
+        occurrenceStatsDAO.streamAllMentions(interval, roomNames, usernames, withBots, consumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MentionPage<MessageSummary> getMessageSummariesPageForType(
+            MessageType type,
+            Interval interval,
+            List<String> roomNames,
+            List<String> usernames,
+            Optional<MentionCursor> after,
+            int limit) {
+        return occurrenceStatsDAO.getMentionsPageForValue(type, interval, roomNames, usernames,
+                                                          after, limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MentionPage<MessageSummary> getMessageSummariesPage(Interval interval,
+                                                               List<String> roomNames,
+                                                               List<String> usernames,
+                                                               boolean withBots,
+                                                               Optional<MentionCursor> after,
+                                                               int limit) {
+        return occurrenceStatsDAO.getMentionsPage(interval, roomNames, usernames, withBots, after,
+                                                  limit);
+    }
+
     /**
      * {@inheritDoc}
      */
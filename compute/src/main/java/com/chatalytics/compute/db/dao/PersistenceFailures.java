@@ -0,0 +1,89 @@
+package com.chatalytics.compute.db.dao;
+
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.exception.LockAcquisitionException;
+
+import java.sql.SQLException;
+
+import javax.persistence.LockTimeoutException;
+import javax.persistence.PessimisticLockException;
+import javax.persistence.QueryTimeoutException;
+
+/**
+ * Classifies the exceptions thrown when writing to the database
+ *
+ * @author giannis
+ *
+ */
+public class PersistenceFailures {
+
+    /**
+     * SQL states of failures to get a lock that are not in the transaction rollback (40) class.
+     * <code>55P03</code> is a PostgreSQL lock timeout and <code>HYT00</code> an H2 one
+     */
+    private static final String LOCK_NOT_AVAILABLE_STATE = "55P03";
+    private static final String H2_LOCK_TIMEOUT_STATE = "HYT00";
+    /**
+     * Class of SQL states of serialization failures and deadlocks
+     */
+    private static final String TRANSACTION_ROLLBACK_CLASS = "40";
+    /**
+     * Class of SQL states of connection failures
+     */
+    private static final String CONNECTION_EXCEPTION_CLASS = "08";
+
+    private PersistenceFailures() {
+        // hide constructor
+    }
+
+    /**
+     * @param e
+     *            The exception a write failed with
+     * @return True if the write failed because a lock couldn't be taken, for example because of a
+     *         deadlock or a lock timeout, in which case the write can be retried
+     */
+    public static boolean isLockFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PessimisticLockException
+                    || cause instanceof LockTimeoutException
+                    || cause instanceof LockAcquisitionException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if (state != null && (state.startsWith(TRANSACTION_ROLLBACK_CLASS)
+                                          || LOCK_NOT_AVAILABLE_STATE.equals(state)
+                                          || H2_LOCK_TIMEOUT_STATE.equals(state))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param e
+     *            The exception a write failed with
+     * @return True if the write failed because of a lock, a timeout or a lost connection, in which
+     *         case it may succeed if it's retried later. False if it failed because of the values
+     *         that were written, for example because one of them already exists
+     */
+    public static boolean isTransient(Throwable e) {
+        if (isLockFailure(e)) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof QueryTimeoutException
+                    || cause instanceof JDBCConnectionException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if (state != null && state.startsWith(CONNECTION_EXCEPTION_CLASS)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,106 @@
+package com.chatalytics.compute.db.dao;
+
+import com.chatalytics.core.model.data.IMentionRollup;
+import com.chatalytics.core.model.data.RollupResolution;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
+import java.util.List;
+
+/**
+ * Splits an {@link Interval} into the fewest {@link IMentionRollup} time buckets that exactly cover
+ * it. The middle of the interval is covered with the coarsest resolution that fits and the edges
+ * with progressively finer ones. For example, a year starting and ending at noon is covered by 11
+ * months in the middle and by days and hours at each edge, which is 5 range scans over ~70
+ * buckets per key instead of 8,760 hourly ones.
+ *
+ * @author giannis
+ *
+ */
+public class RollupRouter {
+
+    /**
+     * From coarsest to finest
+     */
+    private static final List<RollupResolution> RESOLUTIONS =
+        ImmutableList.copyOf(RollupResolution.values()).reverse();
+
+    private RollupRouter() {
+        // hide constructor
+    }
+
+    /**
+     * Splits the interval into rollup ranges
+     *
+     * @param interval
+     *            The interval to split
+     * @return The ranges, ordered by time, that exactly cover the interval. Absent if the interval
+     *         doesn't start and end on a bucket boundary of the finest resolution, in which case it
+     *         can only be answered by the raw values
+     */
+    public static Optional<List<RollupRange>> route(Interval interval) {
+        RollupResolution finest = RESOLUTIONS.get(RESOLUTIONS.size() - 1);
+        if (!finest.isAligned(interval.getStart()) || !finest.isAligned(interval.getEnd())) {
+            return Optional.absent();
+        }
+        List<RollupRange> result = Lists.newArrayList();
+        route(interval.getStart(), interval.getEnd(), 0, result);
+        return Optional.of(result);
+    }
+
+    /**
+     * Covers [start, end) with the coarsest resolution that has at least one full bucket in it and
+     * recurses on the edges with the finer resolutions.
+     */
+    private static void route(DateTime start, DateTime end, int resolutionIndex,
+                              List<RollupRange> result) {
+        if (!start.isBefore(end)) {
+            return;
+        }
+        for (int i = resolutionIndex; i < RESOLUTIONS.size(); i++) {
+            RollupResolution resolution = RESOLUTIONS.get(i);
+            DateTime firstBucket = resolution.ceiling(start);
+            DateTime endBucket = resolution.floor(end);
+            if (firstBucket.isBefore(endBucket)) {
+                route(start, firstBucket, i + 1, result);
+                result.add(new RollupRange(resolution, new Interval(firstBucket, endBucket)));
+                route(endBucket, end, i + 1, result);
+                return;
+            }
+        }
+        // can't happen since the interval is aligned to the finest resolution
+        throw new IllegalStateException(String.format("Can't route [%s, %s)", start, end));
+    }
+
+    /**
+     * A time range that should be read from the rollups of a given resolution. The start and end
+     * of the range are bucket boundaries of that resolution.
+     */
+    public static class RollupRange {
+
+        private final RollupResolution resolution;
+        private final Interval interval;
+
+        public RollupRange(RollupResolution resolution, Interval interval) {
+            this.resolution = resolution;
+            this.interval = interval;
+        }
+
+        public RollupResolution getResolution() {
+            return resolution;
+        }
+
+        public Interval getInterval() {
+            return interval;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s%s", resolution, interval);
+        }
+    }
+}
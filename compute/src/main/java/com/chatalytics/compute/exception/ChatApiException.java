@@ -0,0 +1,31 @@
+package com.chatalytics.compute.exception;
+
+/**
+ * Thrown when a chat API request keeps failing after all of its retries, or when the API responds
+ * with an error instead of the requested data
+ *
+ * @author giannis
+ */
+public class ChatApiException extends RuntimeException {
+
+    private static final long serialVersionUID = -2094757148637426113L;
+
+    /**
+     * Status of requests that failed without a response or with an error in the response body
+     */
+    public static final int NO_STATUS = 0;
+
+    private final int status;
+
+    public ChatApiException(String msg, int status) {
+        super(msg);
+        this.status = status;
+    }
+
+    /**
+     * @return The HTTP error status of the last attempt, or {@link #NO_STATUS} if there is none
+     */
+    public int getStatus() {
+        return status;
+    }
+}
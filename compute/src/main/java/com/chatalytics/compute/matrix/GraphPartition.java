@@ -6,23 +6,18 @@ import org.apache.storm.shade.com.google.common.base.Preconditions;
 import org.apache.storm.shade.com.google.common.collect.Lists;
 
 import no.uib.cipr.matrix.DenseMatrix;
-import no.uib.cipr.matrix.DenseVector;
 import no.uib.cipr.matrix.Matrix;
+import no.uib.cipr.matrix.MatrixEntry;
 import no.uib.cipr.matrix.NotConvergedException;
-import no.uib.cipr.matrix.PermutationMatrix;
 import no.uib.cipr.matrix.SymmDenseEVD;
-import no.uib.cipr.matrix.sparse.LinkedSparseMatrix;
+import no.uib.cipr.matrix.sparse.CompRowMatrix;
 import no.uib.cipr.matrix.sparse.SparseVector;
 
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * Contains functions to compute partitions in a graph using matrices
@@ -31,6 +26,13 @@ import java.util.stream.IntStream;
  */
 public class GraphPartition {
 
+    /**
+     * Matrices up to this size get a full eigen decomposition. Bigger ones use the sparse solver
+     */
+    public static final int DENSE_EVD_MAX_SIZE = 256;
+
+    private static final SparseFiedlerSolver FIEDLER_SOLVER = new SparseFiedlerSolver();
+
     /**
      * Given a list of mentions and two functions that extract two field names, call them dimension
      * <code>X</code> and dimension <code>Y</code>, this function will first create a matrix, with
@@ -70,61 +72,19 @@ public class GraphPartition {
                            getMentionMatrix(List<T> data,
                                             Function<T, X> funcX,
                                             Function<T, Y> funcY) {
-        // row
-        List<Y> dimYOrd = data.stream()
-                              .map(funcY)
-                              .distinct()
-                              .filter(Objects::nonNull)
-                              .collect(Collectors.toList()); // need ordering
-        // column
-        List<X> dimXOrd = data.stream()
-                              .map(funcX)
-                              .distinct()
-                              .filter(Objects::nonNull)
-                              .collect(Collectors.toList()); // need ordering
-
-        Map<X, Integer> dimXToIdx = IntStream.range(0, dimXOrd.size())
-                                             .boxed()
-                                             .collect(Collectors.toMap(i -> dimXOrd.get(i),
-                                                                       i -> i));
-        Map<Y, Integer> dimYToIdx = IntStream.range(0, dimYOrd.size())
-                                             .boxed()
-                                             .collect(Collectors.toMap(i -> dimYOrd.get(i),
-                                                                       i -> i));
-        Matrix M = new LinkedSparseMatrix(dimYOrd.size(), dimXOrd.size());
-
+        MentionMatrixBuilder<X, Y> builder = new MentionMatrixBuilder<>();
         for (T mention : data) {
-            Y yValue = funcY.apply(mention);
-            X xValue = funcX.apply(mention);
-
-            if (yValue == null || xValue == null) {
-                continue;
-            }
-
-            int rowIdx = dimYToIdx.get(yValue);
-            int columnIdx = dimXToIdx.get(xValue);
-            double existingValue = M.get(rowIdx, columnIdx);
-            M.set(rowIdx, columnIdx, existingValue + mention.getOccurrences());
+            builder.add(funcX.apply(mention), funcY.apply(mention), mention.getOccurrences());
         }
-
-        Matrix M_c = M.copy();
-        Matrix A = M.transAmult(M_c, new DenseMatrix(M.numColumns(), M.numColumns()));
-
-        // make the labels
-        @SuppressWarnings("unchecked")
-        X[] labels = (X[]) new Serializable[dimXToIdx.size()];
-        for (Map.Entry<X, Integer> entry : dimXToIdx.entrySet()) {
-            labels[entry.getValue()] = entry.getKey();
-        }
-
-        return LabeledMTJMatrix.of(A, Lists.newArrayList(labels));
+        return builder.build();
     }
 
     /**
      * Computes a similarity matrix based on a given matrix A that represents connections between
      * two dimensions. Based on:
      * <a href=https://www.cs.purdue.edu/homes/dgleich/demos/matlab/spectral/spectral.html>this
-     * tutorial</a>
+     * tutorial</a>. Matrices with more than {@link #DENSE_EVD_MAX_SIZE} rows get their Fiedler
+     * vector from the {@link SparseFiedlerSolver} instead of a full eigen decomposition.
      *
      * @param labeledMatrix
      *            A labeled matrix to compute similarity on
@@ -134,6 +94,45 @@ public class GraphPartition {
     public static <L extends Serializable> LabeledDenseMatrix<L> getSimilarityMatrix(
             LabeledMTJMatrix<L> labeledMatrix) {
         Matrix A = labeledMatrix.getMatrix();
+        double[] fiedlerVector;
+        if (A.numRows() <= DENSE_EVD_MAX_SIZE) {
+            fiedlerVector = getDenseFiedlerVector(A);
+        } else {
+            fiedlerVector = getSparseFiedlerVector(A);
+        }
+
+        // sort the fiedler vector and store the permutations
+        Integer[] indices = new Integer[fiedlerVector.length];
+        for (int i = 0; i < fiedlerVector.length; i++) {
+          indices[i] = i;
+        }
+        Comparator<Integer> comp =
+            (Integer i, Integer j) -> Double.compare(fiedlerVector[i], fiedlerVector[j]);
+        Arrays.sort(indices, comp);
+        int[] permutations = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            permutations[i] = indices[i];
+        }
+        // free array
+        indices = null;
+
+        // Get result, a permuted A matrix based on the sorted fiedler vector
+        Matrix R = getPermutedMatrix(A, permutations);
+        List<L> labels = getPermutedLabels(labeledMatrix.getLabels(), permutations);
+
+        return LabeledDenseMatrix.of(R, labels);
+    }
+
+    /**
+     * Computes the Fiedler vector, the eigenvector of the second smallest eigenvalue of the
+     * Laplacian of <code>A</code>, with a full eigen decomposition. This is O(n<sup>3</sup>) and
+     * should only be used on small matrices.
+     *
+     * @param A
+     *            The symmetric adjacency matrix
+     * @return The Fiedler vector
+     */
+    static double[] getDenseFiedlerVector(Matrix A) {
         // Build diagonal matrix (D)
         SparseVector V = new SparseVector(A.numColumns());
         A.forEach((entry) -> V.set(entry.row(), V.get(entry.row()) + entry.get()));
@@ -153,47 +152,126 @@ public class GraphPartition {
             throw new RuntimeException("Can't factorize matrix", e);
         }
         // get the second eigen vector
-        DenseVector E_2 = new DenseVector(E.numRows());
+        double[] E_2 = new double[E.numRows()];
         for (int i = 0; i < E.numRows(); i++) {
-            E_2.set(i, E.get(i, 1));
-        }
-
-        // sort E_2 and store the permutations
-        Integer[] indices = new Integer[E_2.size()];
-        for (int i = 0; i < E_2.size(); i++) {
-          indices[i] = i;
+            E_2[i] = E.get(i, 1);
         }
-        Comparator<Integer> comp = (Integer i, Integer j) -> Double.compare(E_2.get(i), E_2.get(j));
-        Arrays.sort(indices, comp);
-        int[] permutations = new int[indices.length];
-        for (int i = 0; i < indices.length; i++) {
-            permutations[i] = indices[i];
-        }
-        // free array
-        indices = null;
-
-        // Get result, a permuted A matrix based on the sorted E_2
-        Matrix R = getPermutedMatrix(A, permutations);
-        List<L> labels = getPermutedLabels(labeledMatrix.getLabels(), permutations);
+        return E_2;
+    }
 
-        return LabeledDenseMatrix.of(R, labels);
+    /**
+     * Computes the Fiedler vector of <code>A</code> with the {@link SparseFiedlerSolver}. The
+     * compressed sparse rows of <code>A</code> are handed to the solver as they are, so mention
+     * matrices are never scanned or copied.
+     *
+     * @param A
+     *            The symmetric adjacency matrix
+     * @return The Fiedler vector
+     */
+    static double[] getSparseFiedlerVector(Matrix A) {
+        CompRowMatrix C = toCompRowMatrix(A);
+        return FIEDLER_SOLVER.solve(C.numRows(), C.getRowPointers(), C.getColumnIndices(),
+                                    C.getData())
+                             .getVector();
     }
 
     /**
-     * Get the row and column permutation of A based on <code>permutations</code>
+     * Get the row and column permutation of A based on <code>permutations</code>, so that
+     * <code>R(i, j) = A(permutations[i], permutations[j])</code>. Only the non zero entries of
+     * <code>A</code> are moved, so the result is as sparse as <code>A</code>.
      *
      * @param A
-     *            The matrix to permute
+     *            The square matrix to permute
      * @param permutations
      *            The permutations
      * @return The permuted matrix
      */
     public static Matrix getPermutedMatrix(Matrix A, int[] permutations) {
-        // R = P * A * P'
-        PermutationMatrix P = new PermutationMatrix(permutations);
-        Matrix P_r = P.mult(A, new DenseMatrix(A.numRows(), A.numColumns()));
-        Matrix P_c = P_r.transBmult(P, new DenseMatrix(A.numRows(), A.numColumns()));
-        return P_c;
+        // R = P * A * P', without the two matrix products
+        int[] inverse = new int[permutations.length];
+        for (int i = 0; i < permutations.length; i++) {
+            inverse[permutations[i]] = i;
+        }
+        CompRowMatrix C = toCompRowMatrix(A);
+        int[] rowPointers = C.getRowPointers();
+        int[] columnIndices = C.getColumnIndices();
+        double[] data = C.getData();
+        int[][] rowColumns = new int[permutations.length][];
+        double[][] rowValues = new double[permutations.length][];
+        for (int row = 0; row < permutations.length; row++) {
+            int start = rowPointers[permutations[row]];
+            int length = rowPointers[permutations[row] + 1] - start;
+            rowColumns[row] = new int[length];
+            rowValues[row] = Arrays.copyOfRange(data, start, start + length);
+            for (int idx = 0; idx < length; idx++) {
+                rowColumns[row][idx] = inverse[columnIndices[start + idx]];
+            }
+        }
+        return newCompRowMatrix(A.numColumns(), rowColumns, rowValues);
+    }
+
+    /**
+     * @return <code>A</code> if it's already a {@link CompRowMatrix}, otherwise a copy of its non
+     *         zero entries as one
+     */
+    static CompRowMatrix toCompRowMatrix(Matrix A) {
+        if (A instanceof CompRowMatrix) {
+            return (CompRowMatrix) A;
+        }
+        int[] rowSizes = new int[A.numRows()];
+        for (MatrixEntry entry : A) {
+            if (entry.get() != 0) {
+                rowSizes[entry.row()]++;
+            }
+        }
+        int[][] rowColumns = new int[A.numRows()][];
+        double[][] rowValues = new double[A.numRows()][];
+        for (int row = 0; row < A.numRows(); row++) {
+            rowColumns[row] = new int[rowSizes[row]];
+            rowValues[row] = new double[rowSizes[row]];
+            rowSizes[row] = 0;
+        }
+        for (MatrixEntry entry : A) {
+            if (entry.get() != 0) {
+                int idx = rowSizes[entry.row()]++;
+                rowColumns[entry.row()][idx] = entry.column();
+                rowValues[entry.row()][idx] = entry.get();
+            }
+        }
+        return newCompRowMatrix(A.numColumns(), rowColumns, rowValues);
+    }
+
+    /**
+     * Creates a {@link CompRowMatrix} from the entries of each of its rows
+     *
+     * @param numColumns
+     *            The number of columns. The number of rows is the length of
+     *            <code>rowColumns</code>
+     * @param rowColumns
+     *            The distinct columns of the entries of every row, in any order. Sorted in place
+     * @param rowValues
+     *            The values of the entries of every row, in the same order as their columns
+     * @return The matrix
+     */
+    static CompRowMatrix newCompRowMatrix(int numColumns, int[][] rowColumns,
+                                          double[][] rowValues) {
+        for (int row = 0; row < rowColumns.length; row++) {
+            int[] columns = rowColumns[row];
+            int[] unsorted = columns.clone();
+            Arrays.sort(columns);
+            double[] values = new double[columns.length];
+            for (int idx = 0; idx < unsorted.length; idx++) {
+                values[Arrays.binarySearch(columns, unsorted[idx])] = rowValues[row][idx];
+            }
+            rowValues[row] = values;
+        }
+        CompRowMatrix C = new CompRowMatrix(rowColumns.length, numColumns, rowColumns);
+        int[] rowPointers = C.getRowPointers();
+        double[] data = C.getData();
+        for (int row = 0; row < rowValues.length; row++) {
+            System.arraycopy(rowValues[row], 0, data, rowPointers[row], rowValues[row].length);
+        }
+        return C;
     }
 
     /**
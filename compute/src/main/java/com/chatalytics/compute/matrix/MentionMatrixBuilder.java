@@ -0,0 +1,173 @@
+package com.chatalytics.compute.matrix;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import no.uib.cipr.matrix.sparse.CompRowMatrix;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the matrix described in
+ * {@link GraphPartition#getMentionMatrix(List, java.util.function.Function,
+ * java.util.function.Function)} one <code>(x, y, occurrences)</code> triple at a time, so that
+ * callers can stream pre-aggregated rows into it without holding the mentions in memory. Only the
+ * distinct <code>X</code> and <code>Y</code> values and the triples themselves are kept.
+ * <p>
+ * Not thread safe.
+ *
+ * @author giannis
+ *
+ * @param <X>
+ *            The type of the column dimension, which becomes the labels of the result
+ * @param <Y>
+ *            The type of the row dimension
+ */
+public class MentionMatrixBuilder<X extends Serializable, Y extends Serializable> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<X, Integer> dimXToIdx;
+    private final Map<Y, Integer> dimYToIdx;
+    private final List<X> labels;
+    private int[] rows;
+    private int[] columns;
+    private double[] values;
+    private int size;
+
+    public MentionMatrixBuilder() {
+        this.dimXToIdx = Maps.newHashMap();
+        this.dimYToIdx = Maps.newHashMap();
+        this.labels = Lists.newArrayList();
+        this.rows = new int[INITIAL_CAPACITY];
+        this.columns = new int[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds the occurrences of <code>x</code> with <code>y</code>. Triples with the same values are
+     * summed up. A non null <code>x</code> always becomes a label, even if <code>y</code> is null.
+     *
+     * @param x
+     *            The column value, can be null
+     * @param y
+     *            The row value, can be null
+     * @param occurrences
+     *            The number of times <code>x</code> occurred with <code>y</code>
+     * @return This builder
+     */
+    public MentionMatrixBuilder<X, Y> add(X x, Y y, double occurrences) {
+        Integer columnIdx = null;
+        if (x != null) {
+            columnIdx = dimXToIdx.get(x);
+            if (columnIdx == null) {
+                columnIdx = labels.size();
+                dimXToIdx.put(x, columnIdx);
+                labels.add(x);
+            }
+        }
+        Integer rowIdx = null;
+        if (y != null) {
+            rowIdx = dimYToIdx.get(y);
+            if (rowIdx == null) {
+                rowIdx = dimYToIdx.size();
+                dimYToIdx.put(y, rowIdx);
+            }
+        }
+        if (rowIdx == null || columnIdx == null) {
+            return this;
+        }
+
+        if (size == rows.length) {
+            int capacity = size * 2;
+            rows = Arrays.copyOf(rows, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        rows[size] = rowIdx;
+        columns[size] = columnIdx;
+        values[size] = occurrences;
+        size++;
+        return this;
+    }
+
+    /**
+     * @return True if no <code>X</code> value was added
+     */
+    public boolean isEmpty() {
+        return labels.isEmpty();
+    }
+
+    /**
+     * Transpose multiplies the mention matrix with itself. <code>A = M'M</code> is built straight
+     * into compressed sparse rows, one row at a time: row <code>i</code> of <code>A</code> is the
+     * sum of the rows of <code>M</code> that have an entry in column <code>i</code>, weighted by
+     * that entry. This only touches the non zero products, so neither <code>M</code> nor
+     * <code>A</code> is ever dense.
+     *
+     * @return A square matrix with the distinct <code>X</code> values as labels, in the order they
+     *         were first added
+     */
+    public LabeledMTJMatrix<X> build() {
+        int n = labels.size();
+        // the triples grouped by row and by column of M
+        int[] rowPointers = getPointers(rows, dimYToIdx.size());
+        int[] columnPointers = getPointers(columns, n);
+        int[] byRow = new int[size];
+        int[] byColumn = new int[size];
+        int[] nextInRow = Arrays.copyOf(rowPointers, dimYToIdx.size());
+        int[] nextInColumn = Arrays.copyOf(columnPointers, n);
+        for (int i = 0; i < size; i++) {
+            byRow[nextInRow[rows[i]]++] = i;
+            byColumn[nextInColumn[columns[i]]++] = i;
+        }
+
+        int[][] rowColumns = new int[n][];
+        double[][] rowValues = new double[n][];
+        double[] accumulator = new double[n];
+        int[] lastRow = new int[n];
+        Arrays.fill(lastRow, -1);
+        int[] touched = new int[n];
+        for (int row = 0; row < n; row++) {
+            int numTouched = 0;
+            for (int c = columnPointers[row]; c < columnPointers[row + 1]; c++) {
+                int triple = byColumn[c];
+                int mRow = rows[triple];
+                for (int r = rowPointers[mRow]; r < rowPointers[mRow + 1]; r++) {
+                    int column = columns[byRow[r]];
+                    if (lastRow[column] != row) {
+                        lastRow[column] = row;
+                        accumulator[column] = 0;
+                        touched[numTouched++] = column;
+                    }
+                    accumulator[column] += values[triple] * values[byRow[r]];
+                }
+            }
+            rowColumns[row] = Arrays.copyOf(touched, numTouched);
+            rowValues[row] = new double[numTouched];
+            for (int idx = 0; idx < numTouched; idx++) {
+                rowValues[row][idx] = accumulator[touched[idx]];
+            }
+        }
+        CompRowMatrix A = GraphPartition.newCompRowMatrix(n, rowColumns, rowValues);
+        return LabeledMTJMatrix.of(A, Lists.newArrayList(labels));
+    }
+
+    /**
+     * @return The start of every index in the first <code>size</code> <code>indices</code>, with
+     *         <code>numIndices + 1</code> elements
+     */
+    private int[] getPointers(int[] indices, int numIndices) {
+        int[] pointers = new int[numIndices + 1];
+        for (int i = 0; i < size; i++) {
+            pointers[indices[i] + 1]++;
+        }
+        for (int i = 0; i < numIndices; i++) {
+            pointers[i + 1] += pointers[i];
+        }
+        return pointers;
+    }
+}
@@ -0,0 +1,416 @@
+package com.chatalytics.compute.matrix;
+
+import com.google.common.base.Preconditions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Finds the Fiedler vector of a graph, which is the eigenvector of the second smallest eigenvalue
+ * of its Laplacian <code>L = D - A</code>, without ever building <code>L</code> or a dense matrix.
+ * The adjacency matrix <code>A</code> is given in compressed sparse row form and every iteration
+ * costs one sparse matrix-vector product, so this scales with the number of edges instead of the
+ * cube of the number of nodes like a full eigen decomposition.
+ * <p>
+ * This runs the Lanczos method with full reorthogonalization on <code>&sigma;I - L</code>, where
+ * <code>&sigma;</code> bounds the largest eigenvalue of <code>L</code>, so that the smallest
+ * eigenvalues of <code>L</code> become the largest. The constant vector, which is always the
+ * eigenvector of the smallest eigenvalue, is projected out of every Lanczos vector. If the Ritz
+ * vector hasn't converged after <code>subspaceSize</code> steps, Lanczos is restarted from it. If
+ * it still hasn't converged after <code>maxRestarts</code> restarts, the best vector found is
+ * returned, flagged as not converged.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author giannis
+ */
+public class SparseFiedlerSolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SparseFiedlerSolver.class);
+
+    public static final int DEFAULT_SUBSPACE_SIZE = 150;
+    public static final int DEFAULT_MAX_RESTARTS = 20;
+    public static final double DEFAULT_TOLERANCE = 1e-8;
+
+    private static final double EPS = Math.ulp(1.0);
+    private static final int MAX_QL_ITERATIONS = 100;
+
+    private final int subspaceSize;
+    private final int maxRestarts;
+    private final double tolerance;
+    private final long seed;
+
+    public SparseFiedlerSolver() {
+        this(DEFAULT_SUBSPACE_SIZE, DEFAULT_MAX_RESTARTS, DEFAULT_TOLERANCE, 0);
+    }
+
+    /**
+     * @param subspaceSize
+     *            The maximum number of Lanczos vectors kept before restarting
+     * @param maxRestarts
+     *            The maximum number of restarts before giving up on convergence and returning the
+     *            best vector found so far
+     * @param tolerance
+     *            The residual norm, relative to the largest eigenvalue bound, at which the vector
+     *            is considered converged
+     * @param seed
+     *            Seed for the random starting vector, so that results are repeatable
+     */
+    public SparseFiedlerSolver(int subspaceSize, int maxRestarts, double tolerance, long seed) {
+        Preconditions.checkArgument(subspaceSize > 1, "Subspace size has to be > 1");
+        Preconditions.checkArgument(maxRestarts >= 0, "Max restarts has to be >= 0");
+        Preconditions.checkArgument(tolerance > 0, "Tolerance has to be > 0");
+        this.subspaceSize = subspaceSize;
+        this.maxRestarts = maxRestarts;
+        this.tolerance = tolerance;
+        this.seed = seed;
+    }
+
+    /**
+     * Computes the Fiedler vector of an undirected weighted graph
+     *
+     * @param n
+     *            The number of nodes
+     * @param rowPointers
+     *            The start of every row in <code>columns</code> and <code>values</code>, with
+     *            <code>n + 1</code> elements
+     * @param columns
+     *            The column of every non zero value of the symmetric adjacency matrix
+     * @param values
+     *            The non zero, non negative values of the symmetric adjacency matrix
+     * @return The Fiedler vector and its eigenvalue
+     */
+    public Result solve(int n, int[] rowPointers, int[] columns, double[] values) {
+        Preconditions.checkArgument(rowPointers.length == n + 1,
+                                    "Row pointers have to have n + 1 elements");
+        Laplacian laplacian = new Laplacian(n, rowPointers, columns, values);
+        if (n < 3 || laplacian.sigma == 0) {
+            // with two nodes or no edges every vector orthogonal to the constant vector is a
+            // Fiedler vector
+            double[] vector = new double[n];
+            if (n < 2) {
+                return new Result(vector, 0, 0, 0, true);
+            }
+            vector[0] = Math.sqrt(0.5);
+            vector[1] = -vector[0];
+            double eigenvalue = laplacian.sigma - dot(vector, laplacian.multiplyShifted(vector));
+            return new Result(vector, eigenvalue, 0, 0, true);
+        }
+
+        // the eigenvector of the smallest eigenvalue of L is the normalized constant vector
+        double[] constant = new double[n];
+        Arrays.fill(constant, 1 / Math.sqrt(n));
+
+        Random random = new Random(seed);
+        double[] start = new double[n];
+        for (int i = 0; i < n; i++) {
+            start[i] = random.nextDouble() - 0.5;
+        }
+
+        int steps = Math.min(subspaceSize, n - 1);
+        double[][] basis = new double[steps + 1][];
+        double[] alpha = new double[steps];
+        double[] beta = new double[steps];
+        double[] ritzVector = start;
+        double ritzValue = 0;
+        double residual = Double.MAX_VALUE;
+        int iterations = 0;
+        boolean converged = false;
+
+        for (int restart = 0; restart <= maxRestarts; restart++) {
+            double[] q = ritzVector.clone();
+            orthogonalize(q, constant);
+            if (normalize(q) == 0) {
+                break;
+            }
+            basis[0] = q;
+            int m = 0;
+            while (m < steps) {
+                double[] w = laplacian.multiplyShifted(basis[m]);
+                iterations++;
+                alpha[m] = dot(w, basis[m]);
+                // full reorthogonalization, done twice to keep the basis orthogonal to machine
+                // precision
+                for (int pass = 0; pass < 2; pass++) {
+                    orthogonalize(w, constant);
+                    for (int j = 0; j <= m; j++) {
+                        orthogonalize(w, basis[j]);
+                    }
+                }
+                beta[m] = normalize(w);
+                m++;
+                if (beta[m - 1] <= EPS * laplacian.sigma) {
+                    // the basis spans an invariant subspace
+                    break;
+                }
+                basis[m] = w;
+            }
+
+            // the largest eigenpair of the tridiagonal matrix gives the Ritz pair
+            double[] diagonal = Arrays.copyOf(alpha, m);
+            double[] offDiagonal = new double[m];
+            System.arraycopy(beta, 0, offDiagonal, 1, m - 1);
+            double[][] eigenvectors = tridiagonalEigen(diagonal, offDiagonal);
+            int largest = 0;
+            for (int i = 1; i < m; i++) {
+                if (diagonal[i] > diagonal[largest]) {
+                    largest = i;
+                }
+            }
+            ritzValue = diagonal[largest];
+            ritzVector = new double[n];
+            for (int j = 0; j < m; j++) {
+                axpy(eigenvectors[j][largest], basis[j], ritzVector);
+            }
+            normalize(ritzVector);
+
+            double[] r = laplacian.multiplyShifted(ritzVector);
+            axpy(-ritzValue, ritzVector, r);
+            residual = Math.sqrt(dot(r, r));
+            if (residual <= tolerance * laplacian.sigma) {
+                converged = true;
+                break;
+            }
+        }
+        if (!converged) {
+            LOG.warn("Fiedler vector of {} nodes didn't converge after {} restarts. "
+                         + "Residual is {}, tolerance is {}",
+                     n, maxRestarts, residual, tolerance * laplacian.sigma);
+        }
+        return new Result(ritzVector, laplacian.sigma - ritzValue, residual, iterations,
+                          converged);
+    }
+
+    /**
+     * The Laplacian of a graph given by its sparse adjacency matrix
+     */
+    private static class Laplacian {
+
+        private final int n;
+        private final int[] rowPointers;
+        private final int[] columns;
+        private final double[] values;
+        private final double[] degrees;
+        /**
+         * Upper bound of the largest eigenvalue, from the Gershgorin circle theorem
+         */
+        private final double sigma;
+
+        private Laplacian(int n, int[] rowPointers, int[] columns, double[] values) {
+            this.n = n;
+            this.rowPointers = rowPointers;
+            this.columns = columns;
+            this.values = values;
+            this.degrees = new double[n];
+            double maxRadius = 0;
+            for (int row = 0; row < n; row++) {
+                double selfLoop = 0;
+                for (int idx = rowPointers[row]; idx < rowPointers[row + 1]; idx++) {
+                    degrees[row] += values[idx];
+                    if (columns[idx] == row) {
+                        selfLoop += values[idx];
+                    }
+                }
+                // self loops cancel out in D - A
+                maxRadius = Math.max(maxRadius, 2 * (degrees[row] - selfLoop));
+            }
+            this.sigma = maxRadius;
+        }
+
+        /**
+         * @return <code>(&sigma;I - L) x</code>
+         */
+        private double[] multiplyShifted(double[] x) {
+            double[] y = new double[n];
+            for (int row = 0; row < n; row++) {
+                double sum = (sigma - degrees[row]) * x[row];
+                for (int idx = rowPointers[row]; idx < rowPointers[row + 1]; idx++) {
+                    sum += values[idx] * x[columns[idx]];
+                }
+                y[row] = sum;
+            }
+            return y;
+        }
+    }
+
+    /**
+     * Computes the eigenvalues and eigenvectors of a symmetric tridiagonal matrix with the QL
+     * algorithm with implicit shifts. This is the <code>tql2</code> routine of the public domain
+     * JAMA package.
+     *
+     * @param d
+     *            The diagonal. Replaced with the eigenvalues
+     * @param e
+     *            The subdiagonal in <code>e[1..n-1]</code>. Destroyed
+     * @return The eigenvectors as columns
+     */
+    static double[][] tridiagonalEigen(double[] d, double[] e) {
+        int n = d.length;
+        double[][] v = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            v[i][i] = 1;
+        }
+        for (int i = 1; i < n; i++) {
+            e[i - 1] = e[i];
+        }
+        e[n - 1] = 0;
+
+        double f = 0;
+        double tst1 = 0;
+        for (int l = 0; l < n; l++) {
+            tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+            int m = l;
+            while (m < n - 1 && Math.abs(e[m]) > EPS * tst1) {
+                m++;
+            }
+            if (m > l) {
+                int iteration = 0;
+                do {
+                    double g = d[l];
+                    double p = (d[l + 1] - g) / (2 * e[l]);
+                    double r = Math.hypot(p, 1);
+                    if (p < 0) {
+                        r = -r;
+                    }
+                    d[l] = e[l] / (p + r);
+                    d[l + 1] = e[l] * (p + r);
+                    double dl1 = d[l + 1];
+                    double h = g - d[l];
+                    for (int i = l + 2; i < n; i++) {
+                        d[i] -= h;
+                    }
+                    f += h;
+
+                    p = d[m];
+                    double c = 1;
+                    double c2 = c;
+                    double c3 = c;
+                    double el1 = e[l + 1];
+                    double s = 0;
+                    double s2 = 0;
+                    for (int i = m - 1; i >= l; i--) {
+                        c3 = c2;
+                        c2 = c;
+                        s2 = s;
+                        g = c * e[i];
+                        h = c * p;
+                        r = Math.hypot(p, e[i]);
+                        e[i + 1] = s * r;
+                        s = e[i] / r;
+                        c = p / r;
+                        p = c * d[i] - s * g;
+                        d[i + 1] = h + s * (c * g + s * d[i]);
+                        for (int k = 0; k < n; k++) {
+                            h = v[k][i + 1];
+                            v[k][i + 1] = s * v[k][i] + c * h;
+                            v[k][i] = c * v[k][i] - s * h;
+                        }
+                    }
+                    p = -s * s2 * c3 * el1 * e[l] / dl1;
+                    e[l] = s * p;
+                    d[l] = c * p;
+                } while (Math.abs(e[l]) > EPS * tst1 && ++iteration < MAX_QL_ITERATIONS);
+            }
+            d[l] += f;
+            e[l] = 0;
+        }
+        return v;
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double sum = 0;
+        for (int i = 0; i < x.length; i++) {
+            sum += x[i] * y[i];
+        }
+        return sum;
+    }
+
+    /**
+     * y += a * x
+     */
+    private static void axpy(double a, double[] x, double[] y) {
+        for (int i = 0; i < x.length; i++) {
+            y[i] += a * x[i];
+        }
+    }
+
+    /**
+     * Removes the component of <code>unit</code> from <code>x</code>
+     */
+    private static void orthogonalize(double[] x, double[] unit) {
+        axpy(-dot(x, unit), unit, x);
+    }
+
+    /**
+     * @return The norm of <code>x</code> before it was normalized
+     */
+    private static double normalize(double[] x) {
+        double norm = Math.sqrt(dot(x, x));
+        if (norm > 0) {
+            for (int i = 0; i < x.length; i++) {
+                x[i] /= norm;
+            }
+        }
+        return norm;
+    }
+
+    /**
+     * A Fiedler vector and how well it converged
+     */
+    public static class Result {
+
+        private final double[] vector;
+        private final double eigenvalue;
+        private final double residual;
+        private final int iterations;
+        private final boolean converged;
+
+        private Result(double[] vector, double eigenvalue, double residual, int iterations,
+                       boolean converged) {
+            this.vector = vector;
+            this.eigenvalue = eigenvalue;
+            this.residual = residual;
+            this.iterations = iterations;
+            this.converged = converged;
+        }
+
+        /**
+         * @return The unit length Fiedler vector
+         */
+        public double[] getVector() {
+            return vector;
+        }
+
+        /**
+         * @return The second smallest eigenvalue of the Laplacian, also known as the algebraic
+         *         connectivity of the graph
+         */
+        public double getEigenvalue() {
+            return eigenvalue;
+        }
+
+        /**
+         * @return The norm of <code>L v - &lambda; v</code>
+         */
+        public double getResidual() {
+            return residual;
+        }
+
+        /**
+         * @return The number of sparse matrix-vector products it took
+         */
+        public int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * @return False if the residual was still above the tolerance after all the restarts
+         */
+        public boolean isConverged() {
+            return converged;
+        }
+    }
+}
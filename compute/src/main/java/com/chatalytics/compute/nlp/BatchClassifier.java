@@ -0,0 +1,134 @@
+package com.chatalytics.compute.nlp;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import edu.stanford.nlp.ie.AbstractSequenceClassifier;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.Triple;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classifies batches of texts in parallel on a {@link ForkJoinPool}. Results are returned in the
+ * same order as the texts. By default all instances in a worker share one pool, so that running
+ * more executors doesn't oversubscribe the cores.
+ *
+ * @author giannis
+ */
+public class BatchClassifier {
+
+    private static ForkJoinPool sharedPool;
+
+    private final AbstractSequenceClassifier<CoreLabel> classifier;
+    private final ForkJoinPool pool;
+
+    // stats since the last call to getAndResetStats()
+    private final AtomicLong batches;
+    private final AtomicLong messages;
+    private final AtomicLong maxBatchSize;
+    private final AtomicLong totalLatencyNanos;
+    private final AtomicLong maxLatencyNanos;
+
+    /**
+     * Creates a classifier that runs on the worker wide pool
+     *
+     * @param classifier
+     *            The classifier to use
+     * @param parallelism
+     *            The parallelism of the shared pool, if it's not created yet. If less than 1, the
+     *            number of available cores is used
+     */
+    public BatchClassifier(AbstractSequenceClassifier<CoreLabel> classifier, int parallelism) {
+        this(classifier, getSharedPool(parallelism));
+    }
+
+    public BatchClassifier(AbstractSequenceClassifier<CoreLabel> classifier, ForkJoinPool pool) {
+        this.classifier = Preconditions.checkNotNull(classifier);
+        this.pool = Preconditions.checkNotNull(pool);
+        this.batches = new AtomicLong();
+        this.messages = new AtomicLong();
+        this.maxBatchSize = new AtomicLong();
+        this.totalLatencyNanos = new AtomicLong();
+        this.maxLatencyNanos = new AtomicLong();
+    }
+
+    private static synchronized ForkJoinPool getSharedPool(int parallelism) {
+        if (sharedPool == null) {
+            if (parallelism < 1) {
+                parallelism = Runtime.getRuntime().availableProcessors();
+            }
+            sharedPool = new ForkJoinPool(parallelism);
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Classifies the texts in parallel and waits for all of them to complete
+     *
+     * @param texts
+     *            The texts to classify. Null texts get no classifications
+     * @return The character offset classifications of every text, in the same order as the texts
+     */
+    public List<List<Triple<String, Integer, Integer>>> classify(List<String> texts) {
+        List<ForkJoinTask<List<Triple<String, Integer, Integer>>>> tasks =
+            Lists.newArrayListWithCapacity(texts.size());
+        for (String text : texts) {
+            tasks.add(pool.submit(() -> classify(text)));
+        }
+        List<List<Triple<String, Integer, Integer>>> result =
+            Lists.newArrayListWithCapacity(texts.size());
+        for (ForkJoinTask<List<Triple<String, Integer, Integer>>> task : tasks) {
+            result.add(task.join());
+        }
+
+        batches.incrementAndGet();
+        messages.addAndGet(texts.size());
+        maxBatchSize.accumulateAndGet(texts.size(), Math::max);
+        return result;
+    }
+
+    private List<Triple<String, Integer, Integer>> classify(String text) {
+        if (text == null) {
+            return ImmutableList.of();
+        }
+        long startNanos = System.nanoTime();
+        List<Triple<String, Integer, Integer>> classification =
+            classifier.classifyToCharacterOffsets(text);
+        long latencyNanos = System.nanoTime() - startNanos;
+        totalLatencyNanos.addAndGet(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+        return classification;
+    }
+
+    /**
+     * Returns the batch and per message classification latency stats since the last call to this
+     * method and resets them
+     *
+     * @return A map of stat name to value
+     */
+    public Map<String, Number> getAndResetStats() {
+        long numBatches = batches.getAndSet(0);
+        long numMessages = messages.getAndSet(0);
+        long totalLatency = totalLatencyNanos.getAndSet(0);
+        double avgBatchSize = numBatches == 0 ? 0 : (double) numMessages / numBatches;
+        double avgLatencyMs = numMessages == 0
+            ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(totalLatency) / numMessages / 1000;
+        return ImmutableMap.<String, Number>builder()
+                           .put("batches", numBatches)
+                           .put("messages", numMessages)
+                           .put("avgBatchSize", avgBatchSize)
+                           .put("maxBatchSize", maxBatchSize.getAndSet(0))
+                           .put("avgLatencyMs", avgLatencyMs)
+                           .put("maxLatencyMs",
+                                TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.getAndSet(0)))
+                           .build();
+    }
+}
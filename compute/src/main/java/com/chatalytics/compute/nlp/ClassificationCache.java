@@ -0,0 +1,111 @@
+package com.chatalytics.compute.nlp;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import edu.stanford.nlp.util.Triple;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bounded, least recently used cache of classification results keyed by a 128 bit hash of the
+ * classified text. Bots and integrations post the same text over and over, so caching the
+ * character offsets of the entities avoids running the classifier on every copy.
+ *
+ * @author giannis
+ */
+public class ClassificationCache {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final Cache<HashCode, List<Triple<String, Integer, Integer>>> cache;
+    private CacheStats lastStats;
+
+    /**
+     * @param maxSize
+     *            The maximum number of classifications to keep
+     */
+    public ClassificationCache(long maxSize) {
+        Preconditions.checkArgument(maxSize > 0, "Cache size has to be > 0");
+        this.cache = CacheBuilder.newBuilder()
+                                 .maximumSize(maxSize)
+                                 .recordStats()
+                                 .build();
+        this.lastStats = cache.stats();
+    }
+
+    /**
+     * @param text
+     *            The text to look up
+     * @return The cached classification of the text or null if it's not cached
+     */
+    public List<Triple<String, Integer, Integer>> getIfPresent(String text) {
+        return cache.getIfPresent(hash(text));
+    }
+
+    /**
+     * Caches the classification of a text
+     *
+     * @param text
+     *            The classified text
+     * @param classification
+     *            The character offsets of the entities in the text
+     */
+    public void put(String text, List<Triple<String, Integer, Integer>> classification) {
+        cache.put(hash(text), ImmutableList.copyOf(classification));
+    }
+
+    /**
+     * Gets the classification of a text from the cache or classifies it and caches it if it's not
+     * present
+     *
+     * @param text
+     *            The text to classify
+     * @param classifier
+     *            Classifies the text on a cache miss
+     * @return The character offsets of the entities in the text
+     */
+    public List<Triple<String, Integer, Integer>> get(
+            String text,
+            Function<String, List<Triple<String, Integer, Integer>>> classifier) {
+        List<Triple<String, Integer, Integer>> classification = getIfPresent(text);
+        if (classification == null) {
+            classification = classifier.apply(text);
+            put(text, classification);
+        }
+        return classification;
+    }
+
+    /**
+     * Returns the hits, misses and evictions since the last call to this method, along with the
+     * current size of the cache
+     *
+     * @return A map of stat name to value
+     */
+    public Map<String, Number> getAndResetStats() {
+        CacheStats currentStats = cache.stats();
+        CacheStats stats = currentStats.minus(lastStats);
+        lastStats = currentStats;
+        return ImmutableMap.<String, Number>builder()
+                           .put("hits", stats.hitCount())
+                           .put("misses", stats.missCount())
+                           .put("hitRatio", stats.hitRate())
+                           .put("evictions", stats.evictionCount())
+                           .put("size", cache.size())
+                           .build();
+    }
+
+    private static HashCode hash(String text) {
+        return HASH_FUNCTION.hashString(text, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+package com.chatalytics.compute.nlp;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Maps;
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.stanford.nlp.ie.AbstractSequenceClassifier;
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.ling.CoreLabel;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Worker wide registry of sequence classifiers. Every classifier model is deserialized once per JVM,
+ * the first time it's requested, and is then shared by all the executors running in that worker.
+ * Classifying text doesn't modify the classifier, so the same instance can be safely used by
+ * multiple threads. Concurrent requests for a model that is still loading wait for that load
+ * instead of starting a new one.
+ *
+ * @author giannis
+ */
+public class ClassifierRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClassifierRegistry.class);
+    private static final ClassifierRegistry INSTANCE =
+        new ClassifierRegistry(ClassifierRegistry::loadFromResource);
+
+    private final Function<String, AbstractSequenceClassifier<CoreLabel>> classifierLoader;
+    private final LoadingCache<String, LoadedClassifier> classifiers;
+
+    @VisibleForTesting
+    ClassifierRegistry(Function<String, AbstractSequenceClassifier<CoreLabel>> classifierLoader) {
+        this.classifierLoader = classifierLoader;
+        this.classifiers = CacheBuilder.newBuilder().build(CacheLoader.from(this::load));
+    }
+
+    /**
+     * @return The registry shared by everything running in this JVM
+     */
+    public static ClassifierRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the classifier for a model, loading it if this is the first time it's requested
+     *
+     * @param classifierResource
+     *            The resource path of the serialized classifier model
+     * @return The shared classifier
+     */
+    public AbstractSequenceClassifier<CoreLabel> getClassifier(String classifierResource) {
+        try {
+            LoadedClassifier loadedClassifier = classifiers.getUnchecked(classifierResource);
+            loadedClassifier.acquisitions.incrementAndGet();
+            return loadedClassifier.classifier;
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Returns, for every loaded model, the time it took to load it, the approximate heap it
+     * occupies and how many times it was requested.
+     *
+     * @return A map of stat name to value
+     */
+    public Map<String, Number> getStats() {
+        Map<String, LoadedClassifier> loaded = classifiers.asMap();
+        Map<String, Number> stats = Maps.newHashMapWithExpectedSize(loaded.size() * 3 + 1);
+        stats.put("loaded", loaded.size());
+        for (Map.Entry<String, LoadedClassifier> entry : loaded.entrySet()) {
+            String prefix = entry.getKey() + ".";
+            LoadedClassifier loadedClassifier = entry.getValue();
+            stats.put(prefix + "loadTimeMs", loadedClassifier.loadTimeMs);
+            stats.put(prefix + "heapBytes", loadedClassifier.heapBytes);
+            stats.put(prefix + "acquisitions", loadedClassifier.acquisitions.get());
+        }
+        return stats;
+    }
+
+    private LoadedClassifier load(String classifierResource) {
+        LOG.info("Loading classifier {}", classifierResource);
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeapBefore = runtime.totalMemory() - runtime.freeMemory();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+
+        AbstractSequenceClassifier<CoreLabel> classifier =
+            classifierLoader.apply(classifierResource);
+
+        long loadTimeMs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        // approximate since other threads allocate too and GC may run while loading
+        long heapBytes = Math.max(0, runtime.totalMemory() - runtime.freeMemory() - usedHeapBefore);
+        LOG.info("Loaded classifier {} in {}ms. Approximate heap size: {} bytes",
+                 classifierResource, loadTimeMs, heapBytes);
+        return new LoadedClassifier(classifier, loadTimeMs, heapBytes);
+    }
+
+    private static AbstractSequenceClassifier<CoreLabel> loadFromResource(String resource) {
+        URL classifierURL = Resources.getResource(resource);
+        return CRFClassifier.getClassifierNoExceptions(classifierURL.getPath());
+    }
+
+    private static class LoadedClassifier {
+
+        private final AbstractSequenceClassifier<CoreLabel> classifier;
+        private final long loadTimeMs;
+        private final long heapBytes;
+        private final AtomicLong acquisitions;
+
+        private LoadedClassifier(AbstractSequenceClassifier<CoreLabel> classifier,
+                                 long loadTimeMs, long heapBytes) {
+            this.classifier = classifier;
+            this.loadTimeMs = loadTimeMs;
+            this.heapBytes = heapBytes;
+            this.acquisitions = new AtomicLong();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.chatalytics.compute.nlp;
+
+import com.chatalytics.core.config.ComputeConfig;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Cheap checks that run before the entity classifier and skip messages that can't contain any
+ * entities, such as emoji only messages, URLs, code snippets and lowercase chatter. The rules are
+ * heuristics and trade a small loss in recall for not paying the classifier cost on those messages.
+ *
+ * @author giannis
+ */
+public class EntityPreFilter {
+
+    /**
+     * Characters that are much more common in code than in chat
+     */
+    private static final String CODE_CHARS = "{}[]();=<>";
+    private static final double CODE_CHARS_RATIO = 0.15;
+    private static final String CODE_BLOCK = "```";
+    /**
+     * Letters up to Latin Extended-B are considered latin
+     */
+    private static final char LAST_LATIN_CHAR = '\u024F';
+
+    private final int minLength;
+    private final boolean requireCapitalizedToken;
+    private final boolean skipCode;
+    private final double minLatinLetterRatio;
+
+    // stats since the last call to getAndResetStats()
+    private long checked;
+    private final long[] skipped;
+
+    /**
+     * @param minLength
+     *            Messages shorter than this, after trimming, are skipped
+     * @param requireCapitalizedToken
+     *            Skip messages that don't have a single token starting with an uppercase letter
+     * @param skipCode
+     *            Skip messages that look like code
+     * @param minLatinLetterRatio
+     *            Skip messages where the ratio of latin letters to all letters is less than this.
+     *            Set to 0 to disable
+     */
+    public EntityPreFilter(int minLength, boolean requireCapitalizedToken, boolean skipCode,
+                           double minLatinLetterRatio) {
+        this.minLength = minLength;
+        this.requireCapitalizedToken = requireCapitalizedToken;
+        this.skipCode = skipCode;
+        this.minLatinLetterRatio = minLatinLetterRatio;
+        this.skipped = new long[Rule.values().length];
+    }
+
+    /**
+     * Creates a filter from the entity filter settings in the {@link ComputeConfig}
+     *
+     * @param config
+     *            The compute config
+     * @return A filter
+     */
+    public static EntityPreFilter fromConfig(ComputeConfig config) {
+        return new EntityPreFilter(config.entityFilterMinLength,
+                                   config.entityFilterRequireCapitalizedToken,
+                                   config.entityFilterSkipCode,
+                                   config.entityFilterMinLatinLetterRatio);
+    }
+
+    /**
+     * Checks the text and counts the rule that skipped it, if any
+     *
+     * @param text
+     *            The text to check
+     * @return True if the text should be classified, false if it should be skipped
+     */
+    public boolean accept(String text) {
+        checked++;
+        Rule rule = check(text);
+        if (rule == null) {
+            return true;
+        }
+        skipped[rule.ordinal()]++;
+        return false;
+    }
+
+    /**
+     * @param text
+     *            The text to check
+     * @return The first rule that skips the text or null if the text should be classified
+     */
+    public Rule check(String text) {
+        if (text.trim().length() < minLength) {
+            return Rule.MIN_LENGTH;
+        }
+        if (skipCode && isCode(text)) {
+            return Rule.CODE;
+        }
+        if (minLatinLetterRatio > 0 && getLatinLetterRatio(text) < minLatinLetterRatio) {
+            return Rule.LANGUAGE;
+        }
+        if (requireCapitalizedToken && !hasCapitalizedToken(text)) {
+            return Rule.NO_CAPITALIZED_TOKEN;
+        }
+        return null;
+    }
+
+    private static boolean isCode(String text) {
+        if (text.contains(CODE_BLOCK)) {
+            return true;
+        }
+        int codeChars = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (CODE_CHARS.indexOf(text.charAt(i)) >= 0) {
+                codeChars++;
+            }
+        }
+        return codeChars > text.length() * CODE_CHARS_RATIO;
+    }
+
+    private static double getLatinLetterRatio(String text) {
+        int letters = 0;
+        int latinLetters = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (Character.isLetter(ch)) {
+                letters++;
+                if (ch <= LAST_LATIN_CHAR) {
+                    latinLetters++;
+                }
+            }
+        }
+        // nothing to judge the language on, so leave it to the other rules
+        return letters == 0 ? 1 : (double) latinLetters / letters;
+    }
+
+    private static boolean hasCapitalizedToken(String text) {
+        boolean tokenStart = true;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                tokenStart = true;
+            } else {
+                if (tokenStart && Character.isUpperCase(ch)) {
+                    return true;
+                }
+                tokenStart = false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns how many texts were checked and how many each rule skipped since the last call to
+     * this method and resets the counts
+     *
+     * @return A map of stat name to value
+     */
+    public Map<String, Number> getAndResetStats() {
+        Map<String, Number> stats = Maps.newHashMapWithExpectedSize(skipped.length + 1);
+        stats.put("checked", checked);
+        checked = 0;
+        for (Rule rule : Rule.values()) {
+            stats.put("skipped." + rule.statName, skipped[rule.ordinal()]);
+            skipped[rule.ordinal()] = 0;
+        }
+        return stats;
+    }
+
+    /**
+     * The rules a text can be skipped by
+     */
+    public enum Rule {
+        MIN_LENGTH("minLength"),
+        CODE("code"),
+        LANGUAGE("language"),
+        NO_CAPITALIZED_TOKEN("noCapitalizedToken");
+
+        private final String statName;
+
+        private Rule(String statName) {
+            this.statName = statName;
+        }
+    }
+}
@@ -6,13 +6,21 @@ import com.chatalytics.compute.storm.bolt.MessageSummaryBolt;
 import com.chatalytics.compute.storm.bolt.RealtimeBolt;
 import com.chatalytics.compute.storm.spout.HipChatMessageSpout;
 import com.chatalytics.compute.storm.spout.LocalTestSpout;
+import com.chatalytics.compute.storm.spout.MessageTuples;
 import com.chatalytics.compute.storm.spout.SlackBackfillSpout;
 import com.chatalytics.compute.storm.spout.SlackMessageSpout;
 import com.chatalytics.core.InputSourceType;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.TopologyConfig;
+import com.chatalytics.core.config.TopologyConfig.MessageGrouping;
 
+import org.apache.storm.Config;
 import org.apache.storm.generated.StormTopology;
+import org.apache.storm.topology.BoltDeclarer;
 import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.tuple.Fields;
+
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -24,39 +32,68 @@ public class ChatAlyticsStormTopology {
 
     public static StormTopology create(ChatAlyticsConfig config) {
         InputSourceType type = config.inputType;
+        TopologyConfig topologyConfig = config.computeConfig.topologyConfig;
         TopologyBuilder topologyBuilder = new TopologyBuilder();
         String inputSpoutId;
+        // the chat spouts can't split their rooms between instances, so every instance would
+        // emit every message. Only the local test spout, which makes up messages, can run more
         if (type == InputSourceType.HIPCHAT) {
             inputSpoutId = HipChatMessageSpout.SPOUT_ID;
-            topologyBuilder.setSpout(inputSpoutId, new HipChatMessageSpout());
+            topologyBuilder.setSpout(inputSpoutId, new HipChatMessageSpout(), 1);
         } else if (type == InputSourceType.SLACK) {
             inputSpoutId = SlackMessageSpout.SPOUT_ID;
-            topologyBuilder.setSpout(inputSpoutId, new SlackMessageSpout());
+            topologyBuilder.setSpout(inputSpoutId, new SlackMessageSpout(), 1);
         } else if (type == InputSourceType.SLACK_BACKFILL) {
             inputSpoutId = SlackBackfillSpout.SPOUT_ID;
-            topologyBuilder.setSpout(inputSpoutId, new SlackBackfillSpout());
+            topologyBuilder.setSpout(inputSpoutId, new SlackBackfillSpout(), 1);
         } else if (type == InputSourceType.LOCAL_TEST) {
             inputSpoutId = LocalTestSpout.SPOUT_ID;
-            topologyBuilder.setSpout(inputSpoutId, new LocalTestSpout());
+            topologyBuilder.setSpout(inputSpoutId, new LocalTestSpout(),
+                                     topologyConfig.spoutParallelism);
         } else {
             throw new RuntimeException("Can't determine input source type from " + type);
         }
 
         // entity extraction bolt
-        topologyBuilder.setBolt(EntityExtractionBolt.BOLT_ID, new EntityExtractionBolt())
-                       .shuffleGrouping(inputSpoutId);
+        BoltDeclarer entityBolt =
+            topologyBuilder.setBolt(EntityExtractionBolt.BOLT_ID, new EntityExtractionBolt(),
+                                    topologyConfig.entityExtractionParallelism);
+        subscribe(entityBolt, inputSpoutId, topologyConfig.messageGrouping);
 
         // emoji bolt
-        topologyBuilder.setBolt(EmojiCounterBolt.BOLT_ID, new EmojiCounterBolt())
-                       .shuffleGrouping(inputSpoutId);
+        BoltDeclarer emojiBolt =
+            topologyBuilder.setBolt(EmojiCounterBolt.BOLT_ID, new EmojiCounterBolt(),
+                                    topologyConfig.emojiCounterParallelism);
+        subscribe(emojiBolt, inputSpoutId, topologyConfig.messageGrouping);
 
         // message summary bolt
-        topologyBuilder.setBolt(MessageSummaryBolt.BOLT_ID, new MessageSummaryBolt())
-                       .shuffleGrouping(inputSpoutId);
+        BoltDeclarer messageSummaryBolt =
+            topologyBuilder.setBolt(MessageSummaryBolt.BOLT_ID, new MessageSummaryBolt(),
+                                    topologyConfig.messageSummaryParallelism);
+        subscribe(messageSummaryBolt, inputSpoutId, topologyConfig.messageGrouping);
+
+        // tick tuples close the aggregation window of the persisting bolts
+        int windowSecs = config.computeConfig.aggregationWindowSecs;
+        int entityTickSecs = windowSecs;
+        if (config.computeConfig.entityExtractionBatchSize > 1) {
+            // tick tuples also classify partial entity batches when no messages are coming in
+            long batchDelayMs = config.computeConfig.entityExtractionBatchMaxDelayMs;
+            int batchDelaySecs = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(batchDelayMs));
+            entityTickSecs = windowSecs > 0 ? Math.min(windowSecs, batchDelaySecs)
+                                            : batchDelaySecs;
+        }
+        if (entityTickSecs > 0) {
+            entityBolt.addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, entityTickSecs);
+        }
+        if (windowSecs > 0) {
+            emojiBolt.addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, windowSecs);
+            messageSummaryBolt.addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, windowSecs);
+        }
 
         if (config.computeConfig.enableRealtimeEvents) {
             // realtime bolt
-            topologyBuilder.setBolt(RealtimeBolt.BOLT_ID, new RealtimeBolt())
+            topologyBuilder.setBolt(RealtimeBolt.BOLT_ID, new RealtimeBolt(),
+                                    topologyConfig.realtimeParallelism)
                            .shuffleGrouping(EmojiCounterBolt.BOLT_ID)
                            .shuffleGrouping(EntityExtractionBolt.BOLT_ID)
                            .shuffleGrouping(MessageSummaryBolt.BOLT_ID);
@@ -64,4 +101,25 @@ public class ChatAlyticsStormTopology {
 
         return topologyBuilder.createTopology();
     }
+
+    /**
+     * Subscribes a bolt to the messages emitted by the input spout
+     *
+     * @param bolt
+     *            The bolt to subscribe
+     * @param inputSpoutId
+     *            The ID of the spout emitting the messages
+     * @param grouping
+     *            The key the messages are partitioned on
+     */
+    private static void subscribe(BoltDeclarer bolt, String inputSpoutId,
+                                  MessageGrouping grouping) {
+        if (grouping == MessageGrouping.ROOM) {
+            bolt.fieldsGrouping(inputSpoutId, new Fields(MessageTuples.ROOM_ID_FIELD_STR));
+        } else if (grouping == MessageGrouping.USER) {
+            bolt.fieldsGrouping(inputSpoutId, new Fields(MessageTuples.USER_ID_FIELD_STR));
+        } else {
+            bolt.shuffleGrouping(inputSpoutId);
+        }
+    }
 }
@@ -1,13 +1,20 @@
 package com.chatalytics.compute.storm.bolt;
 
 import com.chatalytics.compute.config.ConfigurationConstants;
+import com.chatalytics.compute.db.dao.BufferedMentionableWriter;
+import com.chatalytics.compute.storm.bolt.MentionAggregator.MentionFactory;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.ComputeConfig;
+import com.chatalytics.core.model.data.IMentionable;
 import com.chatalytics.core.util.YamlUtils;
 
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.base.BaseBasicBolt;
+import org.apache.storm.tuple.Tuple;
 
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Inherit from this bolt if you want your prepare method to be called with a
@@ -19,6 +26,8 @@ public abstract class ChatAlyticsBaseBolt extends BaseBasicBolt {
 
     private static final long serialVersionUID = -7961960405946887688L;
 
+    private transient MentionPersistence mentionPersistence;
+
     @Override
     public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context) {
         String configStr = (String) stormConf.get(ConfigurationConstants.CHATALYTICS_CONFIG.txt);
@@ -37,4 +46,108 @@ public abstract class ChatAlyticsBaseBolt extends BaseBasicBolt {
                                  @SuppressWarnings("rawtypes") Map stormConf,
                                  TopologyContext context);
 
+    /**
+     * Creates and starts a {@link BufferedMentionableWriter} based on the persistence settings in
+     * the {@link ComputeConfig}. The flush stats of the writer are registered as a bolt metric.
+     *
+     * @param config The {@link ChatAlyticsConfig}
+     * @param context Topology context
+     * @param metricName The name to register the writer metrics under
+     * @param persistFunc Function that persists a batch of values
+     * @param persistValueFunc Function that persists a single value, used when a batch fails
+     * @return A running {@link BufferedMentionableWriter}
+     */
+    protected <T extends IMentionable<?>> BufferedMentionableWriter<T> createWriter(
+            ChatAlyticsConfig config,
+            TopologyContext context,
+            String metricName,
+            Consumer<List<T>> persistFunc,
+            Consumer<T> persistValueFunc) {
+        return MentionPersistence.createWriter(config, context, metricName, persistFunc,
+                                               persistValueFunc);
+    }
+
+    /**
+     * Stops the writer, if it's running, which flushes all the buffered values
+     *
+     * @param writer The writer to stop. Can be null
+     */
+    protected void stopWriter(BufferedMentionableWriter<?> writer) {
+        MentionPersistence.stopWriter(writer);
+    }
+
+    /**
+     * Creates a {@link MentionAggregator} that combines mentions over the window configured in the
+     * {@link ComputeConfig} and writes them to the given writer. The window is closed by the first
+     * tick tuple the bolt receives after the whole window has elapsed, so bolts can get tick tuples
+     * more often than the window for other reasons. The aggregation stats are registered as a bolt
+     * metric.
+     *
+     * @param config The {@link ChatAlyticsConfig}
+     * @param context Topology context
+     * @param metricName The name to register the aggregator metrics under
+     * @param mentionFactory Creates the combined mentions
+     * @param writer The writer to write the combined mentions to
+     * @return A {@link MentionAggregator}
+     */
+    protected <K, T extends IMentionable<K>> MentionAggregator<K, T> createAggregator(
+            ChatAlyticsConfig config,
+            TopologyContext context,
+            String metricName,
+            MentionFactory<K, T> mentionFactory,
+            BufferedMentionableWriter<T> writer) {
+        return getMentionPersistence().createAggregator(config, context, metricName,
+                                                        mentionFactory, writer);
+    }
+
+    /**
+     * Closes the aggregation window if the tuple is a tick tuple and the window has elapsed. Call
+     * this at the beginning of execute and return if it's true.
+     *
+     * @param input The tuple the bolt received
+     * @return True if the tuple was a tick tuple, false otherwise
+     */
+    protected boolean handleTickTuple(Tuple input) {
+        if (!isTickTuple(input)) {
+            return false;
+        }
+        closeWindowIfElapsed(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Flushes all the aggregators if the current aggregation window has elapsed and starts a new
+     * window
+     *
+     * @param nowMs The current time
+     * @return True if the window was closed, false otherwise
+     */
+    protected boolean closeWindowIfElapsed(long nowMs) {
+        return getMentionPersistence().closeWindowIfElapsed(nowMs);
+    }
+
+    /**
+     * Flushes the current window of all the aggregators created with
+     * {@link #createAggregator(ChatAlyticsConfig, TopologyContext, String, MentionFactory,
+     * BufferedMentionableWriter)}
+     */
+    protected void flushAggregators() {
+        getMentionPersistence().flushAggregators();
+    }
+
+    /**
+     * @param input The tuple to check
+     * @return True if the tuple is a tick tuple sent by storm
+     */
+    protected static boolean isTickTuple(Tuple input) {
+        return MentionPersistence.isTickTuple(input);
+    }
+
+    private MentionPersistence getMentionPersistence() {
+        if (mentionPersistence == null) {
+            mentionPersistence = new MentionPersistence();
+        }
+        return mentionPersistence;
+    }
+
 }
@@ -0,0 +1,116 @@
+package com.chatalytics.compute.storm.bolt;
+
+import com.chatalytics.compute.config.ConfigurationConstants;
+import com.chatalytics.compute.db.dao.BufferedMentionableWriter;
+import com.chatalytics.compute.storm.bolt.MentionAggregator.MentionFactory;
+import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.model.data.IMentionable;
+import com.chatalytics.core.util.YamlUtils;
+
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.base.BaseRichBolt;
+import org.apache.storm.tuple.Tuple;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Same as {@link ChatAlyticsBaseBolt} for bolts that ack their input tuples themselves, for example
+ * because they hold on to them until a batch of them is processed. Inherit from this bolt if you
+ * want your prepare method to be called with a {@link ChatAlyticsConfig}
+ *
+ * @author giannis
+ */
+public abstract class ChatAlyticsBaseRichBolt extends BaseRichBolt {
+
+    private static final long serialVersionUID = 4107523395813602958L;
+
+    private transient MentionPersistence mentionPersistence;
+
+    @Override
+    public void prepare(@SuppressWarnings("rawtypes") Map stormConf, TopologyContext context,
+                        OutputCollector collector) {
+        String configStr = (String) stormConf.get(ConfigurationConstants.CHATALYTICS_CONFIG.txt);
+        ChatAlyticsConfig config = YamlUtils.readChatAlyticsConfigFromString(configStr);
+        prepare(config, stormConf, context, collector);
+    }
+
+    /**
+     * Prepare method to implement that also passes a {@link ChatAlyticsConfig}
+     *
+     * @param config The {@link ChatAlyticsConfig}
+     * @param stormConf The storm config
+     * @param context Topology context
+     * @param collector The collector to emit, ack and fail tuples with
+     */
+    public abstract void prepare(ChatAlyticsConfig config,
+                                 @SuppressWarnings("rawtypes") Map stormConf,
+                                 TopologyContext context,
+                                 OutputCollector collector);
+
+    /**
+     * @see ChatAlyticsBaseBolt#createWriter(ChatAlyticsConfig, TopologyContext, String, Consumer,
+     *      Consumer)
+     */
+    protected <T extends IMentionable<?>> BufferedMentionableWriter<T> createWriter(
+            ChatAlyticsConfig config,
+            TopologyContext context,
+            String metricName,
+            Consumer<List<T>> persistFunc,
+            Consumer<T> persistValueFunc) {
+        return MentionPersistence.createWriter(config, context, metricName, persistFunc,
+                                               persistValueFunc);
+    }
+
+    /**
+     * @see ChatAlyticsBaseBolt#stopWriter(BufferedMentionableWriter)
+     */
+    protected void stopWriter(BufferedMentionableWriter<?> writer) {
+        MentionPersistence.stopWriter(writer);
+    }
+
+    /**
+     * @see ChatAlyticsBaseBolt#createAggregator(ChatAlyticsConfig, TopologyContext, String,
+     *      MentionFactory, BufferedMentionableWriter)
+     */
+    protected <K, T extends IMentionable<K>> MentionAggregator<K, T> createAggregator(
+            ChatAlyticsConfig config,
+            TopologyContext context,
+            String metricName,
+            MentionFactory<K, T> mentionFactory,
+            BufferedMentionableWriter<T> writer) {
+        return getMentionPersistence().createAggregator(config, context, metricName,
+                                                        mentionFactory, writer);
+    }
+
+    /**
+     * @see ChatAlyticsBaseBolt#closeWindowIfElapsed(long)
+     */
+    protected boolean closeWindowIfElapsed(long nowMs) {
+        return getMentionPersistence().closeWindowIfElapsed(nowMs);
+    }
+
+    /**
+     * @see ChatAlyticsBaseBolt#flushAggregators()
+     */
+    protected void flushAggregators() {
+        getMentionPersistence().flushAggregators();
+    }
+
+    /**
+     * @param input The tuple to check
+     * @return True if the tuple is a tick tuple sent by storm
+     */
+    protected static boolean isTickTuple(Tuple input) {
+        return MentionPersistence.isTickTuple(input);
+    }
+
+    private MentionPersistence getMentionPersistence() {
+        if (mentionPersistence == null) {
+            mentionPersistence = new MentionPersistence();
+        }
+        return mentionPersistence;
+    }
+}
@@ -1,14 +1,21 @@
 package com.chatalytics.compute.storm.bolt;
 
+import com.chatalytics.compute.chat.dao.ChatAPIFactory;
+import com.chatalytics.compute.db.dao.BufferedMentionableWriter;
 import com.chatalytics.compute.db.dao.ChatAlyticsDAOFactory;
 import com.chatalytics.compute.db.dao.IEmojiDAO;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.emoji.EmojiScanner;
+import com.chatalytics.core.emoji.EmojiTrie;
+import com.chatalytics.core.emoji.LocalEmojiUtils;
+import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.model.data.EmojiEntity;
 import com.chatalytics.core.model.data.FatMessage;
 import com.chatalytics.core.model.data.Room;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import org.apache.storm.shade.com.google.common.collect.ImmutableList;
 import org.apache.storm.shade.com.google.common.collect.Lists;
@@ -18,12 +25,12 @@ import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Map;
-import java.util.PrimitiveIterator.OfInt;
 import java.util.Set;
 
 public class EmojiCounterBolt extends ChatAlyticsBaseBolt {
@@ -32,26 +39,40 @@ public class EmojiCounterBolt extends ChatAlyticsBaseBolt {
     public static final String BOLT_ID = "EMOJI_COUNTER_BOLT_ID";
     private static final String EMOJI_ENTITY_FIELD_STR = "emoji-entity";
     private static final Logger LOG = LoggerFactory.getLogger(EmojiCounterBolt.class);
-    private static Set<Character> BLACKLISTED_CHARS = ImmutableSet.of(' ', ',', '{', '}', '\t',
-                                                                      '\n', '/', '\\');
 
     private IEmojiDAO emojiDao;
+    private BufferedMentionableWriter<EmojiEntity> emojiWriter;
+    private MentionAggregator<String, EmojiEntity> emojiAggregator;
+    // not serializable, so it's created again in prepare
+    private transient EmojiScanner emojiScanner = new EmojiScanner();
 
     @Override
     public void prepare(ChatAlyticsConfig config, @SuppressWarnings("rawtypes") Map conf,
                         TopologyContext context) {
         this.emojiDao = ChatAlyticsDAOFactory.createEmojiDAO(config);
+        if (config.computeConfig.validateEmojis) {
+            this.emojiScanner = new EmojiScanner(':', createKnownEmojis(config));
+        } else {
+            this.emojiScanner = new EmojiScanner();
+        }
+        this.emojiWriter = createWriter(config, context, "emoji-writer", emojiDao::persistEmojis,
+                                        emojiDao::persistEmoji);
+        this.emojiAggregator = createAggregator(config, context, "emoji-aggregator",
+                                                EmojiEntity::new, emojiWriter);
     }
 
     @Override
     public void execute(Tuple input, BasicOutputCollector collector) {
+        if (handleTickTuple(input)) {
+            return;
+        }
         LOG.debug("Got tuple: {}", input);
         FatMessage fatMessage = (FatMessage) input.getValue(0);
 
         List<EmojiEntity> emojis = getEmojisFromMessage(fatMessage);
 
         for (EmojiEntity emoji : emojis) {
-            emojiDao.persistEmoji(emoji);
+            emojiAggregator.add(emoji);
             collector.emit(new Values(emoji));
         }
     }
@@ -64,68 +85,57 @@ public class EmojiCounterBolt extends ChatAlyticsBaseBolt {
             return ImmutableList.of();
         }
 
-        Map<String, EmojiEntity> emojis = Maps.newHashMap();
+        // only allocate once there is an emoji to count
+        Map<String, Integer> occurrences = null;
+        emojiScanner.reset(message);
+        while (emojiScanner.find()) {
+            if (occurrences == null) {
+                occurrences = Maps.newHashMap();
+            }
+            String emoji = message.substring(emojiScanner.start(), emojiScanner.end());
+            occurrences.merge(emoji, 1, Integer::sum);
+        }
 
-        OfInt charIterator = message.chars().iterator();
+        if (occurrences == null) {
+            return ImmutableList.of();
+        }
 
         Room room = fatMessage.getRoom();
         String roomName = null;
         if (room != null) {
             roomName = room.getName();
         }
-
-        boolean capturingEmoji = false;
-        StringBuilder emojiStrBuilder = new StringBuilder();
-
-        while (charIterator.hasNext()) {
-            int asciiValue = charIterator.next();
-            char ch = (char) asciiValue;
-            if (ch == ':') {
-                // done capturing
-                if (capturingEmoji) {
-
-                    // There's another : right after so continue capturing from there but skip this
-                    if (emojiStrBuilder.length() <= 0) {
-                        emojiStrBuilder = new StringBuilder();
-                        continue;
-                    }
-
-                    String emoji = emojiStrBuilder.toString();
-
-                    EmojiEntity existingEmoji = emojis.remove(emoji);
-                    int occurrences;
-                    if (existingEmoji == null) {
-                        occurrences = 1;
-                    } else {
-                        occurrences = existingEmoji.getOccurrences() + 1;
-                    }
-
-                    emojis.put(emoji, new EmojiEntity(fatMessage.getUser().getMentionName(),
-                                                      roomName,
-                                                      fatMessage.getMessage().getDate(),
-                                                      emoji,
-                                                      occurrences,
-                                                      fatMessage.getUser().isBot()));
-                    emojiStrBuilder = new StringBuilder();
-                }
-                capturingEmoji = !capturingEmoji;
-                continue;
-            }
-            if (capturingEmoji) {
-
-                if (BLACKLISTED_CHARS.contains(ch)) {
-                    capturingEmoji = !capturingEmoji;
-                    emojiStrBuilder = new StringBuilder();
-                    continue;
-                }
-
-                emojiStrBuilder.append(ch);
-            }
+        String username = fatMessage.getUser().getMentionName();
+        boolean isBot = fatMessage.getUser().isBot();
+        DateTime mentionTime = fatMessage.getMessage().getDate();
+
+        List<EmojiEntity> emojis = Lists.newArrayListWithCapacity(occurrences.size());
+        for (Map.Entry<String, Integer> entry : occurrences.entrySet()) {
+            emojis.add(new EmojiEntity(username, roomName, mentionTime, entry.getKey(),
+                                       entry.getValue(), isBot));
         }
 
         LOG.debug("Extracted {} emojis", emojis.size());
 
-        return Lists.newArrayList(emojis.values());
+        return emojis;
+    }
+
+    /**
+     * Builds a trie of the emojis in the unicode emoji file and the custom emojis of the chat, if
+     * they can be retrieved
+     */
+    private EmojiTrie createKnownEmojis(ChatAlyticsConfig config) {
+        ObjectMapper objectMapper = JsonObjectMapperFactory.createObjectMapper();
+        Set<String> emojiNames =
+            Sets.newHashSet(LocalEmojiUtils.getUnicodeEmojis(objectMapper).keySet());
+        try {
+            emojiNames.addAll(ChatAPIFactory.getChatApiDao(config).getEmojis().keySet());
+        } catch (RuntimeException e) {
+            LOG.warn("Can't get custom emojis. Only unicode emojis will be counted", e);
+        }
+        EmojiTrie knownEmojis = new EmojiTrie(emojiNames);
+        LOG.info("Validating emojis against {} known emojis", emojiNames.size());
+        return knownEmojis;
     }
 
     @Override
@@ -136,6 +146,8 @@ public class EmojiCounterBolt extends ChatAlyticsBaseBolt {
     @Override
     public void cleanup() {
         LOG.debug("Cleaning up {}", this.getClass().getSimpleName());
+        flushAggregators();
+        stopWriter(emojiWriter);
         if (emojiDao != null && emojiDao.isRunning()) {
             emojiDao.stopAsync().awaitTerminated();
         }
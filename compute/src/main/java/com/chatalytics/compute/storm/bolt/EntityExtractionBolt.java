@@ -1,8 +1,14 @@
 package com.chatalytics.compute.storm.bolt;
 
+import com.chatalytics.compute.db.dao.BufferedMentionableWriter;
 import com.chatalytics.compute.db.dao.ChatAlyticsDAOFactory;
 import com.chatalytics.compute.db.dao.IEntityDAO;
+import com.chatalytics.compute.nlp.BatchClassifier;
+import com.chatalytics.compute.nlp.ClassificationCache;
+import com.chatalytics.compute.nlp.ClassifierRegistry;
+import com.chatalytics.compute.nlp.EntityPreFilter;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.ComputeConfig;
 import com.chatalytics.core.model.data.ChatEntity;
 import com.chatalytics.core.model.data.FatMessage;
 import com.chatalytics.core.model.data.Message;
@@ -10,11 +16,11 @@ import com.chatalytics.core.model.data.Room;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.io.Resources;
 
+import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.shade.com.google.common.collect.ImmutableList;
+import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
-import org.apache.storm.topology.BasicOutputCollector;
 import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
@@ -23,23 +29,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.stanford.nlp.ie.AbstractSequenceClassifier;
-import edu.stanford.nlp.ie.crf.CRFClassifier;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.util.Triple;
 
-import java.net.URL;
 import java.util.List;
 import java.util.Map;
 
 /**
  * This bolt received one message at a time, parses the text of the message and extract entities.
- * Once the entities are extracted and a {@link ChatEntity} object is created, it's persisted to a
- * database.
+ * Once the entities are extracted and a {@link ChatEntity} object is created, it's buffered and
+ * persisted to a database in batches. If a batch size is configured, messages are instead collected
+ * and classified in parallel, and their entities are emitted in order once the batch completes.
+ * <p>
+ * The entities of a message are emitted anchored to the tuple of that message, and the tuple is
+ * only acked once its entities are written. Tuples of messages that can't be classified are failed
+ * so that they get replayed.
  *
  * @author giannis
  *
  */
-public class EntityExtractionBolt extends ChatAlyticsBaseBolt {
+public class EntityExtractionBolt extends ChatAlyticsBaseRichBolt {
 
     private static final long serialVersionUID = -1586393277809132608L;
     private static final Logger LOG = LoggerFactory.getLogger(EntityExtractionBolt.class);
@@ -50,44 +59,199 @@ public class EntityExtractionBolt extends ChatAlyticsBaseBolt {
 
     private AbstractSequenceClassifier<CoreLabel> classifier;
     private IEntityDAO entityDao;
+    private BufferedMentionableWriter<ChatEntity> entityWriter;
+    private MentionAggregator<String, ChatEntity> entityAggregator;
+    private ClassificationCache classificationCache;
+    private EntityPreFilter preFilter;
+    private OutputCollector collector;
+
+    // only set when messages are classified in batches
+    private BatchClassifier batchClassifier;
+    private List<Tuple> pendingTuples;
+    private int batchSize;
+    private long batchMaxDelayMs;
+    private long oldestPendingTimeMs;
 
     @Override
     public void prepare(ChatAlyticsConfig config, @SuppressWarnings("rawtypes") Map conf,
-                        TopologyContext context) {
+                        TopologyContext context, OutputCollector collector) {
+        this.collector = collector;
         classifier = getClassifier(config.computeConfig.classifier);
+        IMetric classifierMetric = ClassifierRegistry.getInstance()::getStats;
+        context.registerMetric("classifier-registry", classifierMetric,
+                               config.computeConfig.metricsTimeBucketSecs);
         entityDao = ChatAlyticsDAOFactory.createEntityDAO(config);
         if (!entityDao.isRunning()) {
             entityDao.startAsync().awaitRunning();
         }
+        entityWriter = createWriter(config, context, "entity-writer", entityDao::persistEntities,
+                                    entityDao::persistEntity);
+        entityAggregator = createAggregator(config, context, "entity-aggregator", ChatEntity::new,
+                                            entityWriter);
+
+        ComputeConfig computeConfig = config.computeConfig;
+        if (computeConfig.entityFilterEnabled) {
+            preFilter = EntityPreFilter.fromConfig(computeConfig);
+            IMetric filterMetric = preFilter::getAndResetStats;
+            context.registerMetric("entity-filter", filterMetric,
+                                   computeConfig.metricsTimeBucketSecs);
+        }
+        if (computeConfig.entityCacheSize > 0) {
+            classificationCache = new ClassificationCache(computeConfig.entityCacheSize);
+            IMetric cacheMetric = classificationCache::getAndResetStats;
+            context.registerMetric("entity-cache", cacheMetric,
+                                   computeConfig.metricsTimeBucketSecs);
+        }
+        if (computeConfig.entityExtractionBatchSize > 1) {
+            batchSize = computeConfig.entityExtractionBatchSize;
+            batchMaxDelayMs = computeConfig.entityExtractionBatchMaxDelayMs;
+            pendingTuples = Lists.newArrayListWithCapacity(batchSize);
+            batchClassifier = new BatchClassifier(classifier,
+                                                  computeConfig.entityExtractionThreads);
+            IMetric batchMetric = this::getAndResetBatchStats;
+            context.registerMetric("entity-batch", batchMetric,
+                                   computeConfig.metricsTimeBucketSecs);
+        }
     }
 
     /**
-     * Gets the classifier to use for parsing text
+     * Gets the classifier to use for parsing text. The classifier is shared with all the other
+     * executors running in this worker.
      *
      * @param config
      *            The configuration object containing information about which classifier to use.
      * @return The classifier to use for extracting entities.
      */
     private AbstractSequenceClassifier<CoreLabel> getClassifier(String classifierStr) {
-        URL classifierURL = Resources.getResource(classifierStr);
-        AbstractSequenceClassifier<CoreLabel> classifier =
-            CRFClassifier.getClassifierNoExceptions(classifierURL.getPath());
-        return classifier;
+        return ClassifierRegistry.getInstance().getClassifier(classifierStr);
     }
 
     @Override
-    public void execute(Tuple input, BasicOutputCollector collector) {
+    public void execute(Tuple input) {
+        if (isTickTuple(input)) {
+            // the pending batch has to be classified before the aggregation window is closed
+            classifyPendingMessages(true);
+            closeWindowIfElapsed(System.currentTimeMillis());
+            collector.ack(input);
+            return;
+        }
         LOG.debug("Got tuple: {}", input);
-        FatMessage fatMessage = (FatMessage) input.getValue(0);
 
-        List<ChatEntity> entities = extractEntities(fatMessage);
+        if (batchClassifier == null) {
+            List<ChatEntity> entities;
+            try {
+                entities = extractEntities(getFatMessage(input));
+            } catch (RuntimeException e) {
+                LOG.error("Can't extract the entities of {}", input, e);
+                collector.fail(input);
+                return;
+            }
+            writeAndEmit(input, entities, true);
+            collector.ack(input);
+            return;
+        }
+
+        if (pendingTuples.isEmpty()) {
+            oldestPendingTimeMs = System.currentTimeMillis();
+        }
+        pendingTuples.add(input);
+        if (pendingTuples.size() >= batchSize
+                || System.currentTimeMillis() - oldestPendingTimeMs >= batchMaxDelayMs) {
+            classifyPendingMessages(true);
+        }
+    }
+
+    /**
+     * Classifies the messages of all the pending tuples in parallel and then writes and emits their
+     * entities in the order the tuples were received. The tuples are acked once all the entities of
+     * the batch are written, or failed if the batch can't be classified.
+     *
+     * @param emit
+     *            If false, entities are only written and the tuples are neither acked nor failed
+     */
+    private void classifyPendingMessages(boolean emit) {
+        if (pendingTuples == null || pendingTuples.isEmpty()) {
+            return;
+        }
+        List<List<Triple<String, Integer, Integer>>> classifications;
+        try {
+            classifications = classifyPendingTuples();
+        } catch (RuntimeException e) {
+            LOG.error("Can't classify batch of {} messages", pendingTuples.size(), e);
+            if (emit) {
+                pendingTuples.forEach(collector::fail);
+            }
+            pendingTuples.clear();
+            return;
+        }
+        for (int i = 0; i < pendingTuples.size(); i++) {
+            Tuple tuple = pendingTuples.get(i);
+            writeAndEmit(tuple, toEntities(getFatMessage(tuple), classifications.get(i)), emit);
+        }
+        if (emit) {
+            pendingTuples.forEach(collector::ack);
+        }
+        pendingTuples.clear();
+    }
+
+    /**
+     * @return The classifications of the messages of the pending tuples, in the same order
+     */
+    private List<List<Triple<String, Integer, Integer>>> classifyPendingTuples() {
+        // only the texts that are not cached are sent to the classifier
+        List<List<Triple<String, Integer, Integer>>> classifications =
+            Lists.newArrayListWithCapacity(pendingTuples.size());
+        List<Integer> missIndexes = Lists.newArrayList();
+        List<String> missTexts = Lists.newArrayList();
+        for (Tuple tuple : pendingTuples) {
+            String text = getFatMessage(tuple).getMessage().getMessage();
+            List<Triple<String, Integer, Integer>> classification = null;
+            if (text == null || !shouldClassify(text)) {
+                classification = ImmutableList.of();
+            } else if (classificationCache != null) {
+                classification = classificationCache.getIfPresent(text);
+            }
+            if (classification == null) {
+                missIndexes.add(classifications.size());
+                missTexts.add(text);
+            }
+            classifications.add(classification);
+        }
+        if (!missTexts.isEmpty()) {
+            List<List<Triple<String, Integer, Integer>>> missClassifications =
+                batchClassifier.classify(missTexts);
+            for (int i = 0; i < missTexts.size(); i++) {
+                classifications.set(missIndexes.get(i), missClassifications.get(i));
+                if (classificationCache != null) {
+                    classificationCache.put(missTexts.get(i), missClassifications.get(i));
+                }
+            }
+        }
+        return classifications;
+    }
 
+    /**
+     * Writes the entities of a message and emits them anchored to the tuple of the message
+     */
+    private void writeAndEmit(Tuple input, List<ChatEntity> entities, boolean emit) {
         for (ChatEntity entity : entities) {
-            entityDao.persistEntity(entity);
-            collector.emit(new Values(entity));
+            entityAggregator.add(entity);
+            if (emit) {
+                collector.emit(input, new Values(entity));
+            }
         }
     }
 
+    private static FatMessage getFatMessage(Tuple input) {
+        return (FatMessage) input.getValue(0);
+    }
+
+    private Map<String, Number> getAndResetBatchStats() {
+        Map<String, Number> stats = Maps.newHashMap(batchClassifier.getAndResetStats());
+        stats.put("queueDepth", pendingTuples.size());
+        return stats;
+    }
+
     /**
      * Given a message this method uses a classifier to extract entities.
      *
@@ -101,12 +265,42 @@ public class EntityExtractionBolt extends ChatAlyticsBaseBolt {
         Message message = fatMessage.getMessage();
         String messageStr = message.getMessage();
 
-        if (messageStr == null) {
+        if (messageStr == null || !shouldClassify(messageStr)) {
             return ImmutableList.of();
         }
 
-        List<Triple<String,Integer,Integer>> classification =
-                classifier.classifyToCharacterOffsets(messageStr);
+        List<Triple<String, Integer, Integer>> classification;
+        if (classificationCache == null) {
+            classification = classifier.classifyToCharacterOffsets(messageStr);
+        } else {
+            classification = classificationCache.get(messageStr,
+                                                     classifier::classifyToCharacterOffsets);
+        }
+        return toEntities(fatMessage, classification);
+    }
+
+    /**
+     * @param text
+     *            The text of a message
+     * @return False if the pre-filter is enabled and the text can't contain entities
+     */
+    private boolean shouldClassify(String text) {
+        return preFilter == null || preFilter.accept(text);
+    }
+
+    /**
+     * Creates entities from the classification of a message
+     *
+     * @param fatMessage
+     *            The classified message
+     * @param classification
+     *            The character offsets of the entities in the text of the message
+     * @return A list of entities from the text
+     */
+    private List<ChatEntity> toEntities(FatMessage fatMessage,
+                                        List<Triple<String, Integer, Integer>> classification) {
+        Message message = fatMessage.getMessage();
+        String messageStr = message.getMessage();
         Map<String, ChatEntity> entities = Maps.newHashMapWithExpectedSize(classification.size());
 
         for (Triple<String, Integer, Integer> triple : classification) {
@@ -148,6 +342,9 @@ public class EntityExtractionBolt extends ChatAlyticsBaseBolt {
     @Override
     public void cleanup() {
         LOG.debug("Cleaning up {}", this.getClass().getSimpleName());
+        classifyPendingMessages(false);
+        flushAggregators();
+        stopWriter(entityWriter);
         if (entityDao != null && entityDao.isRunning()) {
             entityDao.stopAsync().awaitTerminated();
         }
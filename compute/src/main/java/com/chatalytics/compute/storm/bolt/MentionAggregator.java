@@ -0,0 +1,176 @@
+package com.chatalytics.compute.storm.bolt;
+
+import com.chatalytics.core.model.data.IMentionable;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import org.joda.time.DateTime;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Combines {@link IMentionable}s of the same value, by the same user, in the same room and with
+ * the same truncated mention time into a single mention with summed occurrences. Bolts add
+ * mentions as they come and {@link #flush()} the combined mentions at the end of every window,
+ * which is driven by tick tuples. This is not thread safe and is meant to be used from the
+ * executor thread of a bolt.
+ *
+ * @author giannis
+ *
+ * @param <K>
+ *            The type of the mention value
+ * @param <T>
+ *            The type of the mention
+ */
+public class MentionAggregator<K, T extends IMentionable<K>> {
+
+    private final MentionFactory<K, T> mentionFactory;
+    private final long truncationMs;
+    private final boolean windowed;
+    private final Consumer<T> sink;
+    private Map<MentionKey<K>, Integer> window;
+
+    // stats since the last call to getAndResetStats()
+    private long addedMentions;
+    private long flushedMentions;
+
+    /**
+     * @param mentionFactory
+     *            Creates the combined mentions
+     * @param truncationMs
+     *            The granularity mention times are truncated to
+     * @param windowed
+     *            If false, mentions are passed to the sink as they are added
+     * @param sink
+     *            Receives the combined mentions on every flush
+     */
+    public MentionAggregator(MentionFactory<K, T> mentionFactory, long truncationMs,
+                             boolean windowed, Consumer<T> sink) {
+        Preconditions.checkArgument(truncationMs > 0, "Time truncation has to be > 0");
+        this.mentionFactory = mentionFactory;
+        this.truncationMs = truncationMs;
+        this.windowed = windowed;
+        this.sink = sink;
+        this.window = Maps.newHashMap();
+    }
+
+    /**
+     * Adds a mention to the current window
+     *
+     * @param mention
+     *            The mention to add
+     */
+    public void add(T mention) {
+        addedMentions++;
+        if (!windowed) {
+            flushedMentions++;
+            sink.accept(mention);
+            return;
+        }
+        DateTime mentionTime = mention.getMentionTime();
+        long truncatedMillis = mentionTime.getMillis()
+            - Math.floorMod(mentionTime.getMillis(), truncationMs);
+        MentionKey<K> key = new MentionKey<>(mention,
+                                             new DateTime(truncatedMillis,
+                                                          mentionTime.getChronology()));
+        window.merge(key, mention.getOccurrences(), Integer::sum);
+    }
+
+    /**
+     * Sends all the combined mentions of the current window to the sink and starts a new window
+     *
+     * @return The number of combined mentions
+     */
+    public int flush() {
+        if (window.isEmpty()) {
+            return 0;
+        }
+        Map<MentionKey<K>, Integer> currentWindow = window;
+        window = Maps.newHashMap();
+        for (Map.Entry<MentionKey<K>, Integer> entry : currentWindow.entrySet()) {
+            MentionKey<K> key = entry.getKey();
+            sink.accept(mentionFactory.create(key.username, key.roomName, key.mentionTime,
+                                              key.value, entry.getValue(), key.bot));
+        }
+        flushedMentions += currentWindow.size();
+        return currentWindow.size();
+    }
+
+    /**
+     * @return The number of combined mentions in the current window
+     */
+    public int getWindowSize() {
+        return window.size();
+    }
+
+    /**
+     * Returns the number of added and flushed mentions since the last call to this method and
+     * resets them. Their ratio is how many rows the aggregation saved.
+     *
+     * @return A map of stat name to value
+     */
+    public Map<String, Number> getAndResetStats() {
+        Map<String, Number> stats = ImmutableMap.of("added", addedMentions,
+                                                    "flushed", flushedMentions,
+                                                    "windowSize", window.size());
+        addedMentions = 0;
+        flushedMentions = 0;
+        return stats;
+    }
+
+    /**
+     * Creates mentions
+     *
+     * @param <K>
+     *            The type of the mention value
+     * @param <T>
+     *            The type of the mention
+     */
+    @FunctionalInterface
+    public interface MentionFactory<K, T extends IMentionable<K>> {
+
+        T create(String username, String roomName, DateTime mentionTime, K value,
+                 int occurrences, boolean bot);
+    }
+
+    /**
+     * Identifies the mentions that get combined
+     */
+    private static class MentionKey<K> {
+
+        private final String username;
+        private final String roomName;
+        private final DateTime mentionTime;
+        private final K value;
+        private final boolean bot;
+
+        private MentionKey(IMentionable<K> mention, DateTime mentionTime) {
+            this.username = mention.getUsername();
+            this.roomName = mention.getRoomName();
+            this.mentionTime = mentionTime;
+            this.value = mention.getValue();
+            this.bot = mention.isBot();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MentionKey)) {
+                return false;
+            }
+            MentionKey<?> other = (MentionKey<?>) obj;
+            return mentionTime.getMillis() == other.mentionTime.getMillis()
+                && bot == other.bot
+                && Objects.equals(username, other.username)
+                && Objects.equals(roomName, other.roomName)
+                && Objects.equals(value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(username, roomName, mentionTime.getMillis(), value, bot);
+        }
+    }
+}
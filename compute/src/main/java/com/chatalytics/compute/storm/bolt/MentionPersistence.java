@@ -0,0 +1,124 @@
+package com.chatalytics.compute.storm.bolt;
+
+import com.chatalytics.compute.db.dao.BufferedMentionableWriter;
+import com.chatalytics.compute.storm.bolt.MentionAggregator.MentionFactory;
+import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.ComputeConfig;
+import com.chatalytics.core.model.data.IMentionable;
+import com.google.common.collect.Lists;
+
+import org.apache.storm.Constants;
+import org.apache.storm.metric.api.IMetric;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Creates the writers and aggregators bolts persist mentions with and closes the aggregation
+ * window. Shared by {@link ChatAlyticsBaseBolt} and {@link ChatAlyticsBaseRichBolt}.
+ *
+ * @author giannis
+ */
+class MentionPersistence {
+
+    /**
+     * Tick tuples are scheduled in whole seconds and can arrive a bit before the end of the window
+     * they were meant to close
+     */
+    private static final long WINDOW_TICK_TOLERANCE_MS = 500;
+
+    private final List<MentionAggregator<?, ?>> aggregators = Lists.newArrayList();
+    private long windowMs;
+    private long windowStartMs;
+
+    /**
+     * @see ChatAlyticsBaseBolt#createWriter(ChatAlyticsConfig, TopologyContext, String, Consumer,
+     *      Consumer)
+     */
+    static <T extends IMentionable<?>> BufferedMentionableWriter<T> createWriter(
+            ChatAlyticsConfig config,
+            TopologyContext context,
+            String metricName,
+            Consumer<List<T>> persistFunc,
+            Consumer<T> persistValueFunc) {
+        ComputeConfig computeConfig = config.computeConfig;
+        BufferedMentionableWriter<T> writer =
+            new BufferedMentionableWriter<>(persistFunc, persistValueFunc,
+                                            computeConfig.persistBatchSize,
+                                            computeConfig.persistFlushIntervalMs);
+        writer.startAsync().awaitRunning();
+
+        IMetric writerMetric = writer::getAndResetStats;
+        context.registerMetric(metricName, writerMetric, computeConfig.metricsTimeBucketSecs);
+        return writer;
+    }
+
+    /**
+     * @see ChatAlyticsBaseBolt#stopWriter(BufferedMentionableWriter)
+     */
+    static void stopWriter(BufferedMentionableWriter<?> writer) {
+        if (writer != null && writer.isRunning()) {
+            writer.stopAsync().awaitTerminated();
+        }
+    }
+
+    /**
+     * @see ChatAlyticsBaseBolt#createAggregator(ChatAlyticsConfig, TopologyContext, String,
+     *      MentionFactory, BufferedMentionableWriter)
+     */
+    <K, T extends IMentionable<K>> MentionAggregator<K, T> createAggregator(
+            ChatAlyticsConfig config,
+            TopologyContext context,
+            String metricName,
+            MentionFactory<K, T> mentionFactory,
+            BufferedMentionableWriter<T> writer) {
+        ComputeConfig computeConfig = config.computeConfig;
+        MentionAggregator<K, T> aggregator =
+            new MentionAggregator<>(mentionFactory,
+                                    computeConfig.aggregationTimeTruncationSecs * 1000L,
+                                    computeConfig.aggregationWindowSecs > 0,
+                                    writer::write);
+        if (aggregators.isEmpty()) {
+            windowMs = TimeUnit.SECONDS.toMillis(computeConfig.aggregationWindowSecs);
+            windowStartMs = System.currentTimeMillis();
+        }
+        aggregators.add(aggregator);
+
+        IMetric aggregatorMetric = aggregator::getAndResetStats;
+        context.registerMetric(metricName, aggregatorMetric, computeConfig.metricsTimeBucketSecs);
+        return aggregator;
+    }
+
+    /**
+     * @see ChatAlyticsBaseBolt#closeWindowIfElapsed(long)
+     */
+    boolean closeWindowIfElapsed(long nowMs) {
+        if (nowMs - windowStartMs < windowMs - WINDOW_TICK_TOLERANCE_MS) {
+            return false;
+        }
+        flushAggregators();
+        windowStartMs = nowMs;
+        return true;
+    }
+
+    /**
+     * @see ChatAlyticsBaseBolt#flushAggregators()
+     */
+    void flushAggregators() {
+        for (MentionAggregator<?, ?> aggregator : aggregators) {
+            aggregator.flush();
+        }
+    }
+
+    /**
+     * @param input The tuple to check
+     * @return True if the tuple is a tick tuple sent by storm
+     */
+    static boolean isTickTuple(Tuple input) {
+        return Constants.SYSTEM_COMPONENT_ID.equals(input.getSourceComponent())
+            && Constants.SYSTEM_TICK_STREAM_ID.equals(input.getSourceStreamId());
+    }
+}
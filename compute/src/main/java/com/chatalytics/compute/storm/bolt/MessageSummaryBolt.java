@@ -1,5 +1,6 @@
 package com.chatalytics.compute.storm.bolt;
 
+import com.chatalytics.compute.db.dao.BufferedMentionableWriter;
 import com.chatalytics.compute.db.dao.ChatAlyticsDAOFactory;
 import com.chatalytics.compute.db.dao.IMessageSummaryDAO;
 import com.chatalytics.core.config.ChatAlyticsConfig;
@@ -14,6 +15,8 @@ import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 
@@ -25,20 +28,33 @@ import java.util.Map;
 public class MessageSummaryBolt extends ChatAlyticsBaseBolt {
 
     private static final long serialVersionUID = 2580435620776513082L;
+    private static final Logger LOG = LoggerFactory.getLogger(MessageSummaryBolt.class);
 
     public static final String BOLT_ID = "MESSAGE_COUNTER_BOLT_ID";
     private static final String MESSAGE_SUMMARY_FIELD_STR = "message-summary";
 
     private IMessageSummaryDAO messageSummaryDao;
+    private BufferedMentionableWriter<MessageSummary> messageSummaryWriter;
+    private MentionAggregator<MessageType, MessageSummary> messageSummaryAggregator;
 
     @Override
     public void prepare(ChatAlyticsConfig config, @SuppressWarnings("rawtypes") Map stormConf,
                         TopologyContext context) {
         this.messageSummaryDao = ChatAlyticsDAOFactory.createMessageSummaryDAO(config);
+        this.messageSummaryWriter = createWriter(config, context, "message-summary-writer",
+                                                 messageSummaryDao::persistMessageSummaries,
+                                                 messageSummaryDao::persistMessageSummary);
+        this.messageSummaryAggregator = createAggregator(config, context,
+                                                         "message-summary-aggregator",
+                                                         MessageSummary::new,
+                                                         messageSummaryWriter);
     }
 
     @Override
     public void execute(Tuple input, BasicOutputCollector collector) {
+        if (handleTickTuple(input)) {
+            return;
+        }
         FatMessage fatMessage = (FatMessage) input.getValue(0);
         String username = null;
         String roomName = null;
@@ -55,7 +71,7 @@ public class MessageSummaryBolt extends ChatAlyticsBaseBolt {
         MessageSummary chatSummary = new MessageSummary(username, roomName, messageDate, type, 1,
                                                         isBot);
         collector.emit(new Values(chatSummary));
-        messageSummaryDao.persistMessageSummary(chatSummary);
+        messageSummaryAggregator.add(chatSummary);
     }
 
     @Override
@@ -63,4 +79,14 @@ public class MessageSummaryBolt extends ChatAlyticsBaseBolt {
         fields.declare(new Fields(MESSAGE_SUMMARY_FIELD_STR));
     }
 
+    @Override
+    public void cleanup() {
+        LOG.debug("Cleaning up {}", this.getClass().getSimpleName());
+        flushAggregators();
+        stopWriter(messageSummaryWriter);
+        if (messageSummaryDao != null && messageSummaryDao.isRunning()) {
+            messageSummaryDao.stopAsync().awaitTerminated();
+        }
+    }
+
 }
@@ -1,24 +1,28 @@
 package com.chatalytics.compute.storm.spout;
 
+import com.chatalytics.compute.chat.dao.AbstractJSONChatApiDAO;
 import com.chatalytics.compute.chat.dao.IChatApiDAO;
 import com.chatalytics.compute.chat.dao.hipchat.HipChatApiDAOFactory;
 import com.chatalytics.compute.config.ConfigurationConstants;
 import com.chatalytics.compute.db.dao.ChatAlyticsDAOFactory;
 import com.chatalytics.compute.db.dao.IChatAlyticsDAO;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.HipChatConfig;
 import com.chatalytics.core.model.data.FatMessage;
 import com.chatalytics.core.model.data.Message;
 import com.chatalytics.core.model.data.Room;
 import com.chatalytics.core.model.data.User;
 import com.chatalytics.core.util.YamlUtils;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.spout.SpoutOutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.topology.base.BaseRichSpout;
-import org.apache.storm.tuple.Fields;
-import org.apache.storm.tuple.Values;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
@@ -26,9 +30,17 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Spout that pulls messages from the hipchat API and emits {@link FatMessage}s to subscribed bolts.
+ * Every pull cycle gets the users once and then pulls the messages of up to
+ * {@link HipChatConfig#roomFetchConcurrency} rooms at the same time. The messages of a room are
+ * emitted as soon as they're pulled, so only the rooms that are being pulled are kept in memory.
  *
  * @author giannis
  */
@@ -43,6 +55,7 @@ public class HipChatMessageSpout extends BaseRichSpout {
     private DateTimeZone dtz;
     private SpoutOutputCollector collector;
     private IChatAlyticsDAO dbDao;
+    private ExecutorService roomFetchExecutor;
 
     @Override
     public void open(@SuppressWarnings("rawtypes") Map conf, TopologyContext context,
@@ -51,14 +64,35 @@ public class HipChatMessageSpout extends BaseRichSpout {
         ChatAlyticsConfig config = YamlUtils.readChatAlyticsConfigFromString(configYaml);
         LOG.info("Loaded config...");
 
-        hipchatDao = HipChatApiDAOFactory.getHipChatApiDao(config);
+        IChatApiDAO hipchatDao = HipChatApiDAOFactory.getHipChatApiDao(config);
         LOG.info("Got HipChat API DAO...");
+        if (hipchatDao instanceof AbstractJSONChatApiDAO) {
+            IMetric tokenMetric = ((AbstractJSONChatApiDAO) hipchatDao)::getAndResetTokenStats;
+            context.registerMetric("chat-api-tokens", tokenMetric,
+                                   config.computeConfig.metricsTimeBucketSecs);
+        }
 
-        dbDao = ChatAlyticsDAOFactory.createChatAlyticsDao(config);
+        IChatAlyticsDAO dbDao = ChatAlyticsDAOFactory.createChatAlyticsDao(config);
         LOG.info("Got database DAO...");
 
-        dtz = DateTimeZone.forID(config.timeZone);
+        HipChatConfig hipchatConfig = (HipChatConfig) config.computeConfig.chatConfig;
+        open(hipchatConfig, hipchatDao, dbDao, DateTimeZone.forID(config.timeZone), collector);
+    }
+
+    @VisibleForTesting
+    protected void open(HipChatConfig hipchatConfig, IChatApiDAO hipchatDao, IChatAlyticsDAO dbDao,
+                        DateTimeZone dtz, SpoutOutputCollector collector) {
+        Preconditions.checkArgument(hipchatConfig.roomFetchConcurrency > 0,
+                                    "Room fetch concurrency has to be > 0");
+        this.hipchatDao = hipchatDao;
+        this.dbDao = dbDao;
+        this.dtz = dtz;
         this.collector = collector;
+        this.roomFetchExecutor =
+            Executors.newFixedThreadPool(hipchatConfig.roomFetchConcurrency,
+                                         new ThreadFactoryBuilder().setDaemon(true)
+                                                                   .setNameFormat("hipchat-room-%d")
+                                                                   .build());
     }
 
     @Override
@@ -70,19 +104,7 @@ public class HipChatMessageSpout extends BaseRichSpout {
                      lastPullTime, newPullEndDate);
             return;
         }
-        Map<String, Room> rooms = hipchatDao.getRooms();
-        List<FatMessage> messagesToEmit = Lists.newArrayList();
-        for (Room room : rooms.values()) {
-            List<Message> messages = hipchatDao.getMessages(lastPullTime, newPullEndDate, room);
-            Map<String, User> users = hipchatDao.getUsers();
-            for (Message message : messages) {
-                User user = users.get(message.getFromUserId());
-                messagesToEmit.add(new FatMessage(message, user, room));
-            }
-        }
-        for (FatMessage fatMessage : messagesToEmit) {
-            collector.emit(new Values(fatMessage));
-        }
+        pullMessages(lastPullTime, newPullEndDate);
         try {
             Thread.sleep(1 * 60 * 60 * 1000); // sleep for 1h.
         } catch (InterruptedException e) {
@@ -90,9 +112,63 @@ public class HipChatMessageSpout extends BaseRichSpout {
         }
     }
 
+    /**
+     * Pulls the messages of all the rooms and emits them. The messages of every room are pulled
+     * in the background and emitted from the calling thread as soon as they're pulled, since the
+     * collector can only be used by the spout thread.
+     *
+     * @param start
+     *            The start of the pull interval inclusive
+     * @param end
+     *            The end of the pull interval exclusive
+     */
+    @VisibleForTesting
+    void pullMessages(DateTime start, DateTime end) {
+        Map<String, User> users = hipchatDao.getUsers();
+        Map<String, Room> rooms = hipchatDao.getRooms();
+
+        CompletionService<List<FatMessage>> roomFetches =
+            new ExecutorCompletionService<>(roomFetchExecutor);
+        for (Room room : rooms.values()) {
+            roomFetches.submit(() -> {
+                List<Message> messages = hipchatDao.getMessages(start, end, room);
+                List<FatMessage> fatMessages = Lists.newArrayListWithCapacity(messages.size());
+                for (Message message : messages) {
+                    User user = users.get(message.getFromUserId());
+                    fatMessages.add(new FatMessage(message, user, room));
+                }
+                return fatMessages;
+            });
+        }
+
+        for (int i = 0; i < rooms.size(); i++) {
+            List<FatMessage> fatMessages;
+            try {
+                fatMessages = roomFetches.take().get();
+            } catch (ExecutionException e) {
+                LOG.error("Can't pull the messages of a room. Skipping it", e.getCause());
+                continue;
+            } catch (InterruptedException e) {
+                LOG.error("Got interrupted while pulling messages.", e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (FatMessage fatMessage : fatMessages) {
+                collector.emit(MessageTuples.values(fatMessage));
+            }
+        }
+    }
+
     @Override
     public void declareOutputFields(OutputFieldsDeclarer fields) {
-        fields.declare(new Fields(HIPCHAT_MESSAGE_FIELD_STR));
+        fields.declare(MessageTuples.fields(HIPCHAT_MESSAGE_FIELD_STR));
+    }
+
+    @Override
+    public void close() {
+        if (roomFetchExecutor != null) {
+            roomFetchExecutor.shutdownNow();
+        }
     }
 
     private DateTime truncateDateTimeToHour(DateTime dateTime) {
@@ -11,30 +11,30 @@ import com.chatalytics.core.model.data.MessageType;
 import com.chatalytics.core.model.data.Room;
 import com.chatalytics.core.model.data.User;
 import com.chatalytics.core.util.YamlUtils;
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
 
 import org.apache.storm.shade.com.google.common.collect.Lists;
 import org.apache.storm.spout.SpoutOutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.topology.base.BaseRichSpout;
-import org.apache.storm.tuple.Fields;
-import org.apache.storm.tuple.Values;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * This spout will
+ * This spout emits random sentences from a corpus as messages from random local users in random
+ * local rooms. Messages are either emitted every <code>sleepMs</code> or at a fixed rate.
  *
  * @author giannis
  */
@@ -47,6 +47,8 @@ public class LocalTestSpout extends BaseRichSpout {
 
     private SpoutOutputCollector collector;
     private long sleepMs;
+    private long emitPeriodNanos;
+    private long nextEmitNanos;
     private Random rand;
     private DateTimeZone dtZone;
     private List<User> users;
@@ -66,6 +68,11 @@ public class LocalTestSpout extends BaseRichSpout {
         LocalTestConfig localConfig = (LocalTestConfig) config.computeConfig.chatConfig;
 
         this.sleepMs = localConfig.sleepMs;
+        if (localConfig.messagesPerSec > 0) {
+            long secondNanos = TimeUnit.SECONDS.toNanos(1);
+            this.emitPeriodNanos = (long) (secondNanos / localConfig.messagesPerSec);
+            this.nextEmitNanos = System.nanoTime();
+        }
         this.collector = collector;
         this.dtZone = DateTimeZone.forID(config.timeZone);
 
@@ -76,8 +83,9 @@ public class LocalTestSpout extends BaseRichSpout {
             throw new IllegalArgumentException("Can't find corpus. Specified: " + filename);
         }
         try {
-            this.sentences = Files.readAllLines(Paths.get(corpusURL.toURI()));
-        } catch (IOException | URISyntaxException e) {
+            // the corpus may be packaged in a jar so it can't be read as a file
+            this.sentences = Resources.readLines(corpusURL, Charsets.UTF_8);
+        } catch (IOException e) {
             throw new IllegalArgumentException("Can't read corpus. Specified: " + filename, e);
         }
 
@@ -96,6 +104,9 @@ public class LocalTestSpout extends BaseRichSpout {
 
     @Override
     public void nextTuple() {
+        if (emitPeriodNanos > 0) {
+            waitForNextEmit();
+        }
 
         User fromUser = users.get(rand.nextInt(users.size()));
         Room room = rooms.get(rand.nextInt(rooms.size()));
@@ -108,8 +119,11 @@ public class LocalTestSpout extends BaseRichSpout {
 
         FatMessage fatMessage = new FatMessage(message, fromUser, room);
 
-        collector.emit(new Values(fatMessage));
+        collector.emit(MessageTuples.values(fatMessage));
 
+        if (emitPeriodNanos > 0 || sleepMs <= 0) {
+            return;
+        }
         try {
             Thread.sleep(sleepMs);
         } catch (InterruptedException e) {
@@ -117,9 +131,21 @@ public class LocalTestSpout extends BaseRichSpout {
         }
     }
 
+    /**
+     * Waits until the next message is due. Emits are scheduled at a fixed rate, so if the spout
+     * falls behind it emits without waiting until it catches up.
+     */
+    private void waitForNextEmit() {
+        long waitNanos = nextEmitNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+        nextEmitNanos += emitPeriodNanos;
+    }
+
     @Override
     public void declareOutputFields(OutputFieldsDeclarer fields) {
-        fields.declare(new Fields(LOCAL_TEST_MESSAGE_FIELD_STR));
+        fields.declare(MessageTuples.fields(LOCAL_TEST_MESSAGE_FIELD_STR));
     }
 
     protected List<Room> getRooms() {
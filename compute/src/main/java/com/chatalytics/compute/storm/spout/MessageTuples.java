@@ -0,0 +1,43 @@
+package com.chatalytics.compute.storm.spout;
+
+import com.chatalytics.core.model.data.FatMessage;
+import com.chatalytics.core.model.data.Message;
+
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Values;
+
+/**
+ * Builds the tuples the spouts emit. Every tuple has the {@link FatMessage} as its first value,
+ * followed by the room and user IDs so that bolts can be subscribed with a fields grouping on
+ * either of them.
+ *
+ * @author giannis
+ */
+public class MessageTuples {
+
+    public static final String ROOM_ID_FIELD_STR = "room-id";
+    public static final String USER_ID_FIELD_STR = "user-id";
+
+    private MessageTuples() {
+        // hide constructor
+    }
+
+    /**
+     * @param messageField
+     *            The name of the field holding the {@link FatMessage}
+     * @return The output fields of a spout that emits {@link FatMessage}s
+     */
+    public static Fields fields(String messageField) {
+        return new Fields(messageField, ROOM_ID_FIELD_STR, USER_ID_FIELD_STR);
+    }
+
+    /**
+     * @param fatMessage
+     *            The message to emit
+     * @return The tuple values for the message
+     */
+    public static Values values(FatMessage fatMessage) {
+        Message message = fatMessage.getMessage();
+        return new Values(fatMessage, message.getRoomId(), message.getFromUserId());
+    }
+}
@@ -1,5 +1,6 @@
 package com.chatalytics.compute.storm.spout;
 
+import com.chatalytics.compute.chat.dao.AbstractJSONChatApiDAO;
 import com.chatalytics.compute.chat.dao.IChatApiDAO;
 import com.chatalytics.compute.chat.dao.slack.SlackApiDAOFactory;
 import com.chatalytics.compute.config.ConfigurationConstants;
@@ -15,15 +16,19 @@ import com.chatalytics.core.model.data.User;
 import com.chatalytics.core.util.YamlUtils;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.storm.shade.com.google.common.base.Preconditions;
 import org.apache.storm.shade.com.google.common.collect.Sets;
+import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.spout.SpoutOutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.topology.base.BaseRichSpout;
-import org.apache.storm.tuple.Fields;
-import org.apache.storm.tuple.Values;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Interval;
@@ -33,10 +38,21 @@ import org.slf4j.LoggerFactory;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Spout to be used for batching and/or back filling. Look at {@link SlackBackfillerConfig} for
- * configuration options. Note that this spout only supports {@link #MAX_BACKFILL_DAYS}
+ * configuration options. Note that this spout only supports {@link #MAX_BACKFILL_DAYS}. Rooms are
+ * backfilled concurrently, up to {@link SlackBackfillerConfig#roomConcurrency} at a time. Every
+ * room keeps its own pull time, so rooms that are already up to date are not fetched again after a
+ * failed or interrupted run.
  *
  * @author giannis
  */
@@ -48,12 +64,17 @@ public class SlackBackfillSpout extends BaseRichSpout {
     public static final String SPOUT_ID = "SLACK_BACKFILL_MESSAGE_SPOUT_ID";
     public static final String BACKFILL_SLACK_MESSAGE_FIELD_STR = "slack-message";
 
+    private static final long QUEUE_POLL_TIMEOUT_MS = 100;
+    private static final long PROGRESS_LOG_INTERVAL_MS = 30 * 1000;
+
     private DateTime initDate;
     private DateTime endDate;
     private SpoutOutputCollector collector;
     private int granularityMins;
     private IChatApiDAO slackDao;
     private IChatAlyticsDAO dbDao;
+    private ExecutorService backfillExecutor;
+    private BlockingQueue<BackfillItem> messageQueue;
 
     @Override
     public void open(@SuppressWarnings("rawtypes") Map conf, TopologyContext context,
@@ -63,9 +84,20 @@ public class SlackBackfillSpout extends BaseRichSpout {
         ChatAlyticsConfig config = YamlUtils.readChatAlyticsConfigFromString(configYaml);
         SlackBackfillerConfig chatConfig = (SlackBackfillerConfig) config.computeConfig.chatConfig;
         Preconditions.checkArgument(chatConfig.granularityMins >= 0, "Granularity has to be >= 0");
+        Preconditions.checkArgument(chatConfig.roomConcurrency > 0,
+                                    "Room concurrency has to be > 0");
+        Preconditions.checkArgument(chatConfig.messageQueueSize > 0,
+                                    "Message queue size has to be > 0");
+
+        IChatApiDAO slackApiDao = SlackApiDAOFactory.getSlackApiDao(config);
+        if (slackApiDao instanceof AbstractJSONChatApiDAO) {
+            IMetric tokenMetric = ((AbstractJSONChatApiDAO) slackApiDao)::getAndResetTokenStats;
+            context.registerMetric("chat-api-tokens", tokenMetric,
+                                   config.computeConfig.metricsTimeBucketSecs);
+        }
 
-        open(chatConfig, SlackApiDAOFactory.getSlackApiDao(config),
-             ChatAlyticsDAOFactory.createChatAlyticsDao(config), context, collector);
+        open(chatConfig, slackApiDao, ChatAlyticsDAOFactory.createChatAlyticsDao(config), context,
+             collector);
     }
 
     @VisibleForTesting
@@ -76,6 +108,12 @@ public class SlackBackfillSpout extends BaseRichSpout {
         this.collector = collector;
         this.slackDao = slackApiDao;
         this.dbDao = dbDao;
+        this.backfillExecutor =
+            Executors.newFixedThreadPool(chatConfig.roomConcurrency,
+                                         new ThreadFactoryBuilder().setDaemon(true)
+                                                                   .setNameFormat("backfill-%d")
+                                                                   .build());
+        this.messageQueue = new LinkedBlockingQueue<>(chatConfig.messageQueueSize);
 
         // get start date
         if (chatConfig.startDate != null) {
@@ -117,49 +155,173 @@ public class SlackBackfillSpout extends BaseRichSpout {
         dbDao.setLastMessagePullTime(runInterval.getEnd());
     }
 
+    /**
+     * Backfills up to {@link SlackBackfillerConfig#roomConcurrency} rooms at the same time. The
+     * rooms are fetched in the background and their messages are handed over through a bounded
+     * queue, which is drained by the calling thread, since only the spout thread can emit. Returns
+     * once all the messages of all the rooms are emitted.
+     * <p/>
+     * Every room is backfilled from its own pull time, if it's after the start of the run interval,
+     * and its pull time is moved to the end of the run interval once all of its messages are
+     * emitted. Rooms without a pull time are new, so they are backfilled from the configured start
+     * date. If no room has a pull time but earlier runs already moved the last pull time past the
+     * start date, the rooms were pulled before room pull times existed. Their pull times are then
+     * seeded with the start of the run interval so that their history is not pulled again.
+     *
+     * @throws RuntimeException
+     *             If any of the rooms couldn't be backfilled. All the other rooms are still emitted
+     */
     @VisibleForTesting
     protected void backfillRooms(Map<String, User> users, Map<String, Room> rooms,
                                  Interval runInterval) {
         Set<String> processedRoomNames = Sets.newHashSet(rooms.keySet());
-        int skippedUnknownMessages = 0;
+        AtomicInteger skippedUnknownMessages = new AtomicInteger();
+        AtomicInteger roomsLeft = new AtomicInteger(rooms.size());
+        Map<String, DateTime> roomPullTimes = dbDao.getRoomMessagePullTimes();
+        if (roomPullTimes.isEmpty() && initDate != null
+                && runInterval.getStart().isAfter(initDate)) {
+            roomPullTimes = seedRoomPullTimes(rooms.keySet(), runInterval.getStart());
+        }
         LOG.info("Backfilling {} rooms", rooms.size());
-        int roomNum = 0;
+
+        List<Future<?>> roomBackfills = Lists.newArrayListWithCapacity(rooms.size());
         for (Room room : rooms.values()) {
-            roomNum++;
             processedRoomNames.add(room.getName());
-
-            List<Message> messages = slackDao.getMessages(runInterval.getStart(),
-                                                          runInterval.getEnd(),
-                                                          room);
-            for (Message message : messages) {
-                User user = users.get(message.getFromUserId());
-                if (message.getType() == MessageType.UNKNOWN) {
-                    LOG.debug("Skipping unkown message type. {}", message);
-                    skippedUnknownMessages++;
-                    continue;
-                } else if  (user == null && message.getType() == MessageType.BOT_MESSAGE) {
-                    user = new User(message.getFromUserId(), null, false, false, true,
-                                    message.getFromName(), message.getFromName(), null,
-                                    DateTime.now(), null, null, null, null, null);
-                }
-                if (user == null) {
-                    LOG.warn("Can't find user with userId: {}. Skipping", message.getFromUserId());
-                    continue;
+            DateTime roomPullTime = roomPullTimes.get(room.getRoomId());
+            DateTime roomStart = getRoomStart(roomPullTime, runInterval);
+            if (!roomStart.isBefore(runInterval.getEnd())) {
+                LOG.debug("Room {} is already pulled until {}. Skipping", room.getName(),
+                          roomPullTime);
+                roomsLeft.decrementAndGet();
+                continue;
+            }
+            Interval roomInterval = new Interval(roomStart, runInterval.getEnd());
+            roomBackfills.add(backfillExecutor.submit(() -> {
+                try {
+                    backfillRoom(users, room, roomInterval, skippedUnknownMessages);
+                } finally {
+                    roomsLeft.decrementAndGet();
                 }
-                FatMessage fatMessage = new FatMessage(message, user, room);
-                collector.emit(new Values(fatMessage));
+                return null;
+            }));
+        }
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        long lastProgressMs = 0;
+        long emittedMessages = 0;
+        // the rooms put their messages before they're counted as done, so once there are no rooms
+        // left an empty queue means everything was emitted
+        while (roomsLeft.get() > 0 || !messageQueue.isEmpty()) {
+            BackfillItem item;
+            try {
+                item = messageQueue.poll(QUEUE_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while backfilling...");
+                Thread.currentThread().interrupt();
+                roomBackfills.forEach(roomBackfill -> roomBackfill.cancel(true));
+                messageQueue.clear();
+                return;
             }
-            logProgress(roomNum, rooms.size());
+            if (item != null && item.fatMessage != null) {
+                collector.emit(MessageTuples.values(item.fatMessage));
+                emittedMessages++;
+            } else if (item != null) {
+                // all the messages of the room that came before this were emitted
+                dbDao.setRoomMessagePullTime(item.finishedRoomId, runInterval.getEnd());
+            }
+            long elapsedMs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            if (elapsedMs - lastProgressMs >= PROGRESS_LOG_INTERVAL_MS) {
+                logProgress(rooms.size() - roomsLeft.get(), rooms.size(), emittedMessages,
+                            elapsedMs);
+                lastProgressMs = elapsedMs;
+            }
+        }
+        logProgress(rooms.size(), rooms.size(), emittedMessages,
+                    stopwatch.elapsed(TimeUnit.MILLISECONDS));
 
+        for (Future<?> roomBackfill : roomBackfills) {
+            try {
+                roomBackfill.get();
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
         LOG.info("Finished backfilling. Skipped {} unknown msgs. Processed {} rooms. They were: {}",
-                 skippedUnknownMessages, processedRoomNames.size(), processedRoomNames);
+                 skippedUnknownMessages.get(), processedRoomNames.size(), processedRoomNames);
+    }
+
+    /**
+     * Gets the messages of a room, builds a {@link FatMessage} for every one of them and puts them
+     * in the queue, waiting for space if it's full. Once all the messages are in the queue the room
+     * is marked as finished.
+     */
+    private void backfillRoom(Map<String, User> users, Room room, Interval runInterval,
+                              AtomicInteger skippedUnknownMessages) throws InterruptedException {
+        List<Message> messages = slackDao.getMessages(runInterval.getStart(),
+                                                      runInterval.getEnd(),
+                                                      room);
+        for (Message message : messages) {
+            User user = users.get(message.getFromUserId());
+            if (message.getType() == MessageType.UNKNOWN) {
+                LOG.debug("Skipping unkown message type. {}", message);
+                skippedUnknownMessages.incrementAndGet();
+                continue;
+            } else if  (user == null && message.getType() == MessageType.BOT_MESSAGE) {
+                user = new User(message.getFromUserId(), null, false, false, true,
+                                message.getFromName(), message.getFromName(), null,
+                                DateTime.now(), null, null, null, null, null);
+            }
+            if (user == null) {
+                LOG.warn("Can't find user with userId: {}. Skipping", message.getFromUserId());
+                continue;
+            }
+            messageQueue.put(new BackfillItem(new FatMessage(message, user, room), null));
+        }
+        messageQueue.put(new BackfillItem(null, room.getRoomId()));
+    }
+
+    private void logProgress(int roomsDone, int totalRooms, long emittedMessages, long elapsedMs) {
+        double elapsedSecs = Math.max(elapsedMs, 1) / 1000.0;
+        LOG.info("Backfilled {}/{} rooms and {} msgs in {}s. {} rooms/s, {} msgs/s",
+                 roomsDone, totalRooms, emittedMessages, String.format("%.1f", elapsedSecs),
+                 String.format("%.2f", roomsDone / elapsedSecs),
+                 String.format("%.1f", emittedMessages / elapsedSecs));
+    }
+
+    /**
+     * @return The start of the backfill of a room with the given pull time, which is null if the
+     *         room doesn't have one
+     */
+    private DateTime getRoomStart(DateTime roomPullTime, Interval runInterval) {
+        if (roomPullTime == null) {
+            if (initDate != null && initDate.isBefore(runInterval.getStart())) {
+                return initDate;
+            }
+            return runInterval.getStart();
+        }
+        if (roomPullTime.isAfter(runInterval.getStart())) {
+            return roomPullTime;
+        }
+        return runInterval.getStart();
     }
 
-    private void logProgress(int roomNum, int totalRooms) {
-        if (roomNum % 20 == 0) {
-            LOG.info("Successfully backfilled {}/{} rooms", roomNum, totalRooms);
+    /**
+     * Stores the same pull time for all the rooms
+     *
+     * @return The stored pull times by room ID
+     */
+    private Map<String, DateTime> seedRoomPullTimes(Set<String> roomIds, DateTime pullTime) {
+        LOG.info("No room pull times found. Seeding them for {} rooms with {}", roomIds.size(),
+                 pullTime);
+        Map<String, DateTime> roomPullTimes = Maps.newHashMapWithExpectedSize(roomIds.size());
+        for (String roomId : roomIds) {
+            dbDao.setRoomMessagePullTime(roomId, pullTime);
+            roomPullTimes.put(roomId, pullTime);
         }
+        return roomPullTimes;
     }
 
     /**
@@ -196,14 +358,32 @@ public class SlackBackfillSpout extends BaseRichSpout {
 
     @Override
     public void declareOutputFields(OutputFieldsDeclarer fields) {
-        fields.declare(new Fields(BACKFILL_SLACK_MESSAGE_FIELD_STR));
+        fields.declare(MessageTuples.fields(BACKFILL_SLACK_MESSAGE_FIELD_STR));
     }
 
     @Override
     public void close() {
+        if (backfillExecutor != null) {
+            backfillExecutor.shutdownNow();
+        }
         if (dbDao != null && dbDao.isRunning()) {
             dbDao.stopAsync().awaitTerminated();
         }
     }
 
+    /**
+     * Handed over from the room backfills to the spout thread. It's either a message to emit or a
+     * marker that all the messages of a room are already in the queue.
+     */
+    private static class BackfillItem {
+
+        private final FatMessage fatMessage;
+        private final String finishedRoomId;
+
+        private BackfillItem(FatMessage fatMessage, String finishedRoomId) {
+            this.fatMessage = fatMessage;
+            this.finishedRoomId = finishedRoomId;
+        }
+    }
+
 }
@@ -1,17 +1,22 @@
 package com.chatalytics.compute.storm.spout;
 
 import com.chatalytics.compute.chat.dao.ChatAPIFactory;
+import com.chatalytics.compute.chat.dao.ChatDirectory;
 import com.chatalytics.compute.chat.dao.IChatApiDAO;
 import com.chatalytics.compute.chat.dao.slack.JsonSlackDAO;
 import com.chatalytics.compute.config.ConfigurationConstants;
+import com.chatalytics.core.InputSourceType;
 import com.chatalytics.core.config.ChatAlyticsConfig;
 import com.chatalytics.core.config.SlackConfig;
+import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.model.data.FatMessage;
 import com.chatalytics.core.model.data.Message;
 import com.chatalytics.core.model.data.MessageType;
 import com.chatalytics.core.model.data.Room;
 import com.chatalytics.core.model.data.User;
 import com.chatalytics.core.util.YamlUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
@@ -20,8 +25,6 @@ import org.apache.storm.spout.SpoutOutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.topology.base.BaseRichSpout;
-import org.apache.storm.tuple.Fields;
-import org.apache.storm.tuple.Values;
 import org.glassfish.tyrus.container.jdk.client.JdkContainerProvider;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -41,10 +44,13 @@ import javax.websocket.WebSocketContainer;
 
 /**
  * Spout that pulls messages from the slack API and emits {@link FatMessage}s to subscribed bolts.
+ * The users and rooms messages are enriched with are kept in a {@link ChatDirectory} that's loaded
+ * when the spout opens and kept up to date from the user and channel events of the realtime
+ * stream.
  *
  * @author giannis
  */
-@ClientEndpoint(decoders = { WebSocketMessageDecoder.class })
+@ClientEndpoint
 public class SlackMessageSpout extends BaseRichSpout {
 
     private static final long serialVersionUID = -6294446748544704853L;
@@ -52,7 +58,15 @@ public class SlackMessageSpout extends BaseRichSpout {
     public static final String SPOUT_ID = "SLACK_MESSAGE_SPOUT_ID";
     public static final String SLACK_MESSAGE_FIELD_STR = "slack-message";
 
+    private static final String MESSAGE_EVENT = "message";
+    private static final String USER_CHANGE_EVENT = "user_change";
+    private static final String TEAM_JOIN_EVENT = "team_join";
+    private static final String CHANNEL_CREATED_EVENT = "channel_created";
+    private static final String CHANNEL_RENAME_EVENT = "channel_rename";
+
     private IChatApiDAO slackDao;
+    private ChatDirectory directory;
+    private ObjectMapper objectMapper;
     private SpoutOutputCollector collector;
 
     private final ConcurrentLinkedQueue<FatMessage> unemittedMessages;
@@ -82,6 +96,7 @@ public class SlackMessageSpout extends BaseRichSpout {
                         SpoutOutputCollector collector) {
         this.slackDao = slackDao;
         this.collector = collector;
+        this.objectMapper = JsonObjectMapperFactory.createObjectMapper(InputSourceType.SLACK);
 
         String startDateNullable = slackConfig.startDate;
         // get end date, if there is one
@@ -91,6 +106,14 @@ public class SlackMessageSpout extends BaseRichSpout {
             this.startDate = Optional.absent();
         }
 
+        this.directory = new ChatDirectory(slackDao, slackConfig.directoryRefreshIntervalSecs);
+        try {
+            directory.refresh();
+        } catch (RuntimeException e) {
+            LOG.error("Can't load the users and rooms. Will retry in the background", e);
+        }
+        directory.startAsync();
+
         openRealtimeConnection(slackConfig, webSocketContainer);
     }
 
@@ -144,6 +167,101 @@ public class SlackMessageSpout extends BaseRichSpout {
         return ((JsonSlackDAO) slackDao).getRealtimeWebSocketURI();
     }
 
+    /**
+     * Called when a new realtime event is received. The event is parsed once and dispatched on its
+     * type. Message events are turned into {@link FatMessage}s and user and channel events update
+     * the directory. All other events are ignored. Malformed events are logged and skipped so that
+     * they never reach the websocket error handler.
+     *
+     * @param event
+     *            The event JSON
+     * @param session
+     *            The active websocket session
+     */
+    @OnMessage
+    public void onEvent(String event, Session session) {
+        String type = null;
+        try {
+            JsonNode eventNode = objectMapper.readTree(event);
+            type = eventNode == null ? null : getText(eventNode, "type");
+            if (type == null) {
+                LOG.warn("Skipping event without a type {}", event);
+                return;
+            }
+            if (MESSAGE_EVENT.equals(type)) {
+                onMessageEvent(objectMapper.treeToValue(eventNode, Message.class), session);
+            } else {
+                onDirectoryEvent(eventNode);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Can't process {} event {}. Skipping", type, event, e);
+        }
+    }
+
+    /**
+     * Applies user and channel events to the directory
+     *
+     * @param event
+     *            The event
+     */
+    @VisibleForTesting
+    void onDirectoryEvent(JsonNode event) throws IOException {
+        String type = getText(event, "type");
+        if (USER_CHANGE_EVENT.equals(type) || TEAM_JOIN_EVENT.equals(type)) {
+            JsonNode userNode = event.get("user");
+            User user = userNode == null ? null : objectMapper.treeToValue(userNode, User.class);
+            if (user == null || user.getUserId() == null) {
+                LOG.warn("Skipping {} event without a user {}", type, event);
+                return;
+            }
+            LOG.debug("Updating user {} from {} event", user.getUserId(), type);
+            directory.putUser(user);
+        } else if (CHANNEL_CREATED_EVENT.equals(type) || CHANNEL_RENAME_EVENT.equals(type)) {
+            Room room = getRoomFromChannelEvent(event.path("channel"));
+            if (room == null) {
+                LOG.warn("Skipping {} event without a channel id and name {}", type, event);
+                return;
+            }
+            LOG.debug("Updating room {} from {} event", room.getRoomId(), type);
+            directory.putRoom(room);
+        }
+    }
+
+    /**
+     * Channel events only contain some of the channel fields, so the rest are kept from the room
+     * in the directory, if there is one
+     *
+     * @param channelNode
+     *            The channel of the event
+     * @return The updated room or null if the channel doesn't have an id or a name
+     */
+    private Room getRoomFromChannelEvent(JsonNode channelNode) {
+        String roomId = getText(channelNode, "id");
+        String name = getText(channelNode, "name");
+        if (roomId == null || name == null) {
+            return null;
+        }
+        Room room = directory.getRoom(roomId);
+        if (room != null) {
+            return new Room(roomId, name, room.getTopic(), room.getLastActiveDate(),
+                            room.getCreationDate(), room.getOwnerUserId(), room.isArchived(),
+                            room.isPrivateRoom(), room.getGuestAccessURL(), room.getXmppJid());
+        }
+        DateTime creationDate = new DateTime(channelNode.path("created").asLong() * 1000L,
+                                             DateTimeZone.UTC);
+        String ownerUserId = getText(channelNode, "creator");
+        return new Room(roomId, name, null, null, creationDate, ownerUserId, false,
+                        roomId.startsWith("G"), null, null);
+    }
+
+    /**
+     * @return The text of a field or null if the field is missing or is not text
+     */
+    private static String getText(JsonNode node, String fieldName) {
+        JsonNode fieldNode = node.get(fieldName);
+        return fieldNode != null && fieldNode.isTextual() ? fieldNode.asText() : null;
+    }
+
     /**
      * Called when a new chat message event is received. A {@link FatMessage} is created and pushed
      * to a concurrent queue for consumption.
@@ -153,7 +271,6 @@ public class SlackMessageSpout extends BaseRichSpout {
      * @param session
      *            The active websocket session
      */
-    @OnMessage
     public void onMessageEvent(Message message, Session session) {
         LOG.debug("Got event {}", message);
 
@@ -162,10 +279,7 @@ public class SlackMessageSpout extends BaseRichSpout {
             return;
         }
 
-        Map<String, User> users = slackDao.getUsers();
-        Map<String, Room> rooms = slackDao.getRooms();
-
-        User fromUser = users.get(message.getFromUserId());
+        User fromUser = directory.getUser(message.getFromUserId());
         if (fromUser == null && message.getType() == MessageType.BOT_MESSAGE) {
             fromUser = new User(message.getFromUserId(), null, false, false, true,
                                 message.getFromName(), message.getFromName(), null, DateTime.now(),
@@ -177,7 +291,7 @@ public class SlackMessageSpout extends BaseRichSpout {
             return;
         }
 
-        Room room = rooms.get(message.getRoomId());
+        Room room = directory.getRoom(message.getRoomId());
         if (room == null && message.getRoomId() != null) {
             room = new Room(message.getRoomId(), message.getRoomId(), null,
                             DateTime.now(DateTimeZone.UTC), null, null, false, true, null, null);
@@ -226,17 +340,20 @@ public class SlackMessageSpout extends BaseRichSpout {
     public void nextTuple() {
         while (!unemittedMessages.isEmpty()) {
             FatMessage fatMessage = unemittedMessages.remove();
-            collector.emit(new Values(fatMessage));
+            collector.emit(MessageTuples.values(fatMessage));
         }
     }
 
     @Override
     public void declareOutputFields(OutputFieldsDeclarer fields) {
-        fields.declare(new Fields(SLACK_MESSAGE_FIELD_STR));
+        fields.declare(MessageTuples.fields(SLACK_MESSAGE_FIELD_STR));
     }
 
     @Override
     public void close() {
+        if (directory != null) {
+            directory.stopAsync();
+        }
         if (session != null) {
             try {
                 session.close();
@@ -0,0 +1,146 @@
+package com.chatalytics.compute.chat.dao;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link AuthTokenScheduler}
+ *
+ * @author giannis
+ */
+public class AuthTokenSchedulerTest {
+
+    private AtomicLong nowNanos;
+    private Ticker ticker;
+
+    @Before
+    public void setUp() {
+        nowNanos = new AtomicLong();
+        ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nowNanos.get();
+            }
+        };
+    }
+
+    /**
+     * Makes sure that requests go to the token with the fewest requests in flight, or the fewest
+     * requests in the current minute if they have the same number of requests in flight
+     */
+    @Test
+    public void testAcquire_leastLoaded() throws Exception {
+        AuthTokenScheduler underTest = new AuthTokenScheduler(ImmutableList.of("a", "b"), 0,
+                                                              ticker);
+        assertEquals("a", underTest.acquire());
+        assertEquals("b", underTest.acquire());
+        underTest.release("a");
+        assertEquals("a", underTest.acquire());
+        assertEquals("b", underTest.acquire());
+        underTest.release("b");
+        underTest.release("b");
+        assertEquals("b", underTest.acquire());
+    }
+
+    @Test
+    public void testAcquire_noTokens() throws Exception {
+        assertNull(new AuthTokenScheduler(null, 0, ticker).acquire());
+        assertNull(new AuthTokenScheduler(ImmutableList.of(), 0, ticker).acquire());
+    }
+
+    /**
+     * Makes sure that throttled tokens are not used until the throttle time passes
+     */
+    @Test
+    public void testThrottle() throws Exception {
+        AuthTokenScheduler underTest = new AuthTokenScheduler(ImmutableList.of("a", "b"), 0,
+                                                              ticker);
+        String token = underTest.acquire();
+        assertEquals("a", token);
+        underTest.release(token);
+        underTest.throttle(token, 1000);
+        for (int i = 0; i < 3; i++) {
+            token = underTest.acquire();
+            assertEquals("b", token);
+            underTest.release(token);
+        }
+
+        nowNanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals("a", underTest.acquire());
+    }
+
+    /**
+     * Makes sure that callers wait when all the tokens are throttled
+     */
+    @Test
+    public void testThrottle_waitsForToken() throws Exception {
+        AuthTokenScheduler underTest = new AuthTokenScheduler(ImmutableList.of("a"), 0);
+        underTest.throttle("a", 50);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        assertEquals("a", underTest.acquire());
+        assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) >= 40);
+    }
+
+    /**
+     * Makes sure that tokens that used up their budget are not used until the next minute
+     */
+    @Test
+    public void testAcquire_budget() throws Exception {
+        AuthTokenScheduler underTest = new AuthTokenScheduler(ImmutableList.of("a", "b"), 1,
+                                                              ticker);
+        String token = underTest.acquire();
+        assertEquals("a", token);
+        underTest.release(token);
+        token = underTest.acquire();
+        assertEquals("b", token);
+        underTest.release(token);
+
+        nowNanos.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertEquals("a", underTest.acquire());
+        assertEquals("b", underTest.acquire());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_invalidBudget() {
+        new AuthTokenScheduler(ImmutableList.of("a"), -1);
+    }
+
+    @Test
+    public void testGetAndResetStats() throws Exception {
+        AuthTokenScheduler underTest = new AuthTokenScheduler(ImmutableList.of("a", "b"), 0,
+                                                              ticker);
+        underTest.throttle("b", 10000);
+        for (int i = 0; i < 2; i++) {
+            String token = underTest.acquire();
+            assertEquals("a", token);
+            underTest.release(token);
+        }
+        nowNanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        underTest.throttle("b", 1000);
+
+        Map<String, Number> stats = underTest.getAndResetStats();
+        assertEquals(2L, stats.get("token0.requests"));
+        assertEquals(1.0, stats.get("token0.requestsPerSec").doubleValue(), 0.001);
+        assertEquals(0L, stats.get("token0.throttles"));
+        assertEquals(0, stats.get("token0.throttled"));
+        assertEquals(0L, stats.get("token1.requests"));
+        assertEquals(2L, stats.get("token1.throttles"));
+        assertEquals(1, stats.get("token1.throttled"));
+
+        stats = underTest.getAndResetStats();
+        assertEquals(0L, stats.get("token0.requests"));
+        assertEquals(0L, stats.get("token1.throttles"));
+    }
+}
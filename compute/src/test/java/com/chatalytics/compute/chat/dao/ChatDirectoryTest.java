@@ -0,0 +1,75 @@
+package com.chatalytics.compute.chat.dao;
+
+import com.chatalytics.core.model.data.Room;
+import com.chatalytics.core.model.data.User;
+import com.google.common.collect.ImmutableMap;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link ChatDirectory}
+ *
+ * @author giannis
+ */
+public class ChatDirectoryTest {
+
+    private IChatApiDAO chatApiDao;
+    private ChatDirectory underTest;
+
+    @Before
+    public void setUp() {
+        chatApiDao = mock(IChatApiDAO.class);
+        underTest = new ChatDirectory(chatApiDao, 60);
+    }
+
+    @Test
+    public void testRefresh() {
+        User user = createUser("u1", "name");
+        Room room = createRoom("r1", "room");
+        when(chatApiDao.getUsers()).thenReturn(ImmutableMap.of("u1", user));
+        when(chatApiDao.getRooms()).thenReturn(ImmutableMap.of("r1", room));
+        assertNull(underTest.getUser("u1"));
+
+        underTest.refresh();
+        assertEquals(user, underTest.getUser("u1"));
+        assertEquals(room, underTest.getRoom("r1"));
+        assertNull(underTest.getUser("u2"));
+        assertNull(underTest.getRoom(null));
+
+        // users and rooms the API no longer returns are kept
+        when(chatApiDao.getUsers()).thenReturn(ImmutableMap.of());
+        underTest.refresh();
+        assertEquals(user, underTest.getUser("u1"));
+    }
+
+    @Test
+    public void testPut() {
+        underTest.putUser(createUser("u1", "name"));
+        underTest.putRoom(createRoom("r1", "room"));
+        underTest.putUser(createUser("u1", "new name"));
+        assertEquals("new name", underTest.getUser("u1").getName());
+        assertEquals("room", underTest.getRoom("r1").getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_invalidInterval() {
+        new ChatDirectory(chatApiDao, 0);
+    }
+
+    private static User createUser(String userId, String name) {
+        return new User(userId, null, false, false, false, name, name, null, DateTime.now(),
+                        DateTime.now(), null, null, null, null);
+    }
+
+    private static Room createRoom(String roomId, String name) {
+        return new Room(roomId, name, null, DateTime.now(), DateTime.now(), null, false, false,
+                        null, null);
+    }
+}
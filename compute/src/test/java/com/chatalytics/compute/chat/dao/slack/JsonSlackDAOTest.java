@@ -1,5 +1,6 @@
 package com.chatalytics.compute.chat.dao.slack;
 
+import com.chatalytics.compute.exception.ChatApiException;
 import com.chatalytics.compute.exception.NotConnectedException;
 import com.chatalytics.core.InputSourceType;
 import com.chatalytics.core.config.ChatAlyticsConfig;
@@ -10,8 +11,11 @@ import com.chatalytics.core.model.data.User;
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
 import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.WebResource.Builder;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
 
 import org.joda.time.DateTime;
 import org.junit.Before;
@@ -28,14 +32,18 @@ import java.util.List;
 import java.util.Map;
 
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -207,6 +215,18 @@ public class JsonSlackDAOTest {
         }
     }
 
+    /**
+     * Makes sure that an error response is not mistaken for an empty list of users
+     */
+    @Test(expected = ChatApiException.class)
+    public void testGetUsers_errorResponse() throws Exception {
+        WebResource mockUserResource = mock(WebResource.class);
+        when(mockResource.path("users.list")).thenReturn(mockUserResource);
+        doReturn("{\"ok\":false, \"error\":\"ratelimited\"}").when(underTest)
+            .getJsonResultWithRetries(mockUserResource, apiRetries);
+        underTest.getUsers();
+    }
+
     /**
      * Makes sure users for a given room are properly returned
      */
@@ -458,4 +478,102 @@ public class JsonSlackDAOTest {
         assertTrue(result.isEmpty());
     }
 
+    /**
+     * Makes sure that throttled requests are retried once the API allows it
+     */
+    @Test
+    public void testGetJsonResultWithRetries_throttled() throws Exception {
+        config.computeConfig.apiRetryBaseSleepMs = 0;
+        underTest = new JsonSlackDAO(config, mockClient);
+        WebResource resource = mock(WebResource.class);
+        WebResource tokenResource = mock(WebResource.class);
+        Builder builder = mock(Builder.class);
+        when(resource.queryParam("token", "0")).thenReturn(tokenResource);
+        when(tokenResource.accept(MediaType.APPLICATION_JSON)).thenReturn(builder);
+        ClientResponse throttledResponse = mock(ClientResponse.class);
+        when(throttledResponse.getStatus()).thenReturn(429);
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.putSingle("Retry-After", "0");
+        when(throttledResponse.getHeaders()).thenReturn(headers);
+        when(builder.get(String.class)).thenThrow(new UniformInterfaceException(throttledResponse))
+                                       .thenReturn("{\"ok\":true}");
+
+        assertEquals("{\"ok\":true}", underTest.getJsonResultWithRetries(resource, 1));
+        verify(builder, times(2)).get(String.class);
+        Map<String, Number> tokenStats = underTest.getAndResetTokenStats();
+        assertEquals(2L, tokenStats.get("token0.requests"));
+        assertEquals(1L, tokenStats.get("token0.throttles"));
+    }
+
+    /**
+     * Makes sure that an error is thrown instead of an empty result when the request is still
+     * throttled after all the retries
+     */
+    @Test
+    public void testGetJsonResultWithRetries_throttledTooManyTimes() throws Exception {
+        config.computeConfig.apiRetryBaseSleepMs = 0;
+        underTest = new JsonSlackDAO(config, mockClient);
+        WebResource resource = mock(WebResource.class);
+        Builder builder = mock(Builder.class);
+        when(resource.queryParam("token", "0")).thenReturn(resource);
+        when(resource.accept(MediaType.APPLICATION_JSON)).thenReturn(builder);
+        ClientResponse throttledResponse = mock(ClientResponse.class);
+        when(throttledResponse.getStatus()).thenReturn(429);
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.putSingle("Retry-After", "0");
+        when(throttledResponse.getHeaders()).thenReturn(headers);
+        when(builder.get(String.class)).thenThrow(new UniformInterfaceException(throttledResponse));
+
+        try {
+            underTest.getJsonResultWithRetries(resource, 2);
+            fail();
+        } catch (ChatApiException e) {
+            assertEquals(429, e.getStatus());
+        }
+        verify(builder, times(3)).get(String.class);
+    }
+
+    /**
+     * Makes sure that server errors are retried and an error is thrown if they don't go away
+     */
+    @Test
+    public void testGetJsonResultWithRetries_serverError() throws Exception {
+        config.computeConfig.apiRetryBaseSleepMs = 0;
+        underTest = new JsonSlackDAO(config, mockClient);
+        WebResource resource = mock(WebResource.class);
+        Builder builder = mock(Builder.class);
+        when(resource.queryParam("token", "0")).thenReturn(resource);
+        when(resource.accept(MediaType.APPLICATION_JSON)).thenReturn(builder);
+        ClientResponse errorResponse = mock(ClientResponse.class);
+        when(errorResponse.getStatus()).thenReturn(503);
+        when(builder.get(String.class)).thenThrow(new UniformInterfaceException(errorResponse));
+
+        try {
+            underTest.getJsonResultWithRetries(resource, 1);
+            fail();
+        } catch (ChatApiException e) {
+            assertEquals(503, e.getStatus());
+        }
+        verify(builder, times(2)).get(String.class);
+    }
+
+    /**
+     * Makes sure that client errors other than throttling are not retried
+     */
+    @Test
+    public void testGetJsonResultWithRetries_clientError() throws Exception {
+        config.computeConfig.apiRetryBaseSleepMs = 0;
+        underTest = new JsonSlackDAO(config, mockClient);
+        WebResource resource = mock(WebResource.class);
+        Builder builder = mock(Builder.class);
+        when(resource.queryParam("token", "0")).thenReturn(resource);
+        when(resource.accept(MediaType.APPLICATION_JSON)).thenReturn(builder);
+        ClientResponse notFoundResponse = mock(ClientResponse.class);
+        when(notFoundResponse.getStatus()).thenReturn(404);
+        when(builder.get(String.class)).thenThrow(new UniformInterfaceException(notFoundResponse));
+
+        assertEquals("{}", underTest.getJsonResultWithRetries(resource, 3));
+        verify(builder, times(1)).get(String.class);
+    }
+
 }
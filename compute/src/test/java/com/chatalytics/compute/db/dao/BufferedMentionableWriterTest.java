@@ -0,0 +1,194 @@
+package com.chatalytics.compute.db.dao;
+
+import com.chatalytics.core.model.data.EmojiEntity;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityExistsException;
+import javax.persistence.PessimisticLockException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link BufferedMentionableWriter}
+ *
+ * @author giannis
+ */
+public class BufferedMentionableWriterTest {
+
+    private List<List<EmojiEntity>> persistedBatches;
+    private List<EmojiEntity> persistedValues;
+    private DateTime mentionTime;
+
+    @Before
+    public void setUp() {
+        persistedBatches = Lists.newArrayList();
+        persistedValues = Lists.newArrayList();
+        mentionTime = DateTime.now();
+    }
+
+    /**
+     * Makes sure values get persisted as soon as the buffer fills up
+     */
+    @Test
+    public void testWrite_flushOnSize() {
+        BufferedMentionableWriter<EmojiEntity> underTest =
+            new BufferedMentionableWriter<>(persistedBatches::add, persistedValues::add, 2,
+                                            60 * 1000);
+
+        underTest.write(new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false));
+        assertTrue(persistedBatches.isEmpty());
+        assertEquals(1, underTest.getBufferedCount());
+
+        underTest.write(new EmojiEntity("u1", "r1", mentionTime, "e2", 1, false));
+        assertEquals(1, persistedBatches.size());
+        assertEquals(2, persistedBatches.get(0).size());
+        assertEquals(0, underTest.getBufferedCount());
+
+        Map<String, Number> stats = underTest.getAndResetStats();
+        assertEquals(1L, stats.get("flushes"));
+        assertEquals(2L, stats.get("values"));
+        assertEquals(2L, stats.get("maxBatchSize"));
+
+        // stats should reset
+        stats = underTest.getAndResetStats();
+        assertEquals(0L, stats.get("flushes"));
+    }
+
+    /**
+     * Makes sure values get persisted when the flush interval passes
+     */
+    @Test
+    public void testWrite_flushOnTime() throws Exception {
+        BufferedMentionableWriter<EmojiEntity> underTest =
+            new BufferedMentionableWriter<>(persistedBatches::add, persistedValues::add, 100, 10);
+        underTest.startAsync().awaitRunning();
+
+        underTest.write(new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false));
+
+        long waitUntilMs = System.currentTimeMillis() + 5000;
+        while (underTest.getBufferedCount() > 0 && System.currentTimeMillis() < waitUntilMs) {
+            Thread.sleep(10);
+        }
+        underTest.stopAsync().awaitTerminated();
+
+        assertEquals(1, persistedBatches.size());
+        assertEquals(1, persistedBatches.get(0).size());
+    }
+
+    /**
+     * Makes sure remaining values are persisted when the writer stops
+     */
+    @Test
+    public void testStop_flushesRemaining() {
+        BufferedMentionableWriter<EmojiEntity> underTest =
+            new BufferedMentionableWriter<>(persistedBatches::add, persistedValues::add, 100,
+                                            60 * 1000);
+        underTest.startAsync().awaitRunning();
+
+        underTest.write(new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false));
+        underTest.write(new EmojiEntity("u1", "r1", mentionTime, "e2", 1, false));
+        underTest.stopAsync().awaitTerminated();
+
+        assertEquals(1, persistedBatches.size());
+        assertEquals(2, persistedBatches.get(0).size());
+    }
+
+    /**
+     * Makes sure batches that fail on a lock are retried
+     */
+    @Test
+    public void testWrite_retriesTransientFailure() {
+        AtomicInteger attempts = new AtomicInteger();
+        Consumer<List<EmojiEntity>> persistFunc = batch -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new PessimisticLockException();
+            }
+            persistedBatches.add(batch);
+        };
+        BufferedMentionableWriter<EmojiEntity> underTest =
+            new BufferedMentionableWriter<>(persistFunc, persistedValues::add, 1, 60 * 1000);
+
+        underTest.write(new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false));
+        assertEquals(2, attempts.get());
+        assertEquals(1, persistedBatches.size());
+        assertTrue(persistedValues.isEmpty());
+
+        Map<String, Number> stats = underTest.getAndResetStats();
+        assertEquals(1L, stats.get("values"));
+        assertEquals(1L, stats.get("retries"));
+        assertEquals(0L, stats.get("dropped"));
+    }
+
+    /**
+     * Makes sure that when a batch can't be stored only the values that fail on their own are
+     * dropped
+     */
+    @Test
+    public void testWrite_fallsBackToSingleValues() {
+        AtomicInteger attempts = new AtomicInteger();
+        Consumer<List<EmojiEntity>> persistFunc = batch -> {
+            attempts.incrementAndGet();
+            throw new EntityExistsException();
+        };
+        EmojiEntity badEmoji = new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false);
+        Consumer<EmojiEntity> persistValueFunc = value -> {
+            if (value == badEmoji) {
+                throw new EntityExistsException();
+            }
+            persistedValues.add(value);
+        };
+        BufferedMentionableWriter<EmojiEntity> underTest =
+            new BufferedMentionableWriter<>(persistFunc, persistValueFunc, 2, 60 * 1000);
+
+        EmojiEntity goodEmoji = new EmojiEntity("u1", "r1", mentionTime, "e2", 1, false);
+        underTest.write(badEmoji);
+        underTest.write(goodEmoji);
+        // not transient, so it shouldn't be retried
+        assertEquals(1, attempts.get());
+        assertEquals(ImmutableList.of(goodEmoji), persistedValues);
+
+        Map<String, Number> stats = underTest.getAndResetStats();
+        assertEquals(1L, stats.get("values"));
+        assertEquals(0L, stats.get("retries"));
+        assertEquals(1L, stats.get("dropped"));
+    }
+
+    /**
+     * Makes sure batches that keep failing transiently are given up on after a few attempts
+     */
+    @Test
+    public void testWrite_givesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        Consumer<List<EmojiEntity>> persistFunc = batch -> {
+            attempts.incrementAndGet();
+            throw new PessimisticLockException();
+        };
+        BufferedMentionableWriter<EmojiEntity> underTest =
+            new BufferedMentionableWriter<>(persistFunc, persistedValues::add, 1, 60 * 1000);
+
+        underTest.write(new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false));
+        assertEquals(BufferedMentionableWriter.MAX_BATCH_ATTEMPTS, attempts.get());
+        assertEquals(1, persistedValues.size());
+
+        Map<String, Number> stats = underTest.getAndResetStats();
+        assertEquals(BufferedMentionableWriter.MAX_BATCH_ATTEMPTS - 1L, stats.get("retries"));
+        assertEquals(0L, stats.get("dropped"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_badBatchSize() {
+        new BufferedMentionableWriter<EmojiEntity>(persistedBatches::add, persistedValues::add,
+                                                    0, 10);
+    }
+}
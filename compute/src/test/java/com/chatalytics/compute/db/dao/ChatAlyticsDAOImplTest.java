@@ -8,6 +8,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -41,6 +43,30 @@ public class ChatAlyticsDAOImplTest {
         assertEquals(expectedDate, underTest.getLastMessagePullTime());
     }
 
+    /**
+     * Makes sure that every room keeps its own pull time
+     */
+    @Test
+    public void testRoomMessagePullTimes() {
+        DateTime time = new DateTime(0).withZone(DateTimeZone.UTC).plusHours(1);
+        underTest.setRoomMessagePullTime("r1", time);
+        underTest.setRoomMessagePullTime("r2", time);
+        underTest.setRoomMessagePullTime("r1", time.plusHours(1));
+
+        Map<String, DateTime> pullTimes = underTest.getRoomMessagePullTimes();
+        assertEquals(2, pullTimes.size());
+        assertEquals(time.plusHours(1).getMillis(), pullTimes.get("r1").getMillis());
+        assertEquals(time.getMillis(), pullTimes.get("r2").getMillis());
+    }
+
+    /**
+     * Makes sure that tables that were never written to have a write version of 0
+     */
+    @Test
+    public void testGetTableWriteVersion_noWrites() {
+        assertEquals(0, underTest.getTableWriteVersion("NOT_A_TABLE"));
+    }
+
     @After
     public void tearDown() throws Exception {
         underTest.stopAsync().awaitTerminated();
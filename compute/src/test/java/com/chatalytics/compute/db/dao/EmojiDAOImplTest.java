@@ -4,6 +4,7 @@ import com.chatalytics.compute.matrix.LabeledDenseMatrix;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.config.ChatAlyticsConfig;
 import com.chatalytics.core.model.data.EmojiEntity;
+import com.chatalytics.core.model.data.EmojiEntityRollup;
 import com.chatalytics.core.model.data.MessageSummary;
 import com.chatalytics.core.model.data.MessageType;
 import com.google.common.collect.ImmutableList;
@@ -233,6 +234,8 @@ public class EmojiDAOImplTest {
                                                 .createEntityManager();
         em.getTransaction().begin();
         em.createNativeQuery("DELETE FROM " + EmojiEntity.EMOJI_TABLE_NAME).executeUpdate();
+        em.createNativeQuery("DELETE FROM " + EmojiEntityRollup.EMOJI_ROLLUP_TABLE_NAME)
+          .executeUpdate();
         em.getTransaction().commit();
         underTest.stopAsync().awaitTerminated();
     }
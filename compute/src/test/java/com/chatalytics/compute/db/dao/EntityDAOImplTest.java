@@ -4,7 +4,9 @@ import com.chatalytics.compute.matrix.LabeledDenseMatrix;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.config.ChatAlyticsConfig;
 import com.chatalytics.core.model.data.ChatEntity;
+import com.chatalytics.core.model.data.ChatEntityRollup;
 import com.chatalytics.core.model.data.MessageSummary;
+import com.chatalytics.core.model.data.MessageSummaryRollup;
 import com.chatalytics.core.model.data.MessageType;
 import com.google.common.collect.ImmutableList;
 
@@ -233,8 +235,13 @@ public class EntityDAOImplTest {
                                                 .createEntityManager();
         em.getTransaction().begin();
         em.createNativeQuery("DELETE FROM " + ChatEntity.ENTITY_TABLE_NAME).executeUpdate();
+        em.createNativeQuery("DELETE FROM " + ChatEntityRollup.ENTITY_ROLLUP_TABLE_NAME)
+          .executeUpdate();
         em.createNativeQuery("DELETE FROM " + MessageSummary.MESSAGE_SUMMARY_TABLE_NAME)
           .executeUpdate();
+        em.createNativeQuery("DELETE FROM "
+                             + MessageSummaryRollup.MESSAGE_SUMMARY_ROLLUP_TABLE_NAME)
+          .executeUpdate();
         em.getTransaction().commit();
         underTest.stopAsync().awaitTerminated();
     }
@@ -0,0 +1,39 @@
+package com.chatalytics.compute.db.dao;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link MentionCursor}
+ *
+ * @author giannis
+ */
+public class MentionCursorTest {
+
+    @Test
+    public void testEncodeDecode() {
+        MentionCursor cursor = new MentionCursor(1458052200123L, 42L);
+        String encodedCursor = cursor.encode();
+        assertTrue(encodedCursor.matches("[A-Za-z0-9_-]+"));
+        assertEquals(cursor, MentionCursor.decode(encodedCursor));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_notBase64() {
+        MentionCursor.decode("not a cursor!");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_noSeparator() {
+        // "123"
+        MentionCursor.decode("MTIz");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_notNumbers() {
+        // "a_2"
+        MentionCursor.decode("YV8y");
+    }
+}
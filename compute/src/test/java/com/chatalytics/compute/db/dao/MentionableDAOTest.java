@@ -3,8 +3,17 @@ package com.chatalytics.compute.db.dao;
 import com.chatalytics.compute.matrix.LabeledDenseMatrix;
 import com.chatalytics.core.config.ChatAlyticsConfig;
 import com.chatalytics.core.model.data.EmojiEntity;
+import com.chatalytics.core.model.data.EmojiEntityRollup;
 import com.chatalytics.core.model.data.MessageSummary;
+import com.chatalytics.core.model.data.MessageSummaryRollup;
+import com.chatalytics.core.model.data.RollupResolution;
+import com.chatalytics.core.model.data.TableWatermark;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
@@ -14,19 +23,23 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.List;
 import java.util.Map;
 
 import javax.persistence.EntityExistsException;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
 
 import static com.chatalytics.core.model.data.MessageType.CHANNEL_JOIN;
 import static com.chatalytics.core.model.data.MessageType.MESSAGE;
 import static com.chatalytics.core.model.data.MessageType.MESSAGE_CHANGED;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests {@link MentionableDAO}
@@ -46,7 +59,8 @@ public class MentionableDAOTest {
         config = new ChatAlyticsConfig();
         config.persistenceUnitName = "chatalytics-db-test";
         entityManagerFactory = ChatAlyticsDAOFactory.getEntityManagerFactory(config);
-        underTest = new MentionableDAO<>(entityManagerFactory, EmojiEntity.class);
+        underTest = new MentionableDAO<>(entityManagerFactory, EmojiEntity.class,
+                                         EmojiEntityRollup.class, EmojiEntityRollup::new);
     }
 
     @Test
@@ -84,6 +98,112 @@ public class MentionableDAOTest {
         assertEquals(6, result.getLabels().size());
     }
 
+    /**
+     * Makes sure occurrences are summed up per room and value in the database
+     */
+    @Test
+    public void testStreamOccurrencesByColumnAndValue() {
+        DateTime start = DateTime.now().minusHours(2);
+        underTest.persistValue(new EmojiEntity("u1", "r1", start, "a", 2, false));
+        underTest.persistValue(new EmojiEntity("u2", "r1", start.plusMillis(1), "a", 3, false));
+        underTest.persistValue(new EmojiEntity("u1", "r1", start.plusMillis(2), "b", 1, false));
+        underTest.persistValue(new EmojiEntity("u1", "r2", start.plusMillis(3), "a", 4, false));
+        underTest.persistValue(new EmojiEntity("u3", "r2", start.plusMillis(4), "a", 5, true));
+
+        Map<String, Double> result = Maps.newHashMap();
+        Interval interval = new Interval(start, start.plusHours(1));
+        underTest.streamOccurrencesByColumnAndValue("roomName", interval, false,
+            (room, value, occurrences) -> result.put(room + ":" + value, occurrences));
+        assertEquals(ImmutableMap.of("r1:a", 5.0, "r1:b", 1.0, "r2:a", 4.0), result);
+
+        result.clear();
+        underTest.streamOccurrencesByColumnAndValue("username", interval, true,
+            (user, value, occurrences) -> result.put(user + ":" + value, occurrences));
+        assertEquals(ImmutableMap.of("u1:a", 6.0, "u1:b", 1.0, "u2:a", 3.0, "u3:a", 5.0),
+                     result);
+    }
+
+    /**
+     * Makes sure the streamed mentions are the same as the ones that are returned as a list
+     */
+    @Test
+    public void testStreamAllMentions() {
+        DateTime start = DateTime.now().minusHours(2);
+        underTest.persistValue(new EmojiEntity("u1", "r1", start, "a", 2, false));
+        underTest.persistValue(new EmojiEntity("u2", "r1", start.plusMillis(1), "a", 3, false));
+        underTest.persistValue(new EmojiEntity("u1", "r2", start.plusMillis(2), "b", 1, true));
+        underTest.persistValue(new EmojiEntity("u1", "r2", start.plusHours(3), "b", 1, false));
+
+        Interval interval = new Interval(start, start.plusHours(1));
+        List<EmojiEntity> result = Lists.newArrayList();
+        underTest.streamAllMentions(interval, ImmutableList.of(), ImmutableList.of(), false,
+                                    result::add);
+        assertEquals(2, result.size());
+        assertEquals(Sets.newHashSet(underTest.getAllMentions(interval, ImmutableList.of(),
+                                                              ImmutableList.of(), false)),
+                     Sets.newHashSet(result));
+
+        result.clear();
+        underTest.streamAllMentionsForValue("b", interval, ImmutableList.of(), ImmutableList.of(),
+                                            result::add);
+        assertEquals(1, result.size());
+        assertTrue(result.get(0).isBot());
+    }
+
+    /**
+     * Pages through mentions that share mention times and makes sure every mention is returned
+     * exactly once, in order
+     */
+    @Test
+    public void testGetMentionsPage() {
+        DateTime start = DateTime.now().minusHours(2);
+        underTest.persistValue(new EmojiEntity("u1", "r1", start.plusMillis(2), "a", 1, false));
+        underTest.persistValue(new EmojiEntity("u2", "r1", start, "a", 1, false));
+        underTest.persistValue(new EmojiEntity("u3", "r1", start, "a", 1, false));
+        underTest.persistValue(new EmojiEntity("u4", "r1", start, "b", 1, false));
+        underTest.persistValue(new EmojiEntity("u5", "r1", start.plusMillis(1), "a", 1, false));
+        underTest.persistValue(new EmojiEntity("u6", "r1", start.plusMillis(1), "a", 1, true));
+
+        Interval interval = new Interval(start, start.plusHours(1));
+        List<EmojiEntity> result = Lists.newArrayList();
+        Optional<MentionCursor> cursor = Optional.absent();
+        int numPages = 0;
+        do {
+            MentionPage<EmojiEntity> page = underTest.getMentionsPage(interval, ImmutableList.of(),
+                                                                      ImmutableList.of(), false,
+                                                                      cursor, 2);
+            assertTrue(page.getMentions().size() <= 2);
+            result.addAll(page.getMentions());
+            cursor = page.getNextCursor();
+            numPages++;
+        } while (cursor.isPresent());
+
+        assertEquals(3, numPages);
+        assertEquals(5, result.size());
+        assertEquals(Sets.newHashSet(underTest.getAllMentions(interval, ImmutableList.of(),
+                                                              ImmutableList.of(), false)),
+                     Sets.newHashSet(result));
+        for (int i = 1; i < result.size(); i++) {
+            DateTime previousTime = result.get(i - 1).getMentionTime();
+            assertFalse(result.get(i).getMentionTime().isBefore(previousTime));
+        }
+
+        MentionPage<EmojiEntity> page = underTest.getMentionsPageForValue("a", interval,
+                                                                          ImmutableList.of(),
+                                                                          ImmutableList.of(),
+                                                                          Optional.absent(), 10);
+        // mentions of a single value include bots
+        assertEquals(5, page.getMentions().size());
+        assertFalse(page.getNextCursor().isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetMentionsPage_invalidLimit() {
+        DateTime start = DateTime.now();
+        underTest.getMentionsPage(new Interval(start, start.plusHours(1)), ImmutableList.of(),
+                                  ImmutableList.of(), false, Optional.absent(), 0);
+    }
+
     @Test
     public void testPersistValue() {
         DateTime dateTime = DateTime.now();
@@ -105,6 +225,213 @@ public class MentionableDAOTest {
         underTest.persistValue(emoji);
     }
 
+    /**
+     * Makes sure that a batch that can't be stored fails instead of being dropped silently
+     */
+    @Test(expected = PersistenceException.class)
+    public void testPersistValues_withDuplicate() {
+        DateTime dateTime = DateTime.now();
+        underTest.persistValue(new EmojiEntity("u1", "r1", dateTime, "a", 1, false));
+
+        underTest.persistValues(ImmutableList.of(
+            new EmojiEntity("u1", "r1", dateTime, "b", 1, false),
+            new EmojiEntity("u1", "r1", dateTime, "a", 1, false)));
+    }
+
+    @Test
+    public void testPersistValues() {
+        DateTime start = DateTime.now().minusHours(1);
+        ImmutableList.Builder<EmojiEntity> emojis = ImmutableList.builder();
+        // more than one JDBC batch
+        int numValues = MentionableDAO.JDBC_BATCH_SIZE * 2 + 1;
+        for (int i = 0; i < numValues; i++) {
+            emojis.add(new EmojiEntity("u1", "r1", start.plusMillis(i), "a", 1, false));
+        }
+        underTest.persistValues(emojis.build());
+
+        Interval interval = new Interval(start, start.plusHours(1));
+        assertEquals(numValues, underTest.getTotalMentionsForType("a", interval,
+                                                                  ImmutableList.of(),
+                                                                  ImmutableList.of(), false));
+    }
+
+    /**
+     * Makes sure that values that got an id from a transaction that was rolled back, like the
+     * values of a batch that is retried, can still be stored
+     */
+    @Test
+    public void testPersistValues_afterRollback() {
+        DateTime hour = RollupResolution.HOUR.floor(DateTime.now()).minusHours(2);
+        List<EmojiEntity> emojis = ImmutableList.of(
+            new EmojiEntity("u1", "r1", hour.plusMinutes(1), "a", 1, false),
+            new EmojiEntity("u2", "r1", hour.plusMinutes(2), "a", 2, false));
+        EntityManager em = entityManagerFactory.createEntityManager();
+        em.getTransaction().begin();
+        emojis.forEach(em::persist);
+        em.flush();
+        em.getTransaction().rollback();
+        em.close();
+
+        underTest.persistValues(emojis);
+
+        Interval interval = new Interval(hour, hour.plusHours(1));
+        assertEquals(3, underTest.getTotalMentionsForType("a", interval, ImmutableList.of(),
+                                                          ImmutableList.of(), true));
+        for (EmojiEntity emoji : emojis) {
+            assertNotNull(underTest.getValue(emoji));
+        }
+    }
+
+    /**
+     * Makes sure that the watermark of the table is advanced after every write
+     */
+    @Test
+    public void testPersistValues_advancesWatermark() {
+        DateTime start = DateTime.now().minusHours(1);
+        long initialVersion = getWriteVersion();
+        underTest.persistValue(new EmojiEntity("u1", "r1", start, "a", 1, false));
+        assertEquals(initialVersion + 1, getWriteVersion());
+        underTest.persistValues(ImmutableList.of(
+            new EmojiEntity("u1", "r1", start.plusMillis(1), "a", 1, false),
+            new EmojiEntity("u1", "r1", start.plusMillis(2), "b", 1, false)));
+        assertEquals(initialVersion + 2, getWriteVersion());
+    }
+
+    private long getWriteVersion() {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            TableWatermark watermark = em.find(TableWatermark.class, EmojiEntity.EMOJI_TABLE_NAME);
+            return watermark == null ? 0 : watermark.getWriteVersion();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Makes sure that aligned intervals, which are answered from the rollups, return the same
+     * results as the raw values
+     */
+    @Test
+    public void testPersistValues_withRollups() {
+        DateTime hour = RollupResolution.HOUR.floor(DateTime.now()).minusHours(2);
+        underTest.persistValue(new EmojiEntity("u1", "r1", hour, "a", 1, false));
+        underTest.persistValues(ImmutableList.of(
+            new EmojiEntity("u1", "r1", hour.plusMinutes(10), "a", 2, false),
+            new EmojiEntity("u1", "r1", hour.plusMinutes(20), "a", 3, false),
+            new EmojiEntity("u2", "r1", hour.plusMinutes(30), "b", 1, true),
+            new EmojiEntity("u2", "r2", hour.plusHours(1), "a", 4, false)));
+        // and make sure existing rollup rows are updated
+        underTest.persistValues(ImmutableList.of(
+            new EmojiEntity("u1", "r1", hour.plusMinutes(40), "a", 5, false)));
+
+        Interval firstHour = new Interval(hour, hour.plusHours(1));
+        Interval bothHours = new Interval(hour, hour.plusHours(2));
+        assertTrue(RollupRouter.route(firstHour).isPresent());
+        assertEquals(11, underTest.getTotalMentionsForType("a", firstHour, ImmutableList.of(),
+                                                           ImmutableList.of(), true));
+        assertEquals(15, underTest.getTotalMentionsForType("a", bothHours, ImmutableList.of(),
+                                                           ImmutableList.of(), true));
+        assertEquals(16, underTest.getTotalMentionsOfType(bothHours, ImmutableList.of(),
+                                                          ImmutableList.of(), true));
+        assertEquals(15, underTest.getTotalMentionsOfType(bothHours, ImmutableList.of(),
+                                                          ImmutableList.of(), false));
+        assertEquals(4, underTest.getTotalMentionsOfType(bothHours, ImmutableList.of("r2"),
+                                                         ImmutableList.of(), true));
+
+        Map<String, Long> topValues = underTest.getTopValuesOfType(bothHours, ImmutableList.of(),
+                                                                   ImmutableList.of(), 10, true);
+        assertEquals(2, topValues.size());
+        assertEquals(15L, topValues.get("a").longValue());
+        assertEquals(1L, topValues.get("b").longValue());
+
+        // the raw values should give the same result
+        Interval unaligned = new Interval(hour, hour.plusHours(2).plusMillis(1));
+        assertEquals(15, underTest.getTotalMentionsForType("a", unaligned, ImmutableList.of(),
+                                                           ImmutableList.of(), true));
+    }
+
+    /**
+     * Makes sure that values stored before the rollups existed are still counted by aligned
+     * intervals, which are answered from the raw values until the rollups are complete
+     */
+    @Test
+    public void testPersistValues_beforeRollupsStart() {
+        DateTime hour = RollupResolution.HOUR.floor(DateTime.now()).minusHours(3);
+        // stored without rollups, like values that were stored before the rollups existed
+        EntityManager em = entityManagerFactory.createEntityManager();
+        em.getTransaction().begin();
+        em.persist(new EmojiEntity("u1", "r1", hour.plusMinutes(10), "a", 2, false));
+        em.getTransaction().commit();
+        em.close();
+
+        underTest.persistValue(new EmojiEntity("u1", "r1", hour.plusHours(1), "a", 3, false));
+
+        em = entityManagerFactory.createEntityManager();
+        TableWatermark watermark = em.find(TableWatermark.class, EmojiEntity.EMOJI_TABLE_NAME);
+        em.close();
+        assertEquals(hour.plusMinutes(10).plusMillis(1).getMillis(),
+                     watermark.getRollupsStart().getMillis());
+
+        Interval firstHour = new Interval(hour, hour.plusHours(1));
+        Interval bothHours = new Interval(hour, hour.plusHours(2));
+        Interval secondHour = new Interval(hour.plusHours(1), hour.plusHours(2));
+        assertTrue(RollupRouter.route(firstHour).isPresent());
+        assertEquals(2, underTest.getTotalMentionsForType("a", firstHour, ImmutableList.of(),
+                                                          ImmutableList.of(), true));
+        assertEquals(5, underTest.getTotalMentionsForType("a", bothHours, ImmutableList.of(),
+                                                          ImmutableList.of(), true));
+        assertEquals(3, underTest.getTotalMentionsForType("a", secondHour, ImmutableList.of(),
+                                                          ImmutableList.of(), true));
+    }
+
+    /**
+     * Makes sure that the rollups are updated in the same transaction as the raw values, so that a
+     * value that can't be stored is not counted in them
+     */
+    @Test
+    public void testPersistValue_duplicateNotRolledUp() {
+        DateTime hour = RollupResolution.HOUR.floor(DateTime.now()).minusHours(2);
+        EmojiEntity emoji = new EmojiEntity("u1", "r1", hour, "a", 3, false);
+        underTest.persistValue(emoji);
+        try {
+            underTest.persistValue(emoji);
+            fail("Duplicate should not be stored");
+        } catch (EntityExistsException e) {
+            // expected
+        }
+
+        Interval firstHour = new Interval(hour, hour.plusHours(1));
+        assertTrue(RollupRouter.route(firstHour).isPresent());
+        assertEquals(3, underTest.getTotalMentionsForType("a", firstHour, ImmutableList.of(),
+                                                          ImmutableList.of(), true));
+    }
+
+    /**
+     * Makes sure that intervals that span multiple resolutions are summed up correctly
+     */
+    @Test
+    public void testGetTopValuesOfType_withMultipleResolutions() {
+        DateTime day = RollupResolution.DAY.floor(DateTime.now()).minusDays(3);
+        underTest.persistValues(ImmutableList.of(
+            new EmojiEntity("u1", "r1", day.minusMinutes(1), "a", 1, false),
+            new EmojiEntity("u1", "r1", day.plusHours(5), "a", 2, false),
+            new EmojiEntity("u1", "r1", day.plusDays(1).plusMinutes(3), "b", 4, false),
+            new EmojiEntity("u1", "r1", day.plusDays(2).plusMinutes(5), "b", 8, false)));
+
+        // minutes, an hour, a day, hours and minutes
+        Interval interval = new Interval(day.minusMinutes(61), day.plusDays(2).plusMinutes(6));
+        assertTrue(RollupRouter.route(interval).get().size() > 2);
+        Map<String, Long> topValues = underTest.getTopValuesOfType(interval, ImmutableList.of(),
+                                                                   ImmutableList.of(), 10, true);
+        assertEquals(12L, topValues.get("b").longValue());
+        assertEquals(3L, topValues.get("a").longValue());
+
+        // the last mention falls outside of this one
+        interval = new Interval(day.minusMinutes(61), day.plusDays(2).plusMinutes(5));
+        assertEquals(7, underTest.getTotalMentionsOfType(interval, ImmutableList.of(),
+                                                         ImmutableList.of(), true));
+    }
+
     @Test
     public void testGetTotalMentionsOfType() {
         DateTime end = DateTime.now();
@@ -302,8 +629,15 @@ public class MentionableDAOTest {
         EntityManager em = entityManagerFactory.createEntityManager();
         em.getTransaction().begin();
         em.createNativeQuery("DELETE FROM " + EmojiEntity.EMOJI_TABLE_NAME).executeUpdate();
+        em.createNativeQuery("DELETE FROM " + EmojiEntityRollup.EMOJI_ROLLUP_TABLE_NAME)
+          .executeUpdate();
         em.createNativeQuery("DELETE FROM " + MessageSummary.MESSAGE_SUMMARY_TABLE_NAME)
           .executeUpdate();
+        em.createNativeQuery("DELETE FROM "
+                             + MessageSummaryRollup.MESSAGE_SUMMARY_ROLLUP_TABLE_NAME)
+          .executeUpdate();
+        em.createNativeQuery("DELETE FROM " + TableWatermark.TABLE_WATERMARK_TABLE_NAME)
+          .executeUpdate();
         em.getTransaction().commit();
         underTest.close();
     }
@@ -3,6 +3,7 @@ package com.chatalytics.compute.db.dao;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.config.ChatAlyticsConfig;
 import com.chatalytics.core.model.data.MessageSummary;
+import com.chatalytics.core.model.data.MessageSummaryRollup;
 import com.chatalytics.core.model.data.MessageType;
 import com.google.common.collect.ImmutableList;
 
@@ -166,6 +167,9 @@ public class MessageSummaryDAOImplTest {
         em.getTransaction().begin();
         em.createNativeQuery("DELETE FROM " + MessageSummary.MESSAGE_SUMMARY_TABLE_NAME)
           .executeUpdate();
+        em.createNativeQuery("DELETE FROM "
+                             + MessageSummaryRollup.MESSAGE_SUMMARY_ROLLUP_TABLE_NAME)
+          .executeUpdate();
         em.getTransaction().commit();
         underTest.stopAsync().awaitTerminated();
     }
@@ -0,0 +1,58 @@
+package com.chatalytics.compute.db.dao;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+
+import javax.persistence.LockTimeoutException;
+import javax.persistence.PersistenceException;
+import javax.persistence.PessimisticLockException;
+import javax.persistence.QueryTimeoutException;
+import javax.persistence.RollbackException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link PersistenceFailures}
+ *
+ * @author giannis
+ *
+ */
+public class PersistenceFailuresTest {
+
+    @Test
+    public void testIsLockFailure() {
+        assertTrue(PersistenceFailures.isLockFailure(new PessimisticLockException()));
+        assertTrue(PersistenceFailures.isLockFailure(
+            new PersistenceException(new LockTimeoutException())));
+        // postgres deadlock and lock timeout, h2 lock timeout
+        assertTrue(PersistenceFailures.isLockFailure(
+            new RollbackException(new PersistenceException(new SQLException("d", "40P01")))));
+        assertTrue(PersistenceFailures.isLockFailure(
+            new PersistenceException(new SQLException("l", "55P03"))));
+        assertTrue(PersistenceFailures.isLockFailure(
+            new PersistenceException(new SQLException("l", "HYT00"))));
+
+        // unique constraint violation
+        assertFalse(PersistenceFailures.isLockFailure(
+            new PersistenceException(new SQLException("u", "23505"))));
+        assertFalse(PersistenceFailures.isLockFailure(new PersistenceException("no cause")));
+        assertFalse(PersistenceFailures.isLockFailure(
+            new PersistenceException(new SQLException("no state"))));
+    }
+
+    @Test
+    public void testIsTransient() {
+        assertTrue(PersistenceFailures.isTransient(new PessimisticLockException()));
+        assertTrue(PersistenceFailures.isTransient(new QueryTimeoutException()));
+        // connection failure
+        assertTrue(PersistenceFailures.isTransient(
+            new PersistenceException(new SQLException("c", "08006"))));
+
+        // unique constraint violation
+        assertFalse(PersistenceFailures.isTransient(
+            new PersistenceException(new SQLException("u", "23505"))));
+        assertFalse(PersistenceFailures.isTransient(new PersistenceException("no cause")));
+    }
+}
@@ -0,0 +1,102 @@
+package com.chatalytics.compute.db.dao;
+
+import com.chatalytics.compute.db.dao.RollupRouter.RollupRange;
+import com.chatalytics.core.model.data.RollupResolution;
+import com.google.common.base.Optional;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link RollupRouter}
+ *
+ * @author giannis
+ *
+ */
+public class RollupRouterTest {
+
+    @Test
+    public void testRoute() {
+        DateTime start = new DateTime(2016, 1, 15, 12, 0, DateTimeZone.UTC);
+        DateTime end = new DateTime(2017, 1, 15, 12, 30, DateTimeZone.UTC);
+        Optional<List<RollupRange>> result = RollupRouter.route(new Interval(start, end));
+        assertTrue(result.isPresent());
+
+        List<RollupRange> ranges = result.get();
+        assertEquals(6, ranges.size());
+        assertRange(ranges.get(0), RollupResolution.HOUR, start,
+                    new DateTime(2016, 1, 16, 0, 0, DateTimeZone.UTC));
+        assertRange(ranges.get(1), RollupResolution.DAY,
+                    new DateTime(2016, 1, 16, 0, 0, DateTimeZone.UTC),
+                    new DateTime(2016, 2, 1, 0, 0, DateTimeZone.UTC));
+        assertRange(ranges.get(2), RollupResolution.MONTH,
+                    new DateTime(2016, 2, 1, 0, 0, DateTimeZone.UTC),
+                    new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC));
+        assertRange(ranges.get(3), RollupResolution.DAY,
+                    new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC),
+                    new DateTime(2017, 1, 15, 0, 0, DateTimeZone.UTC));
+        assertRange(ranges.get(4), RollupResolution.HOUR,
+                    new DateTime(2017, 1, 15, 0, 0, DateTimeZone.UTC),
+                    new DateTime(2017, 1, 15, 12, 0, DateTimeZone.UTC));
+        assertRange(ranges.get(5), RollupResolution.MINUTE,
+                    new DateTime(2017, 1, 15, 12, 0, DateTimeZone.UTC), end);
+    }
+
+    /**
+     * Makes sure the ranges are contiguous and cover the whole interval
+     */
+    @Test
+    public void testRoute_coversInterval() {
+        DateTime start = new DateTime(2016, 2, 28, 23, 59, DateTimeZone.UTC);
+        DateTime end = new DateTime(2016, 3, 2, 0, 1, DateTimeZone.UTC);
+        List<RollupRange> ranges = RollupRouter.route(new Interval(start, end)).get();
+
+        DateTime expectedStart = start;
+        for (RollupRange range : ranges) {
+            assertEquals(expectedStart, range.getInterval().getStart());
+            assertTrue(range.getResolution().isAligned(range.getInterval().getStart()));
+            assertTrue(range.getResolution().isAligned(range.getInterval().getEnd()));
+            expectedStart = range.getInterval().getEnd();
+        }
+        assertEquals(end, expectedStart);
+        assertEquals(RollupResolution.DAY, ranges.get(1).getResolution());
+    }
+
+    @Test
+    public void testRoute_withSingleBucket() {
+        DateTime start = new DateTime(2016, 3, 1, 0, 0, DateTimeZone.UTC);
+        List<RollupRange> ranges = RollupRouter.route(new Interval(start, start.plusMonths(1)))
+                                               .get();
+        assertEquals(1, ranges.size());
+        assertRange(ranges.get(0), RollupResolution.MONTH, start, start.plusMonths(1));
+    }
+
+    @Test
+    public void testRoute_withEmptyInterval() {
+        DateTime start = new DateTime(2016, 3, 1, 0, 0, DateTimeZone.UTC);
+        assertTrue(RollupRouter.route(new Interval(start, start)).get().isEmpty());
+    }
+
+    @Test
+    public void testRoute_withUnalignedInterval() {
+        DateTime start = new DateTime(2016, 3, 1, 0, 0, DateTimeZone.UTC);
+        assertFalse(RollupRouter.route(new Interval(start, start.plusDays(2).plusSeconds(1)))
+                                .isPresent());
+        assertFalse(RollupRouter.route(new Interval(start.minusMillis(1), start.plusDays(2)))
+                                .isPresent());
+    }
+
+    private void assertRange(RollupRange range, RollupResolution resolution, DateTime start,
+                             DateTime end) {
+        assertEquals(resolution, range.getResolution());
+        assertEquals(new Interval(start, end), range.getInterval());
+    }
+}
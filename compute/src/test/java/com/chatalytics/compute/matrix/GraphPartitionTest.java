@@ -10,11 +10,15 @@ import org.junit.Test;
 import no.uib.cipr.matrix.DenseMatrix;
 import no.uib.cipr.matrix.Matrices;
 import no.uib.cipr.matrix.Matrix;
+import no.uib.cipr.matrix.sparse.CompRowMatrix;
+import no.uib.cipr.matrix.sparse.FlexCompRowMatrix;
 
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests {@link GraphPartition}
@@ -96,6 +100,46 @@ public class GraphPartitionTest {
         assertEquals(10, R.getLabels().size());
     }
 
+    /**
+     * Makes sure matrices bigger than {@link GraphPartition#DENSE_EVD_MAX_SIZE} still get their
+     * clusters partitioned
+     */
+    @Test
+    public void testGetSimilarityMatrix_sparse() {
+        int n = GraphPartition.DENSE_EVD_MAX_SIZE + 50;
+        Matrix A = getClusteredMatrix(n);
+        List<Integer> labels = Lists.newArrayListWithCapacity(n);
+        for (int i = 0; i < n; i++) {
+            labels.add(i);
+        }
+
+        LabeledDenseMatrix<Integer> R =
+                GraphPartition.getSimilarityMatrix(LabeledMTJMatrix.of(A, labels));
+        assertEquals(n, R.getLabels().size());
+        // every half of the result should be one of the clusters
+        boolean firstCluster = R.getLabels().get(0) % 2 == 0;
+        for (int i = 0; i < n; i++) {
+            assertEquals(i < n / 2 ? firstCluster : !firstCluster, R.getLabels().get(i) % 2 == 0);
+        }
+    }
+
+    /**
+     * Makes sure the sparse solver finds the same vector as the full eigen decomposition
+     */
+    @Test
+    public void testGetSparseFiedlerVector() {
+        Matrix A = getClusteredMatrix(60);
+        double[] dense = GraphPartition.getDenseFiedlerVector(A);
+        double[] sparse = GraphPartition.getSparseFiedlerVector(A);
+
+        double dot = 0;
+        for (int i = 0; i < dense.length; i++) {
+            dot += dense[i] * sparse[i];
+        }
+        // both are normalized but can have opposite signs
+        assertEquals(1, Math.abs(dot), 1e-6);
+    }
+
     /**
      * Checks to see if a matrix can be permuted correctly given a permutation vector. The
      * permutation is done both on rows and columns
@@ -120,6 +164,28 @@ public class GraphPartitionTest {
         assertArrayEquals(Matrices.getArray(R_e), Matrices.getArray(R));
     }
 
+    /**
+     * Makes sure sparse matrices stay sparse when they're permuted
+     */
+    @Test
+    public void testGetPermutationMatrix_sparse() {
+        Matrix M = new FlexCompRowMatrix(4, 4);
+        M.set(0, 1, 1);
+        M.set(1, 0, 1);
+        M.set(2, 2, 5);
+        M.set(3, 0, 2);
+        int[] permutations = new int[] { 2, 0, 3, 1 };
+        Matrix R = GraphPartition.getPermutedMatrix(M, permutations);
+
+        assertTrue(R instanceof CompRowMatrix);
+        assertEquals(4, ((CompRowMatrix) R).getData().length);
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                assertEquals(M.get(permutations[row], permutations[column]), R.get(row, column), 0);
+            }
+        }
+    }
+
     /**
      * Checks to see if the labels are reordered correctly, given a permutation vector
      */
@@ -137,4 +203,27 @@ public class GraphPartitionTest {
         GraphPartition.getPermutedLabels(ImmutableList.of("e1"), new int[] { 2, 1 });
     }
 
+    /**
+     * @return A matrix with two clusters, the even and the odd rows, that are connected to each
+     *         other by a single edge
+     */
+    private static Matrix getClusteredMatrix(int n) {
+        Matrix A = new FlexCompRowMatrix(n, n);
+        Random random = new Random(0);
+        for (int i = 0; i < n; i++) {
+            // connect to the next node in the cluster so that it's connected, and a random one
+            int next = (i + 2) % n;
+            int other = 2 * random.nextInt(n / 2) + i % 2;
+            A.set(i, next, 1 + random.nextInt(3));
+            A.set(next, i, A.get(i, next));
+            if (other != i) {
+                A.set(i, other, 1);
+                A.set(other, i, 1);
+            }
+        }
+        A.set(0, 1, 1);
+        A.set(1, 0, 1);
+        return A;
+    }
+
 }
@@ -0,0 +1,119 @@
+package com.chatalytics.compute.matrix;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import no.uib.cipr.matrix.DenseMatrix;
+import no.uib.cipr.matrix.Matrices;
+import no.uib.cipr.matrix.sparse.CompRowMatrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link MentionMatrixBuilder}
+ *
+ * @author giannis
+ */
+public class MentionMatrixBuilderTest {
+
+    private MentionMatrixBuilder<String, String> underTest;
+
+    @Before
+    public void setUp() {
+        underTest = new MentionMatrixBuilder<>();
+    }
+
+    /**
+     * Makes sure duplicate triples are summed up and that the result is <code>M'M</code>
+     */
+    @Test
+    public void testBuild() {
+        underTest.add("r1", "a", 1)
+                 .add("r2", "a", 2)
+                 .add("r1", "a", 1)
+                 .add("r2", "b", 3);
+
+        LabeledMTJMatrix<String> result = underTest.build();
+
+        assertEquals(ImmutableList.of("r1", "r2"), result.getLabels());
+        // M = [[2, 2], [0, 3]]
+        DenseMatrix expected = new DenseMatrix(new double[][] {
+            new double[] { 4, 4 },
+            new double[] { 4, 13 },
+        });
+        assertArrayEquals(Matrices.getArray(expected), Matrices.getArray(result.getMatrix()));
+    }
+
+    /**
+     * Makes sure the result is sparse and only has entries for values that share a row
+     */
+    @Test
+    public void testBuild_sparse() {
+        underTest.add("r1", "a", 1)
+                 .add("r2", "a", 2)
+                 .add("r3", "b", 3)
+                 .add("r4", "c", 1)
+                 .add("r1", "c", 1);
+
+        LabeledMTJMatrix<String> result = underTest.build();
+
+        assertTrue(result.getMatrix() instanceof CompRowMatrix);
+        CompRowMatrix A = (CompRowMatrix) result.getMatrix();
+        assertEquals(8, A.getData().length);
+        assertEquals(2, A.get(0, 0), 0);
+        assertEquals(2, A.get(0, 1), 0);
+        assertEquals(2, A.get(1, 0), 0);
+        assertEquals(9, A.get(2, 2), 0);
+        assertEquals(1, A.get(0, 3), 0);
+        assertEquals(1, A.get(3, 3), 0);
+        assertEquals(0, A.get(1, 3), 0);
+    }
+
+    /**
+     * Makes sure values without a row still become labels, and that values without a column don't
+     */
+    @Test
+    public void testBuild_withNulls() {
+        underTest.add("r1", null, 1)
+                 .add(null, "a", 1)
+                 .add("r2", "a", 1);
+
+        LabeledMTJMatrix<String> result = underTest.build();
+
+        assertEquals(ImmutableList.of("r1", "r2"), result.getLabels());
+        assertEquals(2, result.getMatrix().numRows());
+        assertEquals(0, result.getMatrix().get(0, 0), 0);
+        assertEquals(1, result.getMatrix().get(1, 1), 0);
+    }
+
+    /**
+     * Makes sure the triples keep growing past the initial capacity
+     */
+    @Test
+    public void testBuild_manyTriples() {
+        int numValues = 1000;
+        for (int i = 0; i < numValues; i++) {
+            underTest.add("r" + (i % 10), "v" + i, 1);
+        }
+
+        LabeledMTJMatrix<String> result = underTest.build();
+
+        assertEquals(10, result.getLabels().size());
+        assertEquals(numValues / 10, result.getMatrix().get(0, 0), 0);
+        assertEquals(0, result.getMatrix().get(0, 1), 0);
+    }
+
+    @Test
+    public void testIsEmpty() {
+        assertTrue(underTest.isEmpty());
+        underTest.add(null, "a", 1);
+        assertTrue(underTest.isEmpty());
+        underTest.add("r1", null, 1);
+        assertFalse(underTest.isEmpty());
+    }
+}
@@ -0,0 +1,213 @@
+package com.chatalytics.compute.matrix;
+
+import com.chatalytics.compute.matrix.SparseFiedlerSolver.Result;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SparseFiedlerSolver}
+ *
+ * @author giannis
+ */
+public class SparseFiedlerSolverTest {
+
+    private SparseFiedlerSolver underTest;
+
+    @Before
+    public void setUp() {
+        underTest = new SparseFiedlerSolver();
+    }
+
+    /**
+     * The Fiedler vector of a path is known: <code>cos(&pi;(i + 0.5) / n)</code>
+     */
+    @Test
+    public void testSolve_path() {
+        int n = 60;
+        double[][] adjacency = new double[n][n];
+        for (int i = 0; i < n - 1; i++) {
+            adjacency[i][i + 1] = 1;
+            adjacency[i + 1][i] = 1;
+        }
+        Result result = solve(adjacency);
+
+        assertEquals(2 * (1 - Math.cos(Math.PI / n)), result.getEigenvalue(), 1e-9);
+        double[] expected = new double[n];
+        for (int i = 0; i < n; i++) {
+            expected[i] = Math.cos(Math.PI * (i + 0.5) / n);
+        }
+        assertEquals(1, Math.abs(cosine(expected, result.getVector())), 1e-6);
+        assertTrue(result.getResidual() < 1e-6);
+        assertTrue(result.isConverged());
+    }
+
+    /**
+     * Makes sure the best vector is still returned, flagged as not converged, when the solver
+     * gives up after its restarts
+     */
+    @Test
+    public void testSolve_notConverged() {
+        underTest = new SparseFiedlerSolver(2, 0, 1e-12, 0);
+        int n = 60;
+        double[][] adjacency = new double[n][n];
+        for (int i = 0; i < n - 1; i++) {
+            adjacency[i][i + 1] = 1;
+            adjacency[i + 1][i] = 1;
+        }
+        Result result = solve(adjacency);
+
+        assertFalse(result.isConverged());
+        assertEquals(n, result.getVector().length);
+        assertTrue(result.getResidual() > 0);
+    }
+
+    /**
+     * Two cliques joined by a single edge should end up on different signs of the vector
+     */
+    @Test
+    public void testSolve_twoClusters() {
+        int n = 40;
+        double[][] adjacency = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j && (i < n / 2) == (j < n / 2)) {
+                    adjacency[i][j] = 2;
+                }
+            }
+            // self loops don't change the laplacian
+            adjacency[i][i] = 5;
+        }
+        adjacency[0][n - 1] = 1;
+        adjacency[n - 1][0] = 1;
+        double[] vector = solve(adjacency).getVector();
+
+        double sign = Math.signum(vector[0]);
+        for (int i = 0; i < n; i++) {
+            assertEquals(i < n / 2 ? sign : -sign, Math.signum(vector[i]), 0);
+        }
+    }
+
+    /**
+     * Checks the result against the eigenvalues of a small random graph computed by hand with the
+     * characteristic polynomial of its 3x3 laplacian
+     */
+    @Test
+    public void testSolve_triangle() {
+        double[][] adjacency = new double[][] {
+            new double[] { 0, 1, 2 },
+            new double[] { 1, 0, 3 },
+            new double[] { 2, 3, 0 },
+        };
+        // eigenvalues of the laplacian are 0 and 6 +- sqrt(3)
+        assertEquals(6 - Math.sqrt(3), solve(adjacency).getEigenvalue(), 1e-9);
+    }
+
+    /**
+     * A graph with two components has two zero eigenvalues, so the vector has to separate them
+     */
+    @Test
+    public void testSolve_disconnected() {
+        int n = 10;
+        double[][] adjacency = new double[n][n];
+        for (int i = 0; i < n - 1; i++) {
+            if (i != n / 2 - 1) {
+                adjacency[i][i + 1] = 1;
+                adjacency[i + 1][i] = 1;
+            }
+        }
+        Result result = solve(adjacency);
+        assertEquals(0, result.getEigenvalue(), 1e-9);
+        double[] vector = result.getVector();
+        for (int i = 1; i < n / 2; i++) {
+            assertEquals(vector[0], vector[i], 1e-6);
+            assertEquals(vector[n - 1], vector[n - 1 - i], 1e-6);
+        }
+    }
+
+    @Test
+    public void testSolve_noEdges() {
+        Result result = solve(new double[4][4]);
+        assertEquals(0, result.getEigenvalue(), 0);
+        assertEquals(1, Math.sqrt(dot(result.getVector(), result.getVector())), 1e-12);
+        assertEquals(0, result.getVector()[0] + result.getVector()[1], 1e-12);
+    }
+
+    @Test
+    public void testSolve_tiny() {
+        assertEquals(0, solve(new double[1][1]).getVector()[0], 0);
+        Result result = solve(new double[][] { new double[] { 0, 3 }, new double[] { 3, 0 } });
+        assertEquals(6, result.getEigenvalue(), 1e-12);
+    }
+
+    @Test
+    public void testTridiagonalEigen() {
+        // [[2, 1, 0], [1, 2, 1], [0, 1, 2]] has eigenvalues 2 - sqrt(2), 2 and 2 + sqrt(2)
+        double[] d = new double[] { 2, 2, 2 };
+        double[] e = new double[] { 0, 1, 1 };
+        double[][] v = SparseFiedlerSolver.tridiagonalEigen(d, e);
+        double[] sorted = d.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(new double[] { 2 - Math.sqrt(2), 2, 2 + Math.sqrt(2) }, sorted, 1e-12);
+        // every column is an eigenvector
+        for (int j = 0; j < 3; j++) {
+            assertEquals(d[j] * v[0][j], 2 * v[0][j] + v[1][j], 1e-12);
+            assertEquals(d[j] * v[1][j], v[0][j] + 2 * v[1][j] + v[2][j], 1e-12);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSolve_invalidRowPointers() {
+        underTest.solve(3, new int[] { 0, 0 }, new int[0], new double[0]);
+    }
+
+    /**
+     * Converts a dense adjacency matrix to sparse rows and solves it
+     */
+    private Result solve(double[][] adjacency) {
+        int n = adjacency.length;
+        int[] rowPointers = new int[n + 1];
+        int nonZeros = 0;
+        for (double[] row : adjacency) {
+            for (double value : row) {
+                if (value != 0) {
+                    nonZeros++;
+                }
+            }
+        }
+        int[] columns = new int[nonZeros];
+        double[] values = new double[nonZeros];
+        int idx = 0;
+        for (int row = 0; row < n; row++) {
+            rowPointers[row] = idx;
+            for (int column = 0; column < n; column++) {
+                if (adjacency[row][column] != 0) {
+                    columns[idx] = column;
+                    values[idx] = adjacency[row][column];
+                    idx++;
+                }
+            }
+        }
+        rowPointers[n] = idx;
+        return underTest.solve(n, rowPointers, columns, values);
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double sum = 0;
+        for (int i = 0; i < x.length; i++) {
+            sum += x[i] * y[i];
+        }
+        return sum;
+    }
+
+    private static double cosine(double[] x, double[] y) {
+        return dot(x, y) / Math.sqrt(dot(x, x) * dot(y, y));
+    }
+}
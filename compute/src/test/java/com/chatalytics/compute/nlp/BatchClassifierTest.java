@@ -0,0 +1,96 @@
+package com.chatalytics.compute.nlp;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.stanford.nlp.ie.AbstractSequenceClassifier;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.Triple;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link BatchClassifier}
+ *
+ * @author giannis
+ */
+public class BatchClassifierTest {
+
+    private AbstractSequenceClassifier<CoreLabel> classifier;
+    private ForkJoinPool pool;
+    private BatchClassifier underTest;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        classifier = mock(AbstractSequenceClassifier.class);
+        // classifies the whole text as a single entity so results can be told apart
+        when(classifier.classifyToCharacterOffsets(anyString())).thenAnswer(invocation -> {
+            String text = (String) invocation.getArguments()[0];
+            return ImmutableList.of(new Triple<>("ENTITY", 0, text.length()));
+        });
+        pool = new ForkJoinPool(4);
+        underTest = new BatchClassifier(classifier, pool);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Makes sure classifications are returned in the same order as the texts
+     */
+    @Test
+    public void testClassify_keepsOrder() {
+        List<String> texts = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            texts.add(Strings.repeat("a", i + 1));
+        }
+        List<List<Triple<String, Integer, Integer>>> result = underTest.classify(texts);
+
+        assertEquals(texts.size(), result.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(1, result.get(i).size());
+            assertEquals(texts.get(i).length(), result.get(i).get(0).third.intValue());
+        }
+    }
+
+    @Test
+    public void testClassify_nullText() {
+        List<List<Triple<String, Integer, Integer>>> result =
+            underTest.classify(Lists.newArrayList("text", null));
+        assertEquals(2, result.size());
+        assertEquals(1, result.get(0).size());
+        assertTrue(result.get(1).isEmpty());
+    }
+
+    @Test
+    public void testGetAndResetStats() {
+        underTest.classify(ImmutableList.of("a", "b", "c"));
+        underTest.classify(ImmutableList.of("d"));
+
+        Map<String, Number> stats = underTest.getAndResetStats();
+        assertEquals(2L, stats.get("batches"));
+        assertEquals(4L, stats.get("messages"));
+        assertEquals(2.0, stats.get("avgBatchSize").doubleValue(), 0.001);
+        assertEquals(3L, stats.get("maxBatchSize"));
+
+        stats = underTest.getAndResetStats();
+        assertEquals(0L, stats.get("batches"));
+        assertEquals(0L, stats.get("maxBatchSize"));
+    }
+}
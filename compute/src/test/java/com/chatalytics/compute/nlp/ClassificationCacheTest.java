@@ -0,0 +1,87 @@
+package com.chatalytics.compute.nlp;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.stanford.nlp.util.Triple;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests {@link ClassificationCache}
+ *
+ * @author giannis
+ */
+public class ClassificationCacheTest {
+
+    private AtomicInteger classifications;
+    private Function<String, List<Triple<String, Integer, Integer>>> classifier;
+    private ClassificationCache underTest;
+
+    @Before
+    public void setUp() {
+        classifications = new AtomicInteger();
+        classifier = text -> {
+            classifications.incrementAndGet();
+            return ImmutableList.of(new Triple<>("ENTITY", 0, text.length()));
+        };
+        underTest = new ClassificationCache(2);
+    }
+
+    /**
+     * Makes sure the same text is only classified once
+     */
+    @Test
+    public void testGet() {
+        List<Triple<String, Integer, Integer>> first = underTest.get("Deploy finished", classifier);
+        List<Triple<String, Integer, Integer>> second = underTest.get("Deploy finished", classifier);
+        assertEquals(1, classifications.get());
+        assertEquals(first, second);
+
+        underTest.get("Deploy started", classifier);
+        assertEquals(2, classifications.get());
+
+        Map<String, Number> stats = underTest.getAndResetStats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(2L, stats.get("misses"));
+        assertEquals(1 / 3.0, stats.get("hitRatio").doubleValue(), 0.001);
+        assertEquals(2L, stats.get("size"));
+
+        // stats should reset
+        stats = underTest.getAndResetStats();
+        assertEquals(0L, stats.get("hits"));
+        assertEquals(0L, stats.get("misses"));
+    }
+
+    /**
+     * Makes sure the cache doesn't grow past its maximum size
+     */
+    @Test
+    public void testPut_evicts() {
+        underTest.put("a", ImmutableList.of());
+        underTest.put("b", ImmutableList.of());
+        underTest.put("c", ImmutableList.of());
+
+        Map<String, Number> stats = underTest.getAndResetStats();
+        assertEquals(1L, stats.get("evictions"));
+        assertEquals(2L, stats.get("size"));
+    }
+
+    @Test
+    public void testGetIfPresent_missing() {
+        assertNull(underTest.getIfPresent("not cached"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_badSize() {
+        new ClassificationCache(0);
+    }
+}
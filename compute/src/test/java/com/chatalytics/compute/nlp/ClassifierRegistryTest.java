@@ -0,0 +1,120 @@
+package com.chatalytics.compute.nlp;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.stanford.nlp.ie.AbstractSequenceClassifier;
+import edu.stanford.nlp.ling.CoreLabel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests {@link ClassifierRegistry}
+ *
+ * @author giannis
+ */
+public class ClassifierRegistryTest {
+
+    private AtomicInteger loads;
+    private ClassifierRegistry underTest;
+
+    @Before
+    public void setUp() {
+        loads = new AtomicInteger();
+        underTest = new ClassifierRegistry(resource -> {
+            loads.incrementAndGet();
+            return newClassifier();
+        });
+    }
+
+    /**
+     * Makes sure a model is loaded only once and the same instance is returned every time
+     */
+    @Test
+    public void testGetClassifier_loadsOnce() {
+        AbstractSequenceClassifier<CoreLabel> first = underTest.getClassifier("model-a");
+        AbstractSequenceClassifier<CoreLabel> second = underTest.getClassifier("model-a");
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+
+        AbstractSequenceClassifier<CoreLabel> other = underTest.getClassifier("model-b");
+        assertNotSame(first, other);
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * Makes sure concurrent requests for the same model share a single load
+     */
+    @Test
+    public void testGetClassifier_concurrent() throws Exception {
+        CountDownLatch startLatch = new CountDownLatch(1);
+        ClassifierRegistry slowRegistry = new ClassifierRegistry(resource -> {
+            loads.incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return newClassifier();
+        });
+
+        int numThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<AbstractSequenceClassifier<CoreLabel>>> futures = Lists.newArrayList();
+        for (int i = 0; i < numThreads; i++) {
+            Callable<AbstractSequenceClassifier<CoreLabel>> task = () -> {
+                startLatch.await();
+                return slowRegistry.getClassifier("model");
+            };
+            futures.add(executor.submit(task));
+        }
+        startLatch.countDown();
+
+        AbstractSequenceClassifier<CoreLabel> expected = futures.get(0).get();
+        for (Future<AbstractSequenceClassifier<CoreLabel>> future : futures) {
+            assertSame(expected, future.get());
+        }
+        executor.shutdownNow();
+        assertEquals(1, loads.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetClassifier_loadFails() {
+        underTest = new ClassifierRegistry(resource -> {
+            throw new IllegalArgumentException("missing " + resource);
+        });
+        underTest.getClassifier("missing-model");
+    }
+
+    @Test
+    public void testGetStats() {
+        underTest.getClassifier("model");
+        underTest.getClassifier("model");
+
+        Map<String, Number> stats = underTest.getStats();
+        assertEquals(1, stats.get("loaded"));
+        assertEquals(2L, stats.get("model.acquisitions"));
+        assertTrue(stats.containsKey("model.loadTimeMs"));
+        assertTrue(stats.containsKey("model.heapBytes"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AbstractSequenceClassifier<CoreLabel> newClassifier() {
+        return mock(AbstractSequenceClassifier.class);
+    }
+}
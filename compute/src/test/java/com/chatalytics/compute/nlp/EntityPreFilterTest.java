@@ -0,0 +1,100 @@
+package com.chatalytics.compute.nlp;
+
+import com.chatalytics.compute.nlp.EntityPreFilter.Rule;
+import com.chatalytics.core.config.ComputeConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link EntityPreFilter}
+ *
+ * @author giannis
+ */
+public class EntityPreFilterTest {
+
+    private EntityPreFilter underTest;
+
+    @Before
+    public void setUp() {
+        underTest = new EntityPreFilter(3, true, true, 0.5);
+    }
+
+    @Test
+    public void testCheck_accepted() {
+        assertNull(underTest.check("Today, Jane Doe is going to climb Mount Everest"));
+        assertNull(underTest.check("going to see Jane later"));
+        assertNull(underTest.check("meeting with Zoë in Zürich"));
+    }
+
+    @Test
+    public void testCheck_minLength() {
+        assertEquals(Rule.MIN_LENGTH, underTest.check("ok"));
+        assertEquals(Rule.MIN_LENGTH, underTest.check("  A  "));
+    }
+
+    @Test
+    public void testCheck_noCapitalizedToken() {
+        assertEquals(Rule.NO_CAPITALIZED_TOKEN, underTest.check("lol that's funny"));
+        assertEquals(Rule.NO_CAPITALIZED_TOKEN, underTest.check(":smile: :tada:"));
+        assertEquals(Rule.NO_CAPITALIZED_TOKEN, underTest.check("https://example.com/Some/Path"));
+        // an uppercase letter in the middle of a token doesn't count
+        assertEquals(Rule.NO_CAPITALIZED_TOKEN, underTest.check("see camelCase"));
+    }
+
+    @Test
+    public void testCheck_code() {
+        assertEquals(Rule.CODE, underTest.check("```Map<String, Integer> m = new HashMap<>();```"));
+        assertEquals(Rule.CODE, underTest.check("if (Foo.bar()) { x[0] = y(); }"));
+    }
+
+    @Test
+    public void testCheck_language() {
+        assertEquals(Rule.LANGUAGE, underTest.check("Привет, как дела у Ивана?"));
+        // disabled with a 0 ratio
+        EntityPreFilter noLanguageFilter = new EntityPreFilter(3, true, true, 0);
+        assertNull(noLanguageFilter.check("Привет, как дела у Ивана?"));
+    }
+
+    @Test
+    public void testCheck_rulesDisabled() {
+        EntityPreFilter permissive = new EntityPreFilter(0, false, false, 0);
+        assertNull(permissive.check(""));
+        assertNull(permissive.check("lol"));
+        assertNull(permissive.check("```code```"));
+    }
+
+    @Test
+    public void testAccept_stats() {
+        assertTrue(underTest.accept("Jane Doe is here"));
+        assertFalse(underTest.accept("ok"));
+        assertFalse(underTest.accept("lol that's funny"));
+        assertFalse(underTest.accept("nope, not today"));
+
+        Map<String, Number> stats = underTest.getAndResetStats();
+        assertEquals(4L, stats.get("checked"));
+        assertEquals(1L, stats.get("skipped.minLength"));
+        assertEquals(2L, stats.get("skipped.noCapitalizedToken"));
+        assertEquals(0L, stats.get("skipped.code"));
+
+        stats = underTest.getAndResetStats();
+        assertEquals(0L, stats.get("checked"));
+        assertEquals(0L, stats.get("skipped.noCapitalizedToken"));
+    }
+
+    @Test
+    public void testFromConfig() {
+        ComputeConfig config = new ComputeConfig();
+        config.entityFilterMinLength = 10;
+        underTest = EntityPreFilter.fromConfig(config);
+        assertEquals(Rule.MIN_LENGTH, underTest.check("Jane Doe"));
+        assertNull(underTest.check("Jane Doe is here"));
+    }
+}
@@ -0,0 +1,158 @@
+package com.chatalytics.compute.storm;
+
+import com.chatalytics.compute.storm.bolt.EmojiCounterBolt;
+import com.chatalytics.compute.storm.bolt.EntityExtractionBolt;
+import com.chatalytics.compute.storm.bolt.MessageSummaryBolt;
+import com.chatalytics.compute.storm.bolt.RealtimeBolt;
+import com.chatalytics.compute.storm.spout.LocalTestSpout;
+import com.chatalytics.compute.storm.spout.MessageTuples;
+import com.chatalytics.compute.storm.spout.SlackBackfillSpout;
+import com.chatalytics.core.InputSourceType;
+import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.TopologyConfig;
+import com.chatalytics.core.config.TopologyConfig.MessageGrouping;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+
+import org.apache.storm.Config;
+import org.apache.storm.generated.Bolt;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.generated.Grouping;
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.utils.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ChatAlyticsStormTopology}
+ *
+ * @author giannis
+ */
+public class ChatAlyticsStormTopologyTest {
+
+    private static final GlobalStreamId SPOUT_STREAM =
+        new GlobalStreamId(LocalTestSpout.SPOUT_ID, Utils.DEFAULT_STREAM_ID);
+
+    private ChatAlyticsConfig config;
+    private TopologyConfig topologyConfig;
+
+    @Before
+    public void setUp() {
+        config = new ChatAlyticsConfig();
+        config.inputType = InputSourceType.LOCAL_TEST;
+        topologyConfig = config.computeConfig.topologyConfig;
+    }
+
+    /**
+     * Makes sure the parallelism of every component is set from the config
+     */
+    @Test
+    public void testCreate_parallelism() {
+        topologyConfig.spoutParallelism = 2;
+        topologyConfig.entityExtractionParallelism = 8;
+        topologyConfig.emojiCounterParallelism = 3;
+        topologyConfig.messageSummaryParallelism = 4;
+        topologyConfig.realtimeParallelism = 5;
+
+        StormTopology underTest = ChatAlyticsStormTopology.create(config);
+
+        assertEquals(2, underTest.get_spouts().get(LocalTestSpout.SPOUT_ID).get_common()
+                                 .get_parallelism_hint());
+        assertEquals(8, getBolt(underTest, EntityExtractionBolt.BOLT_ID).get_common()
+                                                                       .get_parallelism_hint());
+        assertEquals(3, getBolt(underTest, EmojiCounterBolt.BOLT_ID).get_common()
+                                                                   .get_parallelism_hint());
+        assertEquals(4, getBolt(underTest, MessageSummaryBolt.BOLT_ID).get_common()
+                                                                     .get_parallelism_hint());
+        assertEquals(5, getBolt(underTest, RealtimeBolt.BOLT_ID).get_common()
+                                                               .get_parallelism_hint());
+    }
+
+    /**
+     * Makes sure that the chat spouts run on a single executor regardless of the spout parallelism
+     */
+    @Test
+    public void testCreate_chatSpoutParallelism() {
+        topologyConfig.spoutParallelism = 2;
+        config.inputType = InputSourceType.SLACK_BACKFILL;
+
+        StormTopology underTest = ChatAlyticsStormTopology.create(config);
+
+        assertEquals(1, underTest.get_spouts().get(SlackBackfillSpout.SPOUT_ID).get_common()
+                                 .get_parallelism_hint());
+    }
+
+    /**
+     * Makes sure that the entity bolt ticks often enough for both its aggregation window and its
+     * batches, while the other persisting bolts tick once per window
+     */
+    @Test
+    public void testCreate_tickFrequency() throws Exception {
+        config.computeConfig.aggregationWindowSecs = 60;
+        config.computeConfig.entityExtractionBatchSize = 10;
+        config.computeConfig.entityExtractionBatchMaxDelayMs = 2000;
+
+        StormTopology underTest = ChatAlyticsStormTopology.create(config);
+
+        assertEquals(2, getTickFrequencySecs(underTest, EntityExtractionBolt.BOLT_ID));
+        assertEquals(60, getTickFrequencySecs(underTest, EmojiCounterBolt.BOLT_ID));
+        assertEquals(60, getTickFrequencySecs(underTest, MessageSummaryBolt.BOLT_ID));
+
+        config.computeConfig.entityExtractionBatchMaxDelayMs = 120000;
+        underTest = ChatAlyticsStormTopology.create(config);
+        assertEquals(60, getTickFrequencySecs(underTest, EntityExtractionBolt.BOLT_ID));
+    }
+
+    @Test
+    public void testCreate_roomGrouping() {
+        topologyConfig.messageGrouping = MessageGrouping.ROOM;
+        StormTopology underTest = ChatAlyticsStormTopology.create(config);
+        assertFieldsGrouping(underTest, MessageTuples.ROOM_ID_FIELD_STR);
+    }
+
+    @Test
+    public void testCreate_userGrouping() {
+        topologyConfig.messageGrouping = MessageGrouping.USER;
+        StormTopology underTest = ChatAlyticsStormTopology.create(config);
+        assertFieldsGrouping(underTest, MessageTuples.USER_ID_FIELD_STR);
+    }
+
+    @Test
+    public void testCreate_shuffleGrouping() {
+        topologyConfig.messageGrouping = MessageGrouping.SHUFFLE;
+        StormTopology underTest = ChatAlyticsStormTopology.create(config);
+        for (String boltId : ImmutableList.of(EntityExtractionBolt.BOLT_ID,
+                                              EmojiCounterBolt.BOLT_ID,
+                                              MessageSummaryBolt.BOLT_ID)) {
+            Grouping grouping = getBolt(underTest, boltId).get_common().get_inputs()
+                                                          .get(SPOUT_STREAM);
+            assertTrue(grouping.is_set_shuffle());
+        }
+    }
+
+    private void assertFieldsGrouping(StormTopology topology, String field) {
+        for (String boltId : ImmutableList.of(EntityExtractionBolt.BOLT_ID,
+                                              EmojiCounterBolt.BOLT_ID,
+                                              MessageSummaryBolt.BOLT_ID)) {
+            Grouping grouping = getBolt(topology, boltId).get_common().get_inputs()
+                                                         .get(SPOUT_STREAM);
+            assertTrue(grouping.is_set_fields());
+            assertEquals(ImmutableList.of(field), grouping.get_fields());
+        }
+    }
+
+    private int getTickFrequencySecs(StormTopology topology, String boltId) throws Exception {
+        String jsonConf = getBolt(topology, boltId).get_common().get_json_conf();
+        Map<?, ?> conf = new ObjectMapper().readValue(jsonConf, Map.class);
+        return ((Number) conf.get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS)).intValue();
+    }
+
+    private Bolt getBolt(StormTopology topology, String boltId) {
+        return topology.get_bolts().get(boltId);
+    }
+}
@@ -0,0 +1,89 @@
+package com.chatalytics.compute.storm.bolt;
+
+import com.chatalytics.compute.db.dao.BufferedMentionableWriter;
+import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.model.data.EmojiEntity;
+
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.BasicOutputCollector;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.tuple.Tuple;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests {@link ChatAlyticsBaseBolt}
+ *
+ * @author giannis
+ */
+public class ChatAlyticsBaseBoltTest {
+
+    private ChatAlyticsConfig config;
+    private BufferedMentionableWriter<EmojiEntity> writer;
+    private TestBolt underTest;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() {
+        config = new ChatAlyticsConfig();
+        config.computeConfig.aggregationWindowSecs = 60;
+        writer = mock(BufferedMentionableWriter.class);
+        underTest = new TestBolt();
+    }
+
+    /**
+     * Makes sure that the aggregation window is only closed once all of it has elapsed, even if
+     * tick tuples come in more often
+     */
+    @Test
+    public void testCloseWindowIfElapsed() {
+        long startMs = System.currentTimeMillis();
+        MentionAggregator<String, EmojiEntity> aggregator =
+            underTest.createAggregator(config, mock(TopologyContext.class), "aggregator",
+                                       EmojiEntity::new, writer);
+        aggregator.add(new EmojiEntity("u1", "r1", DateTime.now(), "e1", 1, false));
+
+        assertFalse(underTest.closeWindowIfElapsed(startMs + 1000));
+        assertFalse(underTest.closeWindowIfElapsed(startMs + 30000));
+        verify(writer, never()).write(any(EmojiEntity.class));
+
+        long windowEndMs = System.currentTimeMillis() + 60000;
+        assertTrue(underTest.closeWindowIfElapsed(windowEndMs));
+        verify(writer).write(any(EmojiEntity.class));
+
+        // a new window starts when the previous one is closed
+        aggregator.add(new EmojiEntity("u1", "r1", DateTime.now(), "e1", 1, false));
+        assertFalse(underTest.closeWindowIfElapsed(windowEndMs + 1000));
+        assertTrue(underTest.closeWindowIfElapsed(windowEndMs + 60000));
+        verify(writer, times(2)).write(any(EmojiEntity.class));
+    }
+
+    private static class TestBolt extends ChatAlyticsBaseBolt {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void prepare(ChatAlyticsConfig config, @SuppressWarnings("rawtypes") Map stormConf,
+                            TopologyContext context) {
+        }
+
+        @Override
+        public void execute(Tuple input, BasicOutputCollector collector) {
+        }
+
+        @Override
+        public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.chatalytics.core.util.YamlUtils;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.BasicOutputCollector;
 import org.apache.storm.topology.OutputFieldsDeclarer;
@@ -31,9 +32,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
@@ -210,6 +214,22 @@ public class EmojiCounterBoltTest {
         assertEquals(0, emojis.size());
     }
 
+    /**
+     * Makes sure colons in times are not counted as emojis
+     */
+    @Test
+    public void testGetEmojisFromMessage_withTime() {
+        Message message = new Message(mentionTime, "randomFrom", "randomUserId",
+                                      String.format("standup at 10:30:00 :%s:", emoji),
+                                      "randomRoomId", MessageType.MESSAGE);
+        FatMessage fatMessage = new FatMessage(message, user, room);
+
+        List<EmojiEntity> emojis = underTest.getEmojisFromMessage(fatMessage);
+
+        assertEquals(1, emojis.size());
+        assertEquals(emoji, emojis.get(0).getValue());
+    }
+
     @Test
     public void testDeclareOutputFields() {
         OutputFieldsDeclarer fields = mock(OutputFieldsDeclarer.class);
@@ -229,7 +249,9 @@ public class EmojiCounterBoltTest {
         BasicOutputCollector collector = mock(BasicOutputCollector.class);
 
         underTest.prepare(stormConf, context);
-        verifyZeroInteractions(context);
+        verify(context).registerMetric(eq("emoji-writer"), any(IMetric.class), anyInt());
+        verify(context).registerMetric(eq("emoji-aggregator"), any(IMetric.class), anyInt());
+        verifyNoMoreInteractions(context);
         verifyZeroInteractions(collector);
     }
 
@@ -9,11 +9,13 @@ import com.chatalytics.core.model.data.MessageType;
 import com.chatalytics.core.model.data.Room;
 import com.chatalytics.core.model.data.User;
 import com.chatalytics.core.util.YamlUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
-import org.apache.storm.topology.BasicOutputCollector;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.TupleImpl;
@@ -23,6 +25,8 @@ import org.joda.time.DateTimeZone;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import java.util.List;
 import java.util.Map;
@@ -32,7 +36,10 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -49,7 +56,7 @@ public class EntityExtractionBoltTest {
     private User user;
     private Room room;
     private TopologyContext context;
-    private BasicOutputCollector collector;
+    private OutputCollector collector;
 
     @Before
     public void setUp() throws Exception {
@@ -62,9 +69,9 @@ public class EntityExtractionBoltTest {
         Map<Object, Object> stormConf = Maps.newHashMapWithExpectedSize(1);
         stormConf.put(ConfigurationConstants.CHATALYTICS_CONFIG.txt, YamlUtils.writeYaml(config));
 
-        collector = mock(BasicOutputCollector.class);
+        collector = mock(OutputCollector.class);
         context = mock(TopologyContext.class);
-        underTest.prepare(stormConf, context);
+        underTest.prepare(stormConf, context, collector);
 
         Fields fields = mock(Fields.class);
         when(fields.size()).thenReturn(1);
@@ -87,9 +94,60 @@ public class EntityExtractionBoltTest {
         List<Object> values = Lists.newArrayList(fatMessage);
         Tuple input = new TupleImpl(context, values, 0, "stream-id");
 
-        underTest.execute(input, collector);
+        underTest.execute(input);
 
-        verify(collector, times(2)).emit(any(Values.class));
+        verify(collector, times(2)).emit(eq(input), any(Values.class));
+        verify(collector).ack(input);
+    }
+
+    /**
+     * Makes sure that in batch mode nothing is emitted or acked until the batch fills up, that the
+     * entities are then emitted in the order the messages came in, anchored to the tuples of their
+     * messages, and that the tuples are acked after that
+     */
+    @Test
+    public void testExecute_batched() {
+        ChatAlyticsConfig config = new ChatAlyticsConfig();
+        config.persistenceUnitName = "chatalytics-db-test";
+        config.computeConfig.entityExtractionBatchSize = 2;
+        config.computeConfig.entityExtractionBatchMaxDelayMs = 60 * 1000;
+        Map<Object, Object> stormConf = Maps.newHashMapWithExpectedSize(1);
+        stormConf.put(ConfigurationConstants.CHATALYTICS_CONFIG.txt, YamlUtils.writeYaml(config));
+        EntityExtractionBolt batchedBolt = new EntityExtractionBolt();
+        batchedBolt.prepare(stormConf, context, collector);
+
+        String ent1 = "Jane Doe";
+        String ent2 = "Mount Everest";
+        Message msg1 = new Message(DateTime.now(), "jane", "u1",
+                                   String.format("Today, %s is going to climb %s", ent1, ent2),
+                                   "r1", MessageType.MESSAGE);
+        Message msg2 = new Message(DateTime.now(), "jane", "u1",
+                                   String.format("Tomorrow, I'm going to climb %s", ent2),
+                                   "r1", MessageType.MESSAGE);
+        Tuple input1 = new TupleImpl(context, Lists.newArrayList(new FatMessage(msg1, user, room)),
+                                     0, "stream-id");
+        Tuple input2 = new TupleImpl(context, Lists.newArrayList(new FatMessage(msg2, user, room)),
+                                     0, "stream-id");
+
+        batchedBolt.execute(input1);
+        verify(collector, never()).emit(any(Tuple.class), any(Values.class));
+        verify(collector, never()).ack(any(Tuple.class));
+
+        batchedBolt.execute(input2);
+        ArgumentCaptor<Tuple> anchorCaptor = ArgumentCaptor.forClass(Tuple.class);
+        ArgumentCaptor<Values> valuesCaptor = ArgumentCaptor.forClass(Values.class);
+        InOrder inOrder = inOrder(collector);
+        inOrder.verify(collector, times(3)).emit(anchorCaptor.capture(), valuesCaptor.capture());
+        inOrder.verify(collector).ack(input1);
+        inOrder.verify(collector).ack(input2);
+        List<String> emitted = Lists.newArrayList();
+        valuesCaptor.getAllValues().forEach(v -> emitted.add(((ChatEntity) v.get(0)).getValue()));
+        // the entities of the first message come first
+        assertEquals(ImmutableSet.of(ent1, ent2), ImmutableSet.copyOf(emitted.subList(0, 2)));
+        assertEquals(ent2, emitted.get(2));
+        assertEquals(ImmutableList.of(input1, input1, input2), anchorCaptor.getAllValues());
+
+        batchedBolt.cleanup();
     }
 
     /**
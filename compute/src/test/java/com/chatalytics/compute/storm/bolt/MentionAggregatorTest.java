@@ -0,0 +1,120 @@
+package com.chatalytics.compute.storm.bolt;
+
+import com.chatalytics.core.model.data.EmojiEntity;
+import com.google.common.collect.Lists;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link MentionAggregator}
+ *
+ * @author giannis
+ */
+public class MentionAggregatorTest {
+
+    private static final long MINUTE_MS = 60 * 1000L;
+
+    private List<EmojiEntity> written;
+    private DateTime mentionTime;
+    private MentionAggregator<String, EmojiEntity> underTest;
+
+    @Before
+    public void setUp() {
+        written = Lists.newArrayList();
+        mentionTime = new DateTime(2016, 1, 1, 10, 30, 15, DateTimeZone.UTC);
+        underTest = createAggregator(MINUTE_MS, true);
+    }
+
+    /**
+     * Makes sure mentions with the same key in the same truncated time are combined
+     */
+    @Test
+    public void testFlush_combinesMentions() {
+        underTest.add(new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false));
+        underTest.add(new EmojiEntity("u1", "r1", mentionTime.plusSeconds(30), "e1", 2, false));
+        assertTrue(written.isEmpty());
+        assertEquals(1, underTest.getWindowSize());
+
+        assertEquals(1, underTest.flush());
+        assertEquals(1, written.size());
+        EmojiEntity combined = written.get(0);
+        assertEquals("u1", combined.getUsername());
+        assertEquals("r1", combined.getRoomName());
+        assertEquals("e1", combined.getValue());
+        assertEquals(3, combined.getOccurrences());
+        assertEquals(mentionTime.withSecondOfMinute(0), combined.getMentionTime());
+
+        // window should be empty
+        assertEquals(0, underTest.getWindowSize());
+        assertEquals(0, underTest.flush());
+        assertEquals(1, written.size());
+    }
+
+    /**
+     * Makes sure mentions that differ in any part of the key are not combined
+     */
+    @Test
+    public void testFlush_differentKeys() {
+        underTest.add(new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false));
+        underTest.add(new EmojiEntity("u2", "r1", mentionTime, "e1", 1, false));
+        underTest.add(new EmojiEntity("u1", "r2", mentionTime, "e1", 1, false));
+        underTest.add(new EmojiEntity("u1", "r1", mentionTime, "e2", 1, false));
+        underTest.add(new EmojiEntity("u1", "r1", mentionTime, "e1", 1, true));
+        underTest.add(new EmojiEntity("u1", "r1", mentionTime.plusMinutes(1), "e1", 1, false));
+        underTest.add(new EmojiEntity("u1", null, mentionTime, "e1", 1, false));
+        underTest.add(new EmojiEntity("u1", null, mentionTime, "e1", 1, false));
+
+        assertEquals(7, underTest.flush());
+        assertEquals(7, written.size());
+    }
+
+    /**
+     * Makes sure mentions are passed through as they come when there's no window
+     */
+    @Test
+    public void testAdd_notWindowed() {
+        underTest = createAggregator(MINUTE_MS, false);
+        EmojiEntity emoji = new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false);
+        underTest.add(emoji);
+        underTest.add(emoji);
+
+        assertEquals(2, written.size());
+        assertEquals(mentionTime, written.get(0).getMentionTime());
+        assertEquals(0, underTest.flush());
+    }
+
+    @Test
+    public void testGetAndResetStats() {
+        underTest.add(new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false));
+        underTest.add(new EmojiEntity("u1", "r1", mentionTime, "e1", 1, false));
+        underTest.add(new EmojiEntity("u1", "r1", mentionTime, "e2", 1, false));
+        underTest.flush();
+
+        Map<String, Number> stats = underTest.getAndResetStats();
+        assertEquals(3L, stats.get("added"));
+        assertEquals(2L, stats.get("flushed"));
+
+        stats = underTest.getAndResetStats();
+        assertEquals(0L, stats.get("added"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_badTruncation() {
+        createAggregator(0, true);
+    }
+
+    private MentionAggregator<String, EmojiEntity> createAggregator(long truncationMs,
+                                                                    boolean windowed) {
+        return new MentionAggregator<String, EmojiEntity>(EmojiEntity::new, truncationMs, windowed,
+                                                          written::add);
+    }
+}
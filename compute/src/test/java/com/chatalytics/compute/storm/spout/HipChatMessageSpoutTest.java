@@ -0,0 +1,121 @@
+package com.chatalytics.compute.storm.spout;
+
+import com.chatalytics.compute.chat.dao.IChatApiDAO;
+import com.chatalytics.compute.db.dao.IChatAlyticsDAO;
+import com.chatalytics.core.config.HipChatConfig;
+import com.chatalytics.core.model.data.FatMessage;
+import com.chatalytics.core.model.data.Message;
+import com.chatalytics.core.model.data.Room;
+import com.chatalytics.core.model.data.User;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.storm.tuple.Values;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Set;
+
+import static com.chatalytics.core.model.data.MessageType.MESSAGE;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link HipChatMessageSpout}
+ *
+ * @author giannis
+ */
+public class HipChatMessageSpoutTest {
+
+    private IChatApiDAO hipchatDao;
+    private SpoutOutputCollector collector;
+    private HipChatMessageSpout underTest;
+
+    @Before
+    public void setUp() {
+        hipchatDao = mock(IChatApiDAO.class);
+        collector = mock(SpoutOutputCollector.class);
+        HipChatConfig hipchatConfig = new HipChatConfig();
+        hipchatConfig.roomFetchConcurrency = 2;
+        underTest = new HipChatMessageSpout();
+        underTest.open(hipchatConfig, hipchatDao, mock(IChatAlyticsDAO.class), DateTimeZone.UTC,
+                       collector);
+    }
+
+    /**
+     * Makes sure that the users are only fetched once per cycle and that the messages of all the
+     * rooms are emitted
+     */
+    @Test
+    public void testPullMessages() {
+        DateTime end = DateTime.now(DateTimeZone.UTC);
+        DateTime start = end.minusHours(1);
+        Room r1 = createRoom("r1");
+        Room r2 = createRoom("r2");
+        Room r3 = createRoom("r3");
+        User u1 = new User("u1", null, false, false, false, "name", "mention_name", null,
+                           DateTime.now(), DateTime.now(), null, null, null, null);
+        when(hipchatDao.getUsers()).thenReturn(ImmutableMap.of("u1", u1));
+        when(hipchatDao.getRooms()).thenReturn(ImmutableMap.of("r1", r1, "r2", r2, "r3", r3));
+        when(hipchatDao.getMessages(start, end, r1)).thenReturn(ImmutableList.of(
+            new Message(start, "name", "u1", "a", "r1", MESSAGE),
+            new Message(start.plusMinutes(1), "name", "u1", "b", "r1", MESSAGE)));
+        when(hipchatDao.getMessages(start, end, r2)).thenReturn(ImmutableList.of(
+            new Message(start, "name", "u1", "c", "r2", MESSAGE)));
+        when(hipchatDao.getMessages(start, end, r3)).thenReturn(ImmutableList.of());
+
+        underTest.pullMessages(start, end);
+
+        verify(hipchatDao, times(1)).getUsers();
+        ArgumentCaptor<Values> values = ArgumentCaptor.forClass(Values.class);
+        verify(collector, times(3)).emit(values.capture());
+        Set<String> emittedText = Sets.newHashSet();
+        for (Values value : values.getAllValues()) {
+            FatMessage fatMessage = (FatMessage) value.get(0);
+            assertEquals(u1, fatMessage.getUser());
+            assertEquals(fatMessage.getMessage().getRoomId(), fatMessage.getRoom().getRoomId());
+            emittedText.add(fatMessage.getMessage().getMessage());
+        }
+        assertEquals(Sets.newHashSet("a", "b", "c"), emittedText);
+    }
+
+    /**
+     * Makes sure that a room that can't be pulled doesn't stop the other rooms from being emitted
+     */
+    @Test
+    public void testPullMessages_withFailedRoom() {
+        DateTime end = DateTime.now(DateTimeZone.UTC);
+        DateTime start = end.minusHours(1);
+        Room r1 = createRoom("r1");
+        Room r2 = createRoom("r2");
+        when(hipchatDao.getUsers()).thenReturn(ImmutableMap.of());
+        when(hipchatDao.getRooms()).thenReturn(ImmutableMap.of("r1", r1, "r2", r2));
+        when(hipchatDao.getMessages(start, end, r1)).thenThrow(new RuntimeException("test"));
+        when(hipchatDao.getMessages(start, end, r2)).thenReturn(ImmutableList.of(
+            new Message(start, "name", "u1", "c", "r2", MESSAGE)));
+
+        underTest.pullMessages(start, end);
+
+        verify(collector, times(1)).emit(any(Values.class));
+    }
+
+    @After
+    public void tearDown() {
+        underTest.close();
+    }
+
+    private static Room createRoom(String roomId) {
+        return new Room(roomId, roomId, null, DateTime.now(), DateTime.now(), null, false, false,
+                        null, null);
+    }
+}
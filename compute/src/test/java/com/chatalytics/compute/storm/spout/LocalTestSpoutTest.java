@@ -15,10 +15,13 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -85,6 +88,26 @@ public class LocalTestSpoutTest {
         verify(collector).emit(any(Values.class));
     }
 
+    /**
+     * Makes sure messages are not emitted faster than the configured rate
+     */
+    @Test
+    public void testNextTuple_withRate() {
+        chatConfig.messageCorpusFile = "test-corpus.txt";
+        chatConfig.randomSeed = 0L;
+        chatConfig.messagesPerSec = 100;
+        stormConf.put(ConfigurationConstants.CHATALYTICS_CONFIG.txt, YamlUtils.writeYaml(config));
+        SpoutOutputCollector collector = mock(SpoutOutputCollector.class);
+        underTest.open(stormConf, mock(TopologyContext.class), collector);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            underTest.nextTuple();
+        }
+        // the first message is emitted right away and the next ten are 10ms apart
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(100));
+        verify(collector, times(11)).emit(any(Values.class));
+    }
+
     @Test
     public void testDeclareOutputFields() {
         OutputFieldsDeclarer fields = mock(OutputFieldsDeclarer.class);
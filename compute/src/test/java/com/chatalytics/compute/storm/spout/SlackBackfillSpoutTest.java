@@ -1,8 +1,11 @@
 package com.chatalytics.compute.storm.spout;
 
 import com.chatalytics.compute.chat.dao.IChatApiDAO;
+import com.chatalytics.compute.chat.dao.slack.JsonSlackDAO;
 import com.chatalytics.compute.config.ConfigurationConstants;
 import com.chatalytics.compute.db.dao.IChatAlyticsDAO;
+import com.chatalytics.compute.exception.ChatApiException;
+import com.chatalytics.core.InputSourceType;
 import com.chatalytics.core.config.ChatAlyticsConfig;
 import com.chatalytics.core.config.SlackBackfillerConfig;
 import com.chatalytics.core.model.data.FatMessage;
@@ -12,9 +15,16 @@ import com.chatalytics.core.model.data.Room;
 import com.chatalytics.core.model.data.User;
 import com.chatalytics.core.util.YamlUtils;
 import com.google.common.collect.Maps;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.WebResource.Builder;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
 
 import org.apache.storm.shade.com.google.common.collect.ImmutableMap;
 import org.apache.storm.shade.com.google.common.collect.Lists;
+import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.spout.SpoutOutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
@@ -30,11 +40,19 @@ import org.junit.Test;
 import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -73,7 +91,9 @@ public class SlackBackfillSpoutTest {
         chatConfig.startDate = DateTime.now().toString();
         stormConf.put(ConfigurationConstants.CHATALYTICS_CONFIG.txt, YamlUtils.writeYaml(config));
         underTest.open(stormConf, context, collector);
-        verifyZeroInteractions(collector, context);
+        verify(context).registerMetric(eq("chat-api-tokens"), any(IMetric.class), anyInt());
+        verifyZeroInteractions(collector);
+        verifyNoMoreInteractions(context);
     }
 
     @Test
@@ -82,7 +102,9 @@ public class SlackBackfillSpoutTest {
         chatConfig.startDate = null;
         stormConf.put(ConfigurationConstants.CHATALYTICS_CONFIG.txt, YamlUtils.writeYaml(config));
         underTest.open(stormConf, context, collector);
-        verifyZeroInteractions(collector, context);
+        verify(context).registerMetric(eq("chat-api-tokens"), any(IMetric.class), anyInt());
+        verifyZeroInteractions(collector);
+        verifyNoMoreInteractions(context);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -117,9 +139,51 @@ public class SlackBackfillSpoutTest {
         verify(slackDao).getRooms();
         verify(dbDao).setLastMessagePullTime(any(DateTime.class));
         verify(dbDao).getLastMessagePullTime();
+        verify(dbDao).getRoomMessagePullTimes();
+        verify(dbDao).setRoomMessagePullTime(eq("r1"), any(DateTime.class));
         verifyNoMoreInteractions(dbDao);
     }
 
+    /**
+     * Makes sure that the backfill fails without moving the last pull time forward when the chat
+     * API keeps throttling the requests, so that the interval is pulled again on the next run
+     */
+    @Test
+    public void testNextTuple_throttled() {
+        chatConfig.granularityMins = 0;
+        config.inputType = InputSourceType.SLACK;
+        config.computeConfig.apiRetryBaseSleepMs = 0;
+        Client client = mock(Client.class);
+        WebResource baseResource = mock(WebResource.class);
+        WebResource usersResource = mock(WebResource.class);
+        Builder builder = mock(Builder.class);
+        when(client.resource(chatConfig.getBaseAPIURL())).thenReturn(baseResource);
+        when(baseResource.path("users.list")).thenReturn(usersResource);
+        when(usersResource.queryParam("token", "0")).thenReturn(usersResource);
+        when(usersResource.accept(MediaType.APPLICATION_JSON)).thenReturn(builder);
+        ClientResponse throttledResponse = mock(ClientResponse.class);
+        when(throttledResponse.getStatus()).thenReturn(429);
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.putSingle("Retry-After", "0");
+        when(throttledResponse.getHeaders()).thenReturn(headers);
+        when(builder.get(String.class)).thenThrow(new UniformInterfaceException(throttledResponse));
+
+        IChatAlyticsDAO dbDao = mock(IChatAlyticsDAO.class);
+        when(dbDao.getLastMessagePullTime()).thenReturn(new DateTime(0, DateTimeZone.UTC));
+        underTest.open(chatConfig, new JsonSlackDAO(config, client), dbDao, context, collector);
+
+        try {
+            underTest.nextTuple();
+            fail();
+        } catch (ChatApiException e) {
+            assertEquals(429, e.getStatus());
+        }
+        verify(builder, times(config.computeConfig.apiRetries + 1)).get(String.class);
+        verify(dbDao, never()).setLastMessagePullTime(any(DateTime.class));
+        verify(dbDao, never()).setRoomMessagePullTime(any(String.class), any(DateTime.class));
+        verifyZeroInteractions(collector);
+    }
+
     /**
      * This test makes sure that backfilling doesn't run when the latest pull time is after the
      * current time
@@ -253,6 +317,179 @@ public class SlackBackfillSpoutTest {
         verifyNoMoreInteractions(collector);
     }
 
+    /**
+     * Makes sure that all the messages of all the rooms are emitted when rooms are backfilled
+     * concurrently and have more messages than fit in the queue
+     */
+    @Test
+    public void testBackfillRooms_concurrentRooms() {
+        chatConfig.roomConcurrency = 3;
+        chatConfig.messageQueueSize = 2;
+        IChatAlyticsDAO dbDao = mock(IChatAlyticsDAO.class);
+        IChatApiDAO slackDao = mock(IChatApiDAO.class);
+        underTest.open(chatConfig, slackDao, dbDao, context, collector);
+
+        Map<String, User> users = ImmutableMap.of("u1", new User("u1", "email", false, false, false,
+                                                                 "name", "mention_name", null,
+                                                                 DateTime.now(), DateTime.now(),
+                                                                 null, null, null, null));
+        Interval interval = new Interval(DateTime.now().minusDays(1), DateTime.now());
+        Map<String, Room> rooms = Maps.newHashMap();
+        int numRooms = 5;
+        int messagesPerRoom = 4;
+        for (int i = 0; i < numRooms; i++) {
+            Room room = new Room("r" + i, "room" + i, null, DateTime.now(), DateTime.now(), null,
+                                 false, false, null, null);
+            rooms.put(room.getRoomId(), room);
+            List<Message> messages = Lists.newArrayList();
+            for (int j = 0; j < messagesPerRoom; j++) {
+                messages.add(new Message(DateTime.now(), "from", "u1", "msg" + j, room.getRoomId(),
+                                         MessageType.MESSAGE));
+            }
+            when(slackDao.getMessages(interval.getStart(), interval.getEnd(), room))
+                .thenReturn(messages);
+        }
+
+        underTest.backfillRooms(users, rooms, interval);
+        verify(collector, times(numRooms * messagesPerRoom)).emit(any(Values.class));
+        verifyNoMoreInteractions(collector);
+    }
+
+    /**
+     * Makes sure that a room that fails doesn't stop the other rooms from being emitted, but
+     * still fails the backfill so that the last pull time and the pull time of the failed room are
+     * not moved forward
+     */
+    @Test
+    public void testBackfillRooms_failedRoom() {
+        IChatAlyticsDAO dbDao = mock(IChatAlyticsDAO.class);
+        IChatApiDAO slackDao = mock(IChatApiDAO.class);
+        underTest.open(chatConfig, slackDao, dbDao, context, collector);
+
+        Map<String, User> users = ImmutableMap.of("u1", new User("u1", "email", false, false, false,
+                                                                 "name", "mention_name", null,
+                                                                 DateTime.now(), DateTime.now(),
+                                                                 null, null, null, null));
+        Room r1 = new Room("r1", "room1", null, DateTime.now(), DateTime.now(), null, false, false,
+                           null, null);
+        Room r2 = new Room("r2", "room2", null, DateTime.now(), DateTime.now(), null, false, false,
+                           null, null);
+        Interval interval = new Interval(DateTime.now().minusDays(1), DateTime.now());
+        when(slackDao.getMessages(interval.getStart(), interval.getEnd(), r1))
+            .thenThrow(new IllegalStateException("test"));
+        when(slackDao.getMessages(interval.getStart(), interval.getEnd(), r2))
+            .thenReturn(Lists.newArrayList(new Message(DateTime.now(), "from", "u1", "msg", "r2",
+                                                       MessageType.MESSAGE)));
+
+        try {
+            underTest.backfillRooms(users, ImmutableMap.of("r1", r1, "r2", r2), interval);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        verify(collector).emit(any(Values.class));
+        verifyNoMoreInteractions(collector);
+        verify(dbDao).setRoomMessagePullTime(eq("r2"), any(DateTime.class));
+        verify(dbDao, never()).setRoomMessagePullTime(eq("r1"), any(DateTime.class));
+    }
+
+    /**
+     * Makes sure that rooms are backfilled from their own pull times, that rooms which are already
+     * up to date are skipped and that the pull times of the backfilled rooms are moved forward
+     */
+    @Test
+    public void testBackfillRooms_roomPullTimes() {
+        IChatAlyticsDAO dbDao = mock(IChatAlyticsDAO.class);
+        IChatApiDAO slackDao = mock(IChatApiDAO.class);
+        underTest.open(chatConfig, slackDao, dbDao, context, collector);
+
+        Map<String, User> users = ImmutableMap.of("u1", new User("u1", "email", false, false, false,
+                                                                 "name", "mention_name", null,
+                                                                 DateTime.now(), DateTime.now(),
+                                                                 null, null, null, null));
+        Room r1 = new Room("r1", "room1", null, DateTime.now(), DateTime.now(), null, false, false,
+                           null, null);
+        Room r2 = new Room("r2", "room2", null, DateTime.now(), DateTime.now(), null, false, false,
+                           null, null);
+        Room r3 = new Room("r3", "room3", null, DateTime.now(), DateTime.now(), null, false, false,
+                           null, null);
+        Interval interval = new Interval(DateTime.now().minusDays(1), DateTime.now());
+        DateTime r1PullTime = interval.getStart().plusHours(1);
+        when(dbDao.getRoomMessagePullTimes())
+            .thenReturn(ImmutableMap.of("r1", r1PullTime,
+                                        "r2", interval.getEnd(),
+                                        "r3", interval.getStart().minusDays(1)));
+        when(slackDao.getMessages(r1PullTime, interval.getEnd(), r1))
+            .thenReturn(Lists.newArrayList(new Message(DateTime.now(), "from", "u1", "msg", "r1",
+                                                       MessageType.MESSAGE)));
+        when(slackDao.getMessages(interval.getStart(), interval.getEnd(), r3))
+            .thenReturn(Lists.newArrayList(new Message(DateTime.now(), "from", "u1", "msg", "r3",
+                                                       MessageType.MESSAGE)));
+
+        underTest.backfillRooms(users, ImmutableMap.of("r1", r1, "r2", r2, "r3", r3), interval);
+        verify(slackDao).getMessages(r1PullTime, interval.getEnd(), r1);
+        verify(slackDao).getMessages(interval.getStart(), interval.getEnd(), r3);
+        verifyNoMoreInteractions(slackDao);
+        verify(collector, times(2)).emit(any(Values.class));
+        verify(dbDao).setRoomMessagePullTime("r1", interval.getEnd());
+        verify(dbDao).setRoomMessagePullTime("r3", interval.getEnd());
+        verify(dbDao, never()).setRoomMessagePullTime(eq("r2"), any(DateTime.class));
+    }
+
+    /**
+     * Makes sure that rooms without a pull time are backfilled from the configured start date
+     */
+    @Test
+    public void testBackfillRooms_newRoom() {
+        DateTime startDate = DateTime.now(DateTimeZone.UTC).minusDays(2);
+        chatConfig.startDate = startDate.toString();
+        IChatAlyticsDAO dbDao = mock(IChatAlyticsDAO.class);
+        IChatApiDAO slackDao = mock(IChatApiDAO.class);
+        underTest.open(chatConfig, slackDao, dbDao, context, collector);
+
+        Room r1 = new Room("r1", "room1", null, DateTime.now(), DateTime.now(), null, false, false,
+                           null, null);
+        Room r2 = new Room("r2", "room2", null, DateTime.now(), DateTime.now(), null, false, false,
+                           null, null);
+        Interval interval = new Interval(startDate.plusDays(1), DateTime.now(DateTimeZone.UTC));
+        when(dbDao.getRoomMessagePullTimes())
+            .thenReturn(ImmutableMap.of("r1", interval.getStart()));
+        when(slackDao.getMessages(any(DateTime.class), any(DateTime.class), any(Room.class)))
+            .thenReturn(Lists.newArrayList());
+
+        underTest.backfillRooms(ImmutableMap.of(), ImmutableMap.of("r1", r1, "r2", r2), interval);
+        verify(slackDao).getMessages(interval.getStart(), interval.getEnd(), r1);
+        verify(slackDao).getMessages(startDate, interval.getEnd(), r2);
+        verify(dbDao).setRoomMessagePullTime("r1", interval.getEnd());
+        verify(dbDao).setRoomMessagePullTime("r2", interval.getEnd());
+    }
+
+    /**
+     * Makes sure that when no room has a pull time, but the last pull time moved past the start
+     * date, the pull times of all the rooms are seeded with the start of the run interval so that
+     * their history is not backfilled again
+     */
+    @Test
+    public void testBackfillRooms_seedRoomPullTimes() {
+        DateTime startDate = DateTime.now(DateTimeZone.UTC).minusDays(2);
+        chatConfig.startDate = startDate.toString();
+        IChatAlyticsDAO dbDao = mock(IChatAlyticsDAO.class);
+        IChatApiDAO slackDao = mock(IChatApiDAO.class);
+        underTest.open(chatConfig, slackDao, dbDao, context, collector);
+
+        Room r1 = new Room("r1", "room1", null, DateTime.now(), DateTime.now(), null, false, false,
+                           null, null);
+        Interval interval = new Interval(startDate.plusDays(1), DateTime.now(DateTimeZone.UTC));
+        when(dbDao.getRoomMessagePullTimes()).thenReturn(ImmutableMap.of());
+        when(slackDao.getMessages(any(DateTime.class), any(DateTime.class), any(Room.class)))
+            .thenReturn(Lists.newArrayList());
+
+        underTest.backfillRooms(ImmutableMap.of(), ImmutableMap.of("r1", r1), interval);
+        verify(dbDao).setRoomMessagePullTime("r1", interval.getStart());
+        verify(slackDao).getMessages(interval.getStart(), interval.getEnd(), r1);
+        verify(dbDao).setRoomMessagePullTime("r1", interval.getEnd());
+    }
+
     @Test
     public void testGetRunInterval_noEndDate() {
         DateTime startDate = DateTime.now(DateTimeZone.UTC).minusDays(1);
@@ -5,6 +5,7 @@ import com.chatalytics.compute.config.ConfigurationConstants;
 import com.chatalytics.compute.exception.NotConnectedException;
 import com.chatalytics.core.config.ChatAlyticsConfig;
 import com.chatalytics.core.config.SlackConfig;
+import com.chatalytics.core.model.data.FatMessage;
 import com.chatalytics.core.model.data.Message;
 import com.chatalytics.core.model.data.MessageType;
 import com.chatalytics.core.model.data.Room;
@@ -22,6 +23,7 @@ import org.joda.time.DateTime;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.net.URI;
 import java.util.HashMap;
@@ -32,6 +34,7 @@ import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 
 import static com.chatalytics.core.model.data.MessageType.MESSAGE;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -130,7 +133,6 @@ public class SlackMessageSpoutTest {
             .thenReturn(mock(Session.class));
         JsonSlackDAO slackDao = mock(JsonSlackDAO.class);
         when(slackDao.getRealtimeWebSocketURI()).thenReturn(WEB_SOCKET_TEST_URI);
-        underTest.open(chatConfig, slackDao, mockSocketContainer, mockContext, mockCollector);
 
         String userId = "U03AFSSD";
 
@@ -141,6 +143,7 @@ public class SlackMessageSpoutTest {
                                                            DateTime.now(), DateTime.now(), null,
                                                            null, null, null));
         when(slackDao.getUsers()).thenReturn(users);
+        underTest.open(chatConfig, slackDao, mockSocketContainer, mockContext, mockCollector);
 
         Message triggerMessage = new Message(DateTime.now(), "Test User", userId, "test msg",
                                              "C09ADF43", MESSAGE);
@@ -266,49 +269,132 @@ public class SlackMessageSpoutTest {
 
         DateTime startDate = DateTime.now();
         chatConfig.startDate = startDate.toString();
+        Map<String, User> users = ImmutableMap.of("u1", new User("u1", "email", false, false, false,
+                                                                 "name", "mention_name", null,
+                                                                 DateTime.now(), DateTime.now(),
+                                                                 null, null, null, null));
+        Map<String, Room> rooms = ImmutableMap.of();
+        when(slackDao.getUsers()).thenReturn(users);
+        when(slackDao.getRooms()).thenReturn(rooms);
 
         // open with a start date
         underTest.open(chatConfig, slackDao, webSocket, mockContext, mockCollector);
+        verify(slackDao).getUsers();
+        verify(slackDao).getRooms();
+        verify(slackDao).getRealtimeWebSocketURI();
 
         DateTime messageDate = startDate.minusHours(1);
         Message triggerMessage = new Message(messageDate, "name", "u1", "test msg", "D1R3CTM355",
                                              MESSAGE);
         underTest.onMessageEvent(triggerMessage, session);
-        verify(slackDao).getRealtimeWebSocketURI();
         verifyNoMoreInteractions(slackDao);
         underTest.nextTuple();
         verifyZeroInteractions(mockCollector);
 
         // try again with a message date that's after the start date
         messageDate = startDate.plusHours(1);
-        Map<String, User> users = ImmutableMap.of("u1", new User("u1", "email", false, false, false,
-                                                                 "name", "mention_name", null,
-                                                                 DateTime.now(), DateTime.now(),
-                                                                 null, null, null, null));
-        Map<String, Room> rooms = ImmutableMap.of();
-        when(slackDao.getUsers()).thenReturn(users);
-        when(slackDao.getRooms()).thenReturn(rooms);
         triggerMessage = new Message(messageDate, "name", "u1", "test msg", "D1R3CTM355", MESSAGE);
         underTest.onMessageEvent(triggerMessage, session);
-        verify(slackDao).getUsers();
-        verify(slackDao).getRooms();
-        verify(slackDao).getRealtimeWebSocketURI();
         verifyNoMoreInteractions(slackDao);
         underTest.nextTuple();
         verify(mockCollector).emit(any(Values.class));
         verifyNoMoreInteractions(mockCollector);
 
         // try again with a message date that is equal to the start date
-        reset(slackDao);
+        reset(mockCollector);
         messageDate = startDate;
         triggerMessage = new Message(messageDate, "name", "u1", "test msg", "D1R3CTM355", MESSAGE);
         underTest.onMessageEvent(triggerMessage, session);
-        verify(slackDao).getUsers();
-        verify(slackDao).getRooms();
         verifyNoMoreInteractions(slackDao);
         underTest.nextTuple();
-        verify(mockCollector).emit(any(Values.class));
-        verifyNoMoreInteractions(mockCollector);
+        verifyZeroInteractions(mockCollector);
+    }
+
+    /**
+     * Makes sure that users and rooms are looked up from the directory that's loaded on open
+     * instead of the chat API, and that the directory is updated from realtime events
+     */
+    @Test
+    public void testOnEvent_directoryEvents() throws Exception {
+        JsonSlackDAO slackDao = mock(JsonSlackDAO.class);
+        Map<String, Room> rooms = ImmutableMap.of("C1", new Room("C1", "room", "topic",
+                                                                 DateTime.now(), DateTime.now(),
+                                                                 "u1", false, false, null, null));
+        when(slackDao.getRooms()).thenReturn(rooms);
+        Session session = mock(Session.class);
+        when(session.getId()).thenReturn("id");
+        when(slackDao.getRealtimeWebSocketURI()).thenReturn(WEB_SOCKET_TEST_URI);
+        WebSocketContainer webSocket = mock(WebSocketContainer.class);
+        when(webSocket.connectToServer(underTest, WEB_SOCKET_TEST_URI)).thenReturn(session);
+        underTest.open(chatConfig, slackDao, webSocket, mockContext, mockCollector);
+        reset(slackDao);
+
+        String messageEvent = "{\"type\":\"message\",\"channel\":\"C1\",\"user\":\"U1\","
+            + "\"text\":\"test msg\",\"ts\":\"1450000000.000001\"}";
+        // the user isn't known yet
+        underTest.onEvent(messageEvent, session);
+        underTest.nextTuple();
+        verifyZeroInteractions(mockCollector);
+
+        underTest.onEvent("{\"type\":\"team_join\",\"user\":{\"id\":\"U1\",\"name\":\"u\","
+            + "\"deleted\":false,\"profile\":{\"real_name\":\"User\",\"image_32\":\"url\"}}}",
+            session);
+        underTest.onEvent("{\"type\":\"channel_rename\",\"channel\":{\"id\":\"C1\","
+            + "\"name\":\"renamed\",\"created\":1360782804}}", session);
+        underTest.onEvent(messageEvent, session);
+        underTest.nextTuple();
+
+        ArgumentCaptor<Values> values = ArgumentCaptor.forClass(Values.class);
+        verify(mockCollector).emit(values.capture());
+        FatMessage fatMessage = (FatMessage) values.getValue().get(0);
+        assertEquals("User", fatMessage.getUser().getName());
+        assertEquals("renamed", fatMessage.getRoom().getName());
+        assertEquals("topic", fatMessage.getRoom().getTopic());
+        verifyZeroInteractions(slackDao);
+    }
+
+    /**
+     * Makes sure that malformed events are skipped without throwing and without touching the
+     * directory
+     */
+    @Test
+    public void testOnEvent_malformedEvents() throws Exception {
+        JsonSlackDAO slackDao = mock(JsonSlackDAO.class);
+        Map<String, Room> rooms = ImmutableMap.of("C1", new Room("C1", "room", "topic",
+                                                                 DateTime.now(), DateTime.now(),
+                                                                 "u1", false, false, null, null));
+        when(slackDao.getRooms()).thenReturn(rooms);
+        Session session = mock(Session.class);
+        when(session.getId()).thenReturn("id");
+        when(slackDao.getRealtimeWebSocketURI()).thenReturn(WEB_SOCKET_TEST_URI);
+        WebSocketContainer webSocket = mock(WebSocketContainer.class);
+        when(webSocket.connectToServer(underTest, WEB_SOCKET_TEST_URI)).thenReturn(session);
+        underTest.open(chatConfig, slackDao, webSocket, mockContext, mockCollector);
+
+        underTest.onEvent("{\"reply_to\":1,\"ok\":true}", session);
+        underTest.onEvent("{\"type\":{\"nested\":\"message\"}}", session);
+        underTest.onEvent("{\"type\":\"message\",\"channel\":{bad", session);
+        underTest.onEvent("", session);
+        underTest.onEvent("[]", session);
+        underTest.onEvent("{\"type\":\"team_join\"}", session);
+        underTest.onEvent("{\"type\":\"channel_created\"}", session);
+        underTest.onEvent("{\"type\":\"channel_rename\",\"channel\":{\"name\":\"renamed\"}}",
+                          session);
+        underTest.onEvent("{\"type\":\"channel_rename\",\"channel\":{\"id\":\"C1\"}}", session);
+
+        // the room is still the one that was loaded on open
+        String messageEvent = "{\"type\":\"message\",\"channel\":\"C1\",\"user\":\"U1\","
+            + "\"text\":\"test msg\",\"ts\":\"1450000000.000001\"}";
+        underTest.onEvent("{\"type\":\"team_join\",\"user\":{\"id\":\"U1\",\"name\":\"u\","
+            + "\"deleted\":false,\"profile\":{\"real_name\":\"User\",\"image_32\":\"url\"}}}",
+            session);
+        underTest.onEvent(messageEvent, session);
+        underTest.nextTuple();
+
+        ArgumentCaptor<Values> values = ArgumentCaptor.forClass(Values.class);
+        verify(mockCollector).emit(values.capture());
+        FatMessage fatMessage = (FatMessage) values.getValue().get(0);
+        assertEquals("room", fatMessage.getRoom().getName());
     }
 
     @Test
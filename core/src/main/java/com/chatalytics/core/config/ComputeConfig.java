@@ -11,6 +11,24 @@ public class ComputeConfig implements Serializable {
 
     public int apiRetries = 3;
 
+    /**
+     * Maximum number of chat API requests a single auth token makes per minute. Requests go to the
+     * least loaded token that still has budget and wait when none has. Set to 0 for no limit, in
+     * which case tokens are only held back when the API throttles them
+     */
+    public int apiTokenRequestsPerMinute = 0;
+
+    /**
+     * Initial sleep, in milliseconds, before retrying a failed chat API request. The sleep doubles
+     * on every retry and is randomized so that concurrent requests don't retry at the same time
+     */
+    public long apiRetryBaseSleepMs = 1000;
+
+    /**
+     * Maximum sleep, in milliseconds, before retrying a failed chat API request
+     */
+    public long apiRetryMaxSleepMs = 60 * 1000;
+
     public String apiDateFormat;
 
     public final String rtComputePath = "/rtcompute";
@@ -19,6 +37,95 @@ public class ComputeConfig implements Serializable {
 
     public boolean enableRealtimeEvents = true;
 
+    /**
+     * Number of mentions a bolt buffers before persisting them in a single transaction
+     */
+    public int persistBatchSize = 500;
+
+    /**
+     * Maximum time, in milliseconds, a buffered mention waits before it gets persisted
+     */
+    public long persistFlushIntervalMs = 1000;
+
+    /**
+     * How often, in seconds, bolt metrics are reported to the registered metrics consumers
+     */
+    public int metricsTimeBucketSecs = 60;
+
+    /**
+     * Length, in seconds, of the window over which bolts combine mentions before persisting them.
+     * Mentions of the same value, by the same user, in the same room and truncated time are stored
+     * as a single row at the end of the window. Set to 0 to persist every mention as it comes.
+     */
+    public int aggregationWindowSecs = 60;
+
+    /**
+     * Granularity, in seconds, mention times are truncated to before mentions are combined
+     */
+    public int aggregationTimeTruncationSecs = 60;
+
+    /**
+     * Number of messages the entity extraction bolt collects and classifies in parallel. Set to 1
+     * to classify every message synchronously as it comes
+     */
+    public int entityExtractionBatchSize = 1;
+
+    /**
+     * Maximum time, in milliseconds, a message waits for its batch to fill up before the batch is
+     * classified anyway. Checked when messages arrive and on every tick tuple
+     */
+    public long entityExtractionBatchMaxDelayMs = 500;
+
+    /**
+     * Number of threads in the pool that classifies batches. The pool is shared by all the entity
+     * extraction executors of a worker. Set to 0 to use as many threads as available cores
+     */
+    public int entityExtractionThreads = 0;
+
+    /**
+     * Maximum number of message texts, per entity extraction executor, whose extracted entities are
+     * cached. Repeated texts, such as bot notifications, skip the classifier. Set to 0 to disable
+     */
+    public long entityCacheSize = 10000;
+
+    /**
+     * Set to true to skip the entity classifier for messages that fail the entity filter rules
+     * below
+     */
+    public boolean entityFilterEnabled = false;
+
+    /**
+     * Messages shorter than this, after trimming, are not classified
+     */
+    public int entityFilterMinLength = 3;
+
+    /**
+     * Messages without a single token starting with an uppercase letter are not classified
+     */
+    public boolean entityFilterRequireCapitalizedToken = true;
+
+    /**
+     * Messages that look like code, such as code blocks and stack traces, are not classified
+     */
+    public boolean entityFilterSkipCode = true;
+
+    /**
+     * Messages where the ratio of latin letters to all letters is less than this are not classified
+     * since the classifier is trained on English text. Set to 0 to disable
+     */
+    public double entityFilterMinLatinLetterRatio = 0;
+
+    /**
+     * Set to true to only count emojis that are in the unicode emoji file or are custom emojis of
+     * the chat. Otherwise any well formed <code>:shortcode:</code> is counted
+     */
+    public boolean validateEmojis = false;
+
+    /**
+     * Parallelism and stream grouping of the storm components
+     */
+    public TopologyConfig topologyConfig = new TopologyConfig();
+
     public ChatConfig chatConfig;
 
     /**
@@ -18,6 +18,11 @@ public class HipChatConfig implements ChatConfig {
 
     public boolean includeArchivedRooms = false;
 
+    /**
+     * Maximum number of rooms the spout pulls messages from at the same time
+     */
+    public int roomFetchConcurrency = 4;
+
     @Override
     public List<String> getAuthTokens() {
         return authTokens;
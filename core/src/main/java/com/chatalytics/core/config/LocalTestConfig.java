@@ -17,6 +17,12 @@ public class LocalTestConfig implements ChatConfig {
      */
     public long sleepMs = 5 * 1000; // 2 seconds
 
+    /**
+     * If greater than 0, messages are emitted at this fixed rate per second and
+     * <code>sleepMs</code> is ignored
+     */
+    public double messagesPerSec = 0;
+
     /**
      * Set the seed to a value if you want a predictable random user and room generation
      */
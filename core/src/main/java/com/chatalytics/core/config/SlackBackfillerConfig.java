@@ -18,4 +18,15 @@ public class SlackBackfillerConfig extends SlackConfig {
      * Optional end date if you want the backfiller to stop emitting messages beyond this date
      */
     public String endDate;
+
+    /**
+     * Maximum number of rooms to backfill at the same time
+     */
+    public int roomConcurrency = 4;
+
+    /**
+     * Maximum number of backfilled messages waiting to be emitted. Rooms stop being backfilled
+     * while it's full
+     */
+    public int messageQueueSize = 10000;
 }
@@ -38,6 +38,12 @@ public class SlackConfig implements ChatConfig {
      */
     public String startDate;
 
+    /**
+     * How often, in seconds, the realtime spout reloads all the users and rooms. Changes to users
+     * and rooms are also picked up from the realtime stream as they happen
+     */
+    public int directoryRefreshIntervalSecs = 60 * 60;
+
     @Override
     public List<String> getAuthTokens() {
         return authTokens;
@@ -0,0 +1,70 @@
+package com.chatalytics.core.config;
+
+import com.google.common.collect.Lists;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Configures how the storm topology is laid out: how many executors each component runs and how
+ * messages are partitioned between the executors of the bolts that keep per-key state.
+ *
+ * @author giannis
+ *
+ */
+public class TopologyConfig implements Serializable {
+
+    private static final long serialVersionUID = -3125489517623418375L;
+
+    /**
+     * Number of worker processes the topology runs on
+     */
+    public int numWorkers = 1;
+
+    /**
+     * Number of executors of the local test spout. The chat spouts always run on a single executor
+     * since they can't split the rooms between executors
+     */
+    public int spoutParallelism = 1;
+
+    public int entityExtractionParallelism = 1;
+
+    public int emojiCounterParallelism = 1;
+
+    public int messageSummaryParallelism = 1;
+
+    public int realtimeParallelism = 1;
+
+    /**
+     * How messages are partitioned between the executors of the entity, emoji and message summary
+     * bolts
+     */
+    public MessageGrouping messageGrouping = MessageGrouping.ROOM;
+
+    /**
+     * Class names of storm task hooks that are registered on every spout and bolt task, for example
+     * to measure latencies
+     */
+    public List<String> taskHooks = Lists.newArrayList();
+
+    /**
+     * The key the messages emitted by the spouts are partitioned on
+     */
+    public enum MessageGrouping {
+        /**
+         * All messages of a room go to the same executor. Keeps per-room aggregates in a single
+         * executor but a very busy room can overload it
+         */
+        ROOM,
+        /**
+         * All messages of a user go to the same executor. Spreads load more evenly than
+         * {@link #ROOM} when there are a few busy rooms
+         */
+        USER,
+        /**
+         * Messages are randomly distributed. Best balance, but no key locality
+         */
+        SHUFFLE
+    }
+
+}
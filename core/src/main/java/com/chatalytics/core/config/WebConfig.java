@@ -8,4 +8,48 @@ public class WebConfig implements Serializable {
 
     public int port = 80;
 
+    /**
+     * Maximum number of matrix cells, summed over all the similarity matrices, cached for
+     * intervals that are entirely in the past. Every cell takes 8 bytes
+     */
+    public long similarityCacheMaxCells = 32_000_000;
+
+    /**
+     * Maximum number of matrix cells, summed over all the similarity matrices, cached for
+     * intervals that include the current hour
+     */
+    public long similarityRecentCacheMaxCells = 8_000_000;
+
+    /**
+     * Time, in seconds, a similarity matrix of an interval that includes the current hour is cached
+     * for
+     */
+    public int similarityCacheTtlSecs = 300;
+
+    /**
+     * How often, in seconds, the similarity matrices of the last day, week and month are computed
+     * in the background. Set to 0 to only compute them when they're requested
+     */
+    public int similarityPrecomputeIntervalSecs = 240;
+
+    /**
+     * Time, in seconds, clients can cache responses for intervals that ended long enough ago to not
+     * get any new data
+     */
+    public int httpCacheClosedMaxAgeSecs = 86400;
+
+    /**
+     * Time, in seconds, clients can cache responses for intervals that may still get new data,
+     * including the ones that just ended
+     */
+    public int httpCacheOpenMaxAgeSecs = 60;
+
+    /**
+     * How often, in minutes, the backfiller runs when it's deployed with a config of its own. Past
+     * intervals are only cached for long once the backfiller had the chance to fill them in. Not
+     * used when the chat config of this config is a {@link SlackBackfillerConfig}. Set to 0 if
+     * there's no backfiller
+     */
+    public int backfillGranularityMins = 60;
+
 }
@@ -0,0 +1,147 @@
+package com.chatalytics.core.emoji;
+
+import java.util.Arrays;
+
+/**
+ * Finds <code>:shortcode:</code> emojis in text in a single pass, without allocating. It works
+ * like a {@link java.util.regex.Matcher}: {@link #reset(CharSequence)} it with a text and call
+ * {@link #find()} until it returns false, reading the range of every found name with
+ * {@link #start()} and {@link #end()}. Callers only need to create strings for the names they
+ * keep.
+ * <p>
+ * A shortcode has to be made of letters, digits, <code>_</code>, <code>+</code> or
+ * <code>-</code>, and its opening colon can't directly follow a letter or a digit. This skips
+ * things like times (<code>10:30:00</code>) and URLs. If an {@link EmojiTrie} is given, names that
+ * are not in it are skipped too.
+ * <p>
+ * Instances keep the state of the current scan and are not thread safe.
+ *
+ * @author giannis
+ */
+public class EmojiScanner {
+
+    static final int NUM_SHORTCODE_CHARS;
+    private static final byte[] SHORTCODE_CHAR_INDEX = new byte[128];
+
+    static {
+        String shortcodeChars = "abcdefghijklmnopqrstuvwxyz"
+                              + "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                              + "0123456789_+-";
+        Arrays.fill(SHORTCODE_CHAR_INDEX, (byte) -1);
+        for (int i = 0; i < shortcodeChars.length(); i++) {
+            SHORTCODE_CHAR_INDEX[shortcodeChars.charAt(i)] = (byte) i;
+        }
+        NUM_SHORTCODE_CHARS = shortcodeChars.length();
+    }
+
+    private final char delimiter;
+    private final EmojiTrie knownEmojis;
+
+    private CharSequence text;
+    private int position;
+    private int start;
+    private int end;
+
+    /**
+     * Creates a scanner that accepts any well formed shortcode delimited by <code>:</code>
+     */
+    public EmojiScanner() {
+        this(':', null);
+    }
+
+    /**
+     * @param delimiter
+     *            The character that opens and closes a shortcode
+     * @param knownEmojis
+     *            If not null, only names in this trie are found
+     */
+    public EmojiScanner(char delimiter, EmojiTrie knownEmojis) {
+        this.delimiter = delimiter;
+        this.knownEmojis = knownEmojis;
+        this.start = -1;
+        this.end = -1;
+    }
+
+    /**
+     * Starts scanning a new text
+     *
+     * @param text
+     *            The text to scan
+     * @return This scanner
+     */
+    public EmojiScanner reset(CharSequence text) {
+        this.text = text;
+        this.position = 0;
+        this.start = -1;
+        this.end = -1;
+        return this;
+    }
+
+    /**
+     * Finds the next emoji in the text
+     *
+     * @return True if an emoji was found, false if the end of the text was reached
+     */
+    public boolean find() {
+        int length = text.length();
+        // start of the name being captured or -1 if not capturing
+        int nameStart = -1;
+        for (int i = position; i < length; i++) {
+            char ch = text.charAt(i);
+            if (ch == delimiter) {
+                if (nameStart >= 0 && i > nameStart && isKnown(nameStart, i)) {
+                    start = nameStart;
+                    end = i;
+                    // the closing delimiter can't open the next emoji
+                    position = i + 1;
+                    return true;
+                }
+                if (nameStart >= 0 || i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1))) {
+                    // this is either an opening delimiter or it closed an unknown name, an empty
+                    // one or one that directly follows another emoji, so start over from here
+                    nameStart = i + 1;
+                }
+            } else if (nameStart >= 0 && !isShortcodeChar(ch)) {
+                nameStart = -1;
+            }
+        }
+        position = length;
+        start = -1;
+        end = -1;
+        return false;
+    }
+
+    private boolean isKnown(int nameStart, int nameEnd) {
+        return knownEmojis == null || knownEmojis.contains(text, nameStart, nameEnd);
+    }
+
+    /**
+     * @return The index of the first character of the last found emoji name
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * @return The index after the last character of the last found emoji name
+     */
+    public int end() {
+        return end;
+    }
+
+    /**
+     * @param ch
+     *            The character to check
+     * @return True if the character can be part of a shortcode name
+     */
+    public static boolean isShortcodeChar(char ch) {
+        return ch < SHORTCODE_CHAR_INDEX.length && SHORTCODE_CHAR_INDEX[ch] >= 0;
+    }
+
+    /**
+     * @return The index of a shortcode character in the {@link EmojiTrie} child tables
+     */
+    static int shortcodeCharIndex(char ch) {
+        return SHORTCODE_CHAR_INDEX[ch];
+    }
+}
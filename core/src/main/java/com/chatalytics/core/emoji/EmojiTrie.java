@@ -0,0 +1,100 @@
+package com.chatalytics.core.emoji;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable trie of emoji shortcode names, such as the ones in the unicode emoji file and the
+ * custom emojis of a chat. Names can be looked up directly from a range of a {@link CharSequence}
+ * so that candidates don't need to be copied into a new string before they are validated. Only
+ * names made of shortcode characters (see {@link EmojiScanner#isShortcodeChar(char)}) are added.
+ *
+ * @author giannis
+ */
+public class EmojiTrie {
+
+    private static final int ROOT = 0;
+
+    /**
+     * Child node indexes of every node, by shortcode character index. Null for leaves
+     */
+    private int[][] children;
+    private boolean[] terminal;
+    private int numNodes;
+
+    /**
+     * @param names
+     *            The emoji names to add. Names with non shortcode characters are ignored
+     */
+    public EmojiTrie(Collection<String> names) {
+        this.children = new int[64][];
+        this.terminal = new boolean[64];
+        this.numNodes = 1;
+        for (String name : names) {
+            add(name);
+        }
+    }
+
+    private void add(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (!EmojiScanner.isShortcodeChar(name.charAt(i))) {
+                return;
+            }
+        }
+        int node = ROOT;
+        for (int i = 0; i < name.length(); i++) {
+            int charIndex = EmojiScanner.shortcodeCharIndex(name.charAt(i));
+            if (children[node] == null) {
+                children[node] = new int[EmojiScanner.NUM_SHORTCODE_CHARS];
+            }
+            int child = children[node][charIndex];
+            if (child == ROOT) {
+                child = newNode();
+                children[node][charIndex] = child;
+            }
+            node = child;
+        }
+        terminal[node] = true;
+    }
+
+    private int newNode() {
+        if (numNodes == terminal.length) {
+            children = Arrays.copyOf(children, numNodes * 2);
+            terminal = Arrays.copyOf(terminal, numNodes * 2);
+        }
+        return numNodes++;
+    }
+
+    /**
+     * Checks if a range of characters is one of the emoji names
+     *
+     * @param text
+     *            The text containing the candidate name
+     * @param start
+     *            The start of the name, inclusive
+     * @param end
+     *            The end of the name, exclusive
+     * @return True if the characters in the range are an emoji name
+     */
+    public boolean contains(CharSequence text, int start, int end) {
+        int node = ROOT;
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            if (!EmojiScanner.isShortcodeChar(ch) || children[node] == null) {
+                return false;
+            }
+            node = children[node][EmojiScanner.shortcodeCharIndex(ch)];
+            if (node == ROOT) {
+                return false;
+            }
+        }
+        return terminal[node];
+    }
+
+    /**
+     * @return The number of nodes in the trie, including the root
+     */
+    public int size() {
+        return numNodes;
+    }
+}
@@ -0,0 +1,196 @@
+package com.chatalytics.core.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads values out of chat API responses in a single pass. Responses wrap the interesting value in
+ * an envelope, for example <code>{"ok": true, "members": [...]}</code>. Instead of parsing the
+ * whole response to a tree and then binding the part of the tree that's needed, the reader streams
+ * through the response, skips everything that's not on the path to the value and binds the value
+ * straight from the stream.
+ *
+ * @author giannis
+ */
+public class JsonEnvelopeReader {
+
+    private static final String OK_FIELD = "ok";
+    private static final String ERROR_FIELD = "error";
+    private static final Set<String> ERROR_FIELDS = ImmutableSet.of(OK_FIELD, ERROR_FIELD);
+
+    private final ObjectMapper objMapper;
+
+    /**
+     * @param objMapper
+     *            The object mapper used to bind the values
+     */
+    public JsonEnvelopeReader(ObjectMapper objMapper) {
+        this.objMapper = objMapper;
+    }
+
+    /**
+     * Reads a list of elements out of a response
+     *
+     * @param jsonStr
+     *            The response
+     * @param path
+     *            The ordered field names to traverse down to get to the list. For example
+     *            <code>[channel, members]</code> for <code>{"channel": {"members": [...]}}</code>
+     * @param elementClass
+     *            The class of the elements
+     * @return A mutable list of elements, which is empty if the path is not in the response
+     * @throws IOException
+     *             If the response is malformed or the value at the path is not a list of
+     *             <code>elementClass</code>
+     */
+    public <T> List<T> readList(String jsonStr, List<String> path, Class<T> elementClass)
+            throws IOException {
+        JavaType type = objMapper.getTypeFactory().constructCollectionType(List.class,
+                                                                           elementClass);
+        List<T> result = readValue(jsonStr, path, type);
+        return result == null ? Lists.newArrayList() : result;
+    }
+
+    /**
+     * Reads a single value out of a response
+     *
+     * @param jsonStr
+     *            The response
+     * @param path
+     *            The ordered field names to traverse down to get to the value
+     * @param clazz
+     *            The class of the value
+     * @return The value or null if the path is not in the response
+     * @throws IOException
+     *             If the response is malformed or the value at the path is not a <code>clazz</code>
+     */
+    public <T> T readValue(String jsonStr, List<String> path, Class<T> clazz) throws IOException {
+        return readValue(jsonStr, path, objMapper.getTypeFactory().constructType(clazz));
+    }
+
+    /**
+     * Reads a single value of a generic type, such as a map, out of a response
+     *
+     * @param jsonStr
+     *            The response
+     * @param path
+     *            The ordered field names to traverse down to get to the value
+     * @param type
+     *            The type of the value
+     * @return The value or null if the path is not in the response
+     * @throws IOException
+     *             If the response is malformed or the value at the path is not of the given type
+     */
+    public <T> T readValue(String jsonStr, List<String> path, JavaType type) throws IOException {
+        try (JsonParser parser = objMapper.getFactory().createParser(jsonStr)) {
+            if (!seek(parser, path)) {
+                return null;
+            }
+            return objMapper.readValue(parser, type);
+        }
+    }
+
+    /**
+     * Reads some of the top level fields of a response. The values of all the other fields are
+     * skipped without being parsed to trees, which makes this cheap even for large responses.
+     *
+     * @param jsonStr
+     *            The response
+     * @param fieldNames
+     *            The names of the fields to read
+     * @return A map of field name to value. Fields that are not in the response are missing
+     * @throws IOException
+     *             If the response is malformed
+     */
+    public Map<String, JsonNode> readFields(String jsonStr, Set<String> fieldNames)
+            throws IOException {
+        Map<String, JsonNode> result = Maps.newHashMapWithExpectedSize(fieldNames.size());
+        try (JsonParser parser = objMapper.getFactory().createParser(jsonStr)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return result;
+            }
+            while (result.size() < fieldNames.size()
+                    && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if (fieldNames.contains(fieldName)) {
+                    JsonNode value = objMapper.readTree(parser);
+                    result.put(fieldName, value);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the error of a response, if it is one. Slack error responses have <code>"ok":
+     * false</code> and HipChat error responses have an <code>error</code> field. Only the top level
+     * fields are looked at, so this is cheap even for large responses.
+     *
+     * @param jsonStr
+     *            The response
+     * @return The value of the <code>error</code> field, or <code>"not ok"</code> if the response
+     *         is not ok and has no error field. Absent if the response is not an error
+     * @throws IOException
+     *             If the response is malformed
+     */
+    public Optional<String> readError(String jsonStr) throws IOException {
+        Map<String, JsonNode> fields = readFields(jsonStr, ERROR_FIELDS);
+        JsonNode error = fields.get(ERROR_FIELD);
+        if (error != null && !error.isNull()) {
+            return Optional.of(error.isValueNode() ? error.asText() : error.toString());
+        }
+        JsonNode ok = fields.get(OK_FIELD);
+        if (ok != null && !ok.asBoolean()) {
+            return Optional.of("not ok");
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Moves the parser to the value at the end of the path
+     *
+     * @return True if the parser is at the value, false if the path is not in the response
+     */
+    private static boolean seek(JsonParser parser, List<String> path) throws IOException {
+        JsonToken token = parser.nextToken();
+        for (String fieldName : path) {
+            if (token != JsonToken.START_OBJECT || !seekField(parser, fieldName)) {
+                return false;
+            }
+            token = parser.nextToken();
+        }
+        return token != null;
+    }
+
+    /**
+     * Moves the parser from the start of an object to the name of one of its fields, skipping all
+     * the fields before it
+     *
+     * @return True if the parser is at the field name, false if the object doesn't have the field
+     */
+    private static boolean seekField(JsonParser parser, String fieldName) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            if (fieldName.equals(parser.getCurrentName())) {
+                return true;
+            }
+            parser.nextToken();
+            parser.skipChildren();
+        }
+        return false;
+    }
+}
@@ -27,7 +27,8 @@ import javax.persistence.Table;
        indexes = {@Index(name = "ce_idx_username", columnList = "username"),
                   @Index(name = "ce_idx_roomName", columnList = "roomName"),
                   @Index(name = "ce_idx_value", columnList = "value"),
-                  @Index(name = "ce_idx_bot", columnList = "bot")})
+                  @Index(name = "ce_idx_bot", columnList = "bot"),
+                  @Index(name = "ce_idx_mentionTime_id", columnList = "mentionTime, id")})
 @EqualsAndHashCode
 @ToString
 @Setter(value = AccessLevel.PROTECTED) // for hibernate
@@ -0,0 +1,110 @@
+package com.chatalytics.core.model.data;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Rollup of {@link ChatEntity} mentions. There is one row per {@link RollupResolution}, time
+ * bucket, user, room, value and bot flag, and the mention time is the start of the time bucket.
+ *
+ * @author giannis
+ *
+ */
+@Entity
+@Table(name = ChatEntityRollup.ENTITY_ROLLUP_TABLE_NAME,
+       uniqueConstraints = {@UniqueConstraint(name = "cer_uniq_key",
+                                              columnNames = {"resolution", "mentionTime",
+                                                             "username", "roomName", "value",
+                                                             "bot"})},
+       indexes = {@Index(name = "cer_idx_time", columnList = "resolution,mentionTime"),
+                  @Index(name = "cer_idx_value", columnList = "value")})
+@EqualsAndHashCode
+@ToString
+@Setter(value = AccessLevel.PROTECTED) // for hibernate
+public class ChatEntityRollup implements IMentionRollup<String> {
+
+    public static final String ENTITY_ROLLUP_TABLE_NAME = "ENTITIES_ROLLUP";
+
+    @Enumerated(EnumType.STRING)
+    private RollupResolution resolution;
+    private String username;
+    private String roomName;
+    private DateTime mentionTime;
+    private String value;
+    private int occurrences;
+    private boolean bot;
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    public ChatEntityRollup(RollupResolution resolution, String username, String roomName,
+                            DateTime mentionTime, String value, int occurrences, boolean bot) {
+        this.resolution = resolution;
+        this.username = username;
+        this.roomName = roomName;
+        this.mentionTime = mentionTime;
+        this.value = value;
+        this.occurrences = occurrences;
+        this.bot = bot;
+    }
+
+    protected ChatEntityRollup() {} // for hibernate
+
+    @Override
+    public void addOccurrences(int occurrences) {
+        this.occurrences += occurrences;
+    }
+
+    @Override
+    public RollupResolution getResolution() {
+        return resolution;
+    }
+
+    @Override
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public int getOccurrences() {
+        return occurrences;
+    }
+
+    @Override
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    public DateTime getMentionTime() {
+        return mentionTime;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public String getRoomName() {
+        return roomName;
+    }
+
+    @Override
+    public boolean isBot() {
+        return bot;
+    }
+}
@@ -28,7 +28,8 @@ import javax.persistence.Table;
        indexes = {@Index(name = "ee_idx_username", columnList = "username"),
                   @Index(name = "ee_idx_roomName", columnList = "roomName"),
                   @Index(name = "ee_idx_value", columnList = "value"),
-                  @Index(name = "ee_idx_bot", columnList = "bot")})
+                  @Index(name = "ee_idx_bot", columnList = "bot"),
+                  @Index(name = "ee_idx_mentionTime_id", columnList = "mentionTime, id")})
 @EqualsAndHashCode
 @AllArgsConstructor
 @ToString
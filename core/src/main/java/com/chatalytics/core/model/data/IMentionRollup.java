@@ -0,0 +1,23 @@
+package com.chatalytics.core.model.data;
+
+/**
+ * A pre-aggregated {@link IMentionable}. It holds the summed occurrences of all the mentions of a
+ * value by a user in a room that happened in the time bucket starting at the mention time. The
+ * size of the bucket is given by the {@link RollupResolution}.
+ *
+ * @author giannis
+ *
+ */
+public interface IMentionRollup<T> extends IMentionable<T> {
+
+    public RollupResolution getResolution();
+
+    /**
+     * Adds more occurrences to this rollup
+     *
+     * @param occurrences
+     *            The occurrences to add
+     */
+    public void addOccurrences(int occurrences);
+
+}
@@ -26,7 +26,8 @@ import javax.persistence.Table;
        indexes = {@Index(name = "ms_idx_username", columnList = "username"),
                   @Index(name = "ms_idx_roomName", columnList = "roomName"),
                   @Index(name = "ms_idx_value", columnList = "value"),
-                  @Index(name = "ms_idx_bot", columnList = "bot")})
+                  @Index(name = "ms_idx_bot", columnList = "bot"),
+                  @Index(name = "ms_idx_mentionTime_id", columnList = "mentionTime, id")})
 @EqualsAndHashCode
 @Setter(value = AccessLevel.PROTECTED) // for hibernate
 @ToString
@@ -0,0 +1,111 @@
+package com.chatalytics.core.model.data;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Rollup of {@link MessageSummary} events. There is one row per {@link RollupResolution}, time
+ * bucket, user, room, value and bot flag, and the mention time is the start of the time bucket.
+ *
+ * @author giannis
+ *
+ */
+@Entity
+@Table(name = MessageSummaryRollup.MESSAGE_SUMMARY_ROLLUP_TABLE_NAME,
+       uniqueConstraints = {@UniqueConstraint(name = "msr_uniq_key",
+                                              columnNames = {"resolution", "mentionTime",
+                                                             "username", "roomName", "value",
+                                                             "bot"})},
+       indexes = {@Index(name = "msr_idx_time", columnList = "resolution,mentionTime"),
+                  @Index(name = "msr_idx_value", columnList = "value")})
+@EqualsAndHashCode
+@ToString
+@Setter(value = AccessLevel.PROTECTED) // for hibernate
+public class MessageSummaryRollup implements IMentionRollup<MessageType> {
+
+    public static final String MESSAGE_SUMMARY_ROLLUP_TABLE_NAME = "MESSAGE_SUMMARY_ROLLUP";
+
+    @Enumerated(EnumType.STRING)
+    private RollupResolution resolution;
+    private String username;
+    private String roomName;
+    private DateTime mentionTime;
+    private MessageType value;
+    private int occurrences;
+    private boolean bot;
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    public MessageSummaryRollup(RollupResolution resolution, String username, String roomName,
+                                DateTime mentionTime, MessageType value, int occurrences,
+                                boolean bot) {
+        this.resolution = resolution;
+        this.username = username;
+        this.roomName = roomName;
+        this.mentionTime = mentionTime;
+        this.value = value;
+        this.occurrences = occurrences;
+        this.bot = bot;
+    }
+
+    protected MessageSummaryRollup() {} // for hibernate
+
+    @Override
+    public void addOccurrences(int occurrences) {
+        this.occurrences += occurrences;
+    }
+
+    @Override
+    public RollupResolution getResolution() {
+        return resolution;
+    }
+
+    @Override
+    public MessageType getValue() {
+        return value;
+    }
+
+    @Override
+    public int getOccurrences() {
+        return occurrences;
+    }
+
+    @Override
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    public DateTime getMentionTime() {
+        return mentionTime;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public String getRoomName() {
+        return roomName;
+    }
+
+    @Override
+    public boolean isBot() {
+        return bot;
+    }
+}
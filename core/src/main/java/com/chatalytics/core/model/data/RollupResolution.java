@@ -0,0 +1,57 @@
+package com.chatalytics.core.model.data;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeFieldType;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
+
+/**
+ * The size of the time buckets an {@link IMentionRollup} aggregates mentions over. Buckets are
+ * aligned on UTC time, since that's what all the dates in the DB are stored in.
+ *
+ * @author giannis
+ *
+ */
+public enum RollupResolution {
+
+    MINUTE(DateTimeFieldType.minuteOfHour(), Period.minutes(1)),
+    HOUR(DateTimeFieldType.hourOfDay(), Period.hours(1)),
+    DAY(DateTimeFieldType.dayOfMonth(), Period.days(1)),
+    MONTH(DateTimeFieldType.monthOfYear(), Period.months(1));
+
+    private final DateTimeFieldType field;
+    private final Period bucketSize;
+
+    private RollupResolution(DateTimeFieldType field, Period bucketSize) {
+        this.field = field;
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * @return The start of the bucket the time falls in
+     */
+    public DateTime floor(DateTime time) {
+        return time.withZone(DateTimeZone.UTC).property(field).roundFloorCopy();
+    }
+
+    /**
+     * @return The time itself if it's the start of a bucket, the start of the next bucket otherwise
+     */
+    public DateTime ceiling(DateTime time) {
+        return time.withZone(DateTimeZone.UTC).property(field).roundCeilingCopy();
+    }
+
+    /**
+     * @return True if the time is the start of a bucket
+     */
+    public boolean isAligned(DateTime time) {
+        return floor(time).getMillis() == time.getMillis();
+    }
+
+    /**
+     * @return The start of the bucket after the one that starts at <code>bucket</code>
+     */
+    public DateTime next(DateTime bucket) {
+        return bucket.withZone(DateTimeZone.UTC).plus(bucketSize);
+    }
+}
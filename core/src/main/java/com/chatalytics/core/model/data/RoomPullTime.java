@@ -0,0 +1,63 @@
+package com.chatalytics.core.model.data;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * The time up to which the messages of a room were pulled. Every room keeps its own pull time, so
+ * rooms can be pulled independently and a failed pull only has to be retried for the rooms that
+ * didn't finish.
+ *
+ * @author giannis
+ *
+ */
+@Entity
+@Table(name = RoomPullTime.ROOM_PULL_TIME_TABLE_NAME)
+@EqualsAndHashCode
+@ToString
+@Setter(value = AccessLevel.PROTECTED) // for hibernate
+public class RoomPullTime {
+
+    public static final String ROOM_PULL_TIME_TABLE_NAME = "ROOM_PULL_TIMES";
+    public static final String ROOM_ID_COLUMN = "ROOM_ID";
+    public static final String TIME_COLUMN = "TIME";
+
+    @Id
+    @Column(name = ROOM_ID_COLUMN)
+    private String roomId;
+    @Column(name = TIME_COLUMN)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    private DateTime time;
+
+    public RoomPullTime(String roomId, DateTime time) {
+        this.roomId = roomId;
+        this.time = time;
+    }
+
+    protected RoomPullTime() {} // for hibernate
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    /**
+     * @return The time up to which the messages of the room were pulled, exclusive
+     */
+    public DateTime getTime() {
+        return time;
+    }
+
+    public void setTime(DateTime time) {
+        this.time = time;
+    }
+}
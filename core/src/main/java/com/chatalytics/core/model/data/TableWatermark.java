@@ -0,0 +1,102 @@
+package com.chatalytics.core.model.data;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Tracks the writes to a table. The version is advanced after every committed write, so readers
+ * can tell whether anything they computed from the table, for example an HTTP response, is still
+ * up to date without querying the table itself. For tables of {@link IMentionable}s it also
+ * records the mention time from which on all the values are in the {@link IMentionRollup}s too.
+ *
+ * @author giannis
+ *
+ */
+@Entity
+@Table(name = TableWatermark.TABLE_WATERMARK_TABLE_NAME)
+@EqualsAndHashCode
+@ToString
+@Setter(value = AccessLevel.PROTECTED) // for hibernate
+public class TableWatermark {
+
+    public static final String TABLE_WATERMARK_TABLE_NAME = "TABLE_WATERMARKS";
+    public static final String TABLE_NAME_COLUMN = "TABLE_NAME";
+    public static final String WRITE_VERSION_COLUMN = "WRITE_VERSION";
+    public static final String LAST_WRITE_TIME_COLUMN = "LAST_WRITE_TIME";
+    public static final String ROLLUPS_START_COLUMN = "ROLLUPS_START";
+
+    @Id
+    @Column(name = TABLE_NAME_COLUMN)
+    private String tableName;
+    @Column(name = WRITE_VERSION_COLUMN)
+    private long writeVersion;
+    @Column(name = LAST_WRITE_TIME_COLUMN)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    private DateTime lastWriteTime;
+    @Column(name = ROLLUPS_START_COLUMN)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    private DateTime rollupsStart;
+
+    public TableWatermark(String tableName, long writeVersion, DateTime lastWriteTime) {
+        this.tableName = tableName;
+        this.writeVersion = writeVersion;
+        this.lastWriteTime = lastWriteTime;
+    }
+
+    protected TableWatermark() {} // for hibernate
+
+    /**
+     * Records a write to the table
+     *
+     * @param writeTime
+     *            The time the write happened
+     */
+    public void advance(DateTime writeTime) {
+        writeVersion++;
+        lastWriteTime = writeTime;
+    }
+
+    /**
+     * Records the mention time from which on every value of the table is also in its rollups.
+     * Values stored before the rollups existed are only in the table
+     *
+     * @param rollupsStart
+     *            The mention time the rollups are complete from
+     */
+    public void startRollups(DateTime rollupsStart) {
+        this.rollupsStart = rollupsStart;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return A number that increases every time the table is written to
+     */
+    public long getWriteVersion() {
+        return writeVersion;
+    }
+
+    public DateTime getLastWriteTime() {
+        return lastWriteTime;
+    }
+
+    /**
+     * @return The mention time the rollups of the table are complete from, or null if it hasn't
+     *         been recorded yet
+     */
+    public DateTime getRollupsStart() {
+        return rollupsStart;
+    }
+}
@@ -0,0 +1,94 @@
+package com.chatalytics.core.emoji;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link EmojiScanner}
+ *
+ * @author giannis
+ */
+public class EmojiScannerTest {
+
+    @Test
+    public void testFind() {
+        assertEquals(ImmutableList.of("smile", "+1", "thumbs-up", "100"),
+                     findAll(new EmojiScanner(), ":smile: great :+1: :thumbs-up::100:"));
+    }
+
+    @Test
+    public void testFind_adjacentDelimiters() {
+        assertEquals(ImmutableList.of("emoji", "emoji"),
+                     findAll(new EmojiScanner(), "::emoji: test :emoji:"));
+        assertEquals(ImmutableList.of("a", "b"), findAll(new EmojiScanner(), ":a::b:"));
+    }
+
+    /**
+     * Makes sure colons inside times, URLs and JSON are not treated as emojis
+     */
+    @Test
+    public void testFind_falsePositives() {
+        EmojiScanner underTest = new EmojiScanner();
+        assertEquals(ImmutableList.of(), findAll(underTest, "meeting at 10:30:00 today"));
+        assertEquals(ImmutableList.of(), findAll(underTest, "see http://example.com:8080/a:b"));
+        assertEquals(ImmutableList.of(), findAll(underTest, "{'test':true,'value':'hello'}"));
+        assertEquals(ImmutableList.of(), findAll(underTest, "ratio is a:b:c"));
+        assertEquals(ImmutableList.of(), findAll(underTest, "dangling : colons :   here:"));
+    }
+
+    @Test
+    public void testFind_noEmojis() {
+        EmojiScanner underTest = new EmojiScanner().reset("nothing to see here");
+        assertFalse(underTest.find());
+        assertEquals(-1, underTest.start());
+        assertEquals(-1, underTest.end());
+        assertFalse(underTest.reset("").find());
+    }
+
+    @Test
+    public void testFind_withKnownEmojis() {
+        EmojiTrie knownEmojis = new EmojiTrie(ImmutableList.of("smile", "tada"));
+        EmojiScanner underTest = new EmojiScanner(':', knownEmojis);
+        assertEquals(ImmutableList.of("smile", "tada"),
+                     findAll(underTest, ":smile: :unknown: :tada: :smiley:"));
+        // an unknown name doesn't hide the emoji that follows it
+        assertEquals(ImmutableList.of("smile"), findAll(underTest, ":unknown:smile:"));
+    }
+
+    @Test
+    public void testFind_customDelimiter() {
+        assertEquals(ImmutableList.of("party"),
+                     findAll(new EmojiScanner('|', null), "let's |party| :smile:"));
+    }
+
+    @Test
+    public void testIsShortcodeChar() {
+        assertTrue(EmojiScanner.isShortcodeChar('a'));
+        assertTrue(EmojiScanner.isShortcodeChar('Z'));
+        assertTrue(EmojiScanner.isShortcodeChar('0'));
+        assertTrue(EmojiScanner.isShortcodeChar('_'));
+        assertTrue(EmojiScanner.isShortcodeChar('+'));
+        assertTrue(EmojiScanner.isShortcodeChar('-'));
+        assertFalse(EmojiScanner.isShortcodeChar(' '));
+        assertFalse(EmojiScanner.isShortcodeChar('/'));
+        assertFalse(EmojiScanner.isShortcodeChar(':'));
+        assertFalse(EmojiScanner.isShortcodeChar('é'));
+    }
+
+    private static List<String> findAll(EmojiScanner scanner, String text) {
+        List<String> result = Lists.newArrayList();
+        scanner.reset(text);
+        while (scanner.find()) {
+            result.add(text.substring(scanner.start(), scanner.end()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package com.chatalytics.core.emoji;
+
+import com.chatalytics.core.json.JsonObjectMapperFactory;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link EmojiTrie}
+ *
+ * @author giannis
+ */
+public class EmojiTrieTest {
+
+    @Test
+    public void testContains() {
+        EmojiTrie underTest = new EmojiTrie(ImmutableList.of("smile", "smiley", "+1", "100"));
+        assertTrue(underTest.contains("smile", 0, 5));
+        assertTrue(underTest.contains("smiley", 0, 6));
+        assertTrue(underTest.contains("a :+1: b", 3, 5));
+        assertTrue(underTest.contains("100", 0, 3));
+
+        // prefixes and extensions of names are not names
+        assertFalse(underTest.contains("smil", 0, 4));
+        assertFalse(underTest.contains("smileys", 0, 7));
+        assertFalse(underTest.contains("10", 0, 2));
+        assertFalse(underTest.contains("smile", 0, 0));
+        assertFalse(underTest.contains("sm ile", 0, 6));
+    }
+
+    @Test
+    public void testConstructor_skipsInvalidNames() {
+        EmojiTrie underTest = new EmojiTrie(ImmutableList.of("has space", "ok"));
+        assertFalse(underTest.contains("has space", 0, 9));
+        assertTrue(underTest.contains("ok", 0, 2));
+        // root, o and k
+        assertEquals(3, underTest.size());
+    }
+
+    /**
+     * Makes sure every emoji in the unicode emoji file can be found
+     */
+    @Test
+    public void testContains_unicodeEmojis() {
+        Map<String, String> emojis =
+            LocalEmojiUtils.getUnicodeEmojis(JsonObjectMapperFactory.createObjectMapper());
+        EmojiTrie underTest = new EmojiTrie(emojis.keySet());
+        for (String emoji : emojis.keySet()) {
+            assertTrue(emoji, underTest.contains(emoji, 0, emoji.length()));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.chatalytics.core.json;
+
+import com.chatalytics.core.InputSourceType;
+import com.chatalytics.core.model.data.Room;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link JsonEnvelopeReader}
+ *
+ * @author giannis
+ */
+public class JsonEnvelopeReaderTest {
+
+    private ObjectMapper objMapper;
+    private JsonEnvelopeReader underTest;
+
+    @Before
+    public void setUp() {
+        objMapper = JsonObjectMapperFactory.createObjectMapper(InputSourceType.SLACK);
+        underTest = new JsonEnvelopeReader(objMapper);
+    }
+
+    /**
+     * Makes sure that elements are bound from the list at the path and that all the fields around
+     * it, including nested ones, are skipped
+     */
+    @Test
+    public void testReadList() throws Exception {
+        String jsonStr = "{\"ok\": true, \"skipped\": {\"channels\": [1, [2]]}, \"channels\": ["
+            + ROOM_JSON_STR + "], \"latest\": \"1\"}";
+        List<Room> rooms = underTest.readList(jsonStr, ImmutableList.of("channels"), Room.class);
+        assertEquals(1, rooms.size());
+        assertEquals("C024BE91L", rooms.get(0).getRoomId());
+        assertEquals("Fun times", rooms.get(0).getTopic());
+
+        // the list is mutable so that more elements can be added to it
+        rooms.addAll(underTest.readList("{}", ImmutableList.of("channels"), Room.class));
+    }
+
+    @Test
+    public void testReadList_nestedPath() throws Exception {
+        String jsonStr = "{\"ok\": true, \"channel\": {\"id\": \"C1\", "
+            + "\"members\": [\"U1\", \"U2\"]}}";
+        List<String> members = underTest.readList(jsonStr, ImmutableList.of("channel", "members"),
+                                                  String.class);
+        assertEquals(ImmutableList.of("U1", "U2"), members);
+    }
+
+    /**
+     * Makes sure that an empty list is returned when any part of the path is missing or the value
+     * is null
+     */
+    @Test
+    public void testReadList_missingPath() throws Exception {
+        List<String> path = ImmutableList.of("channel", "members");
+        assertTrue(underTest.readList("{}", path, String.class).isEmpty());
+        assertTrue(underTest.readList("", path, String.class).isEmpty());
+        assertTrue(underTest.readList("{\"channel\": {}}", path, String.class).isEmpty());
+        assertTrue(underTest.readList("{\"channel\": 1}", path, String.class).isEmpty());
+        assertTrue(underTest.readList("{\"channel\": [{\"members\": []}]}", path, String.class)
+                            .isEmpty());
+        assertTrue(underTest.readList("{\"channel\": {\"members\": null}}", path, String.class)
+                            .isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadList_malformedJson() throws Exception {
+        underTest.readList("{\"channels\": [{bad", ImmutableList.of("channels"), Room.class);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadList_notAList() throws Exception {
+        underTest.readList("{\"channels\": \"BAD\"}", ImmutableList.of("channels"), String.class);
+    }
+
+    @Test
+    public void testReadValue() throws Exception {
+        String jsonStr = "{\"ok\": true, \"channel\": " + ROOM_JSON_STR + "}";
+        Room room = underTest.readValue(jsonStr, ImmutableList.of("channel"), Room.class);
+        assertEquals("C024BE91L", room.getRoomId());
+        assertNull(underTest.readValue("{\"ok\": true}", ImmutableList.of("channel"), Room.class));
+
+        JavaType type = objMapper.getTypeFactory().constructMapLikeType(Map.class, String.class,
+                                                                        String.class);
+        Map<String, String> emojis = underTest.readValue("{\"emoji\": {\"a\": \"b\"}}",
+                                                         ImmutableList.of("emoji"), type);
+        assertEquals("b", emojis.get("a"));
+    }
+
+    /**
+     * Makes sure that only the requested top level fields are read
+     */
+    @Test
+    public void testReadFields() throws Exception {
+        String jsonStr = "{\"ok\": false, \"users\": [{\"url\": \"nested\"}], "
+            + "\"error\": \"broken\", \"self\": {}}";
+        Map<String, JsonNode> fields = underTest.readFields(jsonStr,
+                                                            ImmutableSet.of("ok", "error", "url"));
+        assertEquals(2, fields.size());
+        assertFalse(fields.get("ok").asBoolean());
+        assertEquals("broken", fields.get("error").asText());
+        assertFalse(fields.containsKey("url"));
+
+        assertTrue(underTest.readFields("[]", ImmutableSet.of("ok")).isEmpty());
+    }
+
+    @Test
+    public void testReadError() throws Exception {
+        assertEquals("invalid_auth",
+                     underTest.readError("{\"ok\": false, \"error\": \"invalid_auth\"}").get());
+        assertEquals("not ok", underTest.readError("{\"ok\": false}").get());
+        String hipChatError = "{\"error\": {\"code\": 401, \"type\": \"Unauthorized\"}}";
+        assertTrue(underTest.readError(hipChatError).get().contains("Unauthorized"));
+
+        assertFalse(underTest.readError("{\"ok\": true, \"channels\": []}").isPresent());
+        assertFalse(underTest.readError("{\"rooms\": [{\"error\": \"nested\"}]}").isPresent());
+        assertFalse(underTest.readError("{}").isPresent());
+    }
+
+    private static final String ROOM_JSON_STR = "{"
+        + "\"id\": \"C024BE91L\","
+        + "\"name\": \"fun\","
+        + "\"created\": 1360782804,"
+        + "\"creator\": \"U024BE7LH\","
+        + "\"is_archived\": false,"
+        + "\"topic\": {\"value\": \"Fun times\", \"creator\": \"U024BE7LV\"},"
+        + "\"purpose\": {\"value\": \"This channel is for fun\", \"creator\": \"U024BE7LH\"}"
+        + "}";
+}
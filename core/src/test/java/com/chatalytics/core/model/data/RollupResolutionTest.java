@@ -0,0 +1,69 @@
+package com.chatalytics.core.model.data;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link RollupResolution}
+ *
+ * @author giannis
+ *
+ */
+public class RollupResolutionTest {
+
+    private final DateTime time = new DateTime(2016, 3, 15, 10, 30, 20, DateTimeZone.UTC);
+
+    @Test
+    public void testFloor() {
+        assertEquals(new DateTime(2016, 3, 15, 10, 30, DateTimeZone.UTC),
+                     RollupResolution.MINUTE.floor(time));
+        assertEquals(new DateTime(2016, 3, 15, 10, 0, DateTimeZone.UTC),
+                     RollupResolution.HOUR.floor(time));
+        assertEquals(new DateTime(2016, 3, 15, 0, 0, DateTimeZone.UTC),
+                     RollupResolution.DAY.floor(time));
+        assertEquals(new DateTime(2016, 3, 1, 0, 0, DateTimeZone.UTC),
+                     RollupResolution.MONTH.floor(time));
+    }
+
+    /**
+     * Makes sure buckets are aligned on UTC time regardless of the zone of the time
+     */
+    @Test
+    public void testFloor_withOtherZone() {
+        DateTime nyTime = time.withZone(DateTimeZone.forID("America/New_York"));
+        assertEquals(new DateTime(2016, 3, 15, 0, 0, DateTimeZone.UTC),
+                     RollupResolution.DAY.floor(nyTime));
+    }
+
+    @Test
+    public void testCeiling() {
+        assertEquals(new DateTime(2016, 3, 15, 11, 0, DateTimeZone.UTC),
+                     RollupResolution.HOUR.ceiling(time));
+        assertEquals(new DateTime(2016, 4, 1, 0, 0, DateTimeZone.UTC),
+                     RollupResolution.MONTH.ceiling(time));
+
+        DateTime hour = RollupResolution.HOUR.floor(time);
+        assertEquals(hour, RollupResolution.HOUR.ceiling(hour));
+    }
+
+    @Test
+    public void testIsAligned() {
+        assertFalse(RollupResolution.MINUTE.isAligned(time));
+        assertTrue(RollupResolution.MINUTE.isAligned(RollupResolution.DAY.floor(time)));
+        assertTrue(RollupResolution.DAY.isAligned(RollupResolution.DAY.floor(time)));
+        assertFalse(RollupResolution.MONTH.isAligned(RollupResolution.DAY.floor(time)));
+    }
+
+    @Test
+    public void testNext() {
+        assertEquals(new DateTime(2016, 4, 1, 0, 0, DateTimeZone.UTC),
+                     RollupResolution.MONTH.next(RollupResolution.MONTH.floor(time)));
+        assertEquals(new DateTime(2016, 3, 16, 0, 0, DateTimeZone.UTC),
+                     RollupResolution.DAY.next(RollupResolution.DAY.floor(time)));
+    }
+}
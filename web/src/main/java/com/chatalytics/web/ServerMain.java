@@ -1,10 +1,17 @@
 package com.chatalytics.web;
 
 import com.chatalytics.compute.db.dao.ChatAlyticsDAOFactory;
+import com.chatalytics.compute.db.dao.IChatAlyticsDAO;
 import com.chatalytics.core.CommonCLIBuilder;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.model.data.ChatEntity;
+import com.chatalytics.core.model.data.EmojiEntity;
+import com.chatalytics.core.model.data.MessageSummary;
 import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.util.YamlUtils;
+import com.chatalytics.web.cache.QueryCoalescer;
+import com.chatalytics.web.cache.SimilarityMatrixCache;
+import com.chatalytics.web.filter.HttpCacheFilter;
 import com.chatalytics.web.resources.EmojisResource;
 import com.chatalytics.web.resources.EntitiesResource;
 import com.chatalytics.web.resources.EventsResource;
@@ -12,7 +19,9 @@ import com.chatalytics.web.resources.MessageSummaryResource;
 import com.chatalytics.web.resources.RoomsResource;
 import com.chatalytics.web.resources.StatusResource;
 import com.chatalytics.web.resources.UsersResource;
+import com.chatalytics.web.utils.DateTimeUtils;
 import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.sun.jersey.spi.container.servlet.ServletContainer;
 
@@ -27,6 +36,7 @@ import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.websocket.jsr356.server.deploy.WebSocketServerContainerInitializer;
+import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +44,7 @@ import io.swagger.jaxrs.config.BeanConfig;
 import io.swagger.jaxrs.listing.ApiListingResource;
 
 import java.util.EnumSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.DispatcherType;
@@ -64,10 +75,15 @@ public class ServerMain extends Application {
 
     private final ChatAlyticsConfig config;
     private final RealtimeComputeClient realtimeComputeClient;
+    private final SimilarityMatrixCache similarityCache;
+    private final QueryCoalescer queryCoalescer;
 
-    public ServerMain(ChatAlyticsConfig config, RealtimeComputeClient realtimeComputeClient) {
+    public ServerMain(ChatAlyticsConfig config, RealtimeComputeClient realtimeComputeClient,
+                      SimilarityMatrixCache similarityCache) {
         this.config = config;
         this.realtimeComputeClient = realtimeComputeClient;
+        this.similarityCache = similarityCache;
+        this.queryCoalescer = new QueryCoalescer();
 
         // Sets up classpath scanning for Swagger + JAXRS
         // Resources available at localhost/swagger.json
@@ -87,7 +103,8 @@ public class ServerMain extends Application {
 
         EventsResource eventResource = new EventsResource();
         RealtimeComputeClient computeClient = new RealtimeComputeClient(config, eventResource);
-        ServerMain serverMain = new ServerMain(config, computeClient);
+        SimilarityMatrixCache similarityCache = new SimilarityMatrixCache(config);
+        ServerMain serverMain = new ServerMain(config, computeClient, similarityCache);
 
         LOG.info("Starting compute client");
         serverMain.startComputeClient();
@@ -96,6 +113,8 @@ public class ServerMain extends Application {
         Server server = new Server(config.webConfig.port);
         ServletContainer servletContainer = new ServletContainer(serverMain);
         ServletHolder servletHolder = new ServletHolder("/*", servletContainer);
+        // create the resources on start so they register their similarities before precomputing
+        servletHolder.setInitOrder(0);
         ServletContextHandler context = new ServletContextHandler();
 
         ResourceHandler resourceHandler = new ResourceHandler();
@@ -114,14 +133,21 @@ public class ServerMain extends Application {
         Set<String> headers = Sets.newHashSet(X_REQUESTED_WITH, CONTENT_TYPE, ACCEPT, ORIGIN);
         cors.setInitParameter(CrossOriginFilter.ALLOWED_HEADERS_PARAM, String.join(",", headers));
 
+        HttpCacheFilter cacheFilter = createHttpCacheFilter(config);
+        context.addFilter(new FilterHolder(cacheFilter), "/*", EnumSet.of(DispatcherType.REQUEST));
+
         context.addServlet(servletHolder, "/*");
         server.setHandler(handlers);
         setWebSocketEndpoints(context, eventResource);
 
-        addShutdownHook(computeClient);
+        addShutdownHook(computeClient, similarityCache);
 
         LOG.info("Starting web server");
         server.start();
+        if (config.webConfig.similarityPrecomputeIntervalSecs > 0) {
+            LOG.info("Starting similarity precomputation");
+            similarityCache.startAsync();
+        }
         server.join();
     }
 
@@ -131,12 +157,12 @@ public class ServerMain extends Application {
         JacksonJaxbJsonProvider jsonProvider = new JacksonJaxbJsonProvider();
         jsonProvider.setMapper(JsonObjectMapperFactory.createObjectMapper(config.inputType));
 
-        return Sets.newHashSet(new EntitiesResource(config),
-                               new EmojisResource(config),
+        return Sets.newHashSet(new EntitiesResource(config, similarityCache, queryCoalescer),
+                               new EmojisResource(config, similarityCache, queryCoalescer),
                                new UsersResource(config),
                                new RoomsResource(config),
-                               new MessageSummaryResource(config),
-                               new StatusResource(),
+                               new MessageSummaryResource(config, queryCoalescer),
+                               new StatusResource(queryCoalescer),
                                new ApiListingResource(),
                                jsonProvider);
     }
@@ -151,6 +177,28 @@ public class ServerMain extends Application {
         }
     }
 
+    /**
+     * Creates the filter that adds HTTP caching headers to the endpoints that are computed from a
+     * single table
+     *
+     * @param config The chatalytics config
+     * @return The HTTP cache filter
+     */
+    private static HttpCacheFilter createHttpCacheFilter(ChatAlyticsConfig config) {
+        IChatAlyticsDAO chatalyticsDao = ChatAlyticsDAOFactory.createChatAlyticsDao(config);
+        Map<String, String> endpointTables =
+            ImmutableMap.of(EntitiesResource.ENTITIES_ENDPOINT, ChatEntity.ENTITY_TABLE_NAME,
+                            EmojisResource.EMOJI_ENDPOINT, EmojiEntity.EMOJI_TABLE_NAME,
+                            MessageSummaryResource.MESSAGE_SUMMARY_ENDPOINT,
+                            MessageSummary.MESSAGE_SUMMARY_TABLE_NAME);
+        return new HttpCacheFilter(chatalyticsDao,
+                                   DateTimeZone.forID(config.timeZone),
+                                   config.webConfig.httpCacheClosedMaxAgeSecs,
+                                   config.webConfig.httpCacheOpenMaxAgeSecs,
+                                   DateTimeUtils.getClosedIntervalGrace(config),
+                                   endpointTables);
+    }
+
     /**
      *
      * @param context the context to add the web socket endpoints to
@@ -181,12 +229,15 @@ public class ServerMain extends Application {
      * Closes all open resources
      *
      * @param computeClient The compute client to close
+     * @param similarityCache The similarity cache to stop precomputing
      */
-    private static void addShutdownHook(RealtimeComputeClient computeClient) {
+    private static void addShutdownHook(RealtimeComputeClient computeClient,
+                                        SimilarityMatrixCache similarityCache) {
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 computeClient.stopAsync().awaitTerminated();
+                similarityCache.stopAsync().awaitTerminated();
                 ChatAlyticsDAOFactory.closeEntityManagerFactory();
             }
         });
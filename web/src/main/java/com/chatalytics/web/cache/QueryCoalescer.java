@@ -0,0 +1,84 @@
+package com.chatalytics.web.cache;
+
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical queries that run at the same time, so that when many dashboards ask for the
+ * same view at once only one of them queries the database and all the others wait for and share
+ * its result. Queries are identical when their keys are equal, so keys should contain every
+ * normalized parameter the result depends on. Nothing is cached once a query completes.
+ *
+ * @author giannis
+ */
+public class QueryCoalescer {
+
+    private final ConcurrentMap<List<?>, CompletableFuture<Object>> inFlight;
+    private final AtomicLong executedCount;
+    private final AtomicLong coalescedCount;
+
+    public QueryCoalescer() {
+        this.inFlight = Maps.newConcurrentMap();
+        this.executedCount = new AtomicLong();
+        this.coalescedCount = new AtomicLong();
+    }
+
+    /**
+     * Runs the query, or waits for an identical query that's already running and returns its
+     * result. Failures of the query are thrown to all of its callers.
+     *
+     * @param key
+     *            Identifies the query
+     * @param query
+     *            Runs the query
+     * @return The result of the query
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V execute(List<?> key, Supplier<V> query) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> runningFuture = inFlight.putIfAbsent(key, future);
+        if (runningFuture != null) {
+            coalescedCount.incrementAndGet();
+            try {
+                return (V) runningFuture.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        executedCount.incrementAndGet();
+        try {
+            V result = query.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * @return The number of queries that ran
+     */
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    /**
+     * @return The number of queries that waited for an identical query instead of running
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+}
@@ -0,0 +1,322 @@
+package com.chatalytics.web.cache;
+
+import com.chatalytics.compute.matrix.LabeledDenseMatrix;
+import com.chatalytics.core.DimensionType;
+import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.web.utils.DateTimeUtils;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.joda.time.Period;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Caches similarity matrices by dimension pair, interval and whether bots were included, so that
+ * dashboards asking for the same view don't load all the mentions and decompose the matrix again.
+ * <p>
+ * Matrices of intervals that ended more than a grace period ago don't change anymore, so they never
+ * expire and are only evicted when their cells add up to more than <code>maxCells</code>. The grace
+ * period covers the time it takes for mentions to be aggregated, flushed and backfilled, so that a
+ * matrix of an hour that just ended isn't frozen before all of its mentions are stored. All other
+ * matrices expire <code>ttlSecs</code> after they're computed, or earlier if their cells add up to
+ * more than <code>recentMaxCells</code>. Matrices are weighed by their cells since their size grows
+ * with the square of the number of rooms or users.
+ * <p>
+ * When running as a service, the matrices of the last day, week and month, without bots, are
+ * recomputed in the background for all the registered dimension pairs, so the default dashboard
+ * views are always cached.
+ *
+ * @author giannis
+ */
+public class SimilarityMatrixCache extends AbstractScheduledService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SimilarityMatrixCache.class);
+
+    /**
+     * The lengths of the intervals that are computed in the background
+     */
+    @VisibleForTesting
+    static final List<Period> PRECOMPUTED_PERIODS = ImmutableList.of(Period.days(1),
+                                                                      Period.weeks(1),
+                                                                      Period.months(1));
+
+    private final Cache<SimilarityKey, LabeledDenseMatrix<String>> historicalCache;
+    private final Cache<SimilarityKey, LabeledDenseMatrix<String>> recentCache;
+    private final Map<DimensionPair,
+                      BiFunction<Interval, Boolean, LabeledDenseMatrix<String>>> similarityFuncs;
+    private final DateTimeZone dtz;
+    private final long precomputeIntervalSecs;
+    private final Duration closedIntervalGrace;
+
+    public SimilarityMatrixCache(ChatAlyticsConfig config) {
+        this(config.webConfig.similarityCacheMaxCells,
+             config.webConfig.similarityRecentCacheMaxCells,
+             config.webConfig.similarityCacheTtlSecs,
+             config.webConfig.similarityPrecomputeIntervalSecs,
+             DateTimeUtils.getClosedIntervalGrace(config),
+             DateTimeZone.forID(config.timeZone),
+             Ticker.systemTicker());
+    }
+
+    /**
+     * @param maxCells
+     *            The maximum number of cells of all the matrices of closed intervals to keep
+     * @param recentMaxCells
+     *            The maximum number of cells of all the matrices of intervals that may still change
+     *            to keep
+     * @param ttlSecs
+     *            The time matrices of intervals that may still change are kept for
+     * @param precomputeIntervalSecs
+     *            How often the last day, week and month get recomputed when running as a service
+     * @param closedIntervalGrace
+     *            The time after the end of an interval before its matrix doesn't change anymore
+     * @param dtz
+     *            The time zone the hours of the precomputed intervals are aligned to
+     * @param ticker
+     *            The time source of the expiration
+     */
+    @VisibleForTesting
+    SimilarityMatrixCache(long maxCells, long recentMaxCells, long ttlSecs,
+                          long precomputeIntervalSecs, Duration closedIntervalGrace,
+                          DateTimeZone dtz, Ticker ticker) {
+        Preconditions.checkArgument(maxCells > 0, "Cache size has to be > 0");
+        Preconditions.checkArgument(recentMaxCells > 0, "Recent cache size has to be > 0");
+        Preconditions.checkArgument(ttlSecs > 0, "Cache TTL has to be > 0");
+        this.historicalCache = CacheBuilder.newBuilder()
+                                           .maximumWeight(maxCells)
+                                           .weigher(SimilarityMatrixCache::weigh)
+                                           .build();
+        this.recentCache = CacheBuilder.newBuilder()
+                                       .maximumWeight(recentMaxCells)
+                                       .weigher(SimilarityMatrixCache::weigh)
+                                       .expireAfterWrite(ttlSecs, TimeUnit.SECONDS)
+                                       .ticker(ticker)
+                                       .build();
+        this.similarityFuncs = Maps.newConcurrentMap();
+        this.precomputeIntervalSecs = precomputeIntervalSecs;
+        this.closedIntervalGrace = closedIntervalGrace;
+        this.dtz = dtz;
+    }
+
+    /**
+     * Registers the function that computes the similarities of a dimension pair
+     *
+     * @param firstDim
+     *            The dimension that's compared
+     * @param secondDim
+     *            The dimension it's compared by
+     * @param similarityFunc
+     *            Computes the similarity matrix given an interval and whether to include bots
+     */
+    public void register(DimensionType firstDim, DimensionType secondDim,
+                         BiFunction<Interval, Boolean, LabeledDenseMatrix<String>> similarityFunc) {
+        similarityFuncs.put(new DimensionPair(firstDim, secondDim), similarityFunc);
+    }
+
+    /**
+     * @return True if a similarity function was registered for the dimension pair
+     */
+    public boolean isRegistered(DimensionType firstDim, DimensionType secondDim) {
+        return similarityFuncs.containsKey(new DimensionPair(firstDim, secondDim));
+    }
+
+    /**
+     * Gets the similarity matrix from the cache or computes it with the registered function and
+     * caches it. Concurrent calls for the same matrix wait for a single computation.
+     *
+     * @param firstDim
+     *            The dimension that's compared
+     * @param secondDim
+     *            The dimension it's compared by
+     * @param interval
+     *            The interval of the mentions
+     * @param withBots
+     *            Whether to include bots
+     * @return The similarity matrix
+     * @throws UnsupportedOperationException
+     *             If there's no function registered for the dimension pair
+     */
+    public LabeledDenseMatrix<String> get(DimensionType firstDim, DimensionType secondDim,
+                                          Interval interval, boolean withBots) {
+        DimensionPair dimensions = new DimensionPair(firstDim, secondDim);
+        BiFunction<Interval, Boolean, LabeledDenseMatrix<String>> similarityFunc =
+                getSimilarityFunc(dimensions);
+        SimilarityKey key = new SimilarityKey(dimensions, interval, withBots);
+        try {
+            return getCache(interval).get(key, () -> similarityFunc.apply(interval, withBots));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * @return The number of cached matrices
+     */
+    public long size() {
+        return historicalCache.size() + recentCache.size();
+    }
+
+    /**
+     * Recomputes the last day, week and month of all the registered dimension pairs
+     */
+    @Override
+    protected void runOneIteration() {
+        for (Interval interval : getPrecomputedIntervals(DateTime.now(dtz))) {
+            for (DimensionPair dimensions : similarityFuncs.keySet()) {
+                try {
+                    LabeledDenseMatrix<String> matrix =
+                            getSimilarityFunc(dimensions).apply(interval, false);
+                    getCache(interval).put(new SimilarityKey(dimensions, interval, false), matrix);
+                } catch (RuntimeException e) {
+                    LOG.error("Can't precompute the similarities of {} over {}", dimensions,
+                              interval, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(0, precomputeIntervalSecs, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets the intervals computed in the background. They end at the start of the next hour, like
+     * the intervals of requests for the current hour do, and start a day, week and month before
+     * that.
+     *
+     * @param now
+     *            The current time in the configured time zone
+     * @return The intervals to precompute, in UTC
+     */
+    @VisibleForTesting
+    static List<Interval> getPrecomputedIntervals(DateTime now) {
+        DateTime end = now.hourOfDay().roundFloorCopy().plusHours(1);
+        ImmutableList.Builder<Interval> intervals = ImmutableList.builder();
+        for (Period period : PRECOMPUTED_PERIODS) {
+            intervals.add(new Interval(end.minus(period).toDateTime(DateTimeZone.UTC),
+                                       end.toDateTime(DateTimeZone.UTC)));
+        }
+        return intervals.build();
+    }
+
+    /**
+     * @return The weight of a matrix, which is its number of cells plus its labels
+     */
+    private static int weigh(SimilarityKey key, LabeledDenseMatrix<String> matrix) {
+        double[][] cells = matrix.getMatrix();
+        long numCells = cells.length == 0 ? 0 : (long) cells.length * cells[0].length;
+        long weight = numCells + matrix.getLabels().size();
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, weight));
+    }
+
+    /**
+     * @return The cache the matrix of an interval belongs to
+     */
+    private Cache<SimilarityKey, LabeledDenseMatrix<String>> getCache(Interval interval) {
+        if (DateTimeUtils.isClosed(interval, DateTime.now(DateTimeZone.UTC),
+                                   closedIntervalGrace)) {
+            return historicalCache;
+        } else {
+            return recentCache;
+        }
+    }
+
+    private BiFunction<Interval, Boolean, LabeledDenseMatrix<String>> getSimilarityFunc(
+            DimensionPair dimensions) {
+        BiFunction<Interval, Boolean, LabeledDenseMatrix<String>> similarityFunc =
+                similarityFuncs.get(dimensions);
+        if (similarityFunc == null) {
+            String formatStr = "The dimension combination you specified (%s, %s) is not supported";
+            throw new UnsupportedOperationException(String.format(formatStr, dimensions.first,
+                                                                  dimensions.second));
+        }
+        return similarityFunc;
+    }
+
+    private static class DimensionPair {
+
+        private final DimensionType first;
+        private final DimensionType second;
+
+        public DimensionPair(DimensionType first, DimensionType second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof DimensionPair)) {
+                return false;
+            }
+            DimensionPair other = (DimensionPair) obj;
+            return first == other.first && second == other.second;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(first, second);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(%s, %s)", first, second);
+        }
+    }
+
+    /**
+     * Compares intervals by their instants only, since the same interval can be parsed in
+     * different chronologies
+     */
+    private static class SimilarityKey {
+
+        private final DimensionPair dimensions;
+        private final long startMillis;
+        private final long endMillis;
+        private final boolean withBots;
+
+        public SimilarityKey(DimensionPair dimensions, Interval interval, boolean withBots) {
+            this.dimensions = dimensions;
+            this.startMillis = interval.getStartMillis();
+            this.endMillis = interval.getEndMillis();
+            this.withBots = withBots;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SimilarityKey)) {
+                return false;
+            }
+            SimilarityKey other = (SimilarityKey) obj;
+            return dimensions.equals(other.dimensions)
+                && startMillis == other.startMillis
+                && endMillis == other.endMillis
+                && withBots == other.withBots;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dimensions, startMillis, endMillis, withBots);
+        }
+    }
+}
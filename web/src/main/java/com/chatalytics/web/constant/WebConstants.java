@@ -39,4 +39,35 @@ public class WebConstants {
      * Constant used in endpoints for specifying whether bots should be included in calculations
      */
     public static final String BOT = "bot";
+
+    /**
+     * Constant used in endpoints for passing the maximum number of elements in a page
+     */
+    public static final String LIMIT = "limit";
+
+    /**
+     * Constant used in endpoints for passing the opaque cursor of the page to get
+     */
+    public static final String CURSOR = "cursor";
+
+    /*
+     * ----------------------------
+     * Paging Constants
+     * ----------------------------
+     */
+
+    /**
+     * Response header with the cursor of the next page. Missing on the last page
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Page size used when a cursor is passed in without a limit
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /**
+     * Limits larger than this are lowered to it
+     */
+    public static final int MAX_PAGE_SIZE = 10000;
 }
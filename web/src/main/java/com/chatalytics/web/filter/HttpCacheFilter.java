@@ -0,0 +1,199 @@
+package com.chatalytics.web.filter;
+
+import com.chatalytics.compute.db.dao.IChatAlyticsDAO;
+import com.chatalytics.web.constant.WebConstants;
+import com.chatalytics.web.utils.DateTimeUtils;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
+
+/**
+ * Adds HTTP caching headers to the responses of endpoints that are computed from a single table
+ * over a time interval. The ETag is the write version of the table, so a client that revalidates
+ * with <code>If-None-Match</code> gets a <code>304 Not Modified</code> back without the endpoint
+ * querying the table at all, as long as nothing was written to it in the meantime.
+ * <p>
+ * Intervals that ended more than a grace period ago won't get any new data, so they're cached for a
+ * long time. The grace period covers the time it takes for mentions to be aggregated, flushed and
+ * backfilled. All other intervals, including the ones that just ended, are only cached for a short
+ * time, after which clients revalidate with the ETag.
+ *
+ * @author giannis
+ *
+ */
+public class HttpCacheFilter implements Filter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpCacheFilter.class);
+
+    private final IChatAlyticsDAO chatalyticsDao;
+    private final DateTimeZone dtz;
+    private final long closedMaxAgeSecs;
+    private final long openMaxAgeSecs;
+    private final Duration closedIntervalGrace;
+    private final Map<String, String> endpointTables;
+
+    /**
+     * @param chatalyticsDao
+     *            The DAO to get the write versions of the tables from
+     * @param dtz
+     *            The time zone the time parameters are in
+     * @param closedMaxAgeSecs
+     *            Time, in seconds, responses for intervals that won't get new data are cached for
+     * @param openMaxAgeSecs
+     *            Time, in seconds, responses for intervals that may still get new data are cached
+     *            for
+     * @param closedIntervalGrace
+     *            The time after the end of an interval before it doesn't get new data anymore
+     * @param endpointTables
+     *            Maps the path of every cached endpoint to the name of the table it's computed
+     *            from. The path also covers all the sub-paths of the endpoint
+     */
+    public HttpCacheFilter(IChatAlyticsDAO chatalyticsDao, DateTimeZone dtz, long closedMaxAgeSecs,
+                           long openMaxAgeSecs, Duration closedIntervalGrace,
+                           Map<String, String> endpointTables) {
+        this.chatalyticsDao = chatalyticsDao;
+        this.dtz = dtz;
+        this.closedMaxAgeSecs = closedMaxAgeSecs;
+        this.openMaxAgeSecs = openMaxAgeSecs;
+        this.closedIntervalGrace = closedIntervalGrace;
+        this.endpointTables = ImmutableMap.copyOf(endpointTables);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException { }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        if (!(request instanceof HttpServletRequest)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        Optional<String> tableName = getTableName(httpRequest);
+        Optional<Interval> interval = getInterval(httpRequest);
+        if (!tableName.isPresent() || !interval.isPresent()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long writeVersion;
+        try {
+            writeVersion = chatalyticsDao.getTableWriteVersion(tableName.get());
+        } catch (RuntimeException e) {
+            LOG.warn("Can't get the write version of {}. Not caching. {}",
+                     tableName.get(), e.getMessage());
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String etag = String.format("\"%s-%d\"", tableName.get(), writeVersion);
+        httpResponse.setHeader(ETAG, etag);
+        httpResponse.setHeader(CACHE_CONTROL, getCacheControl(interval.get()));
+
+        if (matches(httpRequest.getHeader(IF_NONE_MATCH), etag)) {
+            httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() { }
+
+    /**
+     * @return The table the requested endpoint is computed from, or absent if the request is not
+     *         for a cached endpoint
+     */
+    private Optional<String> getTableName(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return Optional.absent();
+        }
+        String path = request.getRequestURI();
+        for (Map.Entry<String, String> endpointTable : endpointTables.entrySet()) {
+            String endpoint = endpointTable.getKey();
+            if (path.equals(endpoint) || path.startsWith(endpoint + "/")) {
+                return Optional.of(endpointTable.getValue());
+            }
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * @return The requested interval, or absent if the request doesn't have a valid one
+     */
+    private Optional<Interval> getInterval(HttpServletRequest request) {
+        String startTimeStr = request.getParameter(WebConstants.START_TIME);
+        String endTimeStr = request.getParameter(WebConstants.END_TIME);
+        if (startTimeStr == null || endTimeStr == null) {
+            return Optional.absent();
+        }
+        try {
+            return Optional.of(DateTimeUtils.getIntervalFromParameters(startTimeStr, endTimeStr,
+                                                                       dtz));
+        } catch (IllegalArgumentException e) {
+            // let the endpoint report the error
+            return Optional.absent();
+        }
+    }
+
+    @VisibleForTesting
+    String getCacheControl(Interval interval) {
+        if (DateTimeUtils.isClosed(interval, DateTime.now(DateTimeZone.UTC), closedIntervalGrace)) {
+            return "public, max-age=" + closedMaxAgeSecs;
+        }
+        return "public, max-age=" + openMaxAgeSecs;
+    }
+
+    /**
+     * @param ifNoneMatch
+     *            The value of the <code>If-None-Match</code> header. Can be null
+     * @param etag
+     *            The current ETag
+     * @return True if any of the ETags the client has matches the current one
+     */
+    @VisibleForTesting
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String clientEtag : Splitter.on(',').trimResults().omitEmptyStrings()
+                                         .split(ifNoneMatch)) {
+            if (clientEtag.startsWith("W/")) {
+                clientEtag = clientEtag.substring(2);
+            }
+            if (clientEtag.equals("*") || clientEtag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
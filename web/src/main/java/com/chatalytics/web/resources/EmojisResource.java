@@ -4,6 +4,8 @@ import com.chatalytics.compute.chat.dao.ChatAPIFactory;
 import com.chatalytics.compute.chat.dao.IChatApiDAO;
 import com.chatalytics.compute.db.dao.ChatAlyticsDAOFactory;
 import com.chatalytics.compute.db.dao.IEmojiDAO;
+import com.chatalytics.compute.db.dao.MentionCursor;
+import com.chatalytics.compute.db.dao.MentionPage;
 import com.chatalytics.compute.matrix.LabeledDenseMatrix;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.DimensionType;
@@ -12,6 +14,8 @@ import com.chatalytics.core.emoji.LocalEmojiUtils;
 import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.model.data.EmojiEntity;
 import com.chatalytics.core.model.data.EmojiMap;
+import com.chatalytics.web.cache.QueryCoalescer;
+import com.chatalytics.web.cache.SimilarityMatrixCache;
 import com.chatalytics.web.constant.WebConstants;
 import com.chatalytics.web.utils.DateTimeUtils;
 import com.chatalytics.web.utils.ResourceUtils;
@@ -20,6 +24,8 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
 
 import org.joda.time.DateTimeZone;
 import org.joda.time.Interval;
@@ -35,9 +41,12 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import static com.chatalytics.web.constant.WebConstants.BOT;
+import static com.chatalytics.web.constant.WebConstants.CURSOR;
 import static com.chatalytics.web.constant.WebConstants.END_TIME;
+import static com.chatalytics.web.constant.WebConstants.LIMIT;
 import static com.chatalytics.web.constant.WebConstants.ROOM;
 import static com.chatalytics.web.constant.WebConstants.START_TIME;
 import static com.chatalytics.web.constant.WebConstants.TOP_N;
@@ -65,18 +74,37 @@ public class EmojisResource {
     private final DateTimeZone dtz;
     private final IChatApiDAO chatApiDao;
     private final Map<String, String> unicodeEmojis;
+    private final ObjectMapper objectMapper;
+    private final SimilarityMatrixCache similarityCache;
+    private final QueryCoalescer queryCoalescer;
 
     public EmojisResource(ChatAlyticsConfig config) {
-        this(config, ChatAPIFactory.getChatApiDao(config));
+        this(config, new SimilarityMatrixCache(config), new QueryCoalescer());
+    }
+
+    public EmojisResource(ChatAlyticsConfig config, SimilarityMatrixCache similarityCache,
+                          QueryCoalescer queryCoalescer) {
+        this(config, ChatAPIFactory.getChatApiDao(config), similarityCache, queryCoalescer);
     }
 
     @VisibleForTesting
     protected EmojisResource(ChatAlyticsConfig config, IChatApiDAO chatApiDao) {
+        this(config, chatApiDao, new SimilarityMatrixCache(config), new QueryCoalescer());
+    }
+
+    private EmojisResource(ChatAlyticsConfig config, IChatApiDAO chatApiDao,
+                           SimilarityMatrixCache similarityCache, QueryCoalescer queryCoalescer) {
         emojiDao = ChatAlyticsDAOFactory.createEmojiDAO(config);
         this.chatApiDao = chatApiDao;
         dtz = DateTimeZone.forID(config.timeZone);
-        ObjectMapper objectMapper = JsonObjectMapperFactory.createObjectMapper(config.inputType);
+        objectMapper = JsonObjectMapperFactory.createObjectMapper(config.inputType);
         unicodeEmojis = LocalEmojiUtils.getUnicodeEmojis(objectMapper);
+        this.similarityCache = similarityCache;
+        this.queryCoalescer = queryCoalescer;
+        similarityCache.register(DimensionType.ROOM, DimensionType.EMOJI,
+                                 emojiDao::getRoomSimilaritiesByEmoji);
+        similarityCache.register(DimensionType.USER, DimensionType.EMOJI,
+                                 emojiDao::getUserSimilaritiesByEmoji);
     }
 
     @GET
@@ -93,30 +121,58 @@ public class EmojisResource {
         LOG.debug("Got query for starttime={} endtime={} users={} rooms={} botStr={}",
                   startTimeStr, endTimeStr, users, rooms, botStr);
 
-        users = ResourceUtils.getListFromNullable(users);
-        rooms = ResourceUtils.getListFromNullable(rooms);
-        Optional<Integer> topN = ResourceUtils.getOptionalForParameterAsInt(topNStr);
+        List<String> usernames = ResourceUtils.getListFromNullable(users);
+        List<String> roomNames = ResourceUtils.getListFromNullable(rooms);
+        int topN = ResourceUtils.getOptionalForParameterAsInt(topNStr).or(MAX_RESULTS);
         boolean withBots = ResourceUtils.getOptionalForParameterAsBool(botStr).or(false);
 
         Interval interval = DateTimeUtils.getIntervalFromParameters(startTimeStr, endTimeStr, dtz);
 
-        return emojiDao.getTopEmojis(interval, rooms, users, topN.or(MAX_RESULTS), withBots);
+        List<?> queryKey = ImmutableList.of(EMOJI_ENDPOINT + "/trending",
+                                            interval.getStartMillis(), interval.getEndMillis(),
+                                            ImmutableSortedSet.copyOf(roomNames),
+                                            ImmutableSortedSet.copyOf(usernames), topN, withBots);
+        return queryCoalescer.execute(queryKey, () ->
+            emojiDao.getTopEmojis(interval, roomNames, usernames, topN, withBots));
     }
 
+    /**
+     * Gets all the emoji mentions with the given parameters. Without a limit or a cursor, all the
+     * mentions are written to the response as they're read from the database. Otherwise a page of
+     * mentions, ordered by mention time, is returned along with the cursor of the next page in the
+     * {@link WebConstants#NEXT_CURSOR_HEADER} header.
+     *
+     * @param limitStr
+     *            The maximum number of mentions to return (optional)
+     * @param cursorStr
+     *            The cursor of the page to get (optional)
+     * @return A JSON array of {@link EmojiEntity}s
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public List<EmojiEntity> getAllEmojis(@QueryParam(START_TIME) String startTimeStr,
-                                          @QueryParam(END_TIME) String endTimeStr,
-                                          @QueryParam(USER) List<String> users,
-                                          @QueryParam(ROOM) List<String> rooms,
-                                          @QueryParam(BOT) String botStr) {
+    public Response getAllEmojis(@QueryParam(START_TIME) String startTimeStr,
+                                 @QueryParam(END_TIME) String endTimeStr,
+                                 @QueryParam(USER) List<String> users,
+                                 @QueryParam(ROOM) List<String> rooms,
+                                 @QueryParam(BOT) String botStr,
+                                 @QueryParam(LIMIT) String limitStr,
+                                 @QueryParam(CURSOR) String cursorStr) {
 
         Interval interval = DateTimeUtils.getIntervalFromParameters(startTimeStr, endTimeStr, dtz);
-        users = ResourceUtils.getListFromNullable(users);
-        rooms = ResourceUtils.getListFromNullable(rooms);
+        List<String> usernames = ResourceUtils.getListFromNullable(users);
+        List<String> roomNames = ResourceUtils.getListFromNullable(rooms);
         boolean withBots = ResourceUtils.getOptionalForParameterAsBool(botStr).or(false);
+        Optional<Integer> limit = ResourceUtils.getOptionalForParameterAsInt(limitStr);
+        Optional<MentionCursor> cursor = ResourceUtils.getOptionalForCursor(cursorStr);
 
-        return emojiDao.getAllMentions(interval, rooms, users, withBots);
+        if (!limit.isPresent() && !cursor.isPresent()) {
+            return ResourceUtils.<EmojiEntity>createStreamingResponse(objectMapper, consumer ->
+                emojiDao.streamAllMentions(interval, roomNames, usernames, withBots, consumer));
+        }
+        MentionPage<EmojiEntity> page = emojiDao.getMentionsPage(interval, roomNames, usernames,
+                                                                 withBots, cursor,
+                                                                 ResourceUtils.getPageLimit(limit));
+        return ResourceUtils.createPageResponse(objectMapper, page);
     }
 
     @GET
@@ -137,10 +193,10 @@ public class EmojisResource {
         Interval interval = DateTimeUtils.getIntervalFromParameters(startTimeStr, endTimeStr, dtz);
         boolean withBots = ResourceUtils.getOptionalForParameterAsBool(botStr).or(false);
 
-        if (firstDim == DimensionType.ROOM && secondDim == DimensionType.EMOJI) {
-            return emojiDao.getRoomSimilaritiesByEmoji(interval, withBots);
-        } else if (firstDim == DimensionType.USER && secondDim == DimensionType.EMOJI) {
-            return emojiDao.getUserSimilaritiesByEmoji(interval, withBots);
+        // the cache is shared with the other resources, so only serve this resource's pairs
+        if (secondDim == DimensionType.EMOJI
+                && similarityCache.isRegistered(firstDim, secondDim)) {
+            return similarityCache.get(firstDim, secondDim, interval, withBots);
         } else {
             String formatStr = "The dimension combination you specified (%s, %s) is not supported";
             throw new UnsupportedOperationException(String.format(formatStr, firstDimStr,
@@ -2,16 +2,25 @@ package com.chatalytics.web.resources;
 
 import com.chatalytics.compute.db.dao.ChatAlyticsDAOFactory;
 import com.chatalytics.compute.db.dao.IEntityDAO;
+import com.chatalytics.compute.db.dao.MentionCursor;
+import com.chatalytics.compute.db.dao.MentionPage;
 import com.chatalytics.compute.matrix.LabeledDenseMatrix;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.DimensionType;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.model.data.ChatEntity;
+import com.chatalytics.web.cache.QueryCoalescer;
+import com.chatalytics.web.cache.SimilarityMatrixCache;
 import com.chatalytics.web.constant.WebConstants;
 import com.chatalytics.web.utils.DateTimeUtils;
 import com.chatalytics.web.utils.ResourceUtils;
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
 
 import org.joda.time.DateTimeZone;
 import org.joda.time.Interval;
@@ -27,9 +36,12 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import static com.chatalytics.web.constant.WebConstants.BOT;
+import static com.chatalytics.web.constant.WebConstants.CURSOR;
 import static com.chatalytics.web.constant.WebConstants.END_TIME;
+import static com.chatalytics.web.constant.WebConstants.LIMIT;
 import static com.chatalytics.web.constant.WebConstants.ROOM;
 import static com.chatalytics.web.constant.WebConstants.START_TIME;
 import static com.chatalytics.web.constant.WebConstants.TOP_N;
@@ -55,10 +67,25 @@ public class EntitiesResource {
 
     private final IEntityDAO entityDao;
     private final DateTimeZone dtz;
+    private final ObjectMapper objectMapper;
+    private final SimilarityMatrixCache similarityCache;
+    private final QueryCoalescer queryCoalescer;
 
     public EntitiesResource(ChatAlyticsConfig config) {
+        this(config, new SimilarityMatrixCache(config), new QueryCoalescer());
+    }
+
+    public EntitiesResource(ChatAlyticsConfig config, SimilarityMatrixCache similarityCache,
+                            QueryCoalescer queryCoalescer) {
         entityDao = ChatAlyticsDAOFactory.createEntityDAO(config);
         dtz = DateTimeZone.forID(config.timeZone);
+        objectMapper = JsonObjectMapperFactory.createObjectMapper(config.inputType);
+        this.similarityCache = similarityCache;
+        this.queryCoalescer = queryCoalescer;
+        similarityCache.register(DimensionType.ROOM, DimensionType.ENTITY,
+                                 entityDao::getRoomSimilaritiesByEntity);
+        similarityCache.register(DimensionType.USER, DimensionType.ENTITY,
+                                 entityDao::getUserSimilaritiesByEntity);
     }
 
     @GET
@@ -78,29 +105,57 @@ public class EntitiesResource {
         int topN = ResourceUtils.getOptionalForParameterAsInt(topNStr).or(MAX_RESULTS);
         boolean withBots = ResourceUtils.getOptionalForParameterAsBool(botStr).or(false);
         Interval interval = DateTimeUtils.getIntervalFromParameters(startTimeStr, endTimeStr, dtz);
-        users = ResourceUtils.getListFromNullable(users);
-        rooms = ResourceUtils.getListFromNullable(rooms);
-
-        return entityDao.getTopEntities(interval, rooms, users, topN, withBots);
+        List<String> usernames = ResourceUtils.getListFromNullable(users);
+        List<String> roomNames = ResourceUtils.getListFromNullable(rooms);
+
+        List<?> queryKey = ImmutableList.of(ENTITIES_ENDPOINT + "/trending",
+                                            interval.getStartMillis(), interval.getEndMillis(),
+                                            ImmutableSortedSet.copyOf(roomNames),
+                                            ImmutableSortedSet.copyOf(usernames), topN, withBots);
+        return queryCoalescer.execute(queryKey, () ->
+            entityDao.getTopEntities(interval, roomNames, usernames, topN, withBots));
     }
 
+    /**
+     * Gets all the entity mentions with the given parameters. Without a limit or a cursor, all the
+     * mentions are written to the response as they're read from the database. Otherwise a page of
+     * mentions, ordered by mention time, is returned along with the cursor of the next page in the
+     * {@link WebConstants#NEXT_CURSOR_HEADER} header.
+     *
+     * @param limitStr
+     *            The maximum number of mentions to return (optional)
+     * @param cursorStr
+     *            The cursor of the page to get (optional)
+     * @return A JSON array of {@link ChatEntity}s
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public List<ChatEntity> getAllEntites(@QueryParam(START_TIME) String startTimeStr,
-                                          @QueryParam(END_TIME) String endTimeStr,
-                                          @QueryParam(USER) List<String> users,
-                                          @QueryParam(ROOM) List<String> rooms,
-                                          @QueryParam(BOT) String botStr) {
+    public Response getAllEntites(@QueryParam(START_TIME) String startTimeStr,
+                                  @QueryParam(END_TIME) String endTimeStr,
+                                  @QueryParam(USER) List<String> users,
+                                  @QueryParam(ROOM) List<String> rooms,
+                                  @QueryParam(BOT) String botStr,
+                                  @QueryParam(LIMIT) String limitStr,
+                                  @QueryParam(CURSOR) String cursorStr) {
 
         LOG.debug("All entities query for starttime={}, endtime={}, users={}, rooms={}, botStr={}",
                   startTimeStr, endTimeStr, users, rooms);
 
         Interval interval = DateTimeUtils.getIntervalFromParameters(startTimeStr, endTimeStr, dtz);
         boolean withBots = ResourceUtils.getOptionalForParameterAsBool(botStr).or(false);
-        users = ResourceUtils.getListFromNullable(users);
-        rooms = ResourceUtils.getListFromNullable(rooms);
-
-        return entityDao.getAllMentions(interval, rooms, users, withBots);
+        List<String> roomNames = ResourceUtils.getListFromNullable(rooms);
+        List<String> usernames = ResourceUtils.getListFromNullable(users);
+        Optional<Integer> limit = ResourceUtils.getOptionalForParameterAsInt(limitStr);
+        Optional<MentionCursor> cursor = ResourceUtils.getOptionalForCursor(cursorStr);
+
+        if (!limit.isPresent() && !cursor.isPresent()) {
+            return ResourceUtils.<ChatEntity>createStreamingResponse(objectMapper, consumer ->
+                entityDao.streamAllMentions(interval, roomNames, usernames, withBots, consumer));
+        }
+        MentionPage<ChatEntity> page = entityDao.getMentionsPage(interval, roomNames, usernames,
+                                                                 withBots, cursor,
+                                                                 ResourceUtils.getPageLimit(limit));
+        return ResourceUtils.createPageResponse(objectMapper, page);
     }
 
     @GET
@@ -121,10 +176,10 @@ public class EntitiesResource {
         Interval interval = DateTimeUtils.getIntervalFromParameters(startTimeStr, endTimeStr, dtz);
         boolean withBots = ResourceUtils.getOptionalForParameterAsBool(botStr).or(false);
 
-        if (firstDim == DimensionType.ROOM && secondDim == DimensionType.ENTITY) {
-            return entityDao.getRoomSimilaritiesByEntity(interval, withBots);
-        } else if (firstDim == DimensionType.USER && secondDim == DimensionType.ENTITY) {
-            return entityDao.getUserSimilaritiesByEntity(interval, withBots);
+        // the cache is shared with the other resources, so only serve this resource's pairs
+        if (secondDim == DimensionType.ENTITY
+                && similarityCache.isRegistered(firstDim, secondDim)) {
+            return similarityCache.get(firstDim, secondDim, interval, withBots);
         } else {
             String formatStr = "The dimension combination you specified (%s, %s) is not supported";
             throw new UnsupportedOperationException(String.format(formatStr, firstDimStr,
@@ -2,15 +2,21 @@ package com.chatalytics.web.resources;
 
 import com.chatalytics.compute.db.dao.ChatAlyticsDAOFactory;
 import com.chatalytics.compute.db.dao.IMessageSummaryDAO;
+import com.chatalytics.compute.db.dao.MentionCursor;
+import com.chatalytics.compute.db.dao.MentionPage;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.DimensionType;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.model.data.MessageSummary;
 import com.chatalytics.core.model.data.MessageType;
+import com.chatalytics.web.cache.QueryCoalescer;
 import com.chatalytics.web.constant.WebConstants;
 import com.chatalytics.web.utils.DateTimeUtils;
 import com.chatalytics.web.utils.ResourceUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 
 import org.joda.time.DateTimeZone;
 import org.joda.time.Interval;
@@ -25,9 +31,12 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import static com.chatalytics.web.constant.WebConstants.BOT;
+import static com.chatalytics.web.constant.WebConstants.CURSOR;
 import static com.chatalytics.web.constant.WebConstants.END_TIME;
+import static com.chatalytics.web.constant.WebConstants.LIMIT;
 import static com.chatalytics.web.constant.WebConstants.ROOM;
 import static com.chatalytics.web.constant.WebConstants.START_TIME;
 import static com.chatalytics.web.constant.WebConstants.TOP_N;
@@ -52,15 +61,26 @@ public class MessageSummaryResource {
 
     private final IMessageSummaryDAO msgSummaryDao;
     private final DateTimeZone dtz;
+    private final ObjectMapper objectMapper;
+    private final QueryCoalescer queryCoalescer;
 
     public MessageSummaryResource(ChatAlyticsConfig config) {
+        this(config, new QueryCoalescer());
+    }
+
+    public MessageSummaryResource(ChatAlyticsConfig config, QueryCoalescer queryCoalescer) {
         msgSummaryDao = ChatAlyticsDAOFactory.createMessageSummaryDAO(config);
         dtz = DateTimeZone.forID(config.timeZone);
-     }
+        objectMapper = JsonObjectMapperFactory.createObjectMapper(config.inputType);
+        this.queryCoalescer = queryCoalescer;
+    }
 
     /**
      * Gets the all the message summaries in a particular date range and/or user and/or room and/or
-     * type. Note that the only required parameter is the time range
+     * type. Note that the only required parameter is the time range. Without a limit or a cursor,
+     * all the summaries are written to the response as they're read from the database. Otherwise a
+     * page of summaries, ordered by mention time, is returned along with the cursor of the next
+     * page in the {@link WebConstants#NEXT_CURSOR_HEADER} header.
      *
      * @param startTimeStr
      *            The start time to get the summaries for
@@ -74,32 +94,58 @@ public class MessageSummaryResource {
      *            The type of the message. See {@link MessageType} for more info (optional)
      * @param botStr
      *            Set to true to include bots in computations. Defaults to false.
+     * @param limitStr
+     *            The maximum number of summaries to return (optional)
+     * @param cursorStr
+     *            The cursor of the page to get (optional)
      *
-     * @return Returns all the {@link MessageSummary}s based on the given parameters.
+     * @return Returns all the {@link MessageSummary}s based on the given parameters as a JSON
+     *         array.
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public List<MessageSummary> getAllMessageSummaries(@QueryParam(START_TIME) String startTimeStr,
-                                                       @QueryParam(END_TIME) String endTimeStr,
-                                                       @QueryParam(USER) List<String> users,
-                                                       @QueryParam(ROOM) List<String> rooms,
-                                                       @QueryParam(MESSAGE_TYPE) String msgTypeStr,
-                                                       @QueryParam(BOT) String botStr) {
+    public Response getAllMessageSummaries(@QueryParam(START_TIME) String startTimeStr,
+                                           @QueryParam(END_TIME) String endTimeStr,
+                                           @QueryParam(USER) List<String> users,
+                                           @QueryParam(ROOM) List<String> rooms,
+                                           @QueryParam(MESSAGE_TYPE) String msgTypeStr,
+                                           @QueryParam(BOT) String botStr,
+                                           @QueryParam(LIMIT) String limitStr,
+                                           @QueryParam(CURSOR) String cursorStr) {
 
         LOG.debug("Call for msg summaries with starttime={} endtime={} users={} rooms={} botStr={}",
                   startTimeStr, endTimeStr, users, rooms, botStr);
 
         Interval interval = DateTimeUtils.getIntervalFromParameters(startTimeStr, endTimeStr, dtz);
-        users = ResourceUtils.getListFromNullable(users);
-        rooms = ResourceUtils.getListFromNullable(rooms);
+        List<String> usernames = ResourceUtils.getListFromNullable(users);
+        List<String> roomNames = ResourceUtils.getListFromNullable(rooms);
         boolean withBots = ResourceUtils.getOptionalForParameterAsBool(botStr).or(false);
+        Optional<Integer> limit = ResourceUtils.getOptionalForParameterAsInt(limitStr);
+        Optional<MentionCursor> cursor = ResourceUtils.getOptionalForCursor(cursorStr);
+        boolean paged = limit.isPresent() || cursor.isPresent();
 
         Optional<String> optMessageType = ResourceUtils.getOptionalForParameter(msgTypeStr);
         if (optMessageType.isPresent()) {
             MessageType msgType = MessageType.fromType(optMessageType.get());
-            return msgSummaryDao.getAllMessageSummariesForType(msgType, interval, rooms, users);
+            if (paged) {
+                MentionPage<MessageSummary> page = msgSummaryDao.getMessageSummariesPageForType(
+                    msgType, interval, roomNames, usernames, cursor,
+                    ResourceUtils.getPageLimit(limit));
+                return ResourceUtils.createPageResponse(objectMapper, page);
+            }
+            return ResourceUtils.<MessageSummary>createStreamingResponse(objectMapper, consumer ->
+                msgSummaryDao.streamAllMessageSummariesForType(msgType, interval, roomNames,
+                                                               usernames, consumer));
         } else {
-            return msgSummaryDao.getAllMessageSummaries(interval, rooms, users, withBots);
+            if (paged) {
+                MentionPage<MessageSummary> page = msgSummaryDao.getMessageSummariesPage(
+                    interval, roomNames, usernames, withBots, cursor,
+                    ResourceUtils.getPageLimit(limit));
+                return ResourceUtils.createPageResponse(objectMapper, page);
+            }
+            return ResourceUtils.<MessageSummary>createStreamingResponse(objectMapper, consumer ->
+                msgSummaryDao.streamAllMessageSummaries(interval, roomNames, usernames, withBots,
+                                                        consumer));
         }
     }
 
@@ -184,10 +230,15 @@ public class MessageSummaryResource {
         int topN = ResourceUtils.getOptionalForParameterAsInt(topNStr).or(MAX_RESULTS);
         boolean withBots = ResourceUtils.getOptionalForParameterAsBool(botStr).or(false);
 
+        List<?> queryKey = ImmutableList.of(MESSAGE_SUMMARY_ENDPOINT + "/active",
+                                            interval.getStartMillis(), interval.getEndMillis(),
+                                            dimension, method, topN, withBots);
         if (dimension == DimensionType.ROOM) {
-            return msgSummaryDao.getActiveRoomsByMethod(interval, method, topN, withBots);
+            return queryCoalescer.execute(queryKey, () ->
+                msgSummaryDao.getActiveRoomsByMethod(interval, method, topN, withBots));
         } else if (dimension == DimensionType.USER) {
-            return msgSummaryDao.getActiveUsersByMethod(interval, method, topN, withBots);
+            return queryCoalescer.execute(queryKey, () ->
+                msgSummaryDao.getActiveUsersByMethod(interval, method, topN, withBots));
         } else {
             String formatMsg = "The dimension %s you provided is not supported. Pass in %s or %s";
             throw new UnsupportedOperationException(String.format(formatMsg, dimensionStr,
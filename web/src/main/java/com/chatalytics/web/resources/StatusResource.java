@@ -1,9 +1,15 @@
 package com.chatalytics.web.resources;
 
+import com.chatalytics.web.cache.QueryCoalescer;
 import com.chatalytics.web.constant.WebConstants;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
 
 /**
  * USed to query the status of the web server
@@ -14,10 +20,30 @@ import javax.ws.rs.Path;
 public class StatusResource {
 
     public static final String STATUS_ENDPOINT = WebConstants.API_PATH + "status";
+    public static final String EXECUTED_QUERIES = "executed";
+    public static final String COALESCED_QUERIES = "coalesced";
+
+    private final QueryCoalescer queryCoalescer;
+
+    public StatusResource(QueryCoalescer queryCoalescer) {
+        this.queryCoalescer = queryCoalescer;
+    }
 
     @GET
     @Path("health")
     public String health() {
         return "OK";
     }
+
+    /**
+     * @return The number of queries that ran and the number of queries that waited for an
+     *         identical query to finish instead
+     */
+    @GET
+    @Path("queries")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Long> queries() {
+        return ImmutableMap.of(EXECUTED_QUERIES, queryCoalescer.getExecutedCount(),
+                               COALESCED_QUERIES, queryCoalescer.getCoalescedCount());
+    }
 }
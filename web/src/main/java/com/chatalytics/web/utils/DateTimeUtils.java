@@ -1,9 +1,13 @@
 package com.chatalytics.web.utils;
 
+import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.ComputeConfig;
+import com.chatalytics.core.config.SlackBackfillerConfig;
 import com.google.common.base.Preconditions;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
 import org.joda.time.Interval;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
@@ -63,4 +67,39 @@ public class DateTimeUtils {
         return new Interval(startTime, endTime);
     }
 
+    /**
+     * Gets the time it takes for the mentions of a point in time to be stored. Mentions are
+     * combined over the aggregation window, buffered for up to the persist flush interval and, when
+     * backfilling, only fetched once every backfill granularity.
+     *
+     * @param config
+     *            The config to get the compute and backfill settings from
+     * @return The time after the end of an interval before it's safe to assume that the interval
+     *         won't get any new mentions
+     */
+    public static Duration getClosedIntervalGrace(ChatAlyticsConfig config) {
+        ComputeConfig computeConfig = config.computeConfig;
+        int backfillGranularityMins = config.webConfig.backfillGranularityMins;
+        if (computeConfig.chatConfig instanceof SlackBackfillerConfig) {
+            backfillGranularityMins =
+                ((SlackBackfillerConfig) computeConfig.chatConfig).granularityMins;
+        }
+        return Duration.standardSeconds(computeConfig.aggregationWindowSecs)
+                       .plus(computeConfig.persistFlushIntervalMs)
+                       .plus(Duration.standardMinutes(backfillGranularityMins));
+    }
+
+    /**
+     * @param interval
+     *            The interval to check
+     * @param now
+     *            The current time
+     * @param grace
+     *            The time after the end of an interval before it stops getting new mentions
+     * @return True if the interval ended more than <code>grace</code> ago and won't change anymore
+     */
+    public static boolean isClosed(Interval interval, DateTime now, Duration grace) {
+        return interval.getEnd().plus(grace).isBefore(now);
+    }
+
 }
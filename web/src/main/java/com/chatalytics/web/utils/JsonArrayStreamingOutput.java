@@ -0,0 +1,64 @@
+package com.chatalytics.web.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes a JSON array to the response one element at a time, as the elements are handed over by a
+ * source, so that big results never have to be held in memory. The source is only called when the
+ * response is written, so it should open and close any resources it needs, such as a database
+ * cursor, itself.
+ *
+ * @author giannis
+ *
+ * @param <T>
+ *            The type of the array elements
+ */
+public class JsonArrayStreamingOutput<T> implements StreamingOutput {
+
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter elementWriter;
+    private final Consumer<Consumer<T>> source;
+
+    /**
+     * @param objectMapper
+     *            The mapper that serializes every element
+     * @param source
+     *            Hands every element of the array, in order, to the consumer it's given
+     */
+    public JsonArrayStreamingOutput(ObjectMapper objectMapper, Consumer<Consumer<T>> source) {
+        this.objectMapper = objectMapper;
+        // the servlet container buffers the response, so don't flush after every element
+        this.elementWriter = objectMapper.writer()
+                                         .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.source = source;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(output);
+        generator.writeStartArray();
+        try {
+            source.accept(element -> {
+                try {
+                    elementWriter.writeValue(generator, element);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        generator.writeEndArray();
+        generator.flush();
+    }
+}
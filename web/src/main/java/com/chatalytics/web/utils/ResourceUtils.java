@@ -1,12 +1,19 @@
 package com.chatalytics.web.utils;
 
+import com.chatalytics.compute.db.dao.MentionCursor;
+import com.chatalytics.compute.db.dao.MentionPage;
+import com.chatalytics.web.constant.WebConstants;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
 
 import org.apache.storm.shade.com.google.common.collect.ImmutableList;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import javax.annotation.Nullable;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 /**
  * Contains utility methods commonly used by resources
@@ -80,4 +87,69 @@ public class ResourceUtils {
         }
     }
 
+    /**
+     * Helper method that decodes an optional page cursor parameter
+     *
+     * @param cursorStr
+     *            The opaque cursor parameter. Can be null or empty
+     * @return An {@link Optional} with the decoded cursor set or absent appropriately.
+     * @throws IllegalArgumentException
+     *             If the cursor is not a valid cursor
+     */
+    public static Optional<MentionCursor> getOptionalForCursor(String cursorStr) {
+        return getOptionalForParameter(cursorStr).transform(MentionCursor::decode);
+    }
+
+    /**
+     * Gets the page size to use given an optional limit parameter. Limits larger than
+     * {@link WebConstants#MAX_PAGE_SIZE} are lowered to it.
+     *
+     * @param limit
+     *            The optional limit parameter
+     * @return The page size, or {@link WebConstants#DEFAULT_PAGE_SIZE} if no limit was passed in
+     * @throws IllegalArgumentException
+     *             If the limit is not positive
+     */
+    public static int getPageLimit(Optional<Integer> limit) {
+        int pageLimit = limit.or(WebConstants.DEFAULT_PAGE_SIZE);
+        if (pageLimit <= 0) {
+            throw new IllegalArgumentException("The limit has to be > 0. Got " + pageLimit);
+        }
+        return Math.min(pageLimit, WebConstants.MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Creates a response that writes a JSON array of elements as they're handed over by
+     * <code>source</code>. See {@link JsonArrayStreamingOutput}
+     *
+     * @param objectMapper
+     *            The mapper to serialize the elements with
+     * @param source
+     *            Hands every element of the array to the consumer it's given
+     * @return The streaming response
+     */
+    public static <T> Response createStreamingResponse(ObjectMapper objectMapper,
+                                                       Consumer<Consumer<T>> source) {
+        return Response.ok(new JsonArrayStreamingOutput<T>(objectMapper, source)).build();
+    }
+
+    /**
+     * Creates the response of a page. The mentions are returned as a JSON array and the cursor of
+     * the next page, if there is one, in the {@link WebConstants#NEXT_CURSOR_HEADER} header
+     *
+     * @param objectMapper
+     *            The mapper to serialize the mentions with
+     * @param page
+     *            The page to return
+     * @return The response of the page
+     */
+    public static <T> Response createPageResponse(ObjectMapper objectMapper, MentionPage<T> page) {
+        List<T> mentions = page.getMentions();
+        ResponseBuilder response =
+            Response.ok(new JsonArrayStreamingOutput<T>(objectMapper, mentions::forEach));
+        if (page.getNextCursor().isPresent()) {
+            response.header(WebConstants.NEXT_CURSOR_HEADER, page.getNextCursor().get().encode());
+        }
+        return response.build();
+    }
 }
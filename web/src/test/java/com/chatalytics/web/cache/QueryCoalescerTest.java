@@ -0,0 +1,118 @@
+package com.chatalytics.web.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link QueryCoalescer}
+ *
+ * @author giannis
+ */
+public class QueryCoalescerTest {
+
+    private static final int NUM_CALLERS = 8;
+
+    private ExecutorService executor;
+    private QueryCoalescer underTest;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(NUM_CALLERS);
+        underTest = new QueryCoalescer();
+    }
+
+    /**
+     * Makes sure that identical queries that run at the same time are only executed once
+     */
+    @Test
+    public void testExecute_concurrent() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        List<Future<Integer>> results = Lists.newArrayList();
+        for (int i = 0; i < NUM_CALLERS; i++) {
+            results.add(executor.submit(() -> underTest.execute(ImmutableList.of("a", 1), () -> {
+                executions.incrementAndGet();
+                Uninterruptibles.awaitUninterruptibly(release);
+                return 42;
+            })));
+        }
+        // wait for all the callers to either run the query or wait for it
+        while (underTest.getExecutedCount() + underTest.getCoalescedCount() < NUM_CALLERS) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        for (Future<Integer> result : results) {
+            assertEquals(42, result.get().intValue());
+        }
+        assertEquals(1, executions.get());
+        assertEquals(1, underTest.getExecutedCount());
+        assertEquals(NUM_CALLERS - 1, underTest.getCoalescedCount());
+    }
+
+    /**
+     * Makes sure that results are not kept around after the query completes and that different
+     * queries are not coalesced
+     */
+    @Test
+    public void testExecute_sequential() {
+        assertEquals(1, underTest.execute(ImmutableList.of("a"), () -> 1).intValue());
+        assertEquals(2, underTest.execute(ImmutableList.of("a"), () -> 2).intValue());
+        assertEquals(3, underTest.execute(ImmutableList.of("b"), () -> 3).intValue());
+        assertEquals(3, underTest.getExecutedCount());
+        assertEquals(0, underTest.getCoalescedCount());
+    }
+
+    /**
+     * Makes sure that failures are thrown to all the callers and that the query runs again after
+     */
+    @Test
+    public void testExecute_failure() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<Integer>> results = Lists.newArrayList();
+        for (int i = 0; i < 2; i++) {
+            results.add(executor.submit(() -> underTest.execute(ImmutableList.of("a"), () -> {
+                Uninterruptibles.awaitUninterruptibly(release);
+                throw new IllegalStateException("test");
+            })));
+        }
+        while (underTest.getExecutedCount() + underTest.getCoalescedCount() < 2) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        for (Future<Integer> result : results) {
+            try {
+                result.get();
+                fail("The query should have failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertEquals(1, underTest.execute(ImmutableList.of("a"), () -> 1).intValue());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,223 @@
+package com.chatalytics.web.cache;
+
+import com.chatalytics.compute.matrix.LabeledDenseMatrix;
+import com.chatalytics.core.DimensionType;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.junit.Before;
+import org.junit.Test;
+
+import no.uib.cipr.matrix.DenseMatrix;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SimilarityMatrixCache}
+ *
+ * @author giannis
+ */
+public class SimilarityMatrixCacheTest {
+
+    private static final long TTL_SECS = 60;
+    private static final long MAX_CELLS = 10;
+    private static final Duration GRACE = Duration.standardMinutes(62);
+
+    private FakeTicker ticker;
+    private AtomicInteger computations;
+    private SimilarityMatrixCache underTest;
+
+    @Before
+    public void setUp() {
+        ticker = new FakeTicker();
+        computations = new AtomicInteger();
+        underTest = new SimilarityMatrixCache(MAX_CELLS, MAX_CELLS, TTL_SECS, 1, GRACE,
+                                              DateTimeZone.UTC, ticker);
+        underTest.register(DimensionType.ROOM, DimensionType.EMOJI, (interval, withBots) -> {
+            computations.incrementAndGet();
+            return LabeledDenseMatrix.of();
+        });
+    }
+
+    /**
+     * Makes sure matrices of past intervals don't expire
+     */
+    @Test
+    public void testGet_pastInterval() {
+        DateTime end = DateTime.now(DateTimeZone.UTC).minusDays(1);
+        Interval interval = new Interval(end.minusDays(1), end);
+
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, false);
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, false);
+        assertEquals(1, computations.get());
+
+        ticker.advance(TTL_SECS * 10, TimeUnit.SECONDS);
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, false);
+        assertEquals(1, computations.get());
+
+        // bots are cached separately
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, true);
+        assertEquals(2, computations.get());
+        assertEquals(2, underTest.size());
+    }
+
+    /**
+     * Makes sure matrices of intervals that include the current hour expire
+     */
+    @Test
+    public void testGet_currentInterval() {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        Interval interval = new Interval(now.minusDays(1), now.plusHours(1));
+
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, false);
+        ticker.advance(TTL_SECS - 1, TimeUnit.SECONDS);
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, false);
+        assertEquals(1, computations.get());
+
+        ticker.advance(2, TimeUnit.SECONDS);
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, false);
+        assertEquals(2, computations.get());
+    }
+
+    /**
+     * Makes sure matrices of intervals that just ended expire, since their last mentions may not be
+     * stored yet
+     */
+    @Test
+    public void testGet_justClosedInterval() {
+        DateTime end = DateTime.now(DateTimeZone.UTC).hourOfDay().roundFloorCopy();
+        Interval interval = new Interval(end.minusDays(1), end);
+
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, false);
+        ticker.advance(TTL_SECS + 1, TimeUnit.SECONDS);
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, false);
+        assertEquals(2, computations.get());
+    }
+
+    /**
+     * Makes sure intervals parsed in a different time zone hit the same entry
+     */
+    @Test
+    public void testGet_differentZones() {
+        DateTime end = DateTime.now(DateTimeZone.UTC).minusDays(1);
+        Interval interval = new Interval(end.minusDays(1), end);
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, false);
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval.withChronology(
+            interval.getChronology().withZone(zone)), false);
+        assertEquals(1, computations.get());
+    }
+
+    /**
+     * Makes sure matrices are evicted by their number of cells rather than by their count
+     */
+    @Test
+    public void testGet_weighedByCells() {
+        underTest.register(DimensionType.USER, DimensionType.EMOJI, (interval, withBots) -> {
+            computations.incrementAndGet();
+            return LabeledDenseMatrix.of(new DenseMatrix(4, 4),
+                                         ImmutableList.of("a", "b", "c", "d"));
+        });
+        DateTime end = DateTime.now(DateTimeZone.UTC).minusDays(1);
+        Interval pastInterval = new Interval(end.minusDays(1), end);
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        Interval recentInterval = new Interval(now.minusDays(1), now.plusHours(1));
+
+        // a 4x4 matrix doesn't fit in 10 cells
+        for (Interval interval : ImmutableList.of(pastInterval, recentInterval)) {
+            underTest.get(DimensionType.USER, DimensionType.EMOJI, interval, false);
+            underTest.get(DimensionType.USER, DimensionType.EMOJI, interval, false);
+        }
+        assertEquals(4, computations.get());
+        assertEquals(0, underTest.size());
+
+        // but empty ones do
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, pastInterval, false);
+        underTest.get(DimensionType.ROOM, DimensionType.EMOJI, recentInterval, false);
+        assertEquals(2, underTest.size());
+    }
+
+    @Test
+    public void testGet_exception() {
+        underTest.register(DimensionType.USER, DimensionType.EMOJI, (interval, withBots) -> {
+            throw new IllegalStateException("test");
+        });
+        try {
+            underTest.get(DimensionType.USER, DimensionType.EMOJI, new Interval(0, 1), false);
+        } catch (IllegalStateException e) {
+            assertEquals("test", e.getMessage());
+            return;
+        }
+        throw new AssertionError("Expected an IllegalStateException");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGet_notRegistered() {
+        underTest.get(DimensionType.USER, DimensionType.EMOJI, new Interval(0, 1), false);
+    }
+
+    @Test
+    public void testIsRegistered() {
+        assertTrue(underTest.isRegistered(DimensionType.ROOM, DimensionType.EMOJI));
+        assertFalse(underTest.isRegistered(DimensionType.EMOJI, DimensionType.ROOM));
+    }
+
+    @Test
+    public void testGetPrecomputedIntervals() {
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+        DateTime now = new DateTime(2016, 3, 15, 10, 25, zone);
+        List<Interval> intervals = SimilarityMatrixCache.getPrecomputedIntervals(now);
+
+        DateTime end = new DateTime(2016, 3, 15, 11, 0, zone);
+        assertEquals(end.minusDays(1).getMillis(), intervals.get(0).getStartMillis());
+        assertEquals(end.getMillis(), intervals.get(0).getEndMillis());
+        assertEquals(end.minusWeeks(1).getMillis(), intervals.get(1).getStartMillis());
+        assertEquals(end.minusMonths(1).getMillis(), intervals.get(2).getStartMillis());
+        assertEquals(DateTimeZone.UTC, intervals.get(2).getStart().getZone());
+    }
+
+    /**
+     * Makes sure the precomputed views are served from the cache
+     */
+    @Test
+    public void testRunOneIteration() {
+        underTest.runOneIteration();
+        int numPeriods = SimilarityMatrixCache.PRECOMPUTED_PERIODS.size();
+        assertEquals(numPeriods, computations.get());
+
+        for (Interval interval : SimilarityMatrixCache.getPrecomputedIntervals(
+                DateTime.now(DateTimeZone.UTC))) {
+            underTest.get(DimensionType.ROOM, DimensionType.EMOJI, interval, false);
+        }
+        assertEquals(numPeriods, computations.get());
+
+        // the precomputation refreshes them
+        underTest.runOneIteration();
+        assertEquals(2 * numPeriods, computations.get());
+    }
+
+    private static class FakeTicker extends Ticker {
+
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        public void advance(long time, TimeUnit unit) {
+            nanos += unit.toNanos(time);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.chatalytics.web.filter;
+
+import com.chatalytics.compute.db.dao.IChatAlyticsDAO;
+import com.chatalytics.web.constant.WebConstants;
+import com.chatalytics.web.utils.DateTimeUtils;
+import com.google.common.collect.ImmutableMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link HttpCacheFilter}
+ *
+ * @author giannis
+ */
+public class HttpCacheFilterTest {
+
+    private static final String ENDPOINT = WebConstants.API_PATH + "test";
+    private static final String TABLE_NAME = "TEST_TABLE";
+    private static final long CLOSED_MAX_AGE_SECS = 1000;
+    private static final long OPEN_MAX_AGE_SECS = 10;
+    private static final Duration GRACE = Duration.standardMinutes(62);
+
+    private IChatAlyticsDAO chatalyticsDao;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private FilterChain chain;
+    private HttpCacheFilter underTest;
+
+    @Before
+    public void setUp() {
+        chatalyticsDao = mock(IChatAlyticsDAO.class);
+        when(chatalyticsDao.getTableWriteVersion(TABLE_NAME)).thenReturn(3L);
+        request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getRequestURI()).thenReturn(ENDPOINT + "/trending");
+        when(request.getParameter(WebConstants.START_TIME)).thenReturn("2015-01-01");
+        when(request.getParameter(WebConstants.END_TIME)).thenReturn("2015-01-02");
+        response = mock(HttpServletResponse.class);
+        chain = mock(FilterChain.class);
+        underTest = new HttpCacheFilter(chatalyticsDao, DateTimeZone.UTC, CLOSED_MAX_AGE_SECS,
+                                        OPEN_MAX_AGE_SECS, GRACE,
+                                        ImmutableMap.of(ENDPOINT, TABLE_NAME));
+    }
+
+    @Test
+    public void testDoFilter() throws Exception {
+        underTest.doFilter(request, response, chain);
+        verify(response).setHeader(ETAG, "\"TEST_TABLE-3\"");
+        verify(response).setHeader(CACHE_CONTROL, "public, max-age=" + CLOSED_MAX_AGE_SECS);
+        verify(response, never()).setStatus(anyInt());
+        verify(chain).doFilter(request, response);
+    }
+
+    /**
+     * Makes sure that the endpoint is not called when the client already has the latest response
+     */
+    @Test
+    public void testDoFilter_notModified() throws Exception {
+        when(request.getHeader(IF_NONE_MATCH)).thenReturn("\"TEST_TABLE-2\", \"TEST_TABLE-3\"");
+        underTest.doFilter(request, response, chain);
+        verify(response).setHeader(ETAG, "\"TEST_TABLE-3\"");
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verifyZeroInteractions(chain);
+    }
+
+    /**
+     * Makes sure that the endpoint is called again after the table is written to
+     */
+    @Test
+    public void testDoFilter_modified() throws Exception {
+        when(request.getHeader(IF_NONE_MATCH)).thenReturn("\"TEST_TABLE-2\"");
+        underTest.doFilter(request, response, chain);
+        verify(response, never()).setStatus(anyInt());
+        verify(chain).doFilter(request, response);
+    }
+
+    /**
+     * Makes sure that intervals that include the current hour are cached for a short time
+     */
+    @Test
+    public void testDoFilter_openInterval() throws Exception {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        when(request.getParameter(WebConstants.START_TIME))
+            .thenReturn(DateTimeUtils.PARAMETER_WITH_DAY_DTF.print(now.minusDays(1)));
+        when(request.getParameter(WebConstants.END_TIME))
+            .thenReturn(DateTimeUtils.PARAMETER_WITH_DAY_DTF.print(now.plusDays(1)));
+        underTest.doFilter(request, response, chain);
+        verify(response).setHeader(CACHE_CONTROL, "public, max-age=" + OPEN_MAX_AGE_SECS);
+        verify(chain).doFilter(request, response);
+    }
+
+    /**
+     * Makes sure that requests without an interval or for other endpoints are left untouched
+     */
+    @Test
+    public void testDoFilter_notCached() throws Exception {
+        when(request.getRequestURI()).thenReturn(WebConstants.API_PATH + "other");
+        underTest.doFilter(request, response, chain);
+
+        when(request.getRequestURI()).thenReturn(ENDPOINT);
+        when(request.getParameter(WebConstants.END_TIME)).thenReturn(null);
+        underTest.doFilter(request, response, chain);
+
+        when(request.getParameter(WebConstants.END_TIME)).thenReturn("not a date");
+        underTest.doFilter(request, response, chain);
+
+        verify(response, never()).setHeader(anyString(), anyString());
+        verifyZeroInteractions(chatalyticsDao);
+    }
+
+    @Test
+    public void testGetCacheControl() {
+        DateTime currentHour = DateTime.now(DateTimeZone.UTC).hourOfDay().roundFloorCopy();
+        assertEquals("public, max-age=" + CLOSED_MAX_AGE_SECS,
+                     underTest.getCacheControl(new Interval(currentHour.minusHours(3),
+                                                            currentHour.minusHours(2))));
+        assertEquals("public, max-age=" + OPEN_MAX_AGE_SECS,
+                     underTest.getCacheControl(new Interval(currentHour.minusHours(1),
+                                                            currentHour.plusHours(1))));
+        // the last hour just ended and may still get new data
+        assertEquals("public, max-age=" + OPEN_MAX_AGE_SECS,
+                     underTest.getCacheControl(new Interval(currentHour.minusHours(1),
+                                                            currentHour)));
+    }
+
+    @Test
+    public void testMatches() {
+        assertTrue(HttpCacheFilter.matches("\"a-1\"", "\"a-1\""));
+        assertTrue(HttpCacheFilter.matches("W/\"a-1\"", "\"a-1\""));
+        assertTrue(HttpCacheFilter.matches("\"b-1\" , \"a-1\"", "\"a-1\""));
+        assertTrue(HttpCacheFilter.matches("*", "\"a-1\""));
+        assertFalse(HttpCacheFilter.matches(null, "\"a-1\""));
+        assertFalse(HttpCacheFilter.matches("\"a-2\"", "\"a-1\""));
+    }
+}
@@ -10,8 +10,10 @@ import com.chatalytics.core.config.ChatAlyticsConfig;
 import com.chatalytics.core.emoji.LocalEmojiUtils;
 import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.model.data.EmojiEntity;
+import com.chatalytics.core.model.data.EmojiEntityRollup;
 import com.chatalytics.core.model.data.EmojiMap;
 import com.chatalytics.web.utils.DateTimeUtils;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -26,11 +28,15 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -54,6 +60,7 @@ public class EmojisResourceTest {
     private List<EmojiEntity> emojis;
     private ChatAlyticsConfig config;
     private IChatApiDAO chatApiDao;
+    private ObjectMapper objectMapper;
 
     @Before
     public void setUp() throws Exception {
@@ -81,6 +88,7 @@ public class EmojisResourceTest {
         storeTestEmojis(emojis);
         chatApiDao = mock(IChatApiDAO.class);
         underTest = new EmojisResource(config, chatApiDao);
+        objectMapper = JsonObjectMapperFactory.createObjectMapper(config.inputType);
     }
 
     /**
@@ -122,13 +130,12 @@ public class EmojisResourceTest {
         DateTimeFormatter dtf = DateTimeUtils.PARAMETER_WITH_DAY_DTF.withZone(dtZone);
         String startTimeStr = dtf.print(mentionTime.minusDays(1));
         String endTimeStr = dtf.print(mentionTime.plusDays(1));
-        List<EmojiEntity> result = underTest.getAllEmojis(startTimeStr, endTimeStr, null, null,
-                                                          null);
-        assertEquals(emojis.size(), result.size());
-
-        Set<EmojiEntity> resultEmojiSet = Sets.newHashSet(result);
+        Response result = underTest.getAllEmojis(startTimeStr, endTimeStr, null, null, null, null,
+                                                 null);
+        Set<JsonNode> resultEmojiSet = Sets.newHashSet(readJsonArray(result));
+        assertEquals(emojis.size(), resultEmojiSet.size());
         for (EmojiEntity expectedEmoji : emojis) {
-            assertTrue(resultEmojiSet.contains(expectedEmoji));
+            assertTrue(resultEmojiSet.contains(objectMapper.valueToTree(expectedEmoji)));
         }
     }
 
@@ -242,7 +249,6 @@ public class EmojisResourceTest {
         EmojiMap result = underTest.getEmojiIcons();
         assertEquals(emojis, result.getCustomEmojis());
         assertNotNull(result.getUnicodeEmojis());
-        ObjectMapper objectMapper = JsonObjectMapperFactory.createObjectMapper();
         Map<String, String> expectedUnicodeEmojis = LocalEmojiUtils.getUnicodeEmojis(objectMapper);
         assertEquals(expectedUnicodeEmojis, result.getUnicodeEmojis());
     }
@@ -253,6 +259,8 @@ public class EmojisResourceTest {
                                                 .createEntityManager();
         em.getTransaction().begin();
         em.createNativeQuery("DELETE FROM " + EmojiEntity.EMOJI_TABLE_NAME).executeUpdate();
+        em.createNativeQuery("DELETE FROM " + EmojiEntityRollup.EMOJI_ROLLUP_TABLE_NAME)
+          .executeUpdate();
         em.getTransaction().commit();
         entityDao.stopAsync().awaitTerminated();
     }
@@ -262,4 +270,13 @@ public class EmojisResourceTest {
             entityDao.persistEmoji(emoji);
         }
     }
+
+    /**
+     * Writes the streamed response and reads it back as a JSON array
+     */
+    private List<JsonNode> readJsonArray(Response response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(bytes);
+        return Lists.newArrayList(objectMapper.readTree(bytes.toByteArray()));
+    }
 }
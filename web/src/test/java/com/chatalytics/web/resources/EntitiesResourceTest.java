@@ -6,8 +6,13 @@ import com.chatalytics.compute.matrix.LabeledDenseMatrix;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.DimensionType;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.model.data.ChatEntity;
+import com.chatalytics.core.model.data.ChatEntityRollup;
+import com.chatalytics.web.constant.WebConstants;
 import com.chatalytics.web.utils.DateTimeUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -20,11 +25,15 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -44,6 +53,7 @@ public class EntitiesResourceTest {
     private DateTime mentionTime;
     private List<ChatEntity> entities;
     private ChatAlyticsConfig config;
+    private ObjectMapper objectMapper;
 
     @Before
     public void setUp() throws Exception {
@@ -69,6 +79,7 @@ public class EntitiesResourceTest {
         entities.add(new ChatEntity("u1", "r4", mentionTime.minusHours(1), "e4", 3, false));
         storeTestEntities(entities);
         underTest = new EntitiesResource(config);
+        objectMapper = JsonObjectMapperFactory.createObjectMapper(config.inputType);
     }
 
     private void storeTestEntities(List<ChatEntity> entities) {
@@ -116,15 +127,49 @@ public class EntitiesResourceTest {
         DateTimeFormatter dtf = DateTimeUtils.PARAMETER_WITH_DAY_DTF.withZone(dtZone);
         String startTimeStr = dtf.print(mentionTime.minusDays(1));
         String endTimeStr = dtf.print(mentionTime.plusDays(1));
-        List<ChatEntity> result = underTest.getAllEntites(startTimeStr, endTimeStr, null, null,
-                                                          null);
-        assertEquals(entities.size(), result.size());
-
-        Set<ChatEntity> resultEntitySet = Sets.newHashSet(result);
+        Response result = underTest.getAllEntites(startTimeStr, endTimeStr, null, null, null, null,
+                                                   null);
+        Set<JsonNode> resultEntitySet = Sets.newHashSet(readJsonArray(result));
+        assertEquals(entities.size(), resultEntitySet.size());
         for (ChatEntity expectedEntity : entities) {
-            assertTrue(resultEntitySet.contains(expectedEntity));
+            assertTrue(resultEntitySet.contains(objectMapper.valueToTree(expectedEntity)));
         }
+    }
+
+    /**
+     * Pages through all the entities and makes sure every entity is returned once, in mention time
+     * order
+     */
+    @Test
+    public void testGetAllEntities_paged() throws Exception {
+        DateTimeFormatter dtf = DateTimeUtils.PARAMETER_WITH_DAY_DTF.withZone(dtZone);
+        String startTimeStr = dtf.print(mentionTime.minusDays(1));
+        String endTimeStr = dtf.print(mentionTime.plusDays(1));
+
+        List<JsonNode> result = Lists.newArrayList();
+        String cursor = null;
+        int numPages = 0;
+        do {
+            Response response = underTest.getAllEntites(startTimeStr, endTimeStr, null, null, null,
+                                                        "3", cursor);
+            List<JsonNode> page = readJsonArray(response);
+            assertTrue(page.size() <= 3);
+            result.addAll(page);
+            cursor = (String) response.getMetadata().getFirst(WebConstants.NEXT_CURSOR_HEADER);
+            numPages++;
+        } while (cursor != null);
 
+        assertEquals(4, numPages);
+        assertEquals(entities.size(), result.size());
+        Set<JsonNode> expected = Sets.newHashSet();
+        for (ChatEntity entity : entities) {
+            expected.add(objectMapper.valueToTree(entity));
+        }
+        assertEquals(expected, Sets.newHashSet(result));
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(result.get(i - 1).get("mention_time").asLong()
+                           <= result.get(i).get("mention_time").asLong());
+        }
     }
 
     /**
@@ -234,8 +279,18 @@ public class EntitiesResourceTest {
                                                 .createEntityManager();
         em.getTransaction().begin();
         em.createNativeQuery("DELETE FROM " + ChatEntity.ENTITY_TABLE_NAME).executeUpdate();
+        em.createNativeQuery("DELETE FROM " + ChatEntityRollup.ENTITY_ROLLUP_TABLE_NAME)
+          .executeUpdate();
         em.getTransaction().commit();
         entityDao.stopAsync().awaitTerminated();
     }
 
+    /**
+     * Writes the streamed response and reads it back as a JSON array
+     */
+    private List<JsonNode> readJsonArray(Response response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(bytes);
+        return Lists.newArrayList(objectMapper.readTree(bytes.toByteArray()));
+    }
 }
@@ -5,8 +5,13 @@ import com.chatalytics.compute.db.dao.IMessageSummaryDAO;
 import com.chatalytics.core.ActiveMethod;
 import com.chatalytics.core.DimensionType;
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.json.JsonObjectMapperFactory;
 import com.chatalytics.core.model.data.MessageSummary;
+import com.chatalytics.core.model.data.MessageSummaryRollup;
+import com.chatalytics.web.constant.WebConstants;
 import com.chatalytics.web.utils.DateTimeUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -18,11 +23,15 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import static com.chatalytics.core.model.data.MessageType.BOT_MESSAGE;
 import static com.chatalytics.core.model.data.MessageType.CHANNEL_JOIN;
@@ -30,6 +39,8 @@ import static com.chatalytics.core.model.data.MessageType.MESSAGE;
 import static com.chatalytics.core.model.data.MessageType.PINNED_ITEM;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 
@@ -46,6 +57,7 @@ public class MessageSummaryResourceTest {
     private DateTimeZone dtZone;
     private DateTime mentionTime;
     private List<MessageSummary> sums;
+    private ObjectMapper objectMapper;
 
     @Before
     public void setUp() {
@@ -66,6 +78,7 @@ public class MessageSummaryResourceTest {
         storeTestMessageSummaries(sums);
 
         underTest = new MessageSummaryResource(config);
+        objectMapper = JsonObjectMapperFactory.createObjectMapper(config.inputType);
     }
 
     @Test
@@ -73,19 +86,47 @@ public class MessageSummaryResourceTest {
         DateTimeFormatter dtf = DateTimeUtils.PARAMETER_WITH_DAY_DTF.withZone(dtZone);
         String startTimeStr = dtf.print(mentionTime.minusDays(1));
         String endTimeStr = dtf.print(mentionTime.plusDays(1));
-        List<MessageSummary> result = underTest.getAllMessageSummaries(startTimeStr, endTimeStr,
-                                                                       null, null, null, null);
-        assertEquals(sums.size(), result.size());
-
-        Set<MessageSummary> resultMessageSummarySet = Sets.newHashSet(result);
+        Response result = underTest.getAllMessageSummaries(startTimeStr, endTimeStr, null, null,
+                                                           null, null, null, null);
+        Set<JsonNode> resultMessageSummarySet = Sets.newHashSet(readJsonArray(result));
+        assertEquals(sums.size(), resultMessageSummarySet.size());
         for (MessageSummary expectedMessageSummary : sums) {
-            assertTrue(resultMessageSummarySet.contains(expectedMessageSummary));
+            assertTrue(resultMessageSummarySet.contains(
+                objectMapper.valueToTree(expectedMessageSummary)));
         }
 
         result = underTest.getAllMessageSummaries(startTimeStr, endTimeStr, null, null,
-                                                  BOT_MESSAGE.toString(), null);
-        assertEquals(1, result.size());
-        assertEquals(BOT_MESSAGE, result.get(0).getValue());
+                                                  BOT_MESSAGE.toString(), null, null, null);
+        resultMessageSummarySet = Sets.newHashSet(readJsonArray(result));
+        assertEquals(1, resultMessageSummarySet.size());
+        assertEquals(objectMapper.valueToTree(BOT_MESSAGE),
+                     resultMessageSummarySet.iterator().next().get("value"));
+    }
+
+    /**
+     * Makes sure the type filter applies to pages and that the last page has no cursor
+     */
+    @Test
+    public void testGetAllMessageTypes_paged() throws Exception {
+        DateTimeFormatter dtf = DateTimeUtils.PARAMETER_WITH_DAY_DTF.withZone(dtZone);
+        String startTimeStr = dtf.print(mentionTime.minusDays(1));
+        String endTimeStr = dtf.print(mentionTime.plusDays(1));
+
+        Response result = underTest.getAllMessageSummaries(startTimeStr, endTimeStr, null, null,
+                                                           CHANNEL_JOIN.toString(), null, "1",
+                                                           null);
+        List<JsonNode> page = readJsonArray(result);
+        assertEquals(1, page.size());
+        String cursor = (String) result.getMetadata().getFirst(WebConstants.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+
+        result = underTest.getAllMessageSummaries(startTimeStr, endTimeStr, null, null,
+                                                  CHANNEL_JOIN.toString(), null, "1", cursor);
+        List<JsonNode> nextPage = readJsonArray(result);
+        assertEquals(1, nextPage.size());
+        assertFalse(page.get(0).equals(nextPage.get(0)));
+        assertEquals(objectMapper.valueToTree(CHANNEL_JOIN), nextPage.get(0).get("value"));
+        assertNull(result.getMetadata().getFirst(WebConstants.NEXT_CURSOR_HEADER));
     }
 
     @Test
@@ -177,6 +218,9 @@ public class MessageSummaryResourceTest {
         em.getTransaction().begin();
         em.createNativeQuery("DELETE FROM " + MessageSummary.MESSAGE_SUMMARY_TABLE_NAME)
                 .executeUpdate();
+        em.createNativeQuery("DELETE FROM "
+                             + MessageSummaryRollup.MESSAGE_SUMMARY_ROLLUP_TABLE_NAME)
+          .executeUpdate();
         em.getTransaction().commit();
         messageSummaryDAO.stopAsync().awaitTerminated();
     }
@@ -187,4 +231,12 @@ public class MessageSummaryResourceTest {
         }
     }
 
+    /**
+     * Writes the streamed response and reads it back as a JSON array
+     */
+    private List<JsonNode> readJsonArray(Response response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(bytes);
+        return Lists.newArrayList(objectMapper.readTree(bytes.toByteArray()));
+    }
 }
@@ -1,8 +1,13 @@
 package com.chatalytics.web.resources;
 
+import com.chatalytics.web.cache.QueryCoalescer;
+import com.google.common.collect.ImmutableList;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -12,11 +17,13 @@ import static org.junit.Assert.assertEquals;
  */
 public class StatusResourceTest {
 
+    private QueryCoalescer queryCoalescer;
     private StatusResource underTest;
 
     @Before
     public void setUp() {
-        underTest = new StatusResource();
+        queryCoalescer = new QueryCoalescer();
+        underTest = new StatusResource(queryCoalescer);
     }
 
     @Test
@@ -24,4 +31,13 @@ public class StatusResourceTest {
         String result = underTest.health();
         assertEquals("OK", result);
     }
+
+    @Test
+    public void testQueries() {
+        queryCoalescer.execute(ImmutableList.of("a"), () -> 1);
+        queryCoalescer.execute(ImmutableList.of("b"), () -> 2);
+        Map<String, Long> result = underTest.queries();
+        assertEquals(2L, result.get(StatusResource.EXECUTED_QUERIES).longValue());
+        assertEquals(0L, result.get(StatusResource.COALESCED_QUERIES).longValue());
+    }
 }
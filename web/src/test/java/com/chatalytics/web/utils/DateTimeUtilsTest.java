@@ -1,13 +1,17 @@
 package com.chatalytics.web.utils;
 
 import com.chatalytics.core.config.ChatAlyticsConfig;
+import com.chatalytics.core.config.SlackBackfillerConfig;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
 import org.joda.time.Interval;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests {@link DateTimeUtils}.
@@ -59,4 +63,36 @@ public class DateTimeUtilsTest {
         assertEquals(DateTimeUtils.getDateTimeFromParameter(startTime, dtz), interval.getStart());
         assertEquals(DateTimeUtils.getDateTimeFromParameter(endTime, dtz), interval.getEnd());
     }
+
+    /**
+     * Makes sure the grace period covers the aggregation, the flush and the backfill
+     */
+    @Test
+    public void testGetClosedIntervalGrace() {
+        ChatAlyticsConfig config = new ChatAlyticsConfig();
+        config.computeConfig.aggregationWindowSecs = 60;
+        config.computeConfig.persistFlushIntervalMs = 1000;
+        config.webConfig.backfillGranularityMins = 60;
+        assertEquals(Duration.standardSeconds(60 + 1 + 3600),
+                     DateTimeUtils.getClosedIntervalGrace(config));
+
+        // the backfiller's own granularity wins
+        SlackBackfillerConfig backfillerConfig = new SlackBackfillerConfig();
+        backfillerConfig.granularityMins = 5;
+        config.computeConfig.chatConfig = backfillerConfig;
+        assertEquals(Duration.standardSeconds(60 + 1 + 300),
+                     DateTimeUtils.getClosedIntervalGrace(config));
+    }
+
+    @Test
+    public void testIsClosed() {
+        DateTime now = new DateTime(2016, 1, 1, 10, 5, DateTimeZone.UTC);
+        Duration grace = Duration.standardMinutes(10);
+
+        Interval justEnded = new Interval(now.minusDays(1), now.hourOfDay().roundFloorCopy());
+        assertFalse(DateTimeUtils.isClosed(justEnded, now, grace));
+        assertFalse(DateTimeUtils.isClosed(justEnded, now.plusMinutes(5), grace));
+        assertTrue(DateTimeUtils.isClosed(justEnded, now.plusMinutes(6), grace));
+        assertFalse(DateTimeUtils.isClosed(new Interval(now, now.plusHours(1)), now, grace));
+    }
 }
@@ -0,0 +1,90 @@
+package com.chatalytics.web.utils;
+
+import com.chatalytics.core.json.JsonObjectMapperFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link JsonArrayStreamingOutput}
+ *
+ * @author giannis
+ */
+public class JsonArrayStreamingOutputTest {
+
+    private ObjectMapper objectMapper;
+
+    @Before
+    public void setUp() {
+        objectMapper = JsonObjectMapperFactory.createObjectMapper();
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        JsonArrayStreamingOutput<TestElement> underTest =
+            new JsonArrayStreamingOutput<>(objectMapper, consumer -> {
+                consumer.accept(new TestElement("a", 1));
+                consumer.accept(new TestElement("b", 2));
+            });
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        underTest.write(output);
+        assertEquals("[{\"element_name\":\"a\",\"count\":1},{\"element_name\":\"b\",\"count\":2}]",
+                     output.toString("UTF-8"));
+    }
+
+    @Test
+    public void testWrite_empty() throws Exception {
+        JsonArrayStreamingOutput<TestElement> underTest =
+            new JsonArrayStreamingOutput<>(objectMapper, consumer -> {});
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        underTest.write(output);
+        assertEquals("[]", output.toString("UTF-8"));
+    }
+
+    /**
+     * Makes sure failures to write to the response are propagated as is
+     */
+    @Test(expected = IOException.class)
+    public void testWrite_failedOutput() throws Exception {
+        JsonArrayStreamingOutput<String> underTest =
+            new JsonArrayStreamingOutput<>(objectMapper, consumer -> {
+                ImmutableList.of("a", "b").forEach(consumer);
+            });
+
+        underTest.write(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("test");
+            }
+        });
+    }
+
+    private static class TestElement {
+
+        private final String elementName;
+        private final int count;
+
+        public TestElement(String elementName, int count) {
+            this.elementName = elementName;
+            this.count = count;
+        }
+
+        public String getElementName() {
+            return elementName;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+}
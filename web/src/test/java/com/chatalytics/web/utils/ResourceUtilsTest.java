@@ -1,5 +1,7 @@
 package com.chatalytics.web.utils;
 
+import com.chatalytics.compute.db.dao.MentionCursor;
+import com.chatalytics.web.constant.WebConstants;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 
@@ -63,4 +65,26 @@ public class ResourceUtilsTest {
         result = ResourceUtils.getOptionalForParameterAsBool(Boolean.toString(value));
         assertEquals(value, result.get().booleanValue());
     }
+
+    @Test
+    public void testGetOptionalForCursor() {
+        assertEquals(Optional.absent(), ResourceUtils.getOptionalForCursor(null));
+        assertEquals(Optional.absent(), ResourceUtils.getOptionalForCursor(""));
+
+        MentionCursor cursor = new MentionCursor(1000, 7);
+        assertEquals(cursor, ResourceUtils.getOptionalForCursor(cursor.encode()).get());
+    }
+
+    @Test
+    public void testGetPageLimit() {
+        assertEquals(WebConstants.DEFAULT_PAGE_SIZE, ResourceUtils.getPageLimit(Optional.absent()));
+        assertEquals(5, ResourceUtils.getPageLimit(Optional.of(5)));
+        assertEquals(WebConstants.MAX_PAGE_SIZE,
+                     ResourceUtils.getPageLimit(Optional.of(WebConstants.MAX_PAGE_SIZE + 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetPageLimit_notPositive() {
+        ResourceUtils.getPageLimit(Optional.of(0));
+    }
 }